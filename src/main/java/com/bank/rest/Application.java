@@ -1,6 +1,15 @@
 package com.bank.rest;
 
+import com.bank.rest.client.ApiClient;
+import com.bank.rest.dto.ImportResultDto;
+import com.bank.rest.json.JsonCodecProvider;
+import com.bank.rest.server.IdempotencyFilter;
+import com.bank.rest.service.AccountImporter;
+import com.bank.rest.service.AccountService;
+import com.bank.rest.trace.RequestTracer;
+import com.bank.rest.wire.BinaryProtocolServer;
 import com.sun.jersey.api.container.httpserver.HttpServerFactory;
+import com.sun.jersey.api.core.DefaultResourceConfig;
 import com.sun.jersey.api.core.PackagesResourceConfig;
 import com.sun.jersey.api.json.JSONConfiguration;
 import com.sun.net.httpserver.HttpServer;
@@ -8,29 +17,147 @@ import com.sun.jersey.api.core.ResourceConfig;
 
 import javax.ws.rs.core.UriBuilder;
 import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
 import java.net.InetAddress;
+import java.net.InetSocketAddress;
 import java.net.URI;
 import java.net.UnknownHostException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
 public class Application {
 
+    /**
+     * Port of the optional binary protocol listener, it is not started when the property is absent.
+     */
+    private static final String BINARY_PORT_PROPERTY = "bank.binary.port";
+    /**
+     * Number of threads serving HTTP requests.
+     */
+    private static final String HTTP_THREADS_PROPERTY = "bank.http.threads";
+    /**
+     * NDJSON or CSV file of accounts loaded before the server starts.
+     */
+    private static final String IMPORT_FILE_PROPERTY = "bank.import.file";
+    /**
+     * Address and port to listen on, the address defaults to the canonical host name.
+     */
+    private static final String HOST_PROPERTY = "bank.host";
+    private static final String PORT_PROPERTY = "bank.port";
+    /**
+     * Registers the resources explicitly instead of scanning the classpath, skips the WADL, listens on all
+     * interfaces unless an address is given and starts the background tasks of the service only once the server is
+     * ready, see {@link AccountService#startBackgroundTasks()}.
+     */
+    private static final String FAST_BOOT_PROPERTY = "bank.fastBoot";
+    /**
+     * File created once the server accepts connections, for container readiness probes.
+     */
+    private static final String READY_FILE_PROPERTY = "bank.readyFile";
+    /**
+     * The JDK server writes the headers and the body of a response separately, with Nagle's algorithm the body
+     * waits for the delayed acknowledgement of the headers, some 40 ms on every request of a kept alive connection.
+     */
+    private static final String NO_DELAY_PROPERTY = "sun.net.httpserver.nodelay";
+
     public static void main(String[] args) throws IOException {
-        HttpServer server = createHttpServer();
+        long start = System.nanoTime();
+        boolean fastBoot = Boolean.getBoolean(FAST_BOOT_PROPERTY);
+        importAccounts();
+        if (System.getProperty(NO_DELAY_PROPERTY) == null) {
+            System.setProperty(NO_DELAY_PROPERTY, "true");
+        }
+        URI uri = getURI(fastBoot);
+        HttpServer server = createHttpServer(uri, fastBoot);
+        ExecutorService executor = Executors.newFixedThreadPool(Integer.getInteger(HTTP_THREADS_PROPERTY, 64));
+        server.setExecutor(RequestTracer.timingQueue(executor));
+        // resumes unfinished bulk operations before any request can change their accounts
+        AccountService.getSingleInstance();
         server.start();
-        System.out.println("Server started on " + getURI());
+        ready(uri, start);
+        if (fastBoot) {
+            Thread starter = new Thread(() -> AccountService.getSingleInstance().startBackgroundTasks(), "lazy-init");
+            starter.setDaemon(true);
+            starter.start();
+        }
+        BinaryProtocolServer binaryServer = createBinaryServer();
+        if (binaryServer != null) {
+            binaryServer.start();
+            System.out.println("Binary protocol listening on port " + binaryServer.getPort());
+        }
         System.in.read();
+        if (binaryServer != null) {
+            binaryServer.close();
+        }
         server.stop(1);
+        executor.shutdown();
+    }
+
+    private static void importAccounts() throws IOException {
+        String file = System.getProperty(IMPORT_FILE_PROPERTY);
+        if (file == null) {
+            return;
+        }
+
+        long start = System.nanoTime();
+        try (InputStream in = Files.newInputStream(Paths.get(file))) {
+            ImportResultDto result = AccountService.getSingleInstance().importAccounts(in, AccountImporter.Format.of(file));
+            System.out.printf("Imported %d accounts from %s in %d ms, %d rows rejected%n", result.getImported(), file,
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start), result.getRejected());
+            for (ImportResultDto.RowError error : result.getErrors()) {
+                System.out.println("  line " + error.getLine() + ": " + error.getMessage());
+            }
+        }
     }
 
-    private static HttpServer createHttpServer() throws IOException {
-        ResourceConfig resourceConfig = new PackagesResourceConfig("com.bank.rest");
+    private static BinaryProtocolServer createBinaryServer() throws IOException {
+        String port = System.getProperty(BINARY_PORT_PROPERTY);
+        if (port == null) {
+            return null;
+        }
+
+        return new BinaryProtocolServer(AccountService.getSingleInstance(), new InetSocketAddress(Integer.parseInt(port)));
+    }
+
+    /**
+     * Reports that the listener accepts connections together with the time it took to get there.
+     */
+    private static void ready(URI uri, long start) throws IOException {
+        long startupMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        String readyFile = System.getProperty(READY_FILE_PROPERTY);
+        if (readyFile != null) {
+            Files.write(Paths.get(readyFile), uri.toString().getBytes(StandardCharsets.UTF_8));
+        }
+        System.out.println("Server started on " + uri + " in " + startupMillis + " ms, "
+                + ManagementFactory.getRuntimeMXBean().getUptime() + " ms since JVM start");
+    }
+
+    private static HttpServer createHttpServer(URI uri, boolean fastBoot) throws IOException {
+        ResourceConfig resourceConfig = fastBoot
+                ? new DefaultResourceConfig(ApiClient.class, JsonCodecProvider.class)
+                : new PackagesResourceConfig("com.bank.rest");
         resourceConfig.getFeatures().put(JSONConfiguration.FEATURE_POJO_MAPPING,Boolean.TRUE);
+        RequestTracer.getSingleInstance().install(resourceConfig);
+        IdempotencyFilter.getSingleInstance().install(resourceConfig);
+        if (fastBoot) {
+            // building the WADL model initializes JAXB, a third of the Jersey start up
+            resourceConfig.getFeatures().put(ResourceConfig.FEATURE_DISABLE_WADL, Boolean.TRUE);
+        }
 
-        return HttpServerFactory.create(getURI(), resourceConfig);
+        return HttpServerFactory.create(uri, resourceConfig);
     }
 
-    private static URI getURI() {
-        return UriBuilder.fromUri("http://" + getHostName() + "/").port(8085).build();
+    private static URI getURI(boolean fastBoot) {
+        String host = System.getProperty(HOST_PROPERTY);
+        if (host == null) {
+            host = fastBoot ? "0.0.0.0" : getHostName();
+        }
+        return UriBuilder.fromUri("http://" + host + "/").port(Integer.getInteger(PORT_PROPERTY, 8085)).build();
     }
 
     private static String getHostName() {
@@ -1,13 +1,36 @@
 package com.bank.rest.client;
 
+import com.bank.rest.dto.AccountsSnapshotDto;
+import com.bank.rest.dto.AdmissionStatsDto;
+import com.bank.rest.dto.AuditStatsDto;
+import com.bank.rest.dto.BalanceEventsDto;
+import com.bank.rest.dto.BulkOperationDto;
+import com.bank.rest.dto.BulkProgressDto;
+import com.bank.rest.dto.CacheStatsDto;
+import com.bank.rest.dto.FxRatesDto;
+import com.bank.rest.dto.HoldDto;
+import com.bank.rest.dto.ImportResultDto;
+import com.bank.rest.dto.LockStatsDto;
+import com.bank.rest.dto.ReconciliationDto;
+import com.bank.rest.dto.ScheduleTransferDto;
+import com.bank.rest.dto.StatsDto;
+import com.bank.rest.dto.StoreStatsDto;
 import com.bank.rest.dto.TopUpDto;
 import com.bank.rest.dto.TransferMoneyDto;
 import com.bank.rest.exception.ApiWebException;
 import com.bank.rest.model.Account;
+import com.bank.rest.model.Hold;
+import com.bank.rest.model.ScheduledTransfer;
+import com.bank.rest.service.AccountImporter;
 import com.bank.rest.service.AccountService;
 
 import javax.ws.rs.*;
+import javax.ws.rs.core.HttpHeaders;
 import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.StreamingOutput;
+import java.io.InputStream;
+import java.math.BigDecimal;
+import java.util.Collections;
 import java.util.List;
 
 @Path("/accounts")
@@ -18,12 +41,12 @@ public class ApiClient {
     @POST
     @Path("/create/{owner}")
     @Produces(MediaType.APPLICATION_JSON)
-    public Account create(@PathParam("owner") String owner) {
+    public Account create(@PathParam("owner") String owner, @QueryParam("currency") String currency) {
         Account account;
         try {
-            account = accountService.createAccount(owner);
+            account = accountService.createAccount(owner, currency);
         } catch (Exception ex) {
-            throw new ApiWebException(ex.getMessage());
+            throw new ApiWebException(ex);
         }
 
         return account;
@@ -35,15 +58,85 @@ public class ApiClient {
         return accountService.getAllAccounts();
     }
 
+    @GET
+    @Path("/snapshot")
+    @Produces(MediaType.APPLICATION_JSON)
+    public AccountsSnapshotDto snapshot() {
+        return accountService.getAccountsSnapshot();
+    }
+
+    @GET
+    @Path("/stats")
+    @Produces(MediaType.APPLICATION_JSON)
+    public StatsDto stats(@QueryParam("windowMinutes") @DefaultValue("0") int windowMinutes) {
+        return accountService.getStatistics(windowMinutes);
+    }
+
+    @GET
+    @Path("/admission")
+    @Produces(MediaType.APPLICATION_JSON)
+    public AdmissionStatsDto admission() {
+        return accountService.getAdmissionStats();
+    }
+
+    @GET
+    @Path("/cache")
+    @Produces(MediaType.APPLICATION_JSON)
+    public CacheStatsDto cache() {
+        return accountService.getCacheStats();
+    }
+
+    @GET
+    @Path("/locks")
+    @Produces(MediaType.APPLICATION_JSON)
+    public LockStatsDto locks() {
+        return accountService.getLockStats();
+    }
+
+    @GET
+    @Path("/audit")
+    @Produces(MediaType.APPLICATION_JSON)
+    public AuditStatsDto audit() {
+        return accountService.getAuditStats();
+    }
+
+    @GET
+    @Path("/reconciliation")
+    @Produces(MediaType.APPLICATION_JSON)
+    public ReconciliationDto reconciliation() {
+        return accountService.getReconciliation();
+    }
+
+    @POST
+    @Path("/reconciliation")
+    @Produces(MediaType.APPLICATION_JSON)
+    public ReconciliationDto reconcile() {
+        ReconciliationDto report;
+        try {
+            report = accountService.reconcile();
+        } catch (Exception ex) {
+            throw new ApiWebException(ex);
+        }
+
+        return report;
+    }
+
+    @GET
+    @Path("/store")
+    @Produces(MediaType.APPLICATION_JSON)
+    public StoreStatsDto store() {
+        return accountService.getStoreStats();
+    }
+
     @GET
     @Path("/{accountNumber}")
     @Produces(MediaType.APPLICATION_JSON)
-    public Account getByNumber(@PathParam("accountNumber") Long accountNumber) {
-        Account account;
+    public byte[] getByNumber(@PathParam("accountNumber") Long accountNumber) {
+        byte[] account;
         try {
-            account = accountService.getInfo(accountNumber);
+            account = accountService.getInfoJson(accountNumber);
         } catch (Exception ex) {
-            throw new ApiWebException(ex.getMessage());
+            throw new ApiWebException(ex);
         }
 
         return account;
@@ -57,7 +150,7 @@ public class ApiClient {
         try {
             updated = accountService.updateAccount(account);
         } catch (Exception ex) {
-            throw new ApiWebException(ex.getMessage());
+            throw new ApiWebException(ex);
         }
 
         return updated;
@@ -72,7 +165,7 @@ public class ApiClient {
         try {
             account = accountService.topUp(dto.getAccountNumber(), dto.getAmount());
         } catch (Exception ex) {
-            throw new ApiWebException(ex.getMessage());
+            throw new ApiWebException(ex);
         }
 
         return account;
@@ -84,7 +177,7 @@ public class ApiClient {
         try {
             accountService.deleteAccount(accountNumber);
         } catch (Exception ex) {
-            throw new ApiWebException(ex.getMessage());
+            throw new ApiWebException(ex);
         }
     }
 
@@ -94,7 +187,231 @@ public class ApiClient {
         try {
             accountService.transfer(dto.getAccountNumberFrom(), dto.getAccountNumberTo(), dto.getAmount());
         } catch (Exception ex) {
-            throw new ApiWebException(ex.getMessage());
+            throw new ApiWebException(ex);
+        }
+    }
+
+    @POST
+    @Path("/multi_transfer")
+    @Consumes(MediaType.APPLICATION_JSON)
+    public void multiTransfer(List<TransferMoneyDto> legs) {
+        try {
+            accountService.transfer(legs);
+        } catch (Exception ex) {
+            throw new ApiWebException(ex);
+        }
+    }
+
+    @POST
+    @Path("/import")
+    @Consumes({AccountImporter.NDJSON, AccountImporter.CSV})
+    @Produces(MediaType.APPLICATION_JSON)
+    public ImportResultDto importAccounts(@HeaderParam(HttpHeaders.CONTENT_TYPE) String contentType, InputStream rows) {
+        ImportResultDto result;
+        try {
+            result = accountService.importAccounts(rows, AccountImporter.Format.of(contentType));
+        } catch (Exception ex) {
+            throw new ApiWebException(ex);
+        }
+
+        return result;
+    }
+
+    @POST
+    @Path("/schedule")
+    @Consumes(MediaType.APPLICATION_JSON)
+    @Produces(MediaType.APPLICATION_JSON)
+    public ScheduledTransfer schedule(ScheduleTransferDto dto) {
+        ScheduledTransfer scheduled;
+        try {
+            scheduled = accountService.scheduleTransfer(dto);
+        } catch (Exception ex) {
+            throw new ApiWebException(ex);
+        }
+
+        return scheduled;
+    }
+
+    @GET
+    @Path("/schedule/{id}")
+    @Produces(MediaType.APPLICATION_JSON)
+    public ScheduledTransfer getScheduled(@PathParam("id") long id) {
+        ScheduledTransfer scheduled;
+        try {
+            scheduled = accountService.getScheduledTransfer(id);
+        } catch (Exception ex) {
+            throw new ApiWebException(ex);
+        }
+
+        return scheduled;
+    }
+
+    @DELETE
+    @Path("/schedule/{id}")
+    public void cancelScheduled(@PathParam("id") long id) {
+        try {
+            accountService.cancelScheduledTransfer(id);
+        } catch (Exception ex) {
+            throw new ApiWebException(ex);
+        }
+    }
+
+    @POST
+    @Path("/holds")
+    @Consumes(MediaType.APPLICATION_JSON)
+    @Produces(MediaType.APPLICATION_JSON)
+    public Hold placeHold(HoldDto dto) {
+        Hold hold;
+        try {
+            hold = accountService.placeHold(dto);
+        } catch (Exception ex) {
+            throw new ApiWebException(ex);
+        }
+
+        return hold;
+    }
+
+    @GET
+    @Path("/holds/{id}")
+    @Produces(MediaType.APPLICATION_JSON)
+    public Hold getHold(@PathParam("id") long id) {
+        Hold hold;
+        try {
+            hold = accountService.getHold(id);
+        } catch (Exception ex) {
+            throw new ApiWebException(ex);
+        }
+
+        return hold;
+    }
+
+    @POST
+    @Path("/holds/{id}/capture")
+    @Produces(MediaType.APPLICATION_JSON)
+    public Hold captureHold(@PathParam("id") long id, @QueryParam("amount") BigDecimal amount) {
+        Hold hold;
+        try {
+            hold = accountService.captureHold(id, amount);
+        } catch (Exception ex) {
+            throw new ApiWebException(ex);
+        }
+
+        return hold;
+    }
+
+    @DELETE
+    @Path("/holds/{id}")
+    @Produces(MediaType.APPLICATION_JSON)
+    public Hold releaseHold(@PathParam("id") long id) {
+        Hold hold;
+        try {
+            hold = accountService.releaseHold(id);
+        } catch (Exception ex) {
+            throw new ApiWebException(ex);
+        }
+
+        return hold;
+    }
+
+    @GET
+    @Path("/fx/rates")
+    @Produces(MediaType.APPLICATION_JSON)
+    public FxRatesDto fxRates() {
+        return accountService.getFxRates();
+    }
+
+    @PUT
+    @Path("/fx/rates")
+    @Consumes(MediaType.APPLICATION_JSON)
+    @Produces(MediaType.APPLICATION_JSON)
+    public FxRatesDto updateFxRates(FxRatesDto dto) {
+        FxRatesDto rates;
+        try {
+            rates = accountService.updateFxRates(dto);
+        } catch (Exception ex) {
+            throw new ApiWebException(ex);
+        }
+
+        return rates;
+    }
+
+    @POST
+    @Path("/bulk")
+    @Consumes(MediaType.APPLICATION_JSON)
+    @Produces(MediaType.APPLICATION_JSON)
+    public BulkProgressDto startBulk(BulkOperationDto dto) {
+        BulkProgressDto progress;
+        try {
+            progress = accountService.startBulkOperation(dto);
+        } catch (Exception ex) {
+            throw new ApiWebException(ex);
+        }
+
+        return progress;
+    }
+
+    @GET
+    @Path("/bulk/{id}")
+    @Produces(MediaType.APPLICATION_JSON)
+    public BulkProgressDto getBulk(@PathParam("id") long id) {
+        BulkProgressDto progress;
+        try {
+            progress = accountService.getBulkProgress(id);
+        } catch (Exception ex) {
+            throw new ApiWebException(ex);
+        }
+
+        return progress;
+    }
+
+    @POST
+    @Path("/events")
+    @Produces(MediaType.APPLICATION_JSON)
+    public BalanceEventsDto subscribe(@QueryParam("account") List<Long> accountNumbers) {
+        BalanceEventsDto subscription;
+        try {
+            long id = accountService.subscribeToBalances(accountNumbers);
+            subscription = new BalanceEventsDto(id, false, Collections.emptyList());
+        } catch (Exception ex) {
+            throw new ApiWebException(ex);
+        }
+
+        return subscription;
+    }
+
+    @GET
+    @Path("/events/stream")
+    @Produces(BalanceEventStream.MEDIA_TYPE)
+    public StreamingOutput stream(@QueryParam("account") List<Long> accountNumbers) {
+        try {
+            return new BalanceEventStream(accountService, accountService.openBalanceStream(accountNumbers));
+        } catch (Exception ex) {
+            throw new ApiWebException(ex);
+        }
+    }
+
+    @GET
+    @Path("/events/{id}")
+    @Produces(MediaType.APPLICATION_JSON)
+    public BalanceEventsDto poll(@PathParam("id") long id, @QueryParam("max") @DefaultValue("1000") int max,
+                                 @QueryParam("timeoutMillis") @DefaultValue("25000") long timeoutMillis) {
+        BalanceEventsDto events;
+        try {
+            events = accountService.pollBalanceEvents(id, max, timeoutMillis);
+        } catch (Exception ex) {
+            throw new ApiWebException(ex);
+        }
+
+        return events;
+    }
+
+    @DELETE
+    @Path("/events/{id}")
+    public void unsubscribe(@PathParam("id") long id) {
+        try {
+            accountService.unsubscribeFromBalances(id);
+        } catch (Exception ex) {
+            throw new ApiWebException(ex);
         }
     }
 
@@ -0,0 +1,70 @@
+package com.bank.rest.client;
+
+import com.bank.rest.dto.BalanceEventDto;
+import com.bank.rest.dto.BalanceEventsDto;
+import com.bank.rest.exception.ApiException;
+import com.bank.rest.json.BalanceEventCodec;
+import com.bank.rest.json.JsonWriter;
+import com.bank.rest.service.AccountService;
+
+import javax.ws.rs.core.StreamingOutput;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Writes the events of a subscription as server-sent events until the client goes away:
+ * a {@code balance} event per change with the commit sequence as its id, a {@code resync} event when changes
+ * were dropped and a comment line when nothing changed for a while, which also detects closed connections.
+ * The subscription is removed and its waiting place given back when the stream ends.
+ */
+class BalanceEventStream implements StreamingOutput {
+
+    static final String MEDIA_TYPE = "text/event-stream";
+
+    private static final int BATCH = 256;
+    private static final long KEEP_ALIVE_MILLIS = 15_000;
+    private static final byte[] RESYNC = "event: resync\ndata: {}\n\n".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] KEEP_ALIVE = ":\n\n".getBytes(StandardCharsets.US_ASCII);
+
+    private final AccountService accountService;
+    private final long subscriptionId;
+
+    BalanceEventStream(AccountService accountService, long subscriptionId) {
+        this.accountService = accountService;
+        this.subscriptionId = subscriptionId;
+    }
+
+    @Override
+    public void write(OutputStream out) {
+        try {
+            out.write((": subscription " + subscriptionId + "\n\n").getBytes(StandardCharsets.US_ASCII));
+            out.flush();
+            while (true) {
+                BalanceEventsDto batch = accountService.pollBalanceStream(subscriptionId, BATCH, KEEP_ALIVE_MILLIS);
+                if (batch.isResync()) {
+                    out.write(RESYNC);
+                } else if (batch.getEvents().isEmpty()) {
+                    out.write(KEEP_ALIVE);
+                }
+                for (BalanceEventDto event : batch.getEvents()) {
+                    out.write(("id: " + event.getSequence() + "\nevent: balance\ndata: ")
+                            .getBytes(StandardCharsets.US_ASCII));
+                    JsonWriter writer = JsonWriter.acquire(out);
+                    BalanceEventCodec.INSTANCE.write(event, writer);
+                    writer.flush();
+                    out.write('\n');
+                    out.write('\n');
+                }
+                out.flush();
+            }
+        } catch (IOException | ApiException e) {
+            // client disconnected or subscription removed
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            accountService.closeBalanceStream(subscriptionId);
+        }
+    }
+
+}
@@ -0,0 +1,434 @@
+package com.bank.rest.client;
+
+import com.bank.rest.dto.TopUpDto;
+import com.bank.rest.dto.TransferMoneyDto;
+import com.bank.rest.exception.ApiException;
+import com.bank.rest.exception.ErrorCode;
+import com.bank.rest.json.AccountCodec;
+import com.bank.rest.json.JsonReader;
+import com.bank.rest.json.JsonWriter;
+import com.bank.rest.json.TopUpDtoCodec;
+import com.bank.rest.json.TransferMoneyDtoCodec;
+import com.bank.rest.model.Account;
+import com.bank.rest.server.IdempotencyFilter;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Asynchronous client of the accounts API over a pool of keep-alive connections.
+ * Single transfers are batched: while all connections taking batches are busy, the transfers submitted in the meantime
+ * are queued and sent together to {@code /multi_transfer}, and they are sent on their own again if the batch is
+ * rejected, so one transfer failing does not fail the others. Changing requests carry an {@code Idempotency-Key}
+ * and are retried with backoff on connection failures, overload and server errors.
+ * Rejected calls complete exceptionally with an {@link ApiException} of the error code the server reported.
+ */
+public class BankClient implements Closeable {
+
+    private static final byte[] CODE = JsonWriter.name("code");
+    private static final byte[] MESSAGE = JsonWriter.name("message");
+    private static final long IDLE_MILLIS = 20_000;
+    private static final long BACKOFF_MILLIS = 10;
+    // legs the server takes in one multi transfer, configured by the same property as the server
+    private static final int MAX_LEGS = Integer.getInteger("bank.transfer.maxLegs", 16);
+
+    private final String basePath;
+    private final ConnectionPool pool;
+    private final ExecutorService executor;
+    private final int maxAttempts;
+    private final int maxBatch;
+    private final BlockingQueue<PendingTransfer> transfers = new LinkedBlockingQueue<>();
+    private final Semaphore batchPermits;
+    private final Thread batcher;
+    private final String keyPrefix = UUID.randomUUID().toString() + '-';
+    private final AtomicLong keys = new AtomicLong();
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong batches = new AtomicLong();
+    private final AtomicLong retries = new AtomicLong();
+    private volatile boolean closed;
+
+    /**
+     * @param uri         base URI of the server, for example {@code http://localhost:8085/}.
+     * @param connections most connections open at once, also the number of client threads.
+     * @param maxBatch    most transfers sent in one request, 1 sends every transfer on its own; lowered to
+     *                    {@code bank.transfer.maxLegs} (16), which has to match the server.
+     * @param maxAttempts times a request is sent before its failure is reported.
+     */
+    public BankClient(URI uri, int connections, int maxBatch, int maxAttempts) {
+        String path = uri.getRawPath() == null ? "" : uri.getRawPath();
+        this.basePath = path + (path.endsWith("/") ? "" : "/") + "accounts";
+        this.pool = new ConnectionPool(uri.getHost(), uri.getPort() < 0 ? 80 : uri.getPort(), connections,
+                IDLE_MILLIS);
+        AtomicInteger threads = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(connections, runnable -> {
+            Thread thread = new Thread(runnable, "bank-client-" + threads.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.maxAttempts = Math.max(1, maxAttempts);
+        this.maxBatch = Math.max(1, Math.min(maxBatch, MAX_LEGS));
+        this.batchPermits = new Semaphore(connections);
+        this.batcher = new Thread(this::batchTransfers, "bank-client-batcher");
+        batcher.setDaemon(true);
+        batcher.start();
+    }
+
+    /**
+     * Creates a client configured by the {@code bank.client.*} system properties.
+     */
+    public static BankClient fromSystemProperties(URI uri) {
+        return new BankClient(uri, Integer.getInteger("bank.client.connections", 16),
+                Integer.getInteger("bank.client.maxBatch", 16), Integer.getInteger("bank.client.maxAttempts", 3));
+    }
+
+    public CompletableFuture<Account> create(String owner) {
+        String path;
+        try {
+            path = new URI(null, null, basePath + "/create/" + owner, null).getRawPath();
+        } catch (URISyntaxException e) {
+            CompletableFuture<Account> failed = new CompletableFuture<>();
+            failed.completeExceptionally(new ApiException(ErrorCode.NULL_OWNER));
+            return failed;
+        }
+        return submit(() -> readAccount(call("POST", path, null, true)));
+    }
+
+    public CompletableFuture<Account> getInfo(long accountNumber) {
+        return submit(() -> readAccount(call("GET", basePath + "/" + accountNumber, null, false)));
+    }
+
+    public CompletableFuture<Account> topUp(TopUpDto dto) {
+        JsonWriter writer = JsonWriter.acquire(null);
+        TopUpDtoCodec.INSTANCE.write(dto, writer);
+        byte[] body = writer.toByteArray();
+        return submit(() -> readAccount(call("POST", basePath + "/top_up", body, true)));
+    }
+
+    /**
+     * Transfers money, batched with the other transfers waiting to be sent.
+     */
+    public CompletableFuture<Void> transfer(TransferMoneyDto dto) {
+        PendingTransfer pending = new PendingTransfer(dto);
+        if (closed) {
+            pending.future.completeExceptionally(new IllegalStateException("Client is closed"));
+        } else if (maxBatch == 1) {
+            executor.execute(() -> complete(pending, send(pending.dto)));
+        } else {
+            transfers.add(pending);
+        }
+        return pending.future;
+    }
+
+    /**
+     * Applies all transfers or none, as one request.
+     */
+    public CompletableFuture<Void> transfer(List<TransferMoneyDto> legs) {
+        byte[] body = encode(legs);
+        return submit(() -> {
+            check(call("POST", basePath + "/multi_transfer", body, true));
+            return null;
+        });
+    }
+
+    /**
+     * @return requests sent, not counting retries.
+     */
+    public long getRequests() {
+        return requests.get();
+    }
+
+    /**
+     * @return requests that carried more than one transfer.
+     */
+    public long getBatches() {
+        return batches.get();
+    }
+
+    public long getRetries() {
+        return retries.get();
+    }
+
+    /**
+     * Stops taking calls and closes the idle connections, calls in progress are completed.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        batcher.interrupt();
+        executor.shutdown();
+        try {
+            executor.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        PendingTransfer pending;
+        while ((pending = transfers.poll()) != null) {
+            pending.future.completeExceptionally(new IllegalStateException("Client is closed"));
+        }
+        pool.close();
+    }
+
+    private <T> CompletableFuture<T> submit(Call<T> call) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        try {
+            executor.execute(() -> {
+                try {
+                    future.complete(call.call());
+                } catch (IOException e) {
+                    future.completeExceptionally(new UncheckedIOException(e));
+                } catch (RuntimeException e) {
+                    future.completeExceptionally(e);
+                }
+            });
+        } catch (RuntimeException e) {
+            future.completeExceptionally(new IllegalStateException("Client is closed", e));
+        }
+        return future;
+    }
+
+    /**
+     * Takes the queued transfers whenever a connection is free for a batch, so the batches grow with the load
+     * instead of transfers waiting for a batch to fill up.
+     */
+    private void batchTransfers() {
+        List<PendingTransfer> batch = new ArrayList<>(maxBatch);
+        while (!closed) {
+            try {
+                batch.add(transfers.take());
+                batchPermits.acquire();
+            } catch (InterruptedException e) {
+                if (!batch.isEmpty()) {
+                    batch.get(0).future.completeExceptionally(new IllegalStateException("Client is closed"));
+                }
+                return;
+            }
+            transfers.drainTo(batch, maxBatch - 1);
+            List<PendingTransfer> taken = new ArrayList<>(batch);
+            batch.clear();
+            try {
+                executor.execute(() -> {
+                    try {
+                        sendBatch(taken);
+                    } finally {
+                        batchPermits.release();
+                    }
+                });
+            } catch (RuntimeException e) {
+                for (PendingTransfer pending : taken) {
+                    pending.future.completeExceptionally(new IllegalStateException("Client is closed", e));
+                }
+                return;
+            }
+        }
+    }
+
+    private void sendBatch(List<PendingTransfer> batch) {
+        if (batch.size() == 1) {
+            complete(batch.get(0), send(batch.get(0).dto));
+            return;
+        }
+
+        List<TransferMoneyDto> legs = new ArrayList<>(batch.size());
+        for (PendingTransfer pending : batch) {
+            legs.add(pending.dto);
+        }
+        batches.incrementAndGet();
+        Throwable failure = send("/multi_transfer", encode(legs));
+        if (failure instanceof ApiException && ((ApiException) failure).getCode() == ErrorCode.MALFORMED_REQUEST) {
+            // more legs than the server takes, or a malformed one: the halves are sent as batches of their own
+            int half = batch.size() / 2;
+            sendBatch(batch.subList(0, half));
+            sendBatch(batch.subList(half, batch.size()));
+            return;
+        }
+        if (failure instanceof ApiException && ((ApiException) failure).getCode().getStatus() < 500) {
+            // one of them was rejected, which one is known only by sending them on their own
+            for (PendingTransfer pending : batch) {
+                complete(pending, send(pending.dto));
+            }
+            return;
+        }
+        for (PendingTransfer pending : batch) {
+            complete(pending, failure);
+        }
+    }
+
+    private Throwable send(TransferMoneyDto dto) {
+        JsonWriter writer = JsonWriter.acquire(null);
+        TransferMoneyDtoCodec.INSTANCE.write(dto, writer);
+        return send("/transfer", writer.toByteArray());
+    }
+
+    /**
+     * @return failure of the request, null if it succeeded.
+     */
+    private Throwable send(String path, byte[] body) {
+        try {
+            check(call("POST", basePath + path, body, true));
+            return null;
+        } catch (IOException e) {
+            return new UncheckedIOException(e);
+        } catch (RuntimeException e) {
+            return e;
+        }
+    }
+
+    private static void complete(PendingTransfer pending, Throwable failure) {
+        if (failure == null) {
+            pending.future.complete(null);
+        } else {
+            pending.future.completeExceptionally(failure);
+        }
+    }
+
+    /**
+     * Sends the request until it gets a response that is not worth retrying or runs out of attempts.
+     *
+     * @param changing sends an idempotency key so that the server applies a retried request once.
+     */
+    private ConnectionPool.Response call(String method, String path, byte[] body, boolean changing)
+            throws IOException {
+        String headers = changing ? IdempotencyFilter.IDEMPOTENCY_KEY + ": " + keyPrefix
+                + Long.toString(keys.incrementAndGet(), 36) + "\r\n" : "";
+        requests.incrementAndGet();
+        for (int attempt = 1; ; attempt++) {
+            try {
+                ConnectionPool.Response response = pool.exchange(method, path, headers, body);
+                if (!isRetriable(response.status) || attempt >= maxAttempts) {
+                    return response;
+                }
+            } catch (IOException e) {
+                if (attempt >= maxAttempts) {
+                    throw e;
+                }
+            }
+            retries.incrementAndGet();
+            backOff(attempt);
+        }
+    }
+
+    private static boolean isRetriable(int status) {
+        return status == 429 || status == 500 || status == 502 || status == 503 || status == 504;
+    }
+
+    /**
+     * Sleeps for a random time up to an exponentially growing bound, so that retries of clients rejected together
+     * do not arrive together again.
+     */
+    private static void backOff(int attempt) throws IOException {
+        long bound = BACKOFF_MILLIS << Math.min(attempt - 1, 10);
+        try {
+            Thread.sleep(ThreadLocalRandom.current().nextLong(bound / 2, bound + 1));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted before retrying", e);
+        }
+    }
+
+    private static Account readAccount(ConnectionPool.Response response) {
+        check(response);
+        JsonReader reader = JsonReader.acquire(response.body, 0, response.body.length);
+        Account account = AccountCodec.INSTANCE.read(reader);
+        reader.end();
+        return account;
+    }
+
+    /**
+     * Throws the error reported by an unsuccessful response.
+     */
+    private static void check(ConnectionPool.Response response) {
+        if (response.status < 300) {
+            return;
+        }
+
+        String code = null;
+        String message = null;
+        try {
+            JsonReader reader = JsonReader.acquire(response.body, 0, response.body.length);
+            reader.beginObject();
+            for (boolean first = true; reader.hasNext('}', first); first = false) {
+                switch (reader.nextField(CODE, MESSAGE)) {
+                    case 0:
+                        code = reader.nextNull() ? null : reader.nextString();
+                        break;
+                    case 1:
+                        message = reader.nextNull() ? null : reader.nextString();
+                        break;
+                    default:
+                        reader.skipValue();
+                }
+            }
+        } catch (ApiException e) {
+            // not an error of the API, for example of the HTTP server itself
+        }
+        throw toException(response.status, code, message);
+    }
+
+    private static ApiException toException(int status, String code, String message) {
+        ErrorCode errorCode = null;
+        for (ErrorCode candidate : ErrorCode.values()) {
+            if (candidate.name().equals(code)) {
+                errorCode = candidate;
+                break;
+            }
+        }
+        if (errorCode == null) {
+            return new ApiException("HTTP " + status + (message == null ? "" : ": " + message));
+        }
+        String text = errorCode.getText();
+        if (message != null && text.endsWith(" ") && message.startsWith(text)) {
+            try {
+                return new ApiException(errorCode, Long.valueOf(message.substring(text.length())));
+            } catch (NumberFormatException e) {
+                // message without an account number
+            }
+        }
+        return new ApiException(errorCode);
+    }
+
+    private static byte[] encode(List<TransferMoneyDto> legs) {
+        JsonWriter writer = JsonWriter.acquire(null);
+        writer.beginArray();
+        for (int i = 0; i < legs.size(); i++) {
+            if (i > 0) {
+                writer.comma();
+            }
+            TransferMoneyDtoCodec.INSTANCE.write(legs.get(i), writer);
+        }
+        writer.endArray();
+        return writer.toByteArray();
+    }
+
+    @FunctionalInterface
+    private interface Call<T> {
+
+        T call() throws IOException;
+    }
+
+    private static final class PendingTransfer {
+
+        private final TransferMoneyDto dto;
+        private final CompletableFuture<Void> future = new CompletableFuture<>();
+
+        private PendingTransfer(TransferMoneyDto dto) {
+            this.dto = dto;
+        }
+    }
+
+}
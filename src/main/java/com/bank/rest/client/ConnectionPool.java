@@ -0,0 +1,317 @@
+package com.bank.rest.client;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.util.Deque;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keep-alive HTTP/1.1 connections to one server, at most {@code maxConnections} open at once.
+ * Idle connections are reused most recently used first, so that the ones left idle time out and get closed.
+ * A request failing on a reused connection before any response byte arrived is sent again on a new connection,
+ * the server may have closed the idle connection in the meantime.
+ */
+class ConnectionPool implements Closeable {
+
+    private static final int CONNECT_TIMEOUT_MILLIS = 5000;
+    private static final int READ_TIMEOUT_MILLIS = 30_000;
+    private static final int MAX_BODY_LENGTH = 16 * 1024 * 1024;
+
+    private final InetSocketAddress address;
+    private final String host;
+    private final Semaphore permits;
+    private final long idleNanos;
+    private final Deque<Connection> idle = new ConcurrentLinkedDeque<>();
+    private volatile boolean closed;
+
+    /**
+     * @param idleMillis idle connections are closed instead of reused after this time, below the server's idle timeout.
+     */
+    ConnectionPool(String host, int port, int maxConnections, long idleMillis) {
+        this.address = new InetSocketAddress(host, port);
+        this.host = host + ":" + port;
+        this.permits = new Semaphore(maxConnections);
+        this.idleNanos = TimeUnit.MILLISECONDS.toNanos(idleMillis);
+    }
+
+    /**
+     * Sends a request and reads its whole response.
+     *
+     * @param headers further header lines, each ending with CRLF, may be empty.
+     * @param body    JSON body, null for none.
+     */
+    Response exchange(String method, String path, String headers, byte[] body) throws IOException {
+        try {
+            permits.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted waiting for a connection", e);
+        }
+        try {
+            byte[] request = encode(method, path, headers, body);
+            Connection connection = idle.pollFirst();
+            while (connection != null) {
+                if (System.nanoTime() - connection.lastUsedNanos < idleNanos) {
+                    try {
+                        return send(connection, request);
+                    } catch (StaleConnectionException e) {
+                        // closed by the server while idle, the request did not reach it
+                    }
+                } else {
+                    connection.close();
+                }
+                connection = idle.pollFirst();
+            }
+            return send(new Connection(address), request);
+        } finally {
+            permits.release();
+        }
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        Connection connection;
+        while ((connection = idle.pollFirst()) != null) {
+            connection.close();
+        }
+    }
+
+    private Response send(Connection connection, byte[] request) throws IOException {
+        boolean reusable = false;
+        try {
+            Response response = connection.exchange(request);
+            reusable = response.keepAlive;
+            return response;
+        } finally {
+            if (reusable && !closed) {
+                connection.lastUsedNanos = System.nanoTime();
+                idle.offerFirst(connection);
+            } else {
+                connection.close();
+            }
+        }
+    }
+
+    private byte[] encode(String method, String path, String headers, byte[] body) {
+        StringBuilder head = new StringBuilder(128 + headers.length())
+                .append(method).append(' ').append(path).append(" HTTP/1.1\r\n")
+                .append("Host: ").append(host).append("\r\n")
+                .append("Accept: application/json\r\n")
+                .append(headers);
+        if (body != null) {
+            head.append("Content-Type: application/json\r\n");
+        }
+        head.append("Content-Length: ").append(body == null ? 0 : body.length).append("\r\n\r\n");
+        byte[] encodedHead = head.toString().getBytes(StandardCharsets.ISO_8859_1);
+        if (body == null) {
+            return encodedHead;
+        }
+        byte[] request = new byte[encodedHead.length + body.length];
+        System.arraycopy(encodedHead, 0, request, 0, encodedHead.length);
+        System.arraycopy(body, 0, request, encodedHead.length, body.length);
+        return request;
+    }
+
+    static final class Response {
+
+        final int status;
+        final byte[] body;
+        final boolean keepAlive;
+
+        private Response(int status, byte[] body, boolean keepAlive) {
+            this.status = status;
+            this.body = body;
+            this.keepAlive = keepAlive;
+        }
+    }
+
+    /**
+     * Failure of a reused connection before the response started, the request can safely be sent again.
+     */
+    private static final class StaleConnectionException extends IOException {
+
+        private StaleConnectionException(IOException cause) {
+            super(cause);
+        }
+    }
+
+    private static final class Connection {
+
+        private final Socket socket;
+        private final InputStream in;
+        private final OutputStream out;
+        private long lastUsedNanos;
+        private int exchanges;
+
+        private Connection(InetSocketAddress address) throws IOException {
+            socket = new Socket();
+            try {
+                socket.connect(address, CONNECT_TIMEOUT_MILLIS);
+                socket.setTcpNoDelay(true);
+                socket.setSoTimeout(READ_TIMEOUT_MILLIS);
+                in = new BufferedInputStream(socket.getInputStream());
+                out = new BufferedOutputStream(socket.getOutputStream());
+            } catch (IOException e) {
+                close();
+                throw e;
+            }
+        }
+
+        private Response exchange(byte[] request) throws IOException {
+            int status;
+            try {
+                out.write(request);
+                out.flush();
+                status = readStatus();
+            } catch (IOException e) {
+                if (exchanges > 0 && !(e instanceof SocketTimeoutException)) {
+                    throw new StaleConnectionException(e);
+                }
+                throw e;
+            }
+            exchanges++;
+
+            long contentLength = -1;
+            boolean chunked = false;
+            boolean keepAlive = true;
+            String line;
+            while (!(line = readLine()).isEmpty()) {
+                int colon = line.indexOf(':');
+                if (colon < 0) {
+                    continue;
+                }
+                String name = line.substring(0, colon).trim();
+                String value = line.substring(colon + 1).trim();
+                if (name.equalsIgnoreCase("Content-Length")) {
+                    contentLength = Long.parseLong(value);
+                } else if (name.equalsIgnoreCase("Transfer-Encoding")) {
+                    chunked = value.equalsIgnoreCase("chunked");
+                } else if (name.equalsIgnoreCase("Connection")) {
+                    keepAlive = !value.equalsIgnoreCase("close");
+                }
+            }
+
+            byte[] body;
+            if (status == 204 || status == 304 || status < 200) {
+                body = new byte[0];
+            } else if (chunked) {
+                body = readChunked();
+            } else if (contentLength >= 0) {
+                body = readFully(checkLength(contentLength));
+            } else {
+                body = readToEnd();
+                keepAlive = false;
+            }
+            return new Response(status, body, keepAlive);
+        }
+
+        private int readStatus() throws IOException {
+            String line = readLine();
+            // HTTP/1.1 200 OK
+            if (!line.startsWith("HTTP/1.") || line.length() < 12) {
+                throw new IOException("Malformed status line: " + line);
+            }
+            try {
+                return Integer.parseInt(line.substring(9, 12));
+            } catch (NumberFormatException e) {
+                throw new IOException("Malformed status line: " + line);
+            }
+        }
+
+        private byte[] readChunked() throws IOException {
+            ByteArrayOutputStream body = new ByteArrayOutputStream();
+            int chunk;
+            while ((chunk = readChunkSize()) > 0) {
+                checkLength(body.size() + (long) chunk);
+                body.write(readFully(chunk));
+                readLine();
+            }
+            // trailers
+            while (!readLine().isEmpty()) {
+            }
+            return body.toByteArray();
+        }
+
+        private int readChunkSize() throws IOException {
+            String line = readLine();
+            int extension = line.indexOf(';');
+            try {
+                return checkLength(Long.parseLong((extension < 0 ? line : line.substring(0, extension)).trim(), 16));
+            } catch (NumberFormatException e) {
+                throw new IOException("Malformed chunk size: " + line);
+            }
+        }
+
+        private byte[] readFully(int length) throws IOException {
+            byte[] bytes = new byte[length];
+            int read = 0;
+            while (read < length) {
+                int n = in.read(bytes, read, length - read);
+                if (n < 0) {
+                    throw new EOFException("Connection closed within a response");
+                }
+                read += n;
+            }
+            return bytes;
+        }
+
+        private byte[] readToEnd() throws IOException {
+            ByteArrayOutputStream body = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            int n;
+            while ((n = in.read(buffer)) >= 0) {
+                body.write(buffer, 0, n);
+                checkLength(body.size());
+            }
+            return body.toByteArray();
+        }
+
+        private String readLine() throws IOException {
+            StringBuilder line = new StringBuilder(64);
+            int c;
+            while ((c = in.read()) != '\n') {
+                if (c < 0) {
+                    throw new EOFException("Connection closed within a response");
+                }
+                if (line.length() > 8192) {
+                    throw new IOException("Response header line too long");
+                }
+                line.append((char) c);
+            }
+            int length = line.length();
+            if (length > 0 && line.charAt(length - 1) == '\r') {
+                line.setLength(length - 1);
+            }
+            return line.toString();
+        }
+
+        private static int checkLength(long length) throws IOException {
+            if (length < 0 || length > MAX_BODY_LENGTH) {
+                throw new IOException("Response body of " + length + " bytes");
+            }
+            return (int) length;
+        }
+
+        private void close() {
+            try {
+                socket.close();
+            } catch (IOException e) {
+                // nothing left to release
+            }
+        }
+    }
+
+}
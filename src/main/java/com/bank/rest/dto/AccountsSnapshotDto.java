@@ -0,0 +1,36 @@
+package com.bank.rest.dto;
+
+import com.bank.rest.model.Account;
+import org.codehaus.jackson.annotate.JsonCreator;
+import org.codehaus.jackson.annotate.JsonProperty;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+public class AccountsSnapshotDto {
+
+    private long sequence;
+    private BigDecimal totalBalance;
+    private List<Account> accounts;
+
+    @JsonCreator
+    public AccountsSnapshotDto(@JsonProperty("sequence") long sequence,
+                               @JsonProperty("totalBalance") BigDecimal totalBalance,
+                               @JsonProperty("accounts") List<Account> accounts) {
+        this.sequence = sequence;
+        this.totalBalance = totalBalance;
+        this.accounts = accounts;
+    }
+
+    public long getSequence() {
+        return sequence;
+    }
+
+    public BigDecimal getTotalBalance() {
+        return totalBalance;
+    }
+
+    public List<Account> getAccounts() {
+        return accounts;
+    }
+}
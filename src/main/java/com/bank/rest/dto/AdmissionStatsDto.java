@@ -0,0 +1,85 @@
+package com.bank.rest.dto;
+
+import org.codehaus.jackson.annotate.JsonCreator;
+import org.codehaus.jackson.annotate.JsonProperty;
+
+import java.util.List;
+
+public class AdmissionStatsDto {
+
+    private int inProgress;
+    private int maxConcurrent;
+    private int maxQueuePerAccount;
+    private long rejectedServerOverloaded;
+    private long rejectedAccountOverloaded;
+    private long rejectedRateLimited;
+    private List<AccountQueue> hotAccounts;
+
+    @JsonCreator
+    public AdmissionStatsDto(@JsonProperty("inProgress") int inProgress,
+                             @JsonProperty("maxConcurrent") int maxConcurrent,
+                             @JsonProperty("maxQueuePerAccount") int maxQueuePerAccount,
+                             @JsonProperty("rejectedServerOverloaded") long rejectedServerOverloaded,
+                             @JsonProperty("rejectedAccountOverloaded") long rejectedAccountOverloaded,
+                             @JsonProperty("rejectedRateLimited") long rejectedRateLimited,
+                             @JsonProperty("hotAccounts") List<AccountQueue> hotAccounts) {
+        this.inProgress = inProgress;
+        this.maxConcurrent = maxConcurrent;
+        this.maxQueuePerAccount = maxQueuePerAccount;
+        this.rejectedServerOverloaded = rejectedServerOverloaded;
+        this.rejectedAccountOverloaded = rejectedAccountOverloaded;
+        this.rejectedRateLimited = rejectedRateLimited;
+        this.hotAccounts = hotAccounts;
+    }
+
+    public int getInProgress() {
+        return inProgress;
+    }
+
+    public int getMaxConcurrent() {
+        return maxConcurrent;
+    }
+
+    public int getMaxQueuePerAccount() {
+        return maxQueuePerAccount;
+    }
+
+    public long getRejectedServerOverloaded() {
+        return rejectedServerOverloaded;
+    }
+
+    public long getRejectedAccountOverloaded() {
+        return rejectedAccountOverloaded;
+    }
+
+    public long getRejectedRateLimited() {
+        return rejectedRateLimited;
+    }
+
+    public List<AccountQueue> getHotAccounts() {
+        return hotAccounts;
+    }
+
+    /**
+     * Requests in progress or waiting on one account.
+     */
+    public static class AccountQueue {
+
+        private long accountNumber;
+        private int queued;
+
+        @JsonCreator
+        public AccountQueue(@JsonProperty("accountNumber") long accountNumber, @JsonProperty("queued") int queued) {
+            this.accountNumber = accountNumber;
+            this.queued = queued;
+        }
+
+        public long getAccountNumber() {
+            return accountNumber;
+        }
+
+        public int getQueued() {
+            return queued;
+        }
+    }
+}
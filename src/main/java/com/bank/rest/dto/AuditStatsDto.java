@@ -0,0 +1,96 @@
+package com.bank.rest.dto;
+
+import org.codehaus.jackson.annotate.JsonCreator;
+import org.codehaus.jackson.annotate.JsonProperty;
+
+public class AuditStatsDto {
+
+    private boolean enabled;
+    private String onFull;
+    private int queueCapacity;
+    private int queued;
+    private long recorded;
+    private long written;
+    private long dropped;
+    private long blocked;
+    private long batches;
+    private long files;
+
+    @JsonCreator
+    public AuditStatsDto(@JsonProperty("enabled") boolean enabled,
+                         @JsonProperty("onFull") String onFull,
+                         @JsonProperty("queueCapacity") int queueCapacity,
+                         @JsonProperty("queued") int queued,
+                         @JsonProperty("recorded") long recorded,
+                         @JsonProperty("written") long written,
+                         @JsonProperty("dropped") long dropped,
+                         @JsonProperty("blocked") long blocked,
+                         @JsonProperty("batches") long batches,
+                         @JsonProperty("files") long files) {
+        this.enabled = enabled;
+        this.onFull = onFull;
+        this.queueCapacity = queueCapacity;
+        this.queued = queued;
+        this.recorded = recorded;
+        this.written = written;
+        this.dropped = dropped;
+        this.blocked = blocked;
+        this.batches = batches;
+        this.files = files;
+    }
+
+    /**
+     * @return false without {@code bank.audit.path}, then all counts are 0.
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * @return BLOCK or DROP, what a call does while the queue is full.
+     */
+    public String getOnFull() {
+        return onFull;
+    }
+
+    public int getQueueCapacity() {
+        return queueCapacity;
+    }
+
+    public int getQueued() {
+        return queued;
+    }
+
+    public long getRecorded() {
+        return recorded;
+    }
+
+    public long getWritten() {
+        return written;
+    }
+
+    /**
+     * @return records lost because the queue was full or the file could not be written.
+     */
+    public long getDropped() {
+        return dropped;
+    }
+
+    /**
+     * @return calls that waited for room in the queue.
+     */
+    public long getBlocked() {
+        return blocked;
+    }
+
+    public long getBatches() {
+        return batches;
+    }
+
+    /**
+     * @return files written since start, including the current one.
+     */
+    public long getFiles() {
+        return files;
+    }
+}
@@ -0,0 +1,44 @@
+package com.bank.rest.dto;
+
+import org.codehaus.jackson.annotate.JsonCreator;
+import org.codehaus.jackson.annotate.JsonProperty;
+
+import java.math.BigDecimal;
+
+/**
+ * Committed state of one account, events of an account are delivered in sequence order.
+ */
+public class BalanceEventDto {
+
+    private long sequence;
+    private Long accountNumber;
+    private BigDecimal balance;
+    private boolean disabled;
+
+    @JsonCreator
+    public BalanceEventDto(@JsonProperty("sequence") long sequence,
+                           @JsonProperty("accountNumber") Long accountNumber,
+                           @JsonProperty("balance") BigDecimal balance,
+                           @JsonProperty("disabled") boolean disabled) {
+        this.sequence = sequence;
+        this.accountNumber = accountNumber;
+        this.balance = balance;
+        this.disabled = disabled;
+    }
+
+    public long getSequence() {
+        return sequence;
+    }
+
+    public Long getAccountNumber() {
+        return accountNumber;
+    }
+
+    public BigDecimal getBalance() {
+        return balance;
+    }
+
+    public boolean isDisabled() {
+        return disabled;
+    }
+}
@@ -0,0 +1,38 @@
+package com.bank.rest.dto;
+
+import org.codehaus.jackson.annotate.JsonCreator;
+import org.codehaus.jackson.annotate.JsonProperty;
+
+import java.util.List;
+
+/**
+ * Events of a subscription since its last poll. When {@code resync} is set events were dropped and the
+ * subscriber has to read the balances again.
+ */
+public class BalanceEventsDto {
+
+    private long subscriptionId;
+    private boolean resync;
+    private List<BalanceEventDto> events;
+
+    @JsonCreator
+    public BalanceEventsDto(@JsonProperty("subscriptionId") long subscriptionId,
+                            @JsonProperty("resync") boolean resync,
+                            @JsonProperty("events") List<BalanceEventDto> events) {
+        this.subscriptionId = subscriptionId;
+        this.resync = resync;
+        this.events = events;
+    }
+
+    public long getSubscriptionId() {
+        return subscriptionId;
+    }
+
+    public boolean isResync() {
+        return resync;
+    }
+
+    public List<BalanceEventDto> getEvents() {
+        return events;
+    }
+}
@@ -0,0 +1,52 @@
+package com.bank.rest.dto;
+
+import org.codehaus.jackson.annotate.JsonCreator;
+import org.codehaus.jackson.annotate.JsonProperty;
+
+import java.math.BigDecimal;
+
+public class BulkOperationDto {
+
+    /**
+     * Change applied to every active account.
+     */
+    public enum Type {
+        /**
+         * Credits the balance times the amount as rate, rounded half even to cents.
+         */
+        INTEREST,
+        /**
+         * Writes off the amount, or the whole balance if it is lower.
+         */
+        FEE
+    }
+
+    private Long id;
+    private Type type;
+    private BigDecimal amount;
+
+    /**
+     * @param id     chosen by the caller, starting an operation again with its id resumes or reports it.
+     * @param amount interest rate or fee, positive.
+     */
+    @JsonCreator
+    public BulkOperationDto(@JsonProperty("id") Long id,
+                            @JsonProperty("type") Type type,
+                            @JsonProperty("amount") BigDecimal amount) {
+        this.id = id;
+        this.type = type;
+        this.amount = amount;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public BigDecimal getAmount() {
+        return amount;
+    }
+}
@@ -0,0 +1,110 @@
+package com.bank.rest.dto;
+
+import org.codehaus.jackson.annotate.JsonCreator;
+import org.codehaus.jackson.annotate.JsonProperty;
+import org.codehaus.jackson.map.annotate.JsonSerialize;
+
+import java.math.BigDecimal;
+
+@JsonSerialize(include = JsonSerialize.Inclusion.NON_NULL)
+public class BulkProgressDto {
+
+    /**
+     * Stage of an operation.
+     */
+    public enum State {
+        RUNNING, COMPLETED, FAILED
+    }
+
+    private long id;
+    private BulkOperationDto.Type type;
+    private BigDecimal amount;
+    private State state;
+    private int chunks;
+    private int chunksDone;
+    private long changed;
+    private long skipped;
+    private BigDecimal total;
+    private String error;
+
+    @JsonCreator
+    public BulkProgressDto(@JsonProperty("id") long id,
+                           @JsonProperty("type") BulkOperationDto.Type type,
+                           @JsonProperty("amount") BigDecimal amount,
+                           @JsonProperty("state") State state,
+                           @JsonProperty("chunks") int chunks,
+                           @JsonProperty("chunksDone") int chunksDone,
+                           @JsonProperty("changed") long changed,
+                           @JsonProperty("skipped") long skipped,
+                           @JsonProperty("total") BigDecimal total,
+                           @JsonProperty("error") String error) {
+        this.id = id;
+        this.type = type;
+        this.amount = amount;
+        this.state = state;
+        this.chunks = chunks;
+        this.chunksDone = chunksDone;
+        this.changed = changed;
+        this.skipped = skipped;
+        this.total = total;
+        this.error = error;
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public BulkOperationDto.Type getType() {
+        return type;
+    }
+
+    public BigDecimal getAmount() {
+        return amount;
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    /**
+     * @return number of ranges of account numbers the accounts were split into when the operation started.
+     */
+    public int getChunks() {
+        return chunks;
+    }
+
+    /**
+     * @return chunks applied, including those applied before a restart.
+     */
+    public int getChunksDone() {
+        return chunksDone;
+    }
+
+    /**
+     * @return accounts changed by this process, a restarted operation does not count those changed before.
+     */
+    public long getChanged() {
+        return changed;
+    }
+
+    /**
+     * @return disabled accounts left out by this process.
+     */
+    public long getSkipped() {
+        return skipped;
+    }
+
+    /**
+     * @return sum of the balance changes made by this process, negative for fees.
+     */
+    public BigDecimal getTotal() {
+        return total;
+    }
+
+    /**
+     * @return message of the error that stopped a failed operation, null otherwise.
+     */
+    public String getError() {
+        return error;
+    }
+}
@@ -0,0 +1,56 @@
+package com.bank.rest.dto;
+
+import org.codehaus.jackson.annotate.JsonCreator;
+import org.codehaus.jackson.annotate.JsonProperty;
+
+public class CacheStatsDto {
+
+    private int capacity;
+    private int size;
+    private long hits;
+    private long misses;
+    private long evictions;
+    private double hitRate;
+
+    @JsonCreator
+    public CacheStatsDto(@JsonProperty("capacity") int capacity,
+                         @JsonProperty("size") int size,
+                         @JsonProperty("hits") long hits,
+                         @JsonProperty("misses") long misses,
+                         @JsonProperty("evictions") long evictions,
+                         @JsonProperty("hitRate") double hitRate) {
+        this.capacity = capacity;
+        this.size = size;
+        this.hits = hits;
+        this.misses = misses;
+        this.evictions = evictions;
+        this.hitRate = hitRate;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    public long getHits() {
+        return hits;
+    }
+
+    public long getMisses() {
+        return misses;
+    }
+
+    public long getEvictions() {
+        return evictions;
+    }
+
+    /**
+     * @return hits per read, 0 before the first read.
+     */
+    public double getHitRate() {
+        return hitRate;
+    }
+}
@@ -0,0 +1,39 @@
+package com.bank.rest.dto;
+
+import org.codehaus.jackson.annotate.JsonCreator;
+import org.codehaus.jackson.annotate.JsonProperty;
+
+import java.math.BigDecimal;
+import java.util.Map;
+
+public class FxRatesDto {
+
+    private String baseCurrency;
+    private Map<String, BigDecimal> rates;
+    private long updatedAt;
+
+    /**
+     * @param rates     units of each currency worth one unit of the base currency, by ISO 4217 code.
+     * @param updatedAt epoch millis the rates were set at, ignored when they are set.
+     */
+    @JsonCreator
+    public FxRatesDto(@JsonProperty("baseCurrency") String baseCurrency,
+                      @JsonProperty("rates") Map<String, BigDecimal> rates,
+                      @JsonProperty("updatedAt") long updatedAt) {
+        this.baseCurrency = baseCurrency;
+        this.rates = rates;
+        this.updatedAt = updatedAt;
+    }
+
+    public String getBaseCurrency() {
+        return baseCurrency;
+    }
+
+    public Map<String, BigDecimal> getRates() {
+        return rates;
+    }
+
+    public long getUpdatedAt() {
+        return updatedAt;
+    }
+}
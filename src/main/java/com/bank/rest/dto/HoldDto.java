@@ -0,0 +1,45 @@
+package com.bank.rest.dto;
+
+import org.codehaus.jackson.annotate.JsonCreator;
+import org.codehaus.jackson.annotate.JsonProperty;
+
+import java.math.BigDecimal;
+
+public class HoldDto {
+
+    private Long accountNumber;
+    private Long accountNumberTo;
+    private BigDecimal amount;
+    private Long timeoutMillis;
+
+    /**
+     * @param accountNumberTo payee of the captured amount, null if it is only written off.
+     * @param timeoutMillis   time until the hold expires, the configured default if null.
+     */
+    @JsonCreator
+    public HoldDto(@JsonProperty("accountNumber") Long accountNumber,
+                   @JsonProperty("accountNumberTo") Long accountNumberTo,
+                   @JsonProperty("amount") BigDecimal amount,
+                   @JsonProperty("timeoutMillis") Long timeoutMillis) {
+        this.accountNumber = accountNumber;
+        this.accountNumberTo = accountNumberTo;
+        this.amount = amount;
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    public Long getAccountNumber() {
+        return accountNumber;
+    }
+
+    public Long getAccountNumberTo() {
+        return accountNumberTo;
+    }
+
+    public BigDecimal getAmount() {
+        return amount;
+    }
+
+    public Long getTimeoutMillis() {
+        return timeoutMillis;
+    }
+}
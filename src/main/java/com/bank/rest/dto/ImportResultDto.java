@@ -0,0 +1,67 @@
+package com.bank.rest.dto;
+
+import org.codehaus.jackson.annotate.JsonCreator;
+import org.codehaus.jackson.annotate.JsonProperty;
+
+import java.util.List;
+
+public class ImportResultDto {
+
+    private long imported;
+    private long rejected;
+    private List<RowError> errors;
+
+    /**
+     * @param errors rejected rows in input order, only the first ones are reported.
+     */
+    @JsonCreator
+    public ImportResultDto(@JsonProperty("imported") long imported,
+                           @JsonProperty("rejected") long rejected,
+                           @JsonProperty("errors") List<RowError> errors) {
+        this.imported = imported;
+        this.rejected = rejected;
+        this.errors = errors;
+    }
+
+    public long getImported() {
+        return imported;
+    }
+
+    public long getRejected() {
+        return rejected;
+    }
+
+    public List<RowError> getErrors() {
+        return errors;
+    }
+
+    /**
+     * Rejected row with its 1-based line number.
+     */
+    public static class RowError {
+
+        private long line;
+        private String code;
+        private String message;
+
+        @JsonCreator
+        public RowError(@JsonProperty("line") long line, @JsonProperty("code") String code,
+                        @JsonProperty("message") String message) {
+            this.line = line;
+            this.code = code;
+            this.message = message;
+        }
+
+        public long getLine() {
+            return line;
+        }
+
+        public String getCode() {
+            return code;
+        }
+
+        public String getMessage() {
+            return message;
+        }
+    }
+}
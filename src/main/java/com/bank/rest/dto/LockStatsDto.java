@@ -0,0 +1,62 @@
+package com.bank.rest.dto;
+
+import org.codehaus.jackson.annotate.JsonCreator;
+import org.codehaus.jackson.annotate.JsonProperty;
+
+public class LockStatsDto {
+
+    private int stripes;
+    private long timeoutMillis;
+    private long acquisitions;
+    private long contended;
+    private long timeouts;
+    private long averageWaitMicros;
+
+    @JsonCreator
+    public LockStatsDto(@JsonProperty("stripes") int stripes,
+                        @JsonProperty("timeoutMillis") long timeoutMillis,
+                        @JsonProperty("acquisitions") long acquisitions,
+                        @JsonProperty("contended") long contended,
+                        @JsonProperty("timeouts") long timeouts,
+                        @JsonProperty("averageWaitMicros") long averageWaitMicros) {
+        this.stripes = stripes;
+        this.timeoutMillis = timeoutMillis;
+        this.acquisitions = acquisitions;
+        this.contended = contended;
+        this.timeouts = timeouts;
+        this.averageWaitMicros = averageWaitMicros;
+    }
+
+    public int getStripes() {
+        return stripes;
+    }
+
+    public long getTimeoutMillis() {
+        return timeoutMillis;
+    }
+
+    /**
+     * @return operations that got their locks.
+     */
+    public long getAcquisitions() {
+        return acquisitions;
+    }
+
+    /**
+     * @return locks that were held by another operation when requested.
+     */
+    public long getContended() {
+        return contended;
+    }
+
+    public long getTimeouts() {
+        return timeouts;
+    }
+
+    /**
+     * @return average wait of a contended lock, 0 before the first one.
+     */
+    public long getAverageWaitMicros() {
+        return averageWaitMicros;
+    }
+}
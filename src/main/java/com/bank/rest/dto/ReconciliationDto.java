@@ -0,0 +1,155 @@
+package com.bank.rest.dto;
+
+import org.codehaus.jackson.annotate.JsonCreator;
+import org.codehaus.jackson.annotate.JsonProperty;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+public class ReconciliationDto {
+
+    private boolean enabled;
+    private long runs;
+    private long sequence;
+    private long startedMillis;
+    private long durationMillis;
+    private int partitions;
+    private int partitionsVerified;
+    private long accountsVerified;
+    private long auditDropped;
+    private String checksum;
+    private long discrepancyCount;
+    private List<Discrepancy> discrepancies;
+
+    /**
+     * @param discrepancies accounts whose balance does not match their recorded history, only the first ones.
+     */
+    @JsonCreator
+    public ReconciliationDto(@JsonProperty("enabled") boolean enabled,
+                             @JsonProperty("runs") long runs,
+                             @JsonProperty("sequence") long sequence,
+                             @JsonProperty("startedMillis") long startedMillis,
+                             @JsonProperty("durationMillis") long durationMillis,
+                             @JsonProperty("partitions") int partitions,
+                             @JsonProperty("partitionsVerified") int partitionsVerified,
+                             @JsonProperty("accountsVerified") long accountsVerified,
+                             @JsonProperty("auditDropped") long auditDropped,
+                             @JsonProperty("checksum") String checksum,
+                             @JsonProperty("discrepancyCount") long discrepancyCount,
+                             @JsonProperty("discrepancies") List<Discrepancy> discrepancies) {
+        this.enabled = enabled;
+        this.runs = runs;
+        this.sequence = sequence;
+        this.startedMillis = startedMillis;
+        this.durationMillis = durationMillis;
+        this.partitions = partitions;
+        this.partitionsVerified = partitionsVerified;
+        this.accountsVerified = accountsVerified;
+        this.auditDropped = auditDropped;
+        this.checksum = checksum;
+        this.discrepancyCount = discrepancyCount;
+        this.discrepancies = discrepancies;
+    }
+
+    /**
+     * @return false without {@code bank.audit.path}, there is no history to reconcile with.
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * @return number of completed runs, 0 before the first one.
+     */
+    public long getRuns() {
+        return runs;
+    }
+
+    /**
+     * @return last commit sequence when the run started, accounts committed while it ran are verified as of the
+     * commit they were read at.
+     */
+    public long getSequence() {
+        return sequence;
+    }
+
+    public long getStartedMillis() {
+        return startedMillis;
+    }
+
+    public long getDurationMillis() {
+        return durationMillis;
+    }
+
+    public int getPartitions() {
+        return partitions;
+    }
+
+    /**
+     * @return partitions verified by the run, the others did not change since they were verified.
+     */
+    public int getPartitionsVerified() {
+        return partitionsVerified;
+    }
+
+    public long getAccountsVerified() {
+        return accountsVerified;
+    }
+
+    /**
+     * @return audit records dropped because the queue was full, their accounts cannot match their history.
+     */
+    public long getAuditDropped() {
+        return auditDropped;
+    }
+
+    /**
+     * @return root of the hash tree over the checksums of all partitions, unchanged while no balance changed.
+     */
+    public String getChecksum() {
+        return checksum;
+    }
+
+    public long getDiscrepancyCount() {
+        return discrepancyCount;
+    }
+
+    public List<Discrepancy> getDiscrepancies() {
+        return discrepancies;
+    }
+
+    /**
+     * Account whose committed balance differs from the balance its recorded history adds up to.
+     */
+    public static class Discrepancy {
+
+        private long accountNumber;
+        private BigDecimal balance;
+        private BigDecimal recordedBalance;
+
+        /**
+         * @param balance         committed balance, null if the account does not exist.
+         * @param recordedBalance balance of the history, null if nothing was recorded for the account.
+         */
+        @JsonCreator
+        public Discrepancy(@JsonProperty("accountNumber") long accountNumber,
+                           @JsonProperty("balance") BigDecimal balance,
+                           @JsonProperty("recordedBalance") BigDecimal recordedBalance) {
+            this.accountNumber = accountNumber;
+            this.balance = balance;
+            this.recordedBalance = recordedBalance;
+        }
+
+        public long getAccountNumber() {
+            return accountNumber;
+        }
+
+        public BigDecimal getBalance() {
+            return balance;
+        }
+
+        public BigDecimal getRecordedBalance() {
+            return recordedBalance;
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package com.bank.rest.dto;
+
+import org.codehaus.jackson.annotate.JsonCreator;
+import org.codehaus.jackson.annotate.JsonProperty;
+
+import java.math.BigDecimal;
+
+public class ScheduleTransferDto {
+
+    private Long accountNumberFrom;
+    private Long accountNumberTo;
+    private BigDecimal amount;
+    private Long executeAt;
+    private long intervalMillis;
+
+    /**
+     * @param executeAt      epoch millis of the first execution, now if null.
+     * @param intervalMillis period of a recurring transfer, 0 for a single execution.
+     */
+    @JsonCreator
+    public ScheduleTransferDto(@JsonProperty("accountNumberFrom") Long accountNumberFrom,
+                               @JsonProperty("accountNumberTo") Long accountNumberTo,
+                               @JsonProperty("amount") BigDecimal amount,
+                               @JsonProperty("executeAt") Long executeAt,
+                               @JsonProperty("intervalMillis") long intervalMillis) {
+        this.accountNumberFrom = accountNumberFrom;
+        this.accountNumberTo = accountNumberTo;
+        this.amount = amount;
+        this.executeAt = executeAt;
+        this.intervalMillis = intervalMillis;
+    }
+
+    public Long getAccountNumberFrom() {
+        return accountNumberFrom;
+    }
+
+    public Long getAccountNumberTo() {
+        return accountNumberTo;
+    }
+
+    public BigDecimal getAmount() {
+        return amount;
+    }
+
+    public Long getExecuteAt() {
+        return executeAt;
+    }
+
+    public long getIntervalMillis() {
+        return intervalMillis;
+    }
+}
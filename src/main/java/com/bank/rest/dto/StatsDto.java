@@ -0,0 +1,85 @@
+package com.bank.rest.dto;
+
+import org.codehaus.jackson.annotate.JsonCreator;
+import org.codehaus.jackson.annotate.JsonProperty;
+import org.codehaus.jackson.map.annotate.JsonSerialize;
+
+import java.math.BigDecimal;
+import java.util.Map;
+
+@JsonSerialize(include = JsonSerialize.Inclusion.NON_NULL)
+public class StatsDto {
+
+    private BigDecimal totalDeposits;
+    private Map<String, BigDecimal> currencyDeposits;
+    private long activeAccounts;
+    private long disabledAccounts;
+    private BigDecimal dailyVolume;
+    private long dailyOperations;
+    private Integer windowMinutes;
+    private BigDecimal windowVolume;
+    private Long windowOperations;
+
+    @JsonCreator
+    public StatsDto(@JsonProperty("totalDeposits") BigDecimal totalDeposits,
+                    @JsonProperty("currencyDeposits") Map<String, BigDecimal> currencyDeposits,
+                    @JsonProperty("activeAccounts") long activeAccounts,
+                    @JsonProperty("disabledAccounts") long disabledAccounts,
+                    @JsonProperty("dailyVolume") BigDecimal dailyVolume,
+                    @JsonProperty("dailyOperations") long dailyOperations,
+                    @JsonProperty("windowMinutes") Integer windowMinutes,
+                    @JsonProperty("windowVolume") BigDecimal windowVolume,
+                    @JsonProperty("windowOperations") Long windowOperations) {
+        this.totalDeposits = totalDeposits;
+        this.currencyDeposits = currencyDeposits;
+        this.activeAccounts = activeAccounts;
+        this.disabledAccounts = disabledAccounts;
+        this.dailyVolume = dailyVolume;
+        this.dailyOperations = dailyOperations;
+        this.windowMinutes = windowMinutes;
+        this.windowVolume = windowVolume;
+        this.windowOperations = windowOperations;
+    }
+
+    /**
+     * @return deposits on accounts without a currency, in the base currency.
+     */
+    public BigDecimal getTotalDeposits() {
+        return totalDeposits;
+    }
+
+    /**
+     * @return deposits on accounts with a currency by its code, null if there are none.
+     */
+    public Map<String, BigDecimal> getCurrencyDeposits() {
+        return currencyDeposits;
+    }
+
+    public long getActiveAccounts() {
+        return activeAccounts;
+    }
+
+    public long getDisabledAccounts() {
+        return disabledAccounts;
+    }
+
+    public BigDecimal getDailyVolume() {
+        return dailyVolume;
+    }
+
+    public long getDailyOperations() {
+        return dailyOperations;
+    }
+
+    public Integer getWindowMinutes() {
+        return windowMinutes;
+    }
+
+    public BigDecimal getWindowVolume() {
+        return windowVolume;
+    }
+
+    public Long getWindowOperations() {
+        return windowOperations;
+    }
+}
@@ -0,0 +1,83 @@
+package com.bank.rest.dto;
+
+import org.codehaus.jackson.annotate.JsonCreator;
+import org.codehaus.jackson.annotate.JsonProperty;
+
+public class StoreStatsDto {
+
+    private long capacity;
+    private long accounts;
+    private int cacheCapacity;
+    private int cached;
+    private long hits;
+    private long misses;
+    private long evictions;
+    private long rejections;
+    private double hitRate;
+
+    @JsonCreator
+    public StoreStatsDto(@JsonProperty("capacity") long capacity,
+                         @JsonProperty("accounts") long accounts,
+                         @JsonProperty("cacheCapacity") int cacheCapacity,
+                         @JsonProperty("cached") int cached,
+                         @JsonProperty("hits") long hits,
+                         @JsonProperty("misses") long misses,
+                         @JsonProperty("evictions") long evictions,
+                         @JsonProperty("rejections") long rejections,
+                         @JsonProperty("hitRate") double hitRate) {
+        this.capacity = capacity;
+        this.accounts = accounts;
+        this.cacheCapacity = cacheCapacity;
+        this.cached = cached;
+        this.hits = hits;
+        this.misses = misses;
+        this.evictions = evictions;
+        this.rejections = rejections;
+        this.hitRate = hitRate;
+    }
+
+    /**
+     * @return maximal number of stored accounts, 0 when all accounts are kept on heap.
+     */
+    public long getCapacity() {
+        return capacity;
+    }
+
+    public long getAccounts() {
+        return accounts;
+    }
+
+    public int getCacheCapacity() {
+        return cacheCapacity;
+    }
+
+    public int getCached() {
+        return cached;
+    }
+
+    public long getHits() {
+        return hits;
+    }
+
+    public long getMisses() {
+        return misses;
+    }
+
+    public long getEvictions() {
+        return evictions;
+    }
+
+    /**
+     * @return loaded accounts not cached because they were used less than the eviction candidate.
+     */
+    public long getRejections() {
+        return rejections;
+    }
+
+    /**
+     * @return hits per lookup, 0 before the first lookup.
+     */
+    public double getHitRate() {
+        return hitRate;
+    }
+}
@@ -1,16 +1,44 @@
 package com.bank.rest.exception;
 
+/**
+ * Business rejection of an operation.
+ * Does not capture a stack trace and builds its message only when it is requested,
+ * so rejecting an operation costs little more than allocating this object.
+ */
 public class ApiException extends RuntimeException {
 
+    private final ErrorCode code;
+    private final Long accountNumber;
     private String message;
 
+    public ApiException(ErrorCode code) {
+        this(code, null);
+    }
+
+    public ApiException(ErrorCode code, Long accountNumber) {
+        super(null, null, false, false);
+        this.code = code;
+        this.accountNumber = accountNumber;
+    }
+
     public ApiException(String message) {
-        super(message);
+        this(ErrorCode.INTERNAL_ERROR);
         this.message = message;
     }
 
+    public ErrorCode getCode() {
+        return code;
+    }
+
+    public Long getAccountNumber() {
+        return accountNumber;
+    }
+
     @Override
     public String getMessage() {
+        if (message == null) {
+            message = accountNumber == null ? code.getText() : code.getText() + accountNumber;
+        }
         return message;
     }
 }
@@ -4,11 +4,49 @@ import javax.ws.rs.WebApplicationException;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
 
+/**
+ * Web representation of a failed call: the status of the error code and a compact JSON body
+ * {@code {"code":"...","message":"..."}}.
+ */
 public class ApiWebException extends WebApplicationException {
 
     public ApiWebException(String message) {
-        super(Response.status(Response.Status.INTERNAL_SERVER_ERROR)
-                .entity(message).type(MediaType.TEXT_PLAIN).build());
+        this(ErrorCode.INTERNAL_ERROR, message);
+    }
+
+    public ApiWebException(Exception ex) {
+        this(ex instanceof ApiException ? ((ApiException) ex).getCode() : ErrorCode.INTERNAL_ERROR, ex.getMessage());
+    }
+
+    public ApiWebException(ErrorCode code, String message) {
+        super(Response.status(code.getStatus())
+                .entity(toJson(code, message)).type(MediaType.APPLICATION_JSON_TYPE).build());
+    }
+
+    @Override
+    public synchronized Throwable fillInStackTrace() {
+        return this;
+    }
+
+    static String toJson(ErrorCode code, String message) {
+        StringBuilder json = new StringBuilder(32 + (message == null ? 4 : message.length()))
+                .append("{\"code\":\"").append(code.name()).append("\",\"message\":");
+        if (message == null) {
+            return json.append("null}").toString();
+        }
+
+        json.append('"');
+        for (int i = 0; i < message.length(); i++) {
+            char c = message.charAt(i);
+            if (c == '"' || c == '\\') {
+                json.append('\\').append(c);
+            } else if (c < 0x20) {
+                json.append(String.format("\\u%04x", (int) c));
+            } else {
+                json.append(c);
+            }
+        }
+        return json.append("\"}").toString();
     }
 
 }
@@ -0,0 +1,58 @@
+package com.bank.rest.exception;
+
+/**
+ * Typed codes for rejected operations together with the HTTP status they are reported with.
+ * Messages that refer to an account end with its number, which is appended lazily by {@link ApiException}.
+ */
+public enum ErrorCode {
+
+    NULL_OWNER(400, "Cannot create account for null owner"),
+    NULL_ACCOUNT_NUMBER(400, "Null account number is not supported fot this operation"),
+    NEGATIVE_BALANCE(400, "Balance cannot be negative"),
+    NON_POSITIVE_WRITE_OFF(400, "Write off amount cannot be zero or negative. Account "),
+    NON_POSITIVE_TOP_UP(400, "Top up amount cannot be zero or negative. Account "),
+    MALFORMED_REQUEST(400, "Malformed request"),
+    NEGATIVE_INTERVAL(400, "Interval of a recurring transfer cannot be negative"),
+    NON_POSITIVE_HOLD_TIMEOUT(400, "Timeout of a hold must be positive"),
+    CAPTURE_EXCEEDS_HOLD(400, "Capture amount must be positive and not exceed the amount of hold "),
+    UNKNOWN_CURRENCY(400, "Unknown ISO 4217 currency code"),
+    NON_POSITIVE_FX_RATE(400, "Exchange rates must be positive"),
+    ACCOUNT_NOT_FOUND(404, "No account found with number "),
+    UPDATE_NOT_FOUND(404, "Cannot update non existing account "),
+    SCHEDULE_NOT_FOUND(404, "No scheduled transfer with id "),
+    SUBSCRIPTION_NOT_FOUND(404, "No subscription with id "),
+    BULK_NOT_FOUND(404, "No bulk operation with id "),
+    HOLD_NOT_FOUND(404, "No active hold with id "),
+    ACCOUNT_EXISTS(409, "Account already exists with number "),
+    WRITE_OFF_DISABLED(409, "Could not execute write off from disabled account "),
+    TOP_UP_DISABLED(409, "Could not execute top up on disabled account "),
+    ALREADY_DISABLED(409, "Cannot disable disabled account "),
+    INSUFFICIENT_FUNDS(409, "Not sufficient funds for write off on account "),
+    BALANCE_BELOW_HELD(409, "Balance cannot be less than the amount held on account "),
+    BULK_CONFLICT(409, "Bulk operation started with other type or amount, id "),
+    IDEMPOTENCY_KEY_IN_USE(409, "Request with the same idempotency key is still in progress"),
+    NO_EXCHANGE_RATE(409, "No exchange rate for the currency of account "),
+    NOT_ENCODABLE(409, "Binary protocol cannot encode account "),
+    ACCOUNT_OVERLOADED(429, "Too many requests waiting for account "),
+    RATE_LIMITED(429, "Request rate exceeded for account "),
+    SERVER_OVERLOADED(429, "Too many requests in progress"),
+    LOCK_TIMEOUT(429, "Timed out waiting for the lock of account "),
+    INTERNAL_ERROR(500, ""),
+    STORE_FULL(507, "Account store is full");
+
+    private final int status;
+    private final String text;
+
+    ErrorCode(int status, String text) {
+        this.status = status;
+        this.text = text;
+    }
+
+    public int getStatus() {
+        return status;
+    }
+
+    public String getText() {
+        return text;
+    }
+}
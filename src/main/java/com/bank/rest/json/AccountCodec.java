@@ -0,0 +1,76 @@
+package com.bank.rest.json;
+
+import com.bank.rest.model.Account;
+
+import java.math.BigDecimal;
+
+/**
+ * Maps {@link Account} in the field order Jackson uses for it.
+ * The {@code lock} field ignored by Jackson is skipped together with any other unknown field,
+ * {@code held} and {@code currency} are written last and only when they are set, as Jackson does.
+ * {@code held} is only changed by holds, so it is skipped on read like Jackson does.
+ */
+public class AccountCodec implements JsonCodec<Account> {
+
+    public static final AccountCodec INSTANCE = new AccountCodec();
+
+    private static final byte[] NUMBER = JsonWriter.name("number");
+    private static final byte[] OWNER = JsonWriter.name("owner");
+    private static final byte[] BALANCE = JsonWriter.name("balance");
+    private static final byte[] DISABLED = JsonWriter.name("disabled");
+    private static final byte[] HELD = JsonWriter.name("held");
+    private static final byte[] CURRENCY = JsonWriter.name("currency");
+
+    @Override
+    public void write(Account account, JsonWriter writer) {
+        writer.beginObject()
+                .field(NUMBER).value(account.getNumber()).comma()
+                .field(OWNER).value(account.getOwner()).comma()
+                .field(BALANCE).value(account.getBalance()).comma()
+                .field(DISABLED).value(account.isDisabled());
+        if (account.packedHeld() != 0) {
+            writer.comma().field(HELD).value(account.getHeld());
+        }
+        if (account.getCurrency() != null) {
+            writer.comma().field(CURRENCY).value(account.getCurrency());
+        }
+        writer.endObject();
+    }
+
+    @Override
+    public Account read(JsonReader reader) {
+        Long number = null;
+        String owner = null;
+        BigDecimal balance = null;
+        boolean disabled = false;
+        String currency = null;
+
+        reader.beginObject();
+        for (boolean first = true; reader.hasNext('}', first); first = false) {
+            switch (reader.nextField(NUMBER, OWNER, BALANCE, DISABLED, CURRENCY)) {
+                case 0:
+                    number = reader.nextLong();
+                    break;
+                case 1:
+                    owner = reader.nextString();
+                    break;
+                case 2:
+                    balance = reader.nextDecimal();
+                    break;
+                case 3:
+                    disabled = !reader.nextNull() && reader.nextBoolean();
+                    break;
+                case 4:
+                    currency = reader.nextString();
+                    break;
+                default:
+                    reader.skipValue();
+            }
+        }
+
+        Account account = new Account(number, owner, balance, disabled);
+        account.setCurrency(currency);
+        return account;
+    }
+
+}
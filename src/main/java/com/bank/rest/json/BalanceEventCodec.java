@@ -0,0 +1,59 @@
+package com.bank.rest.json;
+
+import com.bank.rest.dto.BalanceEventDto;
+
+import java.math.BigDecimal;
+
+/**
+ * Maps {@link BalanceEventDto}.
+ */
+public class BalanceEventCodec implements JsonCodec<BalanceEventDto> {
+
+    public static final BalanceEventCodec INSTANCE = new BalanceEventCodec();
+
+    private static final byte[] SEQUENCE = JsonWriter.name("sequence");
+    private static final byte[] ACCOUNT_NUMBER = JsonWriter.name("accountNumber");
+    private static final byte[] BALANCE = JsonWriter.name("balance");
+    private static final byte[] DISABLED = JsonWriter.name("disabled");
+
+    @Override
+    public void write(BalanceEventDto event, JsonWriter writer) {
+        writer.beginObject()
+                .field(SEQUENCE).value(event.getSequence()).comma()
+                .field(ACCOUNT_NUMBER).value(event.getAccountNumber()).comma()
+                .field(BALANCE).value(event.getBalance()).comma()
+                .field(DISABLED).value(event.isDisabled())
+                .endObject();
+    }
+
+    @Override
+    public BalanceEventDto read(JsonReader reader) {
+        Long sequence = null;
+        Long accountNumber = null;
+        BigDecimal balance = null;
+        boolean disabled = false;
+
+        reader.beginObject();
+        for (boolean first = true; reader.hasNext('}', first); first = false) {
+            switch (reader.nextField(SEQUENCE, ACCOUNT_NUMBER, BALANCE, DISABLED)) {
+                case 0:
+                    sequence = reader.nextLong();
+                    break;
+                case 1:
+                    accountNumber = reader.nextLong();
+                    break;
+                case 2:
+                    balance = reader.nextDecimal();
+                    break;
+                case 3:
+                    disabled = !reader.nextNull() && reader.nextBoolean();
+                    break;
+                default:
+                    reader.skipValue();
+            }
+        }
+
+        return new BalanceEventDto(sequence == null ? 0 : sequence, accountNumber, balance, disabled);
+    }
+
+}
@@ -0,0 +1,14 @@
+package com.bank.rest.json;
+
+/**
+ * Reflection free JSON mapping of one type.
+ *
+ * @param <T> mapped type.
+ */
+public interface JsonCodec<T> {
+
+    void write(T value, JsonWriter writer);
+
+    T read(JsonReader reader);
+
+}
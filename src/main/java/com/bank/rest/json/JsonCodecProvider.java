@@ -0,0 +1,135 @@
+package com.bank.rest.json;
+
+import com.bank.rest.dto.BalanceEventDto;
+import com.bank.rest.dto.TopUpDto;
+import com.bank.rest.dto.TransferMoneyDto;
+import com.bank.rest.exception.ApiException;
+import com.bank.rest.exception.ApiWebException;
+import com.bank.rest.model.Account;
+import com.bank.rest.trace.RequestTrace;
+
+import javax.ws.rs.Consumes;
+import javax.ws.rs.Produces;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.MultivaluedMap;
+import javax.ws.rs.ext.MessageBodyReader;
+import javax.ws.rs.ext.MessageBodyWriter;
+import javax.ws.rs.ext.Provider;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Jersey entity provider backed by the hand written codecs, it takes precedence over the
+ * reflective Jackson mapping for {@link Account}, collections of accounts and the DTOs.
+ */
+@Provider
+@Produces(MediaType.APPLICATION_JSON)
+@Consumes(MediaType.APPLICATION_JSON)
+public class JsonCodecProvider implements MessageBodyReader<Object>, MessageBodyWriter<Object> {
+
+    private static final Map<Class<?>, JsonCodec<?>> CODECS = new HashMap<>();
+
+    static {
+        CODECS.put(Account.class, AccountCodec.INSTANCE);
+        CODECS.put(BalanceEventDto.class, BalanceEventCodec.INSTANCE);
+        CODECS.put(TopUpDto.class, TopUpDtoCodec.INSTANCE);
+        CODECS.put(TransferMoneyDto.class, TransferMoneyDtoCodec.INSTANCE);
+    }
+
+    /**
+     * @return codec for the type or null if it is not mapped by hand.
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> JsonCodec<T> codecFor(Class<T> type) {
+        return (JsonCodec<T>) CODECS.get(type);
+    }
+
+    @Override
+    public boolean isReadable(Class<?> type, Type genericType, Annotation[] annotations, MediaType mediaType) {
+        return CODECS.containsKey(type)
+                || type.isAssignableFrom(ArrayList.class) && elementCodec(type, genericType) != null;
+    }
+
+    @Override
+    public Object readFrom(Class<Object> type, Type genericType, Annotation[] annotations, MediaType mediaType,
+                           MultivaluedMap<String, String> httpHeaders, InputStream entityStream) throws IOException {
+        long start = System.nanoTime();
+        JsonReader reader = JsonReader.acquire(entityStream);
+        try {
+            Object value;
+            JsonCodec<?> codec = CODECS.get(type);
+            if (codec != null) {
+                value = codec.read(reader);
+            } else {
+                codec = elementCodec(type, genericType);
+                List<Object> values = new ArrayList<>();
+                reader.beginArray();
+                for (boolean first = true; reader.hasNext(']', first); first = false) {
+                    values.add(codec.read(reader));
+                }
+                value = values;
+            }
+            reader.end();
+            return value;
+        } catch (ApiException ex) {
+            throw new ApiWebException(ex);
+        } finally {
+            RequestTrace.addDeserialize(System.nanoTime() - start);
+        }
+    }
+
+    @Override
+    public boolean isWriteable(Class<?> type, Type genericType, Annotation[] annotations, MediaType mediaType) {
+        return CODECS.containsKey(type) || elementCodec(type, genericType) != null;
+    }
+
+    @Override
+    public long getSize(Object value, Class<?> type, Type genericType, Annotation[] annotations, MediaType mediaType) {
+        return -1;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public void writeTo(Object value, Class<?> type, Type genericType, Annotation[] annotations, MediaType mediaType,
+                        MultivaluedMap<String, Object> httpHeaders, OutputStream entityStream) throws IOException {
+        JsonWriter writer = JsonWriter.acquire(entityStream);
+        JsonCodec<Object> codec = (JsonCodec<Object>) CODECS.get(type);
+        if (codec != null) {
+            codec.write(value, writer);
+        } else {
+            codec = (JsonCodec<Object>) elementCodec(type, genericType);
+            writer.beginArray();
+            boolean first = true;
+            for (Object element : (Collection<Object>) value) {
+                if (!first) {
+                    writer.comma();
+                }
+                codec.write(element, writer);
+                first = false;
+            }
+            writer.endArray();
+        }
+        writer.flush();
+    }
+
+    private static JsonCodec<?> elementCodec(Class<?> type, Type genericType) {
+        if (!Collection.class.isAssignableFrom(type) || !(genericType instanceof ParameterizedType)) {
+            return null;
+        }
+        Type[] arguments = ((ParameterizedType) genericType).getActualTypeArguments();
+        if (arguments.length != 1 || !(arguments[0] instanceof Class)) {
+            return null;
+        }
+        return CODECS.get(arguments[0]);
+    }
+
+}
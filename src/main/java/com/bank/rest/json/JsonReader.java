@@ -0,0 +1,412 @@
+package com.bank.rest.json;
+
+import com.bank.rest.exception.ApiException;
+import com.bank.rest.exception.ErrorCode;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Pull parser over a reusable byte buffer holding one UTF-8 JSON document.
+ * Field names are matched against pre-encoded names without creating strings and numbers are
+ * accumulated digit by digit, falling back to {@link BigDecimal#BigDecimal(String)} only when they
+ * do not fit a {@code long}. Like Jackson, numbers and booleans are also accepted in quotes.
+ * Malformed input is rejected with {@link ErrorCode#MALFORMED_REQUEST}.
+ */
+public final class JsonReader {
+
+    private static final int MAX_RETAINED_CAPACITY = 64 * 1024;
+    private static final ThreadLocal<JsonReader> CACHED = ThreadLocal.withInitial(JsonReader::new);
+
+    private byte[] buffer = new byte[512];
+    private int limit;
+    private int position;
+
+    /**
+     * @return reader of the calling thread loaded with the whole stream.
+     */
+    public static JsonReader acquire(InputStream in) throws IOException {
+        JsonReader reader = CACHED.get();
+        if (reader.buffer.length > MAX_RETAINED_CAPACITY) {
+            reader.buffer = new byte[512];
+        }
+        int length = 0;
+        int read;
+        while ((read = in.read(reader.buffer, length, reader.buffer.length - length)) != -1) {
+            length += read;
+            if (length == reader.buffer.length) {
+                reader.buffer = Arrays.copyOf(reader.buffer, reader.buffer.length * 2);
+            }
+        }
+        reader.limit = length;
+        reader.position = 0;
+        return reader;
+    }
+
+    /**
+     * @return reader of the calling thread over a copy of the given bytes.
+     */
+    public static JsonReader acquire(byte[] bytes, int offset, int length) {
+        JsonReader reader = CACHED.get();
+        if (reader.buffer.length < length || reader.buffer.length > MAX_RETAINED_CAPACITY) {
+            reader.buffer = new byte[Math.max(512, length)];
+        }
+        System.arraycopy(bytes, offset, reader.buffer, 0, length);
+        reader.limit = length;
+        reader.position = 0;
+        return reader;
+    }
+
+    public void beginObject() {
+        expect('{');
+    }
+
+    public void beginArray() {
+        expect('[');
+    }
+
+    /**
+     * Moves past the separator to the next object field or array element.
+     *
+     * @param close closing bracket of the enclosing object or array.
+     * @return false once the closing bracket has been consumed.
+     */
+    public boolean hasNext(char close, boolean first) {
+        byte next = peek();
+        if (next == close) {
+            position++;
+            return false;
+        }
+        if (!first) {
+            expect(',');
+        }
+        return true;
+    }
+
+    /**
+     * Consumes a field name and its colon.
+     *
+     * @param encodedNames candidate names as produced by {@link JsonWriter#name(String)}.
+     * @return index of the matching name or -1 for an unknown field.
+     */
+    public int nextField(byte[]... encodedNames) {
+        skipWhitespace();
+        int start = position;
+        skipString();
+        int end = position;
+        expect(':');
+        int length = end - start;
+        for (int i = 0; i < encodedNames.length; i++) {
+            byte[] name = encodedNames[i];
+            // encoded names end with a colon which is not part of the token
+            if (name.length - 1 == length && regionEquals(name, start, length)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    public boolean nextNull() {
+        skipWhitespace();
+        if (position + 4 <= limit && buffer[position] == 'n' && buffer[position + 1] == 'u'
+                && buffer[position + 2] == 'l' && buffer[position + 3] == 'l') {
+            position += 4;
+            return true;
+        }
+        return false;
+    }
+
+    public Long nextLong() {
+        if (nextNull()) {
+            return null;
+        }
+        boolean quoted = consumeQuote();
+        boolean negative = consume('-');
+        int start = position;
+        // accumulated negatively so that Long.MIN_VALUE fits
+        long value = 0;
+        while (position < limit && isDigit(buffer[position])) {
+            int digit = buffer[position++] - '0';
+            if (value < (Long.MIN_VALUE + digit) / 10) {
+                throw malformed();
+            }
+            value = value * 10 - digit;
+        }
+        if (position == start || !negative && value == Long.MIN_VALUE) {
+            throw malformed();
+        }
+        if (quoted) {
+            expect('"');
+        }
+        return negative ? value : -value;
+    }
+
+    public BigDecimal nextDecimal() {
+        if (nextNull()) {
+            return null;
+        }
+        boolean quoted = consumeQuote();
+        int start = position;
+        boolean negative = consume('-');
+        long unscaled = 0;
+        int scale = 0;
+        int digits = 0;
+        boolean overflow = false;
+        while (position < limit && isDigit(buffer[position])) {
+            overflow |= ++digits > 18;
+            unscaled = unscaled * 10 + (buffer[position++] - '0');
+        }
+        if (digits == 0) {
+            throw malformed();
+        }
+        if (consume('.')) {
+            int fractionStart = position;
+            while (position < limit && isDigit(buffer[position])) {
+                overflow |= ++digits > 18;
+                unscaled = unscaled * 10 + (buffer[position++] - '0');
+            }
+            if (position == fractionStart) {
+                throw malformed();
+            }
+            scale = position - fractionStart;
+        }
+        if (position < limit && (buffer[position] == 'e' || buffer[position] == 'E')) {
+            position++;
+            boolean negativeExponent = consume('-');
+            if (!negativeExponent) {
+                consume('+');
+            }
+            int exponentStart = position;
+            int exponent = 0;
+            while (position < limit && isDigit(buffer[position])) {
+                exponent = exponent * 10 + (buffer[position++] - '0');
+                overflow |= exponent > 999_999;
+            }
+            if (position == exponentStart) {
+                throw malformed();
+            }
+            scale += negativeExponent ? exponent : -exponent;
+        }
+        int end = position;
+        if (quoted) {
+            expect('"');
+        }
+        if (overflow) {
+            try {
+                return new BigDecimal(new String(buffer, start, end - start, StandardCharsets.US_ASCII));
+            } catch (NumberFormatException e) {
+                throw malformed();
+            }
+        }
+        return BigDecimal.valueOf(negative ? -unscaled : unscaled, scale);
+    }
+
+    public boolean nextBoolean() {
+        boolean quoted = consumeQuote();
+        boolean value;
+        if (matches("true")) {
+            value = true;
+        } else if (matches("false")) {
+            value = false;
+        } else {
+            throw malformed();
+        }
+        if (quoted) {
+            expect('"');
+        }
+        return value;
+    }
+
+    public String nextString() {
+        if (nextNull()) {
+            return null;
+        }
+        expect('"');
+        int start = position;
+        while (position < limit && buffer[position] != '"' && buffer[position] != '\\') {
+            position++;
+        }
+        if (position < limit && buffer[position] == '"') {
+            return new String(buffer, start, position++ - start, StandardCharsets.UTF_8);
+        }
+
+        StringBuilder value = new StringBuilder(new String(buffer, start, position - start, StandardCharsets.UTF_8));
+        while (position < limit && buffer[position] != '"') {
+            if (buffer[position] != '\\') {
+                int chunk = position;
+                while (position < limit && buffer[position] != '"' && buffer[position] != '\\') {
+                    position++;
+                }
+                value.append(new String(buffer, chunk, position - chunk, StandardCharsets.UTF_8));
+                continue;
+            }
+            if (++position >= limit) {
+                throw malformed();
+            }
+            byte escaped = buffer[position++];
+            switch (escaped) {
+                case '"':
+                case '\\':
+                case '/':
+                    value.append((char) escaped);
+                    break;
+                case 'b':
+                    value.append('\b');
+                    break;
+                case 't':
+                    value.append('\t');
+                    break;
+                case 'n':
+                    value.append('\n');
+                    break;
+                case 'f':
+                    value.append('\f');
+                    break;
+                case 'r':
+                    value.append('\r');
+                    break;
+                case 'u':
+                    if (position + 4 > limit) {
+                        throw malformed();
+                    }
+                    value.append((char) Integer.parseInt(new String(buffer, position, 4, StandardCharsets.US_ASCII), 16));
+                    position += 4;
+                    break;
+                default:
+                    throw malformed();
+            }
+        }
+        expect('"');
+        return value.toString();
+    }
+
+    /**
+     * Skips over any value, including nested objects and arrays.
+     */
+    public void skipValue() {
+        byte next = peek();
+        if (next == '"') {
+            skipString();
+        } else if (next == '{' || next == '[') {
+            int depth = 0;
+            do {
+                byte b = buffer[position];
+                if (b == '"') {
+                    skipString();
+                    continue;
+                }
+                if (b == '{' || b == '[') {
+                    depth++;
+                } else if (b == '}' || b == ']') {
+                    depth--;
+                }
+                position++;
+            } while (depth > 0 && position < limit);
+            if (depth > 0) {
+                throw malformed();
+            }
+        } else {
+            int start = position;
+            while (position < limit && buffer[position] != ',' && buffer[position] != '}' && buffer[position] != ']'
+                    && !isWhitespace(buffer[position])) {
+                position++;
+            }
+            if (position == start) {
+                throw malformed();
+            }
+        }
+    }
+
+    /**
+     * Verifies that nothing but whitespace follows the document.
+     */
+    public void end() {
+        skipWhitespace();
+        if (position != limit) {
+            throw malformed();
+        }
+    }
+
+    private void skipString() {
+        expect('"');
+        while (position < limit && buffer[position] != '"') {
+            position += buffer[position] == '\\' ? 2 : 1;
+        }
+        if (position >= limit) {
+            throw malformed();
+        }
+        position++;
+    }
+
+    private boolean regionEquals(byte[] name, int start, int length) {
+        for (int i = 0; i < length; i++) {
+            if (buffer[start + i] != name[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean matches(String literal) {
+        if (position + literal.length() > limit) {
+            return false;
+        }
+        for (int i = 0; i < literal.length(); i++) {
+            if (buffer[position + i] != literal.charAt(i)) {
+                return false;
+            }
+        }
+        position += literal.length();
+        return true;
+    }
+
+    private boolean consumeQuote() {
+        skipWhitespace();
+        return consume('"');
+    }
+
+    private boolean consume(char c) {
+        if (position < limit && buffer[position] == c) {
+            position++;
+            return true;
+        }
+        return false;
+    }
+
+    private void expect(char c) {
+        if (peek() != c) {
+            throw malformed();
+        }
+        position++;
+    }
+
+    private byte peek() {
+        skipWhitespace();
+        if (position >= limit) {
+            throw malformed();
+        }
+        return buffer[position];
+    }
+
+    private void skipWhitespace() {
+        while (position < limit && isWhitespace(buffer[position])) {
+            position++;
+        }
+    }
+
+    private static boolean isWhitespace(byte b) {
+        return b == ' ' || b == '\n' || b == '\r' || b == '\t';
+    }
+
+    private static boolean isDigit(byte b) {
+        return b >= '0' && b <= '9';
+    }
+
+    private static ApiException malformed() {
+        return new ApiException(ErrorCode.MALFORMED_REQUEST);
+    }
+
+}
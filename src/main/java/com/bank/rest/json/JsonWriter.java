@@ -0,0 +1,230 @@
+package com.bank.rest.json;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.util.Arrays;
+
+/**
+ * Streaming UTF-8 JSON writer over a reusable byte buffer.
+ * Produces the same bytes as Jackson's default generator: no whitespace, {@code BigDecimal} written with
+ * {@link BigDecimal#toString()}, short escapes for the usual control characters and six character unicode escapes for the other
+ * control characters and for surrogates.
+ * When bound to a stream the buffer is drained whenever it fills up, otherwise it grows.
+ */
+public final class JsonWriter {
+
+    private static final int FLUSH_THRESHOLD = 8 * 1024;
+    private static final int MAX_RETAINED_CAPACITY = 64 * 1024;
+    private static final byte[] HEX = "0123456789ABCDEF".getBytes();
+    private static final byte[] NULL = "null".getBytes();
+    private static final byte[] TRUE = "true".getBytes();
+    private static final byte[] FALSE = "false".getBytes();
+    private static final byte[] MIN_LONG = Long.toString(Long.MIN_VALUE).getBytes();
+
+    private static final ThreadLocal<JsonWriter> CACHED = ThreadLocal.withInitial(JsonWriter::new);
+
+    private byte[] buffer = new byte[512];
+    private int position;
+    private OutputStream out;
+
+    /**
+     * @return writer of the calling thread, emptied and bound to the stream or to its own buffer if {@code out} is null.
+     */
+    public static JsonWriter acquire(OutputStream out) {
+        JsonWriter writer = CACHED.get();
+        writer.position = 0;
+        writer.out = out;
+        if (writer.buffer.length > MAX_RETAINED_CAPACITY) {
+            writer.buffer = new byte[512];
+        }
+        return writer;
+    }
+
+    public JsonWriter beginObject() {
+        return raw((byte) '{');
+    }
+
+    public JsonWriter endObject() {
+        return raw((byte) '}');
+    }
+
+    public JsonWriter beginArray() {
+        return raw((byte) '[');
+    }
+
+    public JsonWriter endArray() {
+        return raw((byte) ']');
+    }
+
+    public JsonWriter comma() {
+        return raw((byte) ',');
+    }
+
+    /**
+     * Writes a pre-encoded field name, including its quotes and the colon, see {@link #name(String)}.
+     */
+    public JsonWriter field(byte[] encodedName) {
+        ensure(encodedName.length);
+        System.arraycopy(encodedName, 0, buffer, position, encodedName.length);
+        position += encodedName.length;
+        return this;
+    }
+
+    public JsonWriter value(Long value) {
+        return value == null ? field(NULL) : value(value.longValue());
+    }
+
+    public JsonWriter value(long value) {
+        if (value == Long.MIN_VALUE) {
+            return field(MIN_LONG);
+        }
+        ensure(20);
+        if (value < 0) {
+            buffer[position++] = '-';
+            value = -value;
+        }
+        int start = position;
+        do {
+            buffer[position++] = (byte) ('0' + value % 10);
+            value /= 10;
+        } while (value != 0);
+        for (int i = start, j = position - 1; i < j; i++, j--) {
+            byte digit = buffer[i];
+            buffer[i] = buffer[j];
+            buffer[j] = digit;
+        }
+        return this;
+    }
+
+    public JsonWriter value(boolean value) {
+        return field(value ? TRUE : FALSE);
+    }
+
+    public JsonWriter value(BigDecimal value) {
+        if (value == null) {
+            return field(NULL);
+        }
+        String digits = value.toString();
+        ensure(digits.length());
+        for (int i = 0; i < digits.length(); i++) {
+            buffer[position++] = (byte) digits.charAt(i);
+        }
+        return this;
+    }
+
+    public JsonWriter value(String value) {
+        if (value == null) {
+            return field(NULL);
+        }
+        ensure(value.length() * 6 + 2);
+        buffer[position++] = '"';
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                if (c >= 0x20 && c != '"' && c != '\\') {
+                    buffer[position++] = (byte) c;
+                } else {
+                    escape(c);
+                }
+            } else if (c < 0x800) {
+                buffer[position++] = (byte) (0xC0 | (c >> 6));
+                buffer[position++] = (byte) (0x80 | (c & 0x3F));
+            } else if (Character.isSurrogate(c)) {
+                // Jackson's UTF-8 generator escapes both halves of a surrogate pair
+                buffer[position++] = '\\';
+                buffer[position++] = 'u';
+                buffer[position++] = HEX[c >> 12];
+                buffer[position++] = HEX[(c >> 8) & 0xF];
+                buffer[position++] = HEX[(c >> 4) & 0xF];
+                buffer[position++] = HEX[c & 0xF];
+            } else {
+                buffer[position++] = (byte) (0xE0 | (c >> 12));
+                buffer[position++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                buffer[position++] = (byte) (0x80 | (c & 0x3F));
+            }
+        }
+        buffer[position++] = '"';
+        return this;
+    }
+
+    /**
+     * Writes what is still buffered to the bound stream.
+     */
+    public void flush() throws IOException {
+        if (out != null && position > 0) {
+            out.write(buffer, 0, position);
+            position = 0;
+        }
+    }
+
+    /**
+     * @return copy of the written bytes when the writer is not bound to a stream.
+     */
+    public byte[] toByteArray() {
+        return Arrays.copyOf(buffer, position);
+    }
+
+    /**
+     * Encodes a field name once so it can be written with {@link #field(byte[])}.
+     */
+    public static byte[] name(String name) {
+        return ("\"" + name + "\":").getBytes();
+    }
+
+    private void escape(char c) {
+        buffer[position++] = '\\';
+        switch (c) {
+            case '"':
+            case '\\':
+                buffer[position++] = (byte) c;
+                break;
+            case '\b':
+                buffer[position++] = 'b';
+                break;
+            case '\t':
+                buffer[position++] = 't';
+                break;
+            case '\n':
+                buffer[position++] = 'n';
+                break;
+            case '\f':
+                buffer[position++] = 'f';
+                break;
+            case '\r':
+                buffer[position++] = 'r';
+                break;
+            default:
+                buffer[position++] = 'u';
+                buffer[position++] = '0';
+                buffer[position++] = '0';
+                buffer[position++] = HEX[c >> 4];
+                buffer[position++] = HEX[c & 0xF];
+        }
+    }
+
+    private JsonWriter raw(byte b) {
+        ensure(1);
+        buffer[position++] = b;
+        return this;
+    }
+
+    private void ensure(int length) {
+        if (position + length <= buffer.length) {
+            return;
+        }
+        if (out != null && position >= FLUSH_THRESHOLD) {
+            try {
+                flush();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            if (length <= buffer.length) {
+                return;
+            }
+        }
+        buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, position + length));
+    }
+
+}
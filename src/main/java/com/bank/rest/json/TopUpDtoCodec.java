@@ -0,0 +1,47 @@
+package com.bank.rest.json;
+
+import com.bank.rest.dto.TopUpDto;
+
+import java.math.BigDecimal;
+
+/**
+ * Maps {@link TopUpDto}.
+ */
+public class TopUpDtoCodec implements JsonCodec<TopUpDto> {
+
+    public static final TopUpDtoCodec INSTANCE = new TopUpDtoCodec();
+
+    private static final byte[] ACCOUNT_NUMBER = JsonWriter.name("accountNumber");
+    private static final byte[] AMOUNT = JsonWriter.name("amount");
+
+    @Override
+    public void write(TopUpDto dto, JsonWriter writer) {
+        writer.beginObject()
+                .field(ACCOUNT_NUMBER).value(dto.getAccountNumber()).comma()
+                .field(AMOUNT).value(dto.getAmount())
+                .endObject();
+    }
+
+    @Override
+    public TopUpDto read(JsonReader reader) {
+        Long accountNumber = null;
+        BigDecimal amount = null;
+
+        reader.beginObject();
+        for (boolean first = true; reader.hasNext('}', first); first = false) {
+            switch (reader.nextField(ACCOUNT_NUMBER, AMOUNT)) {
+                case 0:
+                    accountNumber = reader.nextLong();
+                    break;
+                case 1:
+                    amount = reader.nextDecimal();
+                    break;
+                default:
+                    reader.skipValue();
+            }
+        }
+
+        return new TopUpDto(accountNumber, amount);
+    }
+
+}
@@ -0,0 +1,53 @@
+package com.bank.rest.json;
+
+import com.bank.rest.dto.TransferMoneyDto;
+
+import java.math.BigDecimal;
+
+/**
+ * Maps {@link TransferMoneyDto}.
+ */
+public class TransferMoneyDtoCodec implements JsonCodec<TransferMoneyDto> {
+
+    public static final TransferMoneyDtoCodec INSTANCE = new TransferMoneyDtoCodec();
+
+    private static final byte[] ACCOUNT_NUMBER_FROM = JsonWriter.name("accountNumberFrom");
+    private static final byte[] ACCOUNT_NUMBER_TO = JsonWriter.name("accountNumberTo");
+    private static final byte[] AMOUNT = JsonWriter.name("amount");
+
+    @Override
+    public void write(TransferMoneyDto dto, JsonWriter writer) {
+        writer.beginObject()
+                .field(ACCOUNT_NUMBER_FROM).value(dto.getAccountNumberFrom()).comma()
+                .field(ACCOUNT_NUMBER_TO).value(dto.getAccountNumberTo()).comma()
+                .field(AMOUNT).value(dto.getAmount())
+                .endObject();
+    }
+
+    @Override
+    public TransferMoneyDto read(JsonReader reader) {
+        Long accountNumberFrom = null;
+        Long accountNumberTo = null;
+        BigDecimal amount = null;
+
+        reader.beginObject();
+        for (boolean first = true; reader.hasNext('}', first); first = false) {
+            switch (reader.nextField(ACCOUNT_NUMBER_FROM, ACCOUNT_NUMBER_TO, AMOUNT)) {
+                case 0:
+                    accountNumberFrom = reader.nextLong();
+                    break;
+                case 1:
+                    accountNumberTo = reader.nextLong();
+                    break;
+                case 2:
+                    amount = reader.nextDecimal();
+                    break;
+                default:
+                    reader.skipValue();
+            }
+        }
+
+        return new TransferMoneyDto(accountNumberFrom, accountNumberTo, amount);
+    }
+
+}
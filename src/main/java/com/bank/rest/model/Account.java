@@ -1,97 +1,222 @@
 package com.bank.rest.model;
 
 import com.bank.rest.exception.ApiException;
+import com.bank.rest.exception.ErrorCode;
 import org.codehaus.jackson.annotate.JsonCreator;
-import org.codehaus.jackson.annotate.JsonIgnoreProperties;
+import org.codehaus.jackson.annotate.JsonIgnore;
 import org.codehaus.jackson.annotate.JsonProperty;
+import org.codehaus.jackson.map.annotate.JsonSerialize;
 
 import java.math.BigDecimal;
 
-@JsonIgnoreProperties({"lock"})
+/**
+ * Bank account kept compact in memory: the number and balance are primitive, see {@link PackedDecimal},
+ * and the owner is an id in the {@link OwnerPool}, or the name itself once the pool is full.
+ * The balance is the ledger balance, the part of it reserved by authorization holds is held and cannot be written off.
+ * Amounts are in the currency of the account, which does not change once the account exists.
+ */
 public class Account {
 
-    private final Object lock = new Object();
+    private static final OwnerPool OWNERS = OwnerPool.getSingleInstance();
+    private static final long NO_NUMBER = Long.MIN_VALUE;
 
-    private Long number;
-    private String owner;
-    private BigDecimal balance;
-    private boolean disabled;
+    private long number;
+    // written under the lock of the account number, read without it
+    private volatile int ownerId;
+    // name of an owner that got no id, written before the id
+    private volatile String unpooledOwner;
+    private volatile long balance;
+    // balance that does not fit into a long, written before the WIDE marker
+    private volatile BigDecimal wideBalance;
+    private volatile boolean disabled;
+    // sum of the active holds, packed like the balance, written under the lock of the account number
+    private volatile long held;
+    private volatile BigDecimal wideHeld;
+    // ISO 4217 code, null for the base currency
+    private String currency;
+    // sequence of the last commit by a repository keeping the account in memory, 0 before the first one
+    private long committedSequence;
 
     @JsonCreator
     public Account(@JsonProperty("number") Long number, @JsonProperty("owner") String owner,
                    @JsonProperty("balance") BigDecimal balance, @JsonProperty("disabled") boolean disabled) {
-        this.number = number;
-        this.owner = owner;
-        this.balance = balance;
+        setNumber(number);
+        setOwner(owner);
+        setBalance(balance);
         this.disabled = disabled;
     }
 
     public void writeOff(BigDecimal amount) {
-        if (this.disabled) {
-            throw new ApiException("Could not execute write off from disabled account " + this.number);
-        } else if (this.balance.compareTo(amount) < 0) {
-            throw new ApiException("Not sufficient funds for write off on account " + this.number);
-        } else if (amount.compareTo(BigDecimal.ZERO) < 0 || amount.compareTo(BigDecimal.ZERO) == 0) {
-            throw new ApiException("Write off amount cannot be zero or negative. Account " + this.number);
-        }
+        checkWriteOff(amount);
 
         BigDecimal newBalance = this.getBalance().subtract(amount);
         this.setBalance(newBalance);
     }
 
-    public void topUp(BigDecimal amount) {
+    /**
+     * Rejects a write off the account does not allow, without changing the balance.
+     */
+    public void checkWriteOff(BigDecimal amount) {
         if (this.disabled) {
-            throw new ApiException("Could not execute top up on disabled account " + this.number);
+            throw new ApiException(ErrorCode.WRITE_OFF_DISABLED, getNumber());
+        } else if (getAvailableBalance().compareTo(amount) < 0) {
+            throw new ApiException(ErrorCode.INSUFFICIENT_FUNDS, getNumber());
         } else if (amount.compareTo(BigDecimal.ZERO) < 0 || amount.compareTo(BigDecimal.ZERO) == 0) {
-            throw new ApiException("Top up amount cannot be zero or negative. Account " + this.number);
+            throw new ApiException(ErrorCode.NON_POSITIVE_WRITE_OFF, getNumber());
         }
+    }
+
+    public void topUp(BigDecimal amount) {
+        checkTopUp(amount);
 
         BigDecimal newBalance = this.getBalance().add(amount);
         this.setBalance(newBalance);
     }
 
     /**
-     * Getters.
+     * Rejects a top up the account does not accept, without changing the balance.
      */
-    public Object getLock() {
-        return lock;
+    public void checkTopUp(BigDecimal amount) {
+        if (this.disabled) {
+            throw new ApiException(ErrorCode.TOP_UP_DISABLED, getNumber());
+        } else if (amount.compareTo(BigDecimal.ZERO) < 0 || amount.compareTo(BigDecimal.ZERO) == 0) {
+            throw new ApiException(ErrorCode.NON_POSITIVE_TOP_UP, getNumber());
+        }
     }
 
+    /**
+     * Getters.
+     */
     public Long getNumber() {
-        return number;
+        return number == NO_NUMBER ? null : number;
     }
 
     public String getOwner() {
-        return owner;
+        int id = ownerId;
+        return id == OwnerPool.NOT_POOLED ? unpooledOwner : OWNERS.owner(id);
     }
 
     public BigDecimal getBalance() {
-        return balance;
+        long packed = balance;
+        return PackedDecimal.unpack(packed, packed == PackedDecimal.WIDE ? wideBalance : null);
     }
 
     public boolean isDisabled() {
         return disabled;
     }
 
+    /**
+     * @return ISO 4217 code of the currency of the account, null if it is in the base currency of the service.
+     */
+    @JsonSerialize(include = JsonSerialize.Inclusion.NON_NULL)
+    public String getCurrency() {
+        return currency;
+    }
+
+    /**
+     * @return amount reserved by active holds, zero if there are none.
+     */
+    @JsonIgnore
+    public BigDecimal getHeld() {
+        long packed = held;
+        return PackedDecimal.unpack(packed, packed == PackedDecimal.WIDE ? wideHeld : null);
+    }
+
+    /**
+     * @return balance that can be written off, the ledger balance less the held amount.
+     */
+    @JsonIgnore
+    public BigDecimal getAvailableBalance() {
+        return held == 0 ? getBalance() : getBalance().subtract(getHeld());
+    }
+
+    /**
+     * Compact form of the held amount, 0 if nothing is held.
+     */
+    public long packedHeld() {
+        return held;
+    }
+
+    /**
+     * Left out of the JSON while nothing is held, so accounts without holds keep their representation.
+     */
+    @JsonProperty("held")
+    @JsonSerialize(include = JsonSerialize.Inclusion.NON_NULL)
+    private BigDecimal heldIfAny() {
+        return held == 0 ? null : getHeld();
+    }
+
+    /**
+     * Compact forms of owner and balance, for storing them without unpacking.
+     * The owner id is {@link OwnerPool#NOT_POOLED} if the account keeps the name itself.
+     */
+    public int ownerId() {
+        return ownerId;
+    }
+
+    public long packedBalance() {
+        return balance;
+    }
+
+    /**
+     * @return sequence the account was last committed at by a repository keeping it in memory,
+     * 0 if it was not committed yet.
+     */
+    public long committedSequence() {
+        return committedSequence;
+    }
+
+    /**
+     * Records the commit of the current state, called by the repository keeping the account in memory.
+     */
+    public void committed(long sequence) {
+        this.committedSequence = sequence;
+    }
+
     /**
      * Setters.
      */
     public void setNumber(Long number) {
-        this.number = number;
+        this.number = number == null ? NO_NUMBER : number;
     }
 
     public void setOwner(String owner) {
-        this.owner = owner;
+        int id = OWNERS.id(owner);
+        if (id == OwnerPool.NOT_POOLED) {
+            // not cleared for pooled owners, a reader that saw the previous id may still read it
+            this.unpooledOwner = owner;
+        }
+        this.ownerId = id;
     }
 
     public void setBalance(BigDecimal balance) {
-        this.balance = balance;
+        long packed = PackedDecimal.pack(balance);
+        if (packed == PackedDecimal.WIDE) {
+            this.wideBalance = balance;
+        }
+        this.balance = packed;
     }
 
     public void setDisabled(boolean disabled) {
         this.disabled = disabled;
     }
 
+    public void setCurrency(String currency) {
+        this.currency = currency;
+    }
+
+    /**
+     * Only holds change the held amount, it is not read from JSON.
+     */
+    @JsonIgnore
+    public void setHeld(BigDecimal held) {
+        long packed = held == null || held.signum() == 0 ? 0 : PackedDecimal.pack(held);
+        if (packed == PackedDecimal.WIDE) {
+            this.wideHeld = held;
+        }
+        this.held = packed;
+    }
+
     /**
      * Builder class.
      */
@@ -101,6 +226,7 @@ public class Account {
         private String owner;
         private BigDecimal balance;
         private boolean disabled;
+        private String currency;
 
         public Builder accountNumber(Long accountNumber) {
             this.accountNumber = accountNumber;
@@ -122,8 +248,15 @@ public class Account {
             return this;
         }
 
+        public Builder inCurrency(String currency) {
+            this.currency = currency;
+            return this;
+        }
+
         public Account build() {
-            return new Account(accountNumber, owner, balance, disabled);
+            Account account = new Account(accountNumber, owner, balance, disabled);
+            account.setCurrency(currency);
+            return account;
         }
 
     }
@@ -0,0 +1,102 @@
+package com.bank.rest.model;
+
+import java.math.BigDecimal;
+
+/**
+ * Audit record of one balance changing call, immutable.
+ */
+public final class AuditRecord {
+
+    /**
+     * Kind of call, stored by its ordinal so new kinds are only appended.
+     */
+    public enum Type {
+        /**
+         * Account created with a zero balance.
+         */
+        CREATE,
+        /**
+         * Account updated, the amount is its new balance.
+         */
+        UPDATE,
+        TOP_UP,
+        TRANSFER,
+        /**
+         * One leg of a multi-leg transfer, the legs of one transfer are recorded in order next to each other.
+         */
+        TRANSFER_LEG,
+        /**
+         * Account imported, the amount is its balance.
+         */
+        IMPORT,
+        /**
+         * Interest credited by a bulk operation, the counterparty is the id of the operation.
+         */
+        INTEREST,
+        /**
+         * Fee written off by a bulk operation, the counterparty is the id of the operation.
+         */
+        FEE,
+        /**
+         * Hold without a payee captured, the amount is written off and the counterparty is the id of the hold.
+         * Captures to a payee are recorded as transfers.
+         */
+        CAPTURE,
+        /**
+         * Write off of a transfer between currencies in the currency of the account, the counterparty is the
+         * credited account. Followed by the {@link #FX_CREDIT} record of the transfer.
+         */
+        FX_DEBIT,
+        /**
+         * Credit of a transfer between currencies converted to the currency of the account, the counterparty is
+         * the account written off.
+         */
+        FX_CREDIT
+    }
+
+    private final Type type;
+    private final long timeMillis;
+    private final long accountNumber;
+    private final long counterparty;
+    private final BigDecimal amount;
+
+    /**
+     * @param accountNumber changed account, the one written off for a transfer and credited for an FX credit.
+     * @param counterparty  account topped up by a transfer, bulk operation of interest and fees,
+     *                      hold of a capture, the other account of a transfer between currencies, 0 for other calls.
+     */
+    public AuditRecord(Type type, long timeMillis, long accountNumber, long counterparty, BigDecimal amount) {
+        this.type = type;
+        this.timeMillis = timeMillis;
+        this.accountNumber = accountNumber;
+        this.counterparty = counterparty;
+        this.amount = amount;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public long getTimeMillis() {
+        return timeMillis;
+    }
+
+    public long getAccountNumber() {
+        return accountNumber;
+    }
+
+    public long getCounterparty() {
+        return counterparty;
+    }
+
+    public BigDecimal getAmount() {
+        return amount;
+    }
+
+    @Override
+    public String toString() {
+        return timeMillis + " " + type + " " + accountNumber + (counterparty != 0 ? " -> " + counterparty : "")
+                + " " + amount;
+    }
+
+}
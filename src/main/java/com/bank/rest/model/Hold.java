@@ -0,0 +1,82 @@
+package com.bank.rest.model;
+
+import org.codehaus.jackson.annotate.JsonCreator;
+import org.codehaus.jackson.annotate.JsonProperty;
+import org.codehaus.jackson.map.annotate.JsonSerialize;
+
+import java.math.BigDecimal;
+
+/**
+ * Authorization hold reserving part of the balance of an account until it is captured, released or expires.
+ * Immutable: the end of a hold produces a new instance.
+ */
+@JsonSerialize(include = JsonSerialize.Inclusion.NON_NULL)
+public class Hold {
+
+    public enum State {
+        ACTIVE,
+        /**
+         * Written off the account, the amount is the captured part of the hold.
+         */
+        CAPTURED,
+        RELEASED,
+        EXPIRED
+    }
+
+    private final long id;
+    private final Long accountNumber;
+    private final Long accountNumberTo;
+    private final BigDecimal amount;
+    private final long expiresAt;
+    private final State state;
+
+    /**
+     * @param accountNumberTo payee the captured amount is transferred to, null to only write it off.
+     * @param expiresAt       epoch millis after which the hold is released, it may be released a tick later.
+     */
+    @JsonCreator
+    public Hold(@JsonProperty("id") long id,
+                @JsonProperty("accountNumber") Long accountNumber,
+                @JsonProperty("accountNumberTo") Long accountNumberTo,
+                @JsonProperty("amount") BigDecimal amount,
+                @JsonProperty("expiresAt") long expiresAt,
+                @JsonProperty("state") State state) {
+        this.id = id;
+        this.accountNumber = accountNumber;
+        this.accountNumberTo = accountNumberTo;
+        this.amount = amount;
+        this.expiresAt = expiresAt;
+        this.state = state;
+    }
+
+    /**
+     * @return the hold after it ended, with the amount written off if it was captured.
+     */
+    public Hold ended(State state, BigDecimal amount) {
+        return new Hold(id, accountNumber, accountNumberTo, amount, expiresAt, state);
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public Long getAccountNumber() {
+        return accountNumber;
+    }
+
+    public Long getAccountNumberTo() {
+        return accountNumberTo;
+    }
+
+    public BigDecimal getAmount() {
+        return amount;
+    }
+
+    public long getExpiresAt() {
+        return expiresAt;
+    }
+
+    public State getState() {
+        return state;
+    }
+}
@@ -0,0 +1,86 @@
+package com.bank.rest.model;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Dictionary of owner names, accounts keep the id of their owner so all accounts of an owner share one string.
+ * Ids are handed out in order and never reused, names are kept for the lifetime of the pool.
+ * Holds at most {@code bank.owners.poolSize} names, by default one per KB of maximal heap which keeps the pool
+ * at about a tenth of the heap. Once full further owners get no id and their accounts keep the name themselves,
+ * so the pool stays bounded when accounts are loaded from a store larger than the heap.
+ */
+public final class OwnerPool {
+
+    private static final OwnerPool SINGLE_INSTANCE = new OwnerPool(Integer.getInteger("bank.owners.poolSize",
+            (int) Math.min(Runtime.getRuntime().maxMemory() / 1024, Integer.MAX_VALUE)));
+    private static final int CHUNK_BITS = 12;
+    private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+
+    public static final int NO_OWNER = -1;
+    // the pool was full, the name is not shared
+    public static final int NOT_POOLED = -2;
+
+    private final int maxSize;
+    private final Map<String, Integer> ids = new ConcurrentHashMap<>();
+    // names by id in chunks, a chunk is filled before the ids in it are published
+    private volatile String[][] names = new String[1][CHUNK_SIZE];
+    private int nextId;
+
+    public OwnerPool(int maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    public static OwnerPool getSingleInstance() {
+        return SINGLE_INSTANCE;
+    }
+
+    /**
+     * @return id of the owner, {@link #NO_OWNER} for null, {@link #NOT_POOLED} if the pool is full.
+     */
+    public int id(String owner) {
+        if (owner == null) {
+            return NO_OWNER;
+        }
+        Integer id = ids.get(owner);
+        if (id == null) {
+            id = ids.computeIfAbsent(owner, this::add);
+        }
+        return id != null ? id : NOT_POOLED;
+    }
+
+    /**
+     * @return owner of an id returned by {@link #id(String)}, null for {@link #NO_OWNER}.
+     */
+    public String owner(int id) {
+        return id == NO_OWNER ? null : names[id >>> CHUNK_BITS][id & (CHUNK_SIZE - 1)];
+    }
+
+    public synchronized int size() {
+        return nextId;
+    }
+
+    /**
+     * @return id of the added owner, null if the pool is full.
+     */
+    private synchronized Integer add(String owner) {
+        if (nextId >= maxSize) {
+            return null;
+        }
+        int id = nextId++;
+        String[][] current = names;
+        int chunk = id >>> CHUNK_BITS;
+        if (chunk == current.length) {
+            current = Arrays.copyOf(current, current.length * 2);
+        }
+        if (current[chunk] == null) {
+            current[chunk] = new String[CHUNK_SIZE];
+        }
+        current[chunk][id & (CHUNK_SIZE - 1)] = owner;
+        // the volatile write publishes the name together with the id
+        names = current;
+        return id;
+    }
+
+}
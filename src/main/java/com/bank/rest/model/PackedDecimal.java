@@ -0,0 +1,49 @@
+package com.bank.rest.model;
+
+import java.math.BigDecimal;
+
+/**
+ * Encodes a decimal of up to 17 digits with a scale of 0 to 62 in one long: the unscaled value shifted
+ * left by 6 bits and the scale in the low 6 bits. Other decimals are kept as {@link BigDecimal} next to
+ * the {@link #WIDE} marker, null is {@link #NULL}.
+ */
+public final class PackedDecimal {
+
+    private static final int SCALE_BITS = 6;
+    private static final int SCALE_MASK = (1 << SCALE_BITS) - 1;
+    private static final int MAX_PRECISION = 17;
+
+    public static final long NULL = SCALE_MASK;
+    public static final long WIDE = 1L << SCALE_BITS | SCALE_MASK;
+
+    private PackedDecimal() {
+    }
+
+    /**
+     * @return packed value, {@link #WIDE} if it does not fit.
+     */
+    public static long pack(BigDecimal value) {
+        if (value == null) {
+            return NULL;
+        }
+        int scale = value.scale();
+        if (scale < 0 || scale >= SCALE_MASK || value.precision() > MAX_PRECISION) {
+            return WIDE;
+        }
+        return value.unscaledValue().longValue() << SCALE_BITS | scale;
+    }
+
+    /**
+     * @param wide value returned for {@link #WIDE}.
+     */
+    public static BigDecimal unpack(long packed, BigDecimal wide) {
+        if (packed == NULL) {
+            return null;
+        }
+        if (packed == WIDE) {
+            return wide;
+        }
+        return BigDecimal.valueOf(packed >> SCALE_BITS, (int) (packed & SCALE_MASK));
+    }
+
+}
@@ -0,0 +1,98 @@
+package com.bank.rest.model;
+
+import org.codehaus.jackson.annotate.JsonCreator;
+import org.codehaus.jackson.annotate.JsonIgnore;
+import org.codehaus.jackson.annotate.JsonProperty;
+import org.codehaus.jackson.map.annotate.JsonSerialize;
+
+import java.math.BigDecimal;
+
+/**
+ * Future dated or recurring transfer, immutable: every execution produces a new instance.
+ */
+@JsonSerialize(include = JsonSerialize.Inclusion.NON_NULL)
+public class ScheduledTransfer {
+
+    private final long id;
+    private final Long accountNumberFrom;
+    private final Long accountNumberTo;
+    private final BigDecimal amount;
+    private final long executeAt;
+    private final long intervalMillis;
+    private final long executions;
+    private final String lastError;
+
+    /**
+     * @param executeAt      epoch millis of the next execution, it may fire a little later to spread the load.
+     * @param intervalMillis period of a recurring transfer, 0 for a single execution.
+     * @param executions     number of executions so far.
+     * @param lastError      error code of the last failed execution, null if it succeeded.
+     */
+    @JsonCreator
+    public ScheduledTransfer(@JsonProperty("id") long id,
+                             @JsonProperty("accountNumberFrom") Long accountNumberFrom,
+                             @JsonProperty("accountNumberTo") Long accountNumberTo,
+                             @JsonProperty("amount") BigDecimal amount,
+                             @JsonProperty("executeAt") long executeAt,
+                             @JsonProperty("intervalMillis") long intervalMillis,
+                             @JsonProperty("executions") long executions,
+                             @JsonProperty("lastError") String lastError) {
+        this.id = id;
+        this.accountNumberFrom = accountNumberFrom;
+        this.accountNumberTo = accountNumberTo;
+        this.amount = amount;
+        this.executeAt = executeAt;
+        this.intervalMillis = intervalMillis;
+        this.executions = executions;
+        this.lastError = lastError;
+    }
+
+    /**
+     * @return the transfer after one more execution, its next execution is the first period boundary after now.
+     */
+    public ScheduledTransfer executed(long now, String error) {
+        long next = executeAt;
+        if (intervalMillis > 0) {
+            next += (Math.max(0, now - executeAt) / intervalMillis + 1) * intervalMillis;
+        }
+        return new ScheduledTransfer(id, accountNumberFrom, accountNumberTo, amount, next, intervalMillis,
+                executions + 1, error);
+    }
+
+    @JsonIgnore
+    public boolean isRecurring() {
+        return intervalMillis > 0;
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public Long getAccountNumberFrom() {
+        return accountNumberFrom;
+    }
+
+    public Long getAccountNumberTo() {
+        return accountNumberTo;
+    }
+
+    public BigDecimal getAmount() {
+        return amount;
+    }
+
+    public long getExecuteAt() {
+        return executeAt;
+    }
+
+    public long getIntervalMillis() {
+        return intervalMillis;
+    }
+
+    public long getExecutions() {
+        return executions;
+    }
+
+    public String getLastError() {
+        return lastError;
+    }
+}
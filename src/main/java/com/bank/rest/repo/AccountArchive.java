@@ -0,0 +1,382 @@
+package com.bank.rest.repo;
+
+import com.bank.rest.model.Account;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+/**
+ * File of archived accounts sorted by number in blocks of about {@value #BLOCK_SIZE} bytes.
+ * Only the first number of every block and a bloom filter of all numbers are kept in memory, so a lookup
+ * reads at most one block and numbers that were never archived rarely cause a read.
+ * The file is rewritten as a whole when accounts are added, accounts taken out of the archive are hidden
+ * until then.
+ * <p>
+ * Layout: blocks of records (number, sequence, balance scale, unscaled balance, owner),
+ * the index of (first number, offset) per block, the bloom filter words and a fixed size footer.
+ */
+class AccountArchive {
+
+    private static final int BLOCK_SIZE = 4096;
+    private static final int MAGIC = 0x41524348;
+    private static final int FOOTER_SIZE = 8 + 4 + 8 + 4 + 4;
+    private static final int BLOOM_BITS_PER_ACCOUNT = 10;
+    private static final int BLOOM_HASHES = 3;
+
+    private final Path path;
+    private volatile Segment segment;
+    // taken out of the archive since the file was written
+    private final Set<Long> hidden = ConcurrentHashMap.newKeySet();
+
+    AccountArchive(Path path) {
+        this.path = path;
+        try {
+            if (Files.exists(path)) {
+                segment = Segment.open(path);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * @return archived state of the account, null if it is not archived.
+     */
+    CommittedAccount find(long accountNumber) {
+        while (true) {
+            Segment current = segment;
+            if (current == null || hidden.contains(accountNumber) || !current.mightContain(accountNumber)) {
+                return null;
+            }
+            try {
+                return current.find(accountNumber);
+            } catch (ClosedChannelException e) {
+                // replaced by a rewrite meanwhile
+                if (segment == current) {
+                    throw new UncheckedIOException(e);
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    /**
+     * Reads all archived accounts in number order.
+     */
+    void forEach(Consumer<CommittedAccount> action) {
+        Segment current = segment;
+        if (current == null) {
+            return;
+        }
+        try {
+            current.forEach(account -> {
+                if (!hidden.contains(account.getAccount().getNumber())) {
+                    action.accept(account);
+                }
+            });
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Takes an account out of the archive, it is dropped from the file by the next rewrite.
+     */
+    void hide(long accountNumber) {
+        Segment current = segment;
+        if (current != null && current.mightContain(accountNumber)) {
+            hidden.add(accountNumber);
+        }
+    }
+
+    /**
+     * @return number of accounts in the archive, not counting hidden ones.
+     */
+    long size() {
+        Segment current = segment;
+        return current == null ? 0 : Math.max(0, current.count - hidden.size());
+    }
+
+    /**
+     * Rewrites the archive with the given accounts added, replacing archived states of the same accounts.
+     * The new file is synced and then atomically replaces the old one.
+     */
+    synchronized void add(List<CommittedAccount> accounts) {
+        CommittedAccount[] added = accounts.toArray(new CommittedAccount[0]);
+        Arrays.sort(added, Comparator.comparingLong(account -> account.getAccount().getNumber()));
+        Set<Long> dropped = new HashSet<>(hidden);
+        Path rewritten = path.resolveSibling(path.getFileName() + ".tmp");
+        try {
+            try (FileOutputStream file = new FileOutputStream(rewritten.toFile());
+                 BlockWriter writer = new BlockWriter(file)) {
+                int[] next = {0};
+                Segment current = segment;
+                if (current != null) {
+                    current.forEach(archived -> {
+                        long number = archived.getAccount().getNumber();
+                        while (next[0] < added.length && added[next[0]].getAccount().getNumber() < number) {
+                            writer.write(added[next[0]++]);
+                        }
+                        boolean replaced = next[0] < added.length && added[next[0]].getAccount().getNumber() == number;
+                        if (!replaced && !dropped.contains(number)) {
+                            writer.write(archived);
+                        }
+                    });
+                }
+                while (next[0] < added.length) {
+                    writer.write(added[next[0]++]);
+                }
+                writer.finish();
+                file.getFD().sync();
+            }
+            Files.move(rewritten, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            Segment previous = segment;
+            segment = Segment.open(path);
+            hidden.removeAll(dropped);
+            if (previous != null) {
+                previous.channel.close();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * @return bit of the i-th hash of the number, derived from 2 halves of one multiplicative hash.
+     */
+    private static long bloomBit(long accountNumber, int i, long bits) {
+        long hash = accountNumber * 0x9E3779B97F4A7C15L;
+        return Math.floorMod((int) hash + i * (int) (hash >>> 32), bits);
+    }
+
+    /**
+     * Opened archive file with its block index and bloom filter.
+     */
+    private static final class Segment {
+
+        private final FileChannel channel;
+        // offsets has one more entry, the end of the last block
+        private final long[] firstNumbers;
+        private final long[] offsets;
+        private final long[] bloom;
+        private final long count;
+
+        private Segment(FileChannel channel, long[] firstNumbers, long[] offsets, long[] bloom, long count) {
+            this.channel = channel;
+            this.firstNumbers = firstNumbers;
+            this.offsets = offsets;
+            this.bloom = bloom;
+            this.count = count;
+        }
+
+        private static Segment open(Path path) throws IOException {
+            FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+            try {
+                long size = channel.size();
+                ByteBuffer footer = size < FOOTER_SIZE ? null : read(channel, size - FOOTER_SIZE, FOOTER_SIZE);
+                if (footer == null || footer.getInt(FOOTER_SIZE - 4) != MAGIC) {
+                    throw new IOException("Not an account archive: " + path);
+                }
+                long indexOffset = footer.getLong();
+                int blocks = footer.getInt();
+                long count = footer.getLong();
+                int bloomWords = footer.getInt();
+                ByteBuffer index = read(channel, indexOffset, blocks * 16 + bloomWords * 8);
+                long[] firstNumbers = new long[blocks];
+                long[] offsets = new long[blocks + 1];
+                for (int i = 0; i < blocks; i++) {
+                    firstNumbers[i] = index.getLong();
+                    offsets[i] = index.getLong();
+                }
+                offsets[blocks] = indexOffset;
+                long[] bloom = new long[bloomWords];
+                index.asLongBuffer().get(bloom);
+                return new Segment(channel, firstNumbers, offsets, bloom, count);
+            } catch (IOException | RuntimeException e) {
+                channel.close();
+                throw e;
+            }
+        }
+
+        private boolean mightContain(long accountNumber) {
+            if (bloom.length == 0) {
+                return false;
+            }
+            for (int i = 0; i < BLOOM_HASHES; i++) {
+                long bit = bloomBit(accountNumber, i, bloom.length * 64L);
+                if ((bloom[(int) (bit >>> 6)] & 1L << bit) == 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private CommittedAccount find(long accountNumber) throws IOException {
+            int block = Arrays.binarySearch(firstNumbers, accountNumber);
+            block = block >= 0 ? block : -block - 2;
+            if (block < 0) {
+                return null;
+            }
+            ByteBuffer records = readBlock(block);
+            while (records.hasRemaining()) {
+                long number = records.getLong(records.position());
+                if (number >= accountNumber) {
+                    return number == accountNumber ? readRecord(records) : null;
+                }
+                // skips number, sequence and scale, then the unscaled balance and the owner
+                records.position(records.position() + 20);
+                records.position(records.position() + 1 + records.get(records.position()));
+                records.position(records.position() + 4 + Math.max(0, records.getInt(records.position())));
+            }
+            return null;
+        }
+
+        private void forEach(Consumer<CommittedAccount> action) throws IOException {
+            for (int block = 0; block < firstNumbers.length; block++) {
+                ByteBuffer records = readBlock(block);
+                while (records.hasRemaining()) {
+                    action.accept(readRecord(records));
+                }
+            }
+        }
+
+        private ByteBuffer readBlock(int block) throws IOException {
+            return read(channel, offsets[block], (int) (offsets[block + 1] - offsets[block]));
+        }
+
+        private static ByteBuffer read(FileChannel channel, long position, int length) throws IOException {
+            ByteBuffer buffer = ByteBuffer.allocate(length);
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer, position + buffer.position()) < 0) {
+                    throw new IOException("Truncated account archive");
+                }
+            }
+            buffer.flip();
+            return buffer;
+        }
+
+        private static CommittedAccount readRecord(ByteBuffer records) {
+            long number = records.getLong();
+            long sequence = records.getLong();
+            int scale = records.getInt();
+            byte[] unscaled = new byte[records.get()];
+            records.get(unscaled);
+            int ownerLength = records.getInt();
+            String owner = null;
+            if (ownerLength >= 0) {
+                owner = new String(records.array(), records.position(), ownerLength, StandardCharsets.UTF_8);
+                records.position(records.position() + ownerLength);
+            }
+            return new CommittedAccount(sequence,
+                    new Account(number, owner, new BigDecimal(new BigInteger(unscaled), scale), true));
+        }
+    }
+
+    /**
+     * Writes records in number order, starting a new block once the current one reached the block size.
+     */
+    private static final class BlockWriter implements AutoCloseable {
+
+        private final DataOutputStream out;
+        private long[] firstNumbers = new long[64];
+        private long[] offsets = new long[64];
+        private long[] numbers = new long[1024];
+        private int blocks;
+        private long count;
+        private long position;
+        private long blockStart = -BLOCK_SIZE;
+
+        private BlockWriter(FileOutputStream file) {
+            this.out = new DataOutputStream(new BufferedOutputStream(file, 64 * 1024));
+        }
+
+        private void write(CommittedAccount committed) {
+            Account account = committed.getAccount();
+            try {
+                if (position - blockStart >= BLOCK_SIZE) {
+                    if (blocks == firstNumbers.length) {
+                        firstNumbers = Arrays.copyOf(firstNumbers, blocks * 2);
+                        offsets = Arrays.copyOf(offsets, blocks * 2);
+                    }
+                    blockStart = position;
+                    firstNumbers[blocks] = account.getNumber();
+                    offsets[blocks++] = blockStart;
+                }
+                if (count == numbers.length) {
+                    numbers = Arrays.copyOf(numbers, numbers.length * 2);
+                }
+                numbers[(int) count++] = account.getNumber();
+
+                out.writeLong(account.getNumber());
+                out.writeLong(committed.getSequence());
+                out.writeInt(account.getBalance().scale());
+                byte[] unscaled = account.getBalance().unscaledValue().toByteArray();
+                out.writeByte(unscaled.length);
+                out.write(unscaled);
+                byte[] owner = account.getOwner() == null ? null : account.getOwner().getBytes(StandardCharsets.UTF_8);
+                out.writeInt(owner == null ? -1 : owner.length);
+                if (owner != null) {
+                    out.write(owner);
+                }
+                position += 8 + 8 + 4 + 1 + unscaled.length + 4 + (owner == null ? 0 : owner.length);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        /**
+         * Writes index, bloom filter and footer after the last record.
+         */
+        private void finish() throws IOException {
+            long indexOffset = position;
+            for (int i = 0; i < blocks; i++) {
+                out.writeLong(firstNumbers[i]);
+                out.writeLong(offsets[i]);
+            }
+            int bloomWords = (int) Math.max(1, (count * BLOOM_BITS_PER_ACCOUNT + 63) / 64);
+            long[] bloom = new long[count == 0 ? 0 : bloomWords];
+            for (int n = 0; n < count; n++) {
+                for (int i = 0; i < BLOOM_HASHES; i++) {
+                    long bit = bloomBit(numbers[n], i, bloom.length * 64L);
+                    bloom[(int) (bit >>> 6)] |= 1L << bit;
+                }
+            }
+            for (long word : bloom) {
+                out.writeLong(word);
+            }
+            out.writeLong(indexOffset);
+            out.writeInt(blocks);
+            out.writeLong(count);
+            out.writeInt(bloom.length);
+            out.writeInt(MAGIC);
+            out.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            out.close();
+        }
+    }
+
+}
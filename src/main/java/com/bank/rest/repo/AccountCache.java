@@ -0,0 +1,218 @@
+package com.bank.rest.repo;
+
+import com.bank.rest.model.Account;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Stored accounts kept on heap, at most {@code capacity} of them.
+ * When full a clock hand passes over the entries, sparing those read since it last passed them, and stops at
+ * the eviction candidate. A loaded account only replaces the candidate if it was used more often recently,
+ * as estimated by a count-min sketch of 4 bit counters that are halved every {@code 10 * capacity} uses,
+ * so a scan of cold accounts does not push out the working set.
+ */
+class AccountCache {
+
+    private static final long[] SEEDS = {0xC3A5C85C97CB3127L, 0xB492B66FBE98F273L, 0x9AE16A3B2F90404FL,
+            0xCBF29CE484222325L};
+    private static final long HALF_MASK = 0x7777777777777777L;
+
+    private final int capacity;
+    private final Map<Long, Entry> entries;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder rejections = new LongAdder();
+
+    // 16 counters of 4 bits per long, racy increments only lose a count now and then
+    private final long[] sketch;
+    private final int sketchMask;
+    private final int sampleSize;
+    private int uses;
+
+    // guarded by this
+    private final Entry[] slots;
+    private int size;
+    private int hand;
+
+    AccountCache(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity must be positive");
+        }
+        this.capacity = capacity;
+        this.entries = new ConcurrentHashMap<>(capacity);
+        this.slots = new Entry[capacity];
+        int sketchLength = Integer.highestOneBit(Math.max(capacity - 1, 1)) << 1;
+        this.sketch = new long[sketchLength];
+        this.sketchMask = sketchLength - 1;
+        this.sampleSize = 10 * capacity;
+    }
+
+    /**
+     * Counts a use of the account.
+     *
+     * @return cached account, null on a miss.
+     */
+    Account get(Long accountNumber) {
+        record(accountNumber);
+        Entry entry = entries.get(accountNumber);
+        if (entry == null) {
+            misses.increment();
+            return null;
+        }
+        hits.increment();
+        if (!entry.referenced) {
+            entry.referenced = true;
+        }
+        return entry.account;
+    }
+
+    /**
+     * @return cached account without counting a use, null if not cached.
+     */
+    Account peek(Long accountNumber) {
+        Entry entry = entries.get(accountNumber);
+        return entry == null ? null : entry.account;
+    }
+
+    /**
+     * Offers a loaded account, the caller holds the store lock of the account.
+     *
+     * @return the cached account if there is one, else the loaded account which may or may not be cached now.
+     */
+    synchronized Account admit(Long accountNumber, Account loaded) {
+        Entry entry = entries.get(accountNumber);
+        if (entry != null) {
+            return entry.account;
+        }
+        int slot;
+        if (size < capacity) {
+            slot = size++;
+        } else {
+            slot = candidate();
+            Entry victim = slots[slot];
+            if (frequency(accountNumber) <= frequency(victim.accountNumber)) {
+                rejections.increment();
+                return loaded;
+            }
+            entries.remove(victim.accountNumber);
+            evictions.increment();
+        }
+        entry = new Entry(accountNumber, loaded);
+        slots[slot] = entry;
+        entries.put(accountNumber, entry);
+        return loaded;
+    }
+
+    /**
+     * Makes a committed account the cached one if another instance of it is cached,
+     * the caller holds the store lock of the account.
+     */
+    void replace(Long accountNumber, Account committed) {
+        Entry entry = entries.get(accountNumber);
+        if (entry != null && entry.account != committed) {
+            entry.account = committed;
+        }
+    }
+
+    int capacity() {
+        return capacity;
+    }
+
+    int size() {
+        return entries.size();
+    }
+
+    long hits() {
+        return hits.sum();
+    }
+
+    long misses() {
+        return misses.sum();
+    }
+
+    long evictions() {
+        return evictions.sum();
+    }
+
+    long rejections() {
+        return rejections.sum();
+    }
+
+    /**
+     * @return slot of the first entry not read since the hand last passed it.
+     */
+    private int candidate() {
+        while (true) {
+            Entry entry = slots[hand];
+            int slot = hand;
+            hand = hand + 1 == capacity ? 0 : hand + 1;
+            if (entry.referenced) {
+                entry.referenced = false;
+            } else {
+                return slot;
+            }
+        }
+    }
+
+    private void record(long accountNumber) {
+        for (int i = 0; i < SEEDS.length; i++) {
+            int index = index(accountNumber, i);
+            int shift = counter(accountNumber, i) << 2;
+            long word = sketch[index];
+            if (((word >>> shift) & 15) < 15) {
+                sketch[index] = word + (1L << shift);
+            }
+        }
+        if (++uses >= sampleSize) {
+            halve();
+        }
+    }
+
+    private int frequency(long accountNumber) {
+        int frequency = 15;
+        for (int i = 0; i < SEEDS.length; i++) {
+            long word = sketch[index(accountNumber, i)];
+            frequency = Math.min(frequency, (int) (word >>> (counter(accountNumber, i) << 2)) & 15);
+        }
+        return frequency;
+    }
+
+    /**
+     * Ages all counters so the sketch follows a changing working set.
+     */
+    private void halve() {
+        uses = 0;
+        for (int i = 0; i < sketch.length; i++) {
+            sketch[i] = (sketch[i] >>> 1) & HALF_MASK;
+        }
+    }
+
+    private int index(long accountNumber, int i) {
+        long hash = (accountNumber + SEEDS[i]) * SEEDS[i];
+        return (int) (hash ^ (hash >>> 32)) & sketchMask;
+    }
+
+    private static int counter(long accountNumber, int i) {
+        long hash = accountNumber * SEEDS[3 - i];
+        return (int) (hash >>> 60);
+    }
+
+    /**
+     * Cached account, referenced once read after the clock hand passed it.
+     */
+    private static final class Entry {
+
+        private final Long accountNumber;
+        private volatile Account account;
+        private volatile boolean referenced;
+
+        private Entry(Long accountNumber, Account account) {
+            this.accountNumber = accountNumber;
+            this.account = account;
+        }
+    }
+
+}
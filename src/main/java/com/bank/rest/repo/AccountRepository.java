@@ -1,38 +1,643 @@
 package com.bank.rest.repo;
 
+import com.bank.rest.dto.StoreStatsDto;
 import com.bank.rest.model.Account;
 
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.BiConsumer;
 
 public class AccountRepository {
 
-    private static final AccountRepository SINGLE_INSTANCE = new AccountRepository();
-    // where key is account number
-    private Map<Long, Account> accounts = new ConcurrentHashMap<>();
+    /**
+     * Notified of every committed account state on the committing thread while it holds the account lock,
+     * so it must not block.
+     */
+    public interface CommitListener {
+        void committed(long sequence, Account account);
+    }
+
+    private static final long RECLAIM_PERIOD_MILLIS = 1000;
+    // sizes the maps up front for bulk loads, see bank.repository.expectedAccounts
+    private static final int EXPECTED_ACCOUNTS = Integer.getInteger("bank.repository.expectedAccounts", 16);
+    // created after the sizes it reads
+    private static final AccountRepository SINGLE_INSTANCE = fromSystemProperties();
+
+    // where key is account number, empty with a store
+    private final Map<Long, Account> accounts;
+    // committed versions per account number, newest first, only of accounts committed or changed recently;
+    // an account in memory without versions holds its committed state
+    private final Map<Long, BalanceVersion> versions;
+
+    // commit sequence, a sequence is visible to snapshots once it and all sequences before it completed
+    private final Object sequenceLock = new Object();
+    private long lastSequence;
+    private final NavigableSet<Long> inFlight = new ConcurrentSkipListSet<>();
+    private final Set<AccountSnapshot> openSnapshots = ConcurrentHashMap.newKeySet();
+    private final List<CommitListener> listeners = new CopyOnWriteArrayList<>();
+
+    // disabled accounts moved out of memory, null until opened
+    private volatile AccountArchive archive;
+    // snapshots read both tiers under the read lock, accounts move between them under the write lock
+    private final ReadWriteLock tiers = new ReentrantReadWriteLock();
 
-    private AccountRepository() {
+    // all accounts and the ones used most on heap, null when all accounts are kept in memory
+    private final AccountStore store;
+    private final AccountCache cache;
+
+    private AccountRepository(AccountStore store, int cachedAccounts) {
+        this.store = store;
+        if (store == null) {
+            accounts = new ConcurrentHashMap<>(EXPECTED_ACCOUNTS);
+            versions = new ConcurrentHashMap<>(EXPECTED_ACCOUNTS);
+            cache = null;
+        } else {
+            accounts = Collections.emptyMap();
+            versions = new ConcurrentHashMap<>();
+            cache = new AccountCache(cachedAccounts);
+            lastSequence = store.lastSequence();
+        }
+        ScheduledExecutorService reclaimer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "version-reclaimer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        reclaimer.scheduleWithFixedDelay(this::reclaimVersions, RECLAIM_PERIOD_MILLIS, RECLAIM_PERIOD_MILLIS,
+                TimeUnit.MILLISECONDS);
     }
 
     public static AccountRepository getSingleInstance() {
         return SINGLE_INSTANCE;
     }
 
+    /**
+     * Creates a repository keeping all accounts in memory, apart from the single instance.
+     */
+    public static AccountRepository inMemory() {
+        return new AccountRepository(null, 0);
+    }
+
+    /**
+     * Opens a repository keeping all accounts in the store file at the path and the accounts used most on heap.
+     * Committed changes are written to the file before the commit completes.
+     *
+     * @param capacity       maximal number of accounts, only used when the file is created.
+     * @param cachedAccounts maximal number of accounts kept on heap.
+     */
+    public static AccountRepository openStore(Path path, long capacity, int cachedAccounts) {
+        return new AccountRepository(new AccountStore(path, capacity), cachedAccounts);
+    }
+
+    /**
+     * Creates the repository with a store when {@code bank.store.path} is set,
+     * see {@code bank.store.capacity} and {@code bank.store.cachedAccounts}.
+     */
+    private static AccountRepository fromSystemProperties() {
+        String path = System.getProperty("bank.store.path");
+        if (path == null) {
+            return inMemory();
+        }
+        return openStore(Paths.get(path), Long.getLong("bank.store.capacity", 16_000_000),
+                Integer.getInteger("bank.store.cachedAccounts", 100_000));
+    }
+
+    public void addCommitListener(CommitListener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * @return accounts in memory and archived ones, or copies of all stored accounts.
+     */
     public List<Account> findAll() {
-        return new ArrayList<>(accounts.values());
+        if (store != null) {
+            List<Account> stored = new ArrayList<>();
+            store.forEach(committed -> stored.add(committed.getAccount()));
+            return stored;
+        }
+        List<Account> all = new ArrayList<>(accounts.values());
+        AccountArchive current = archive;
+        if (current != null) {
+            current.forEach(archived -> {
+                if (!accounts.containsKey(archived.getAccount().getNumber())) {
+                    all.add(archived.getAccount());
+                }
+            });
+        }
+        return all;
     }
 
     public Account save(Account account) {
-        accounts.put(account.getNumber(), account);
-        return accounts.get(account.getNumber());
+        Long[] key = {account.getNumber()};
+        if (store != null) {
+            commit(new Account[]{account}, key);
+            return account;
+        }
+        accounts.put(key[0], account);
+        commit(new Account[]{account}, key);
+        return accounts.get(key[0]);
     }
 
+    /**
+     * Adds and commits a new account unless its number is taken.
+     *
+     * @return false if an account with the number exists.
+     */
+    public boolean saveNew(Account account) {
+        Long[] key = {account.getNumber()};
+        if (!putNew(key[0], account)) {
+            return false;
+        }
+        commit(new Account[]{account}, key);
+        return true;
+    }
+
+    /**
+     * Adds new accounts and commits them under one sequence, an account whose number is taken is not added.
+     *
+     * @return positions in the list of the accounts that were not added.
+     */
+    public List<Integer> saveAllNew(List<Account> newAccounts) {
+        List<Account> added = new ArrayList<>(newAccounts.size());
+        List<Long> keys = new ArrayList<>(newAccounts.size());
+        List<Integer> rejected = new ArrayList<>();
+        for (int i = 0; i < newAccounts.size(); i++) {
+            Account account = newAccounts.get(i);
+            Long key = account.getNumber();
+            if (putNew(key, account)) {
+                added.add(account);
+                keys.add(key);
+            } else {
+                rejected.add(i);
+            }
+        }
+        if (!added.isEmpty()) {
+            commit(added.toArray(new Account[0]), keys.toArray(new Long[0]));
+        }
+        return rejected;
+    }
+
+    /**
+     * @return account in memory, or a copy of the archived account which is not kept in memory.
+     * With a store the cached account, or the account loaded from the store which may or may not be cached.
+     */
     public Optional<Account> findByNumber(Long accountNumber) {
-        return Optional.ofNullable(accounts.get(accountNumber));
+        if (store != null) {
+            return Optional.ofNullable(findStored(accountNumber, true));
+        }
+        Account account = accounts.get(accountNumber);
+        if (account == null && archive != null) {
+            CommittedAccount archived = archive.find(accountNumber);
+            return archived == null ? Optional.empty() : Optional.of(archived.getAccount());
+        }
+        return Optional.ofNullable(account);
+    }
+
+    /**
+     * Finds an account to change it, loading it back into memory if it is archived.
+     * The caller holds the lock of the account, an account found before taking it may have been evicted
+     * from the cache of a store meanwhile, so changes must be made to the account found here.
+     */
+    public Optional<Account> findForUpdate(Long accountNumber) {
+        if (store != null) {
+            return Optional.ofNullable(findStored(accountNumber, false));
+        }
+        Account account = accounts.get(accountNumber);
+        if (account != null || archive == null) {
+            return Optional.ofNullable(account).map(found -> pin(accountNumber, found));
+        }
+        tiers.writeLock().lock();
+        try {
+            CommittedAccount archived = archive.find(accountNumber);
+            if (archived == null) {
+                return Optional.ofNullable(accounts.get(accountNumber)).map(found -> pin(accountNumber, found));
+            }
+            account = archived.getAccount();
+            account.committed(archived.getSequence());
+            BalanceVersion loaded = BalanceVersion.of(archived.getSequence(), account, null);
+            loaded.pinned = true;
+            versions.put(accountNumber, loaded);
+            accounts.put(accountNumber, account);
+            archive.hide(accountNumber);
+            return Optional.of(account);
+        } finally {
+            tiers.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @return latest committed state of the account, empty if it was never committed.
+     */
+    public Optional<CommittedAccount> findCommitted(Long accountNumber) {
+        if (store == null) {
+            Account account = accounts.get(accountNumber);
+            if (account != null) {
+                BalanceVersion head = committedVersion(accountNumber, account);
+                return head == null ? Optional.empty()
+                        : Optional.of(new CommittedAccount(head.sequence, head.toAccount(accountNumber)));
+            }
+        }
+        BalanceVersion head = versions.get(accountNumber);
+        if (head == null && store != null) {
+            CommittedAccount stored;
+            synchronized (store.lockOf(accountNumber)) {
+                stored = store.find(accountNumber);
+            }
+            return stored == null || stored.getSequence() == AccountStore.UNCOMMITTED
+                    ? Optional.empty() : Optional.of(stored);
+        }
+        if (head == null && archive != null) {
+            return Optional.ofNullable(archive.find(accountNumber));
+        }
+        return head == null ? Optional.empty()
+                : Optional.of(new CommittedAccount(head.sequence, head.toAccount(accountNumber)));
+    }
+
+    /**
+     * Opens the archive of disabled accounts at the path, creating it with the first archived account.
+     */
+    public synchronized void openArchive(Path path) {
+        if (archive != null) {
+            throw new IllegalStateException("Archive already open");
+        }
+        if (store != null) {
+            throw new IllegalStateException("Accounts are kept in a store, there is nothing to archive");
+        }
+        archive = new AccountArchive(path);
+    }
+
+    public boolean isArchiveOpen() {
+        return archive != null;
+    }
+
+    /**
+     * @return number of accounts kept in the archive only.
+     */
+    public long getArchivedCount() {
+        AccountArchive current = archive;
+        return current == null ? 0 : current.size();
+    }
+
+    /**
+     * Writes the committed states of accounts to the archive, they stay in memory until evicted.
+     */
+    public void archive(List<CommittedAccount> committed) {
+        archive.add(committed);
+    }
+
+    /**
+     * Drops an archived account from memory unless it changed since it was archived
+     * or an open snapshot may still read an older version of it. The caller holds the lock of the account.
+     *
+     * @param archived state the account was archived with.
+     * @return true if the account is now only kept in the archive.
+     */
+    public boolean evict(CommittedAccount archived) {
+        Long accountNumber = archived.getAccount().getNumber();
+        tiers.writeLock().lock();
+        try {
+            Account account = accounts.get(accountNumber);
+            BalanceVersion head = account == null ? null : committedVersion(accountNumber, account);
+            if (head == null || head.sequence != archived.getSequence()) {
+                // changed after it was archived, the archived state is outdated
+                archive.hide(accountNumber);
+                return false;
+            }
+            if (head.sequence > oldestReadableSequence()) {
+                return false;
+            }
+            versions.remove(accountNumber);
+            accounts.remove(accountNumber);
+            return true;
+        } finally {
+            tiers.writeLock().unlock();
+        }
     }
 
     public Set<Long> getAllAccountNumbers() {
+        if (store != null) {
+            Set<Long> numbers = new HashSet<>();
+            store.forEach(stored -> numbers.add(stored.getAccount().getNumber()));
+            return numbers;
+        }
         return new HashSet<>(accounts.keySet());
     }
 
+    public boolean isStoreOpen() {
+        return store != null;
+    }
+
+    /**
+     * @return true if the store holds as many accounts as it has room for, false without a store.
+     */
+    public boolean isStoreFull() {
+        return store != null && store.size() >= store.capacity();
+    }
+
+    /**
+     * @return number of stored accounts and hits, misses and evictions of the accounts cached on heap,
+     * all 0 without a store.
+     */
+    public StoreStatsDto getStoreStats() {
+        if (store == null) {
+            return new StoreStatsDto(0, 0, 0, 0, 0, 0, 0, 0, 0);
+        }
+        long hits = cache.hits();
+        long lookups = hits + cache.misses();
+        return new StoreStatsDto(store.capacity(), store.size(), cache.capacity(), cache.size(), hits, cache.misses(),
+                cache.evictions(), cache.rejections(), lookups == 0 ? 0 : (double) hits / lookups);
+    }
+
+    /**
+     * Flushes the store to its file and closes it, the repository cannot be used afterwards.
+     */
+    public void closeStore() {
+        store.close();
+    }
+
+    /**
+     * Commits the current state of the accounts as new versions under one sequence number,
+     * so snapshots see either all of these changes or none of them.
+     * Callers hold the locks of the accounts, which keeps versions of an account in commit order.
+     *
+     * @return commit sequence number.
+     */
+    public long publish(Account... changed) {
+        return commit(changed, null);
+    }
+
+    /**
+     * @param keys boxed numbers the accounts were added to the map with, so both maps share them, or null.
+     */
+    private long commit(Account[] changed, Long[] keys) {
+        long sequence;
+        synchronized (sequenceLock) {
+            sequence = ++lastSequence;
+            inFlight.add(sequence);
+        }
+        try {
+            for (int i = 0; i < changed.length; i++) {
+                Account account = changed[i];
+                Long key = keys == null ? account.getNumber() : keys[i];
+                if (store == null) {
+                    versions.compute(key, (number, head) -> {
+                        account.committed(sequence);
+                        if (head == null || head.sequence != BalanceVersion.UNCOMMITTED) {
+                            return BalanceVersion.of(sequence, account, head);
+                        }
+                        // found for update before its first commit, stays pinned for the change being made
+                        BalanceVersion first = BalanceVersion.of(sequence, account, null);
+                        first.pinned = true;
+                        return first;
+                    });
+                } else {
+                    // written before the commit completes, so the version can be dropped once no snapshot reads it
+                    synchronized (store.lockOf(key)) {
+                        versions.compute(key, (number, head) ->
+                                BalanceVersion.of(sequence, account, head != null ? head : storedVersion(number)));
+                        store.write(sequence, account);
+                        cache.replace(key, account);
+                    }
+                }
+            }
+        } finally {
+            inFlight.remove(sequence);
+        }
+        for (CommitListener listener : listeners) {
+            for (Account account : changed) {
+                listener.committed(sequence, account);
+            }
+        }
+        return sequence;
+    }
+
+    /**
+     * @return sequence of the latest commit that started, commits of accounts whose locks the caller holds
+     * have all completed.
+     */
+    public long getLastSequence() {
+        synchronized (sequenceLock) {
+            return lastSequence;
+        }
+    }
+
+    /**
+     * Opens a consistent view of all balances as of the latest sequence whose commits and all earlier ones completed.
+     * Writers are not blocked while the snapshot is read.
+     */
+    public AccountSnapshot snapshot() {
+        synchronized (sequenceLock) {
+            AccountSnapshot snapshot = new AccountSnapshot(this, visibleSequence());
+            openSnapshots.add(snapshot);
+            return snapshot;
+        }
+    }
+
+    Map<Long, BalanceVersion> versions() {
+        return versions;
+    }
+
+    /**
+     * @return number of accounts whose committed versions are kept apart from the accounts,
+     * in memory those committed or changed since the versions were last reclaimed.
+     */
+    public int getVersionedCount() {
+        return versions.size();
+    }
+
+    /**
+     * Reads the version of every account committed at or before the sequence, archived and stored ones included.
+     */
+    void readAsOf(long sequence, BiConsumer<Long, BalanceVersion> action) {
+        if (store != null) {
+            readStoredAsOf(sequence, action);
+            return;
+        }
+        // no account moves between memory and the archive meanwhile
+        tiers.readLock().lock();
+        try {
+            for (Map.Entry<Long, Account> entry : accounts.entrySet()) {
+                BalanceVersion head = committedVersion(entry.getKey(), entry.getValue());
+                BalanceVersion version = head == null ? null : head.asOf(sequence);
+                if (version != null) {
+                    action.accept(entry.getKey(), version);
+                }
+            }
+            AccountArchive current = archive;
+            if (current != null) {
+                current.forEach(archived -> {
+                    Long accountNumber = archived.getAccount().getNumber();
+                    if (archived.getSequence() <= sequence && !accounts.containsKey(accountNumber)) {
+                        action.accept(accountNumber, BalanceVersion.of(archived.getSequence(), archived.getAccount(), null));
+                    }
+                });
+            }
+        } finally {
+            tiers.readLock().unlock();
+        }
+    }
+
+    void release(AccountSnapshot snapshot) {
+        openSnapshots.remove(snapshot);
+    }
+
+    /**
+     * Drops versions no open or future snapshot can read: for every account only the newest version
+     * at or before the oldest readable sequence is kept from the older part of the chain,
+     * and none once every snapshot reads the latest one, which the store or the account itself holds.
+     */
+    void reclaimVersions() {
+        long oldestReadable = oldestReadableSequence();
+        for (Map.Entry<Long, BalanceVersion> entry : versions.entrySet()) {
+            BalanceVersion head = entry.getValue();
+            if (store != null && head.sequence <= oldestReadable) {
+                // the store holds this version, a later commit finds it there
+                versions.remove(entry.getKey(), head);
+                continue;
+            }
+            BalanceVersion kept = head.asOf(oldestReadable);
+            if (kept != null) {
+                kept.previous = null;
+            }
+            if (store == null && kept == head) {
+                // atomic with pinning, an account found for update keeps its version until committed again
+                versions.computeIfPresent(entry.getKey(), (number, current) ->
+                        current == head && !current.pinned ? null : current);
+            }
+        }
+    }
+
+    /**
+     * Keeps a version of an account in memory about to be changed by the caller holding its lock,
+     * so snapshots read the committed state instead of the account until the change is committed.
+     */
+    private Account pin(Long accountNumber, Account account) {
+        versions.compute(accountNumber, (number, head) -> {
+            if (head == null) {
+                head = account.committedSequence() == 0 ? BalanceVersion.uncommitted()
+                        : BalanceVersion.of(account.committedSequence(), account, null);
+            }
+            head.pinned = true;
+            return head;
+        });
+        return account;
+    }
+
+    /**
+     * @return newest committed version of an account in memory, read from the account itself if it has
+     * no versions, null if it was not committed yet.
+     */
+    private BalanceVersion committedVersion(Long accountNumber, Account account) {
+        BalanceVersion head = versions.get(accountNumber);
+        if (head == null) {
+            // atomic with pinning, an account without versions is not being changed
+            BalanceVersion[] read = new BalanceVersion[1];
+            versions.compute(accountNumber, (number, current) -> {
+                if (current != null) {
+                    read[0] = current;
+                } else if (account.committedSequence() != 0) {
+                    read[0] = BalanceVersion.of(account.committedSequence(), account, null);
+                }
+                return current;
+            });
+            head = read[0];
+        }
+        return head == null || head.sequence == BalanceVersion.UNCOMMITTED ? null : head;
+    }
+
+    /**
+     * Adds a new account to memory or to the store unless its number is taken.
+     */
+    private boolean putNew(Long accountNumber, Account account) {
+        if (store == null) {
+            return accounts.putIfAbsent(accountNumber, account) == null;
+        }
+        synchronized (store.lockOf(accountNumber)) {
+            return store.insert(account);
+        }
+    }
+
+    /**
+     * @param counted whether the lookup counts as a use of the account for the cache.
+     * @return cached account, or the account loaded from the store offered to the cache, null if not stored.
+     */
+    private Account findStored(Long accountNumber, boolean counted) {
+        Account account = counted ? cache.get(accountNumber) : cache.peek(accountNumber);
+        if (account != null) {
+            return account;
+        }
+        // loading and caching under the store lock, a commit cannot write the store in between
+        synchronized (store.lockOf(accountNumber)) {
+            account = cache.peek(accountNumber);
+            if (account != null) {
+                return account;
+            }
+            CommittedAccount stored = store.find(accountNumber);
+            return stored == null ? null : cache.admit(accountNumber, stored.getAccount());
+        }
+    }
+
+    /**
+     * @return version of the stored state of the account, null if not committed yet. The caller holds its store lock.
+     */
+    private BalanceVersion storedVersion(Long accountNumber) {
+        CommittedAccount stored = store.find(accountNumber);
+        return stored == null || stored.getSequence() == AccountStore.UNCOMMITTED
+                ? null : BalanceVersion.of(stored.getSequence(), stored.getAccount(), null);
+    }
+
+    /**
+     * Reads recently committed versions first and then the store, skipping the accounts already read.
+     * A version dropped meanwhile is in the store as of a sequence no later than the snapshot, and an account
+     * stored as of a later sequence keeps its versions until no snapshot reads them.
+     */
+    private void readStoredAsOf(long sequence, BiConsumer<Long, BalanceVersion> action) {
+        Set<Long> read = new HashSet<>();
+        for (Map.Entry<Long, BalanceVersion> entry : versions.entrySet()) {
+            read.add(entry.getKey());
+            BalanceVersion version = entry.getValue().asOf(sequence);
+            if (version != null) {
+                action.accept(entry.getKey(), version);
+            }
+        }
+        store.forEach(stored -> {
+            Long accountNumber = stored.getAccount().getNumber();
+            if (read.contains(accountNumber)) {
+                return;
+            }
+            if (stored.getSequence() <= sequence) {
+                action.accept(accountNumber, BalanceVersion.of(stored.getSequence(), stored.getAccount(), null));
+                return;
+            }
+            BalanceVersion head = versions.get(accountNumber);
+            BalanceVersion version = head == null ? null : head.asOf(sequence);
+            if (version != null) {
+                action.accept(accountNumber, version);
+            }
+        });
+    }
+
+    private long oldestReadableSequence() {
+        synchronized (sequenceLock) {
+            long oldestReadable = visibleSequence();
+            for (AccountSnapshot snapshot : openSnapshots) {
+                oldestReadable = Math.min(oldestReadable, snapshot.getSequence());
+            }
+            return oldestReadable;
+        }
+    }
+
+    private long visibleSequence() {
+        Long oldestInFlight = inFlight.ceiling(Long.MIN_VALUE);
+        return oldestInFlight == null ? lastSequence : oldestInFlight - 1;
+    }
+
 }
@@ -0,0 +1,65 @@
+package com.bank.rest.repo;
+
+import com.bank.rest.model.Account;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Consistent view of all accounts as of one commit sequence.
+ * Versions needed by an open snapshot are not reclaimed, so it should be closed once read.
+ */
+public class AccountSnapshot implements AutoCloseable {
+
+    private final AccountRepository repository;
+    private final long sequence;
+
+    AccountSnapshot(AccountRepository repository, long sequence) {
+        this.repository = repository;
+        this.sequence = sequence;
+    }
+
+    public long getSequence() {
+        return sequence;
+    }
+
+    /**
+     * @return copies of accounts as they were committed at the snapshot sequence, archived and stored ones included.
+     */
+    public List<Account> getAccounts() {
+        List<Account> accounts = new ArrayList<>();
+        forEach(accounts::add);
+        return accounts;
+    }
+
+    /**
+     * Passes a copy of every account as committed at the snapshot sequence to the action,
+     * without collecting them first.
+     */
+    public void forEach(Consumer<Account> action) {
+        repository.readAsOf(sequence, (accountNumber, version) ->
+                action.accept(version.toAccount(accountNumber)));
+    }
+
+    /**
+     * @return sum of all balances at the snapshot sequence.
+     */
+    public BigDecimal getTotalBalance() {
+        BigDecimal[] total = {BigDecimal.ZERO};
+        repository.readAsOf(sequence, (accountNumber, version) -> {
+            BigDecimal balance = version.balance();
+            if (balance != null) {
+                total[0] = total[0].add(balance);
+            }
+        });
+        return total[0];
+    }
+
+    @Override
+    public void close() {
+        repository.release(this);
+    }
+
+}
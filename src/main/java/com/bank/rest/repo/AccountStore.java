@@ -0,0 +1,411 @@
+package com.bank.rest.repo;
+
+import com.bank.rest.model.Account;
+import com.bank.rest.model.PackedDecimal;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Currency;
+import java.util.function.Consumer;
+
+/**
+ * Memory mapped file keeping every account in a record of {@value #RECORD_BYTES} bytes. The slot of an account
+ * is found by hashing its number and probing the following slots, records are never removed so a lookup ends at
+ * the first free slot. Owners and balance digits that do not fit into the record are appended to an overflow file
+ * next to it.
+ * <p>
+ * A record is read and written under the lock of its account number, see {@link #lockOf(long)}, and inserted
+ * under the insert lock as well so two new accounts never take the same slot.
+ * <p>
+ * Layout: a header record (magic, record size, number of slots, capacity) followed by the slots. A record holds
+ * its state, flags, currency, owner, wide balance and wide held lengths, number, commit sequence, packed balance,
+ * packed held amount and the owner, wide balance and wide held bytes or their position in the overflow file.
+ * <p>
+ * Holds live in memory only, see {@code AuthorizationHolds}, so the held amounts are cleared when the store is opened.
+ */
+class AccountStore {
+
+    // sequence of an account inserted but not committed yet
+    static final long UNCOMMITTED = Long.MAX_VALUE;
+
+    // changed with the record layout so a store of another layout is not misread
+    private static final int MAGIC = 0x53544F53;
+    private static final int RECORD_BYTES = 128;
+    private static final int PAYLOAD_OFFSET = 48;
+    private static final int PAYLOAD_BYTES = RECORD_BYTES - PAYLOAD_OFFSET;
+    private static final int CHUNK_BITS = 30;
+    private static final int CHUNK_MASK = (1 << CHUNK_BITS) - 1;
+    private static final int STRIPES = 1024;
+    private static final byte USED = 1;
+    private static final byte DISABLED = 1;
+    private static final byte OVERFLOW = 2;
+
+    private final FileChannel channel;
+    private final FileChannel overflow;
+    private final MappedByteBuffer[] chunks;
+    private final long slots;
+    private final long capacity;
+    private final Object insertLock = new Object();
+    private final Object[] stripes = new Object[STRIPES];
+    // guarded by insertLock for writes
+    private volatile long size;
+    private final long lastSequence;
+
+    /**
+     * Opens the store at the path, creating it with room for the given number of accounts if it does not exist.
+     * Accounts whose commit was cut off by a crash count as committed with the last sequence, the holds of the
+     * previous run are released.
+     */
+    AccountStore(Path path, long capacity) {
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new Object();
+        }
+        try {
+            channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE);
+            overflow = FileChannel.open(path.resolveSibling(path.getFileName() + ".overflow"),
+                    StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            ByteBuffer header = ByteBuffer.allocate(RECORD_BYTES);
+            if (channel.size() == 0) {
+                if (capacity <= 0) {
+                    throw new IllegalArgumentException("Capacity must be positive");
+                }
+                this.capacity = capacity;
+                // at most 3 of 4 slots are used, which keeps probes short
+                this.slots = Long.highestOneBit(Math.max(capacity + capacity / 3, 1)) << 1;
+                header.putInt(MAGIC).putInt(RECORD_BYTES).putLong(slots).putLong(capacity).flip();
+                writeFully(channel, header, 0);
+            } else {
+                readFully(channel, header, 0);
+                header.flip();
+                if (header.getInt() != MAGIC || header.getInt() != RECORD_BYTES) {
+                    throw new IOException("Not an account store: " + path);
+                }
+                this.slots = header.getLong();
+                this.capacity = header.getLong();
+            }
+            long bytes = (slots + 1) * RECORD_BYTES;
+            chunks = new MappedByteBuffer[(int) ((bytes + CHUNK_MASK) >>> CHUNK_BITS)];
+            for (int i = 0; i < chunks.length; i++) {
+                long start = (long) i << CHUNK_BITS;
+                chunks[i] = channel.map(FileChannel.MapMode.READ_WRITE, start,
+                        Math.min(bytes - start, 1L << CHUNK_BITS));
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        long used = 0;
+        long last = 0;
+        boolean cutOff = false;
+        for (long slot = 0; slot < slots; slot++) {
+            long position = position(slot);
+            ByteBuffer chunk = chunk(position);
+            int at = offset(position);
+            if (chunk.get(at) == USED) {
+                used++;
+                chunk.putInt(at + 12, 0);
+                chunk.putLong(at + 40, 0);
+                long sequence = chunk.getLong(at + 24);
+                if (sequence == UNCOMMITTED) {
+                    cutOff = true;
+                } else {
+                    last = Math.max(last, sequence);
+                }
+            }
+        }
+        for (long slot = 0; cutOff && slot < slots; slot++) {
+            long position = position(slot);
+            ByteBuffer chunk = chunk(position);
+            int at = offset(position);
+            if (chunk.get(at) == USED && chunk.getLong(at + 24) == UNCOMMITTED) {
+                chunk.putLong(at + 24, last);
+            }
+        }
+        size = used;
+        lastSequence = last;
+    }
+
+    /**
+     * @return lock guarding the record of the account number.
+     */
+    Object lockOf(long accountNumber) {
+        return stripes[(int) (mix(accountNumber) >>> 54)];
+    }
+
+    /**
+     * @return stored state of the account, null if it is not stored. The caller holds its lock.
+     */
+    CommittedAccount find(long accountNumber) {
+        long slot = probe(accountNumber);
+        return slot < 0 ? null : read(position(slot));
+    }
+
+    /**
+     * Stores a new account as {@link #UNCOMMITTED}. The caller holds its lock.
+     *
+     * @return false if an account with the number is stored.
+     * @throws IllegalStateException if the store holds its capacity of accounts.
+     */
+    boolean insert(Account account) {
+        synchronized (insertLock) {
+            long slot = probe(account.getNumber());
+            if (slot >= 0) {
+                return false;
+            }
+            if (size >= capacity) {
+                throw new IllegalStateException("Account store is full");
+            }
+            long position = position(-slot - 1);
+            write(position, UNCOMMITTED, account);
+            // the state is written last, a reader probing past the slot without the insert lock
+            // only sees it used once the account number is in place
+            chunk(position).put(offset(position), USED);
+            size++;
+            return true;
+        }
+    }
+
+    /**
+     * Stores the committed state of an account, inserting it if it is not stored yet. The caller holds its lock.
+     */
+    void write(long sequence, Account account) {
+        long slot = probe(account.getNumber());
+        if (slot < 0) {
+            insert(account);
+            slot = probe(account.getNumber());
+        }
+        write(position(slot), sequence, account);
+    }
+
+    /**
+     * Reads every stored account, each one under its lock.
+     */
+    void forEach(Consumer<CommittedAccount> action) {
+        for (long slot = 0; slot < slots; slot++) {
+            long position = position(slot);
+            ByteBuffer chunk = chunk(position);
+            int at = offset(position);
+            if (chunk.get(at) != USED) {
+                continue;
+            }
+            CommittedAccount stored;
+            Object lock = lockOf(chunk.getLong(at + 16));
+            while (true) {
+                synchronized (lock) {
+                    Object actual = lockOf(chunk.getLong(at + 16));
+                    if (actual == lock) {
+                        stored = read(position);
+                        break;
+                    }
+                    // read a number not yet visible without the lock
+                    lock = actual;
+                }
+            }
+            action.accept(stored);
+        }
+    }
+
+    long size() {
+        return size;
+    }
+
+    long capacity() {
+        return capacity;
+    }
+
+    /**
+     * @return highest sequence committed to the store when it was opened.
+     */
+    long lastSequence() {
+        return lastSequence;
+    }
+
+    /**
+     * Flushes the mapped records to the file and closes it, the store cannot be used afterwards.
+     */
+    void close() {
+        for (MappedByteBuffer chunk : chunks) {
+            chunk.force();
+        }
+        try {
+            overflow.force(true);
+            overflow.close();
+            channel.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * @return slot of the account, or minus one minus the free slot ending the probe.
+     */
+    private long probe(long accountNumber) {
+        long mask = slots - 1;
+        for (long slot = mix(accountNumber) & mask; ; slot = (slot + 1) & mask) {
+            long position = position(slot);
+            ByteBuffer chunk = chunk(position);
+            int at = offset(position);
+            if (chunk.get(at) != USED) {
+                return -slot - 1;
+            }
+            if (chunk.getLong(at + 16) == accountNumber) {
+                return slot;
+            }
+        }
+    }
+
+    private CommittedAccount read(long position) {
+        ByteBuffer chunk = chunk(position);
+        int at = offset(position);
+        byte flags = chunk.get(at + 1);
+        short currency = chunk.getShort(at + 2);
+        int ownerLength = chunk.getInt(at + 4);
+        int wideLength = chunk.getInt(at + 8);
+        int wideHeldLength = chunk.getInt(at + 12);
+        long number = chunk.getLong(at + 16);
+        long sequence = chunk.getLong(at + 24);
+        long balance = chunk.getLong(at + 32);
+        long held = chunk.getLong(at + 40);
+
+        byte[] payload = new byte[Math.max(ownerLength, 0) + wideLength + wideHeldLength];
+        if ((flags & OVERFLOW) != 0) {
+            try {
+                readFully(overflow, ByteBuffer.wrap(payload), chunk.getLong(at + PAYLOAD_OFFSET));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        } else {
+            for (int i = 0; i < payload.length; i++) {
+                payload[i] = chunk.get(at + PAYLOAD_OFFSET + i);
+            }
+        }
+        String owner = ownerLength < 0 ? null : new String(payload, 0, ownerLength, StandardCharsets.UTF_8);
+        BigDecimal wide = wideLength == 0 ? null
+                : new BigDecimal(new String(payload, Math.max(ownerLength, 0), wideLength, StandardCharsets.US_ASCII));
+        BigDecimal wideHeld = wideHeldLength == 0 ? null : new BigDecimal(new String(payload,
+                Math.max(ownerLength, 0) + wideLength, wideHeldLength, StandardCharsets.US_ASCII));
+        Account account = new Account(number, owner, PackedDecimal.unpack(balance, wide), (flags & DISABLED) != 0);
+        account.setHeld(PackedDecimal.unpack(held, wideHeld));
+        account.setCurrency(currencyCode(currency));
+        return new CommittedAccount(sequence, account);
+    }
+
+    private void write(long position, long sequence, Account account) {
+        ByteBuffer chunk = chunk(position);
+        int at = offset(position);
+        String owner = account.getOwner();
+        byte[] ownerBytes = owner == null ? new byte[0] : owner.getBytes(StandardCharsets.UTF_8);
+        long balance = account.packedBalance();
+        byte[] wideBytes = balance == PackedDecimal.WIDE
+                ? account.getBalance().toString().getBytes(StandardCharsets.US_ASCII) : new byte[0];
+        long held = account.packedHeld();
+        byte[] wideHeldBytes = held == PackedDecimal.WIDE
+                ? account.getHeld().toString().getBytes(StandardCharsets.US_ASCII) : new byte[0];
+
+        byte flags = account.isDisabled() ? DISABLED : 0;
+        if (ownerBytes.length + wideBytes.length + wideHeldBytes.length > PAYLOAD_BYTES) {
+            flags |= OVERFLOW;
+            chunk.putLong(at + PAYLOAD_OFFSET, appendOverflow(ownerBytes, wideBytes, wideHeldBytes));
+        } else {
+            int payloadAt = at + PAYLOAD_OFFSET;
+            for (byte[] bytes : new byte[][]{ownerBytes, wideBytes, wideHeldBytes}) {
+                for (byte b : bytes) {
+                    chunk.put(payloadAt++, b);
+                }
+            }
+        }
+        chunk.put(at + 1, flags);
+        chunk.putShort(at + 2, currency(account.getCurrency()));
+        chunk.putInt(at + 4, owner == null ? -1 : ownerBytes.length);
+        chunk.putInt(at + 8, wideBytes.length);
+        chunk.putInt(at + 12, wideHeldBytes.length);
+        chunk.putLong(at + 16, account.getNumber());
+        chunk.putLong(at + 24, sequence);
+        chunk.putLong(at + 32, balance);
+        chunk.putLong(at + 40, held);
+    }
+
+    /**
+     * @return position of the bytes in the overflow file, earlier bytes of the account are left behind.
+     */
+    private synchronized long appendOverflow(byte[] ownerBytes, byte[] wideBytes, byte[] wideHeldBytes) {
+        try {
+            long position = overflow.size();
+            ByteBuffer buffer = ByteBuffer.allocate(ownerBytes.length + wideBytes.length + wideHeldBytes.length);
+            buffer.put(ownerBytes).put(wideBytes).put(wideHeldBytes).flip();
+            writeFully(overflow, buffer, position);
+            return position;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * @return the 3 letters of an ISO 4217 code in base 26 plus one, 0 for the base currency.
+     */
+    private static short currency(String code) {
+        if (code == null) {
+            return 0;
+        }
+        int packed = 0;
+        for (int i = 0; i < 3; i++) {
+            int letter = code.length() == 3 ? code.charAt(i) - 'A' : -1;
+            if (letter < 0 || letter >= 26) {
+                throw new IllegalArgumentException("Not an ISO 4217 currency code: " + code);
+            }
+            packed = packed * 26 + letter;
+        }
+        return (short) (packed + 1);
+    }
+
+    private static String currencyCode(short currency) {
+        if (currency == 0) {
+            return null;
+        }
+        int packed = currency - 1;
+        char[] letters = {(char) ('A' + packed / 676), (char) ('A' + packed / 26 % 26), (char) ('A' + packed % 26)};
+        // the Currency instance is cached, so accounts share its code
+        return Currency.getInstance(new String(letters)).getCurrencyCode();
+    }
+
+    private ByteBuffer chunk(long position) {
+        return chunks[(int) (position >>> CHUNK_BITS)];
+    }
+
+    private static int offset(long position) {
+        return (int) (position & CHUNK_MASK);
+    }
+
+    private static long position(long slot) {
+        return (slot + 1) * RECORD_BYTES;
+    }
+
+    private static long mix(long accountNumber) {
+        long hash = accountNumber * 0x9E3779B97F4A7C15L;
+        return hash ^ (hash >>> 29);
+    }
+
+    private static void readFully(FileChannel file, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (file.read(buffer, position + buffer.position()) < 0) {
+                throw new EOFException();
+            }
+        }
+    }
+
+    private static void writeFully(FileChannel file, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            file.write(buffer, position + buffer.position());
+        }
+    }
+
+}
@@ -0,0 +1,152 @@
+package com.bank.rest.repo;
+
+import com.bank.rest.model.Account;
+import com.bank.rest.model.PackedDecimal;
+
+import java.math.BigDecimal;
+
+/**
+ * Immutable state of an account as committed at a sequence number, kept as compact as the account itself.
+ * Versions of one account form a chain from the newest to the oldest one which is cut by the reclaimer.
+ */
+class BalanceVersion {
+
+    // sequence of the placeholder of an account changed before its first commit, newer than every snapshot
+    static final long UNCOMMITTED = Long.MAX_VALUE;
+
+    final long sequence;
+    private final String owner;
+    private final long balance;
+    final boolean disabled;
+    volatile BalanceVersion previous;
+    // the account is being changed, so the version is kept even if no snapshot reads it
+    volatile boolean pinned;
+
+    private BalanceVersion(long sequence, String owner, long balance, boolean disabled, BalanceVersion previous) {
+        this.sequence = sequence;
+        this.owner = owner;
+        this.balance = balance;
+        this.disabled = disabled;
+        this.previous = previous;
+    }
+
+    /**
+     * @return version of the current state of the account, the caller holds its lock.
+     */
+    static BalanceVersion of(long sequence, Account account, BalanceVersion previous) {
+        long packed = account.packedBalance();
+        if (account.packedHeld() != 0 || account.getCurrency() != null) {
+            return new Extended(sequence, account.getOwner(), account.getBalance(), account.getHeld(),
+                    account.getCurrency(), account.isDisabled(), previous);
+        }
+        if (packed == PackedDecimal.WIDE) {
+            return new Wide(sequence, account.getOwner(), account.getBalance(), account.isDisabled(), previous);
+        }
+        return new BalanceVersion(sequence, account.getOwner(), packed, account.isDisabled(), previous);
+    }
+
+    /**
+     * @return pinned placeholder of an account that was not committed yet, no snapshot reads it.
+     */
+    static BalanceVersion uncommitted() {
+        BalanceVersion placeholder = new BalanceVersion(UNCOMMITTED, null, 0, false, null);
+        placeholder.pinned = true;
+        return placeholder;
+    }
+
+    String owner() {
+        return owner;
+    }
+
+    BigDecimal balance() {
+        return PackedDecimal.unpack(balance, null);
+    }
+
+    /**
+     * @return new account in the state of this version.
+     */
+    Account toAccount(long accountNumber) {
+        Account account = new Account(accountNumber, owner(), balance(), disabled);
+        account.setHeld(held());
+        account.setCurrency(currency());
+        return account;
+    }
+
+    /**
+     * @return amount reserved by holds, zero if nothing was held.
+     */
+    BigDecimal held() {
+        return BigDecimal.ZERO;
+    }
+
+    /**
+     * @return currency code, null for the base currency.
+     */
+    String currency() {
+        return null;
+    }
+
+    /**
+     * @return newest version committed at or before the sequence, null if the account did not exist yet.
+     */
+    BalanceVersion asOf(long sequence) {
+        BalanceVersion version = this;
+        while (version != null && version.sequence > sequence) {
+            version = version.previous;
+        }
+        return version;
+    }
+
+    /**
+     * Version of a balance that does not fit into a long.
+     */
+    private static final class Wide extends BalanceVersion {
+
+        private final BigDecimal wideBalance;
+
+        private Wide(long sequence, String owner, BigDecimal balance, boolean disabled, BalanceVersion previous) {
+            super(sequence, owner, PackedDecimal.WIDE, disabled, previous);
+            this.wideBalance = balance;
+        }
+
+        @Override
+        BigDecimal balance() {
+            return wideBalance;
+        }
+    }
+
+    /**
+     * Version of an account with active holds or in a currency other than the base currency,
+     * kept apart so the versions of the other accounts do not get larger.
+     */
+    private static final class Extended extends BalanceVersion {
+
+        private final BigDecimal fullBalance;
+        private final BigDecimal held;
+        private final String currency;
+
+        private Extended(long sequence, String owner, BigDecimal balance, BigDecimal held, String currency,
+                         boolean disabled, BalanceVersion previous) {
+            super(sequence, owner, PackedDecimal.WIDE, disabled, previous);
+            this.fullBalance = balance;
+            this.held = held;
+            this.currency = currency;
+        }
+
+        @Override
+        BigDecimal balance() {
+            return fullBalance;
+        }
+
+        @Override
+        BigDecimal held() {
+            return held;
+        }
+
+        @Override
+        String currency() {
+            return currency;
+        }
+    }
+
+}
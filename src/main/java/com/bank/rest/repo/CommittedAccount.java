@@ -0,0 +1,26 @@
+package com.bank.rest.repo;
+
+import com.bank.rest.model.Account;
+
+/**
+ * Detached copy of the latest committed state of an account and the sequence it was committed at.
+ */
+public class CommittedAccount {
+
+    private final long sequence;
+    private final Account account;
+
+    CommittedAccount(long sequence, Account account) {
+        this.sequence = sequence;
+        this.account = account;
+    }
+
+    public long getSequence() {
+        return sequence;
+    }
+
+    public Account getAccount() {
+        return account;
+    }
+
+}
@@ -0,0 +1,209 @@
+package com.bank.rest.server;
+
+import com.bank.rest.exception.ApiWebException;
+import com.bank.rest.exception.ErrorCode;
+import com.sun.jersey.api.core.ResourceConfig;
+import com.sun.jersey.spi.container.ContainerRequest;
+import com.sun.jersey.spi.container.ContainerRequestFilter;
+import com.sun.jersey.spi.container.ContainerResponse;
+import com.sun.jersey.spi.container.ContainerResponseFilter;
+
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.ext.ExceptionMapper;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Jersey filters applying a changing request sent with an {@code Idempotency-Key} header only once.
+ * The response of the first request with a key, method and path is kept for {@code bank.idempotency.ttlMillis}
+ * and returned to the repeated ones, which wait for it while the first is still in progress.
+ * Responses that did not apply the request, overload and server errors, are not kept so that it can be retried.
+ * Exceptions the resources do not map are turned into INTERNAL_ERROR responses so they pass the response filter
+ * too, and a request whose handler ended without any response is taken over by a repeated one once it is pending
+ * for {@code bank.idempotency.pendingMillis}.
+ */
+public class IdempotencyFilter implements ContainerRequestFilter, ContainerResponseFilter {
+
+    public static final String IDEMPOTENCY_KEY = "Idempotency-Key";
+    /**
+     * Set on responses returned again for a repeated request.
+     */
+    public static final String REPLAYED = "Idempotent-Replayed";
+
+    private static final int MAX_KEY_LENGTH = 255;
+    private static final String PROPERTY = IdempotencyFilter.class.getName();
+
+    private static final Logger LOG = Logger.getLogger(IdempotencyFilter.class.getName());
+
+    private static final IdempotencyFilter SINGLE_INSTANCE = new IdempotencyFilter(
+            Integer.getInteger("bank.idempotency.capacity", 100_000),
+            Long.getLong("bank.idempotency.ttlMillis", TimeUnit.MINUTES.toMillis(10)),
+            Long.getLong("bank.idempotency.waitMillis", 5000),
+            Long.getLong("bank.idempotency.pendingMillis", TimeUnit.MINUTES.toMillis(1)));
+
+    private final ConcurrentHashMap<String, Entry> entries = new ConcurrentHashMap<>();
+    private final Queue<Entry> expiry = new ConcurrentLinkedQueue<>();
+    private final int capacity;
+    private final long ttlNanos;
+    private final long waitMillis;
+    private final long pendingNanos;
+
+    /**
+     * @param capacity      most responses kept, the oldest are dropped first.
+     * @param ttlMillis     time a response is kept for.
+     * @param waitMillis    time a repeated request waits for the first one before it is rejected.
+     * @param pendingMillis time after which a first request still without response is given up.
+     */
+    public IdempotencyFilter(int capacity, long ttlMillis, long waitMillis, long pendingMillis) {
+        this.capacity = capacity;
+        this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(ttlMillis);
+        this.waitMillis = waitMillis;
+        this.pendingNanos = TimeUnit.MILLISECONDS.toNanos(pendingMillis);
+    }
+
+    public static IdempotencyFilter getSingleInstance() {
+        return SINGLE_INSTANCE;
+    }
+
+    @SuppressWarnings("unchecked")
+    public void install(ResourceConfig resourceConfig) {
+        resourceConfig.getContainerRequestFilters().add(this);
+        resourceConfig.getContainerResponseFilters().add(this);
+        resourceConfig.getSingletons().add(new UnmappedExceptions());
+    }
+
+    @Override
+    public ContainerRequest filter(ContainerRequest request) {
+        String key = request.getHeaderValue(IDEMPOTENCY_KEY);
+        if (key == null || "GET".equals(request.getMethod())) {
+            return request;
+        }
+        if (key.isEmpty() || key.length() > MAX_KEY_LENGTH) {
+            throw new ApiWebException(ErrorCode.MALFORMED_REQUEST, ErrorCode.MALFORMED_REQUEST.getText());
+        }
+
+        key = key + ' ' + request.getMethod() + ' ' + request.getRequestUri().getRawPath();
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(waitMillis);
+        while (true) {
+            Entry entry = new Entry(key, System.nanoTime());
+            Entry first = entries.putIfAbsent(key, entry);
+            if (first == null || isAbandoned(first, entry.createdNanos) && entries.replace(key, first, entry)) {
+                if (first != null) {
+                    // requests waiting for it retry and find this one
+                    first.response.complete(null);
+                }
+                expiry.add(entry);
+                expire(entry.createdNanos);
+                request.getProperties().put(PROPERTY, entry);
+                return request;
+            }
+            Stored stored = await(first, deadline);
+            if (stored != null) {
+                throw new WebApplicationException(Response.status(stored.status).entity(stored.entity)
+                        .type(stored.type).header(REPLAYED, "true").build());
+            }
+            // the first request was not applied, this one takes its place
+        }
+    }
+
+    @Override
+    public ContainerResponse filter(ContainerRequest request, ContainerResponse response) {
+        Entry entry = (Entry) request.getProperties().remove(PROPERTY);
+        if (entry == null) {
+            return response;
+        }
+        int status = response.getStatus();
+        if (status == 429 || status >= 500) {
+            entries.remove(entry.key, entry);
+            entry.response.complete(null);
+        } else {
+            Object type = response.getHttpHeaders().getFirst("Content-Type");
+            entry.response.complete(new Stored(status, response.getEntity(), type == null ? null
+                    : type instanceof MediaType ? (MediaType) type : MediaType.valueOf(type.toString())));
+        }
+        return response;
+    }
+
+    /**
+     * @return true if the handler of the request ended without a response, or takes longer than it may.
+     */
+    private boolean isAbandoned(Entry entry, long now) {
+        return !entry.response.isDone() && now - entry.createdNanos > pendingNanos;
+    }
+
+    private Stored await(Entry first, long deadline) {
+        try {
+            return first.response.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            throw new ApiWebException(ErrorCode.IDEMPOTENCY_KEY_IN_USE, ErrorCode.IDEMPOTENCY_KEY_IN_USE.getText());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ApiWebException(e);
+        } catch (ExecutionException e) {
+            throw new ApiWebException(ErrorCode.INTERNAL_ERROR, e.getCause().getMessage());
+        }
+    }
+
+    /**
+     * Drops the responses that outlived their time or exceed the capacity, oldest first.
+     */
+    private void expire(long now) {
+        Entry oldest;
+        while ((oldest = expiry.peek()) != null
+                && (now - oldest.createdNanos > ttlNanos || entries.size() > capacity)) {
+            if (expiry.remove(oldest)) {
+                entries.remove(oldest.key, oldest);
+            }
+        }
+    }
+
+    /**
+     * Maps the exceptions no resource maps to INTERNAL_ERROR responses, so the response filters see them.
+     */
+    private static final class UnmappedExceptions implements ExceptionMapper<RuntimeException> {
+
+        @Override
+        public Response toResponse(RuntimeException exception) {
+            if (exception instanceof WebApplicationException) {
+                return ((WebApplicationException) exception).getResponse();
+            }
+            LOG.log(Level.SEVERE, "Request failed", exception);
+            return new ApiWebException(ErrorCode.INTERNAL_ERROR, exception.getMessage()).getResponse();
+        }
+    }
+
+    private static final class Entry {
+
+        private final String key;
+        private final long createdNanos;
+        private final CompletableFuture<Stored> response = new CompletableFuture<>();
+
+        private Entry(String key, long createdNanos) {
+            this.key = key;
+            this.createdNanos = createdNanos;
+        }
+    }
+
+    private static final class Stored {
+
+        private final int status;
+        private final Object entity;
+        private final MediaType type;
+
+        private Stored(int status, Object entity, MediaType type) {
+            this.status = status;
+            this.entity = entity;
+            this.type = type;
+        }
+    }
+
+}
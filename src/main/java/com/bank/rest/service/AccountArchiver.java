@@ -0,0 +1,112 @@
+package com.bank.rest.service;
+
+import com.bank.rest.model.Account;
+import com.bank.rest.repo.AccountRepository;
+import com.bank.rest.repo.CommittedAccount;
+
+import java.time.Clock;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Moves accounts that have been disabled for a while from memory to the archive of the repository.
+ * Accounts are written to the archive first and dropped from memory afterwards under their lock unless they
+ * changed meanwhile, so an account is always found in memory, in the archive or in both.
+ * Reads of archived accounts are served from the archive, an update loads the account back into memory.
+ */
+public class AccountArchiver implements AccountRepository.CommitListener {
+
+    private static final Logger LOG = Logger.getLogger(AccountArchiver.class.getName());
+
+    private final AccountRepository repository;
+    private final LockTable locks;
+    private final CreditCoalescer credits;
+    private final Clock clock;
+    // disabled accounts in memory and since when they are disabled
+    private final Map<Long, Long> disabledSince = new ConcurrentHashMap<>();
+
+    public AccountArchiver(AccountRepository repository, LockTable locks, CreditCoalescer credits, Clock clock) {
+        this.repository = repository;
+        this.locks = locks;
+        this.credits = credits;
+        this.clock = clock;
+    }
+
+    /**
+     * Archives accounts disabled for the given time every interval on a daemon thread.
+     */
+    public void start(long intervalMillis, long disabledForMillis) {
+        ScheduledExecutorService archiver = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "account-archiver");
+            thread.setDaemon(true);
+            return thread;
+        });
+        archiver.scheduleWithFixedDelay(() -> {
+            try {
+                archive(disabledForMillis);
+            } catch (RuntimeException e) {
+                // the accounts stay in memory and are tried again next time
+                LOG.log(Level.WARNING, "Archiving failed", e);
+            }
+        }, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void committed(long sequence, Account account) {
+        if (account.isDisabled()) {
+            disabledSince.putIfAbsent(account.getNumber(), clock.millis());
+        } else if (!disabledSince.isEmpty()) {
+            disabledSince.remove(account.getNumber());
+        }
+    }
+
+    /**
+     * Archives the accounts disabled for at least the given time and drops them from memory.
+     * Accounts with credits not folded yet or active holds are left for a later run, the archive does not keep
+     * currencies so accounts in other than the base currency stay in memory.
+     *
+     * @return number of accounts dropped from memory.
+     */
+    public int archive(long disabledForMillis) {
+        if (!repository.isArchiveOpen()) {
+            return 0;
+        }
+        long disabledBefore = clock.millis() - disabledForMillis;
+        List<CommittedAccount> due = new ArrayList<>();
+        disabledSince.forEach((accountNumber, since) -> {
+            if (since <= disabledBefore && credits.pending(accountNumber).signum() == 0) {
+                Optional<CommittedAccount> committed = repository.findCommitted(accountNumber);
+                if (committed.isPresent() && committed.get().getAccount().isDisabled()
+                        && committed.get().getAccount().packedHeld() == 0
+                        && committed.get().getAccount().getCurrency() == null) {
+                    due.add(committed.get());
+                }
+            }
+        });
+        if (due.isEmpty()) {
+            return 0;
+        }
+
+        repository.archive(due);
+        int evicted = 0;
+        for (CommittedAccount archived : due) {
+            Long accountNumber = archived.getAccount().getNumber();
+            try (LockTable.Held held = locks.lock(accountNumber)) {
+                if (credits.pending(accountNumber).signum() == 0 && repository.evict(archived)) {
+                    disabledSince.remove(accountNumber);
+                    evicted++;
+                }
+            }
+        }
+        return evicted;
+    }
+
+}
@@ -0,0 +1,361 @@
+package com.bank.rest.service;
+
+import com.bank.rest.dto.ImportResultDto;
+import com.bank.rest.exception.ApiException;
+import com.bank.rest.exception.ErrorCode;
+import com.bank.rest.json.AccountCodec;
+import com.bank.rest.json.JsonReader;
+import com.bank.rest.model.Account;
+import com.bank.rest.model.AuditRecord;
+import com.bank.rest.repo.AccountRepository;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Streams accounts from NDJSON or CSV rows of (number, owner, balance, disabled) into the repository.
+ * The input is cut into chunks of whole lines which are parsed, validated and added in parallel, one commit per
+ * chunk. At most two chunks per thread are in flight, so memory does not grow with the size of the input.
+ * Rows are rejected for the same reasons as single account operations or when the number is taken, and rows longer
+ * than the maximum line length are skipped as malformed without being buffered whole.
+ */
+public class AccountImporter {
+
+    public static final String NDJSON = "application/x-ndjson";
+    public static final String CSV = "text/csv";
+
+    private static final int CHUNK_BYTES = 256 * 1024;
+    private static final int MAX_REPORTED_ERRORS = 1000;
+
+    /**
+     * Row format of an import.
+     */
+    public enum Format {
+        NDJSON, CSV;
+
+        /**
+         * @return CSV for {@code text/csv} and {@code .csv} files, NDJSON otherwise.
+         */
+        public static Format of(String mediaTypeOrFileName) {
+            String lower = mediaTypeOrFileName.toLowerCase();
+            return lower.startsWith(AccountImporter.CSV) || lower.endsWith(".csv") ? CSV : NDJSON;
+        }
+    }
+
+    private final AccountRepository repository;
+    private final AccountStatistics statistics;
+    private final AuditTrail audit;
+    private final FxRateTable fxRates;
+    private final int parallelism;
+    private final int maxLineBytes;
+
+    /**
+     * @param maxLineBytes longest row accepted, at least {@value #CHUNK_BYTES} bytes are always accepted.
+     */
+    public AccountImporter(AccountRepository repository, AccountStatistics statistics, AuditTrail audit,
+                           FxRateTable fxRates, int parallelism, int maxLineBytes) {
+        this.repository = repository;
+        this.statistics = statistics;
+        this.audit = audit;
+        this.fxRates = fxRates;
+        this.parallelism = parallelism;
+        this.maxLineBytes = Math.max(CHUNK_BYTES, maxLineBytes);
+    }
+
+    /**
+     * Imports all rows of the stream, rejected rows do not stop the import.
+     *
+     * @return number of imported and rejected rows and the first rejected rows.
+     */
+    public ImportResultDto importAccounts(InputStream in, Format format) throws IOException {
+        ExecutorService workers = Executors.newFixedThreadPool(parallelism, runnable -> {
+            Thread thread = new Thread(runnable, "account-import");
+            thread.setDaemon(true);
+            return thread;
+        });
+        Deque<Future<ChunkResult>> inFlight = new ArrayDeque<>();
+        ImportTotals totals = new ImportTotals();
+        try {
+            byte[] buffer = new byte[CHUNK_BYTES];
+            int length = 0;
+            long line = 1;
+            boolean end = false;
+            boolean skipping = false;
+            while (!end) {
+                int read = in.read(buffer, length, buffer.length - length);
+                if (read == -1) {
+                    end = true;
+                } else {
+                    length += read;
+                    if (length < buffer.length) {
+                        continue;
+                    }
+                }
+                if (skipping) {
+                    int lineEnd = firstLineEnd(buffer, length);
+                    if (lineEnd == 0) {
+                        length = 0;
+                        continue;
+                    }
+                    System.arraycopy(buffer, lineEnd, buffer, 0, length - lineEnd);
+                    length -= lineEnd;
+                    line++;
+                    skipping = false;
+                    if (!end && length < buffer.length) {
+                        continue;
+                    }
+                }
+                if (length == 0) {
+                    break;
+                }
+                int cut = end ? length : lastLineEnd(buffer, length);
+                if (cut == 0) {
+                    if (buffer.length < maxLineBytes) {
+                        // a single line longer than the buffer
+                        buffer = Arrays.copyOf(buffer, Math.min(buffer.length * 2, maxLineBytes));
+                        continue;
+                    }
+                    // rows before it are reported first
+                    while (!inFlight.isEmpty()) {
+                        totals.add(inFlight.removeFirst().get());
+                    }
+                    totals.reject(line, new ApiException(ErrorCode.MALFORMED_REQUEST));
+                    skipping = true;
+                    length = 0;
+                    continue;
+                }
+
+                byte[] chunk = buffer;
+                long firstLine = line;
+                line += countLines(chunk, cut);
+                int chunkLength = cut;
+                if (inFlight.size() >= parallelism * 2) {
+                    totals.add(inFlight.removeFirst().get());
+                }
+                inFlight.addLast(workers.submit(() -> importChunk(chunk, chunkLength, firstLine, format)));
+
+                buffer = new byte[Math.max(CHUNK_BYTES, length - cut)];
+                System.arraycopy(chunk, cut, buffer, 0, length - cut);
+                length -= cut;
+            }
+            while (!inFlight.isEmpty()) {
+                totals.add(inFlight.removeFirst().get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ApiException(ErrorCode.SERVER_OVERLOADED);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof ApiException) {
+                throw (ApiException) e.getCause();
+            }
+            throw new ApiException(ErrorCode.INTERNAL_ERROR);
+        } finally {
+            inFlight.forEach(future -> future.cancel(true));
+            workers.shutdown();
+        }
+
+        return new ImportResultDto(totals.imported, totals.rejected, totals.errors);
+    }
+
+    private ChunkResult importChunk(byte[] chunk, int length, long firstLine, Format format) {
+        ChunkResult result = new ChunkResult();
+        List<Account> accounts = new ArrayList<>(length / 32);
+        List<Long> lines = new ArrayList<>(length / 32);
+        long line = firstLine;
+        for (int start = 0; start < length; line++) {
+            int end = start;
+            while (end < length && chunk[end] != '\n') {
+                end++;
+            }
+            int lineEnd = end > start && chunk[end - 1] == '\r' ? end - 1 : end;
+            if (lineEnd > start && !(format == Format.CSV && line == 1 && isHeader(chunk, start, lineEnd))) {
+                try {
+                    Account account = format == Format.CSV
+                            ? parseCsv(new String(chunk, start, lineEnd - start, StandardCharsets.UTF_8))
+                            : parseJson(chunk, start, lineEnd - start);
+                    validate(account);
+                    accounts.add(account);
+                    lines.add(line);
+                } catch (ApiException e) {
+                    result.reject(line, e);
+                }
+            }
+            start = end + 1;
+        }
+
+        for (int rejected : repository.saveAllNew(accounts)) {
+            Account account = accounts.set(rejected, null);
+            result.reject(lines.get(rejected), new ApiException(ErrorCode.ACCOUNT_EXISTS, account.getNumber()));
+        }
+        result.errors.sort(Comparator.comparingLong(ImportResultDto.RowError::getLine));
+        long disabled = 0;
+        Map<String, BigDecimal> balances = new HashMap<>();
+        for (Account account : accounts) {
+            if (account != null) {
+                result.imported++;
+                audit.record(AuditRecord.Type.IMPORT, account.getNumber(), 0, account.getBalance());
+                disabled += account.isDisabled() ? 1 : 0;
+                balances.merge(account.getCurrency(), account.getBalance(), BigDecimal::add);
+            }
+        }
+        statistics.accountsImported(result.imported - disabled, disabled, balances);
+        return result;
+    }
+
+    private static Account parseJson(byte[] chunk, int start, int length) {
+        JsonReader reader = JsonReader.acquire(chunk, start, length);
+        Account account = AccountCodec.INSTANCE.read(reader);
+        reader.end();
+        return account;
+    }
+
+    /**
+     * Parses {@code number,owner,balance,disabled}, fields may be quoted with double quotes and empty fields are null.
+     */
+    private static Account parseCsv(String row) {
+        List<String> fields = new ArrayList<>(4);
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < row.length(); i++) {
+            char c = row.charAt(i);
+            if (quoted) {
+                if (c == '"' && i + 1 < row.length() && row.charAt(i + 1) == '"') {
+                    field.append('"');
+                    i++;
+                } else if (c == '"') {
+                    quoted = false;
+                } else {
+                    field.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+        fields.add(field.toString());
+        if (quoted || fields.size() < 3 || fields.size() > 4) {
+            throw new ApiException(ErrorCode.MALFORMED_REQUEST);
+        }
+
+        try {
+            String number = fields.get(0).trim();
+            String balance = fields.get(2).trim();
+            String disabled = fields.size() == 4 ? fields.get(3).trim() : "";
+            if (!disabled.isEmpty() && !disabled.equalsIgnoreCase("true") && !disabled.equalsIgnoreCase("false")) {
+                throw new ApiException(ErrorCode.MALFORMED_REQUEST);
+            }
+            String owner = fields.get(1);
+            return new Account(number.isEmpty() ? null : Long.valueOf(number), owner.isEmpty() ? null : owner,
+                    balance.isEmpty() ? null : new BigDecimal(balance), Boolean.parseBoolean(disabled));
+        } catch (NumberFormatException e) {
+            throw new ApiException(ErrorCode.MALFORMED_REQUEST);
+        }
+    }
+
+    private void validate(Account account) {
+        if (account.getNumber() == null) {
+            throw new ApiException(ErrorCode.NULL_ACCOUNT_NUMBER);
+        }
+        if (account.getOwner() == null) {
+            throw new ApiException(ErrorCode.NULL_OWNER);
+        }
+        if (account.getBalance() == null) {
+            throw new ApiException(ErrorCode.MALFORMED_REQUEST);
+        }
+        if (account.getBalance().signum() < 0) {
+            throw new ApiException(ErrorCode.NEGATIVE_BALANCE);
+        }
+        if (account.getCurrency() != null) {
+            account.setCurrency(fxRates.current().accountCurrency(account.getCurrency()));
+        }
+    }
+
+    private static boolean isHeader(byte[] chunk, int start, int end) {
+        return end - start >= 6 && new String(chunk, start, 6, StandardCharsets.US_ASCII).equalsIgnoreCase("number");
+    }
+
+    private static int firstLineEnd(byte[] buffer, int length) {
+        for (int i = 0; i < length; i++) {
+            if (buffer[i] == '\n') {
+                return i + 1;
+            }
+        }
+        return 0;
+    }
+
+    private static int lastLineEnd(byte[] buffer, int length) {
+        for (int i = length - 1; i >= 0; i--) {
+            if (buffer[i] == '\n') {
+                return i + 1;
+            }
+        }
+        return 0;
+    }
+
+    private static long countLines(byte[] chunk, int length) {
+        long lines = 0;
+        for (int i = 0; i < length; i++) {
+            if (chunk[i] == '\n') {
+                lines++;
+            }
+        }
+        return lines;
+    }
+
+    private static class ChunkResult {
+
+        private long imported;
+        private long rejected;
+        private final List<ImportResultDto.RowError> errors = new ArrayList<>();
+
+        private void reject(long line, ApiException e) {
+            rejected++;
+            if (errors.size() < MAX_REPORTED_ERRORS) {
+                errors.add(new ImportResultDto.RowError(line, e.getCode().name(), e.getMessage()));
+            }
+        }
+    }
+
+    private static class ImportTotals {
+
+        private long imported;
+        private long rejected;
+        private final List<ImportResultDto.RowError> errors = new ArrayList<>();
+
+        private void reject(long line, ApiException e) {
+            rejected++;
+            if (errors.size() < MAX_REPORTED_ERRORS) {
+                errors.add(new ImportResultDto.RowError(line, e.getCode().name(), e.getMessage()));
+            }
+        }
+
+        private void add(ChunkResult chunk) {
+            imported += chunk.imported;
+            rejected += chunk.rejected;
+            for (ImportResultDto.RowError error : chunk.errors) {
+                if (errors.size() < MAX_REPORTED_ERRORS) {
+                    errors.add(error);
+                }
+            }
+        }
+    }
+
+}
@@ -0,0 +1,178 @@
+package com.bank.rest.service;
+
+import com.bank.rest.dto.CacheStatsDto;
+import com.bank.rest.json.AccountCodec;
+import com.bank.rest.json.JsonWriter;
+import com.bank.rest.model.Account;
+import com.bank.rest.repo.AccountRepository;
+import com.bank.rest.repo.CommittedAccount;
+
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * JSON of accounts as last committed, serialized once and handed out as is until the account changes.
+ * A commit invalidates the entry of its account, the next read serializes the account again.
+ * Entries carry the sequence they were serialized at, so a read racing a commit never stores an older state.
+ * Holds at most {@code capacity} entries: every hit gives an entry a credit, up to {@link #MAX_CREDITS}, and when
+ * full a clock hand takes credits from the entries it passes and evicts the first one without any, so frequently
+ * read accounts stay while a scan of cold accounts only replaces cold ones.
+ */
+public class AccountJsonCache implements AccountRepository.CommitListener {
+
+    private static final int MAX_CREDITS = 8;
+
+    private final AccountRepository repository;
+    private final int capacity;
+    private final Map<Long, Entry> entries = new ConcurrentHashMap<>();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    // guarded by this
+    private final Entry[] slots;
+    private int size;
+    private int hand;
+
+    /**
+     * @param capacity maximal number of cached accounts, 0 to serialize every read.
+     */
+    public AccountJsonCache(AccountRepository repository, int capacity) {
+        this.repository = repository;
+        this.capacity = capacity;
+        this.slots = new Entry[capacity];
+    }
+
+    /**
+     * Creates a cache sized by the {@code bank.cache.capacity} system property.
+     */
+    public static AccountJsonCache fromSystemProperties(AccountRepository repository) {
+        return new AccountJsonCache(repository, Integer.getInteger("bank.cache.capacity", 10_000));
+    }
+
+    /**
+     * @return JSON of the latest committed state of the account, which must not be modified,
+     * or null if the account was never committed.
+     */
+    public byte[] get(Long accountNumber) {
+        Entry entry = entries.get(accountNumber);
+        if (entry != null) {
+            byte[] json = entry.json;
+            if (json != null) {
+                hits.increment();
+                entry.hit();
+                return json;
+            }
+        }
+        misses.increment();
+
+        Optional<CommittedAccount> committed = repository.findCommitted(accountNumber);
+        if (!committed.isPresent()) {
+            return null;
+        }
+        byte[] json = serialize(committed.get().getAccount());
+        if (capacity == 0) {
+            return json;
+        }
+        if (entry != null) {
+            entry.fill(committed.get().getSequence(), json);
+            return json;
+        }
+        Entry inserted = insert(accountNumber);
+        inserted.fill(committed.get().getSequence(), json);
+        // a commit between reading the state and inserting the entry did not find the entry to invalidate
+        repository.findCommitted(accountNumber).ifPresent(latest -> inserted.invalidate(latest.getSequence()));
+        return json;
+    }
+
+    @Override
+    public void committed(long sequence, Account account) {
+        Entry entry = entries.get(account.getNumber());
+        if (entry != null) {
+            entry.invalidate(sequence);
+        }
+    }
+
+    public CacheStatsDto getStats() {
+        long hitCount = hits.sum();
+        long missCount = misses.sum();
+        long reads = hitCount + missCount;
+        return new CacheStatsDto(capacity, entries.size(), hitCount, missCount, evictions.sum(),
+                reads == 0 ? 0 : (double) hitCount / reads);
+    }
+
+    private synchronized Entry insert(Long accountNumber) {
+        Entry entry = entries.get(accountNumber);
+        if (entry != null) {
+            return entry;
+        }
+        entry = new Entry(accountNumber);
+        slots[size < capacity ? size++ : evict()] = entry;
+        entries.put(accountNumber, entry);
+        return entry;
+    }
+
+    /**
+     * @return slot of the evicted entry.
+     */
+    private int evict() {
+        while (true) {
+            Entry entry = slots[hand];
+            int slot = hand;
+            hand = hand + 1 == capacity ? 0 : hand + 1;
+            if (entry.credits > 0) {
+                entry.credits--;
+            } else {
+                entries.remove(entry.accountNumber);
+                evictions.increment();
+                return slot;
+            }
+        }
+    }
+
+    private static byte[] serialize(Account account) {
+        JsonWriter writer = JsonWriter.acquire(null);
+        AccountCodec.INSTANCE.write(account, writer);
+        return writer.toByteArray();
+    }
+
+    /**
+     * Cached JSON of one account, null while invalidated.
+     */
+    private static final class Entry {
+
+        private final Long accountNumber;
+        private volatile byte[] json;
+        // sequence the json was serialized at or invalidated by, guarded by this
+        private long sequence;
+        // racy increments only lose a credit now and then
+        private volatile int credits;
+
+        private Entry(Long accountNumber) {
+            this.accountNumber = accountNumber;
+        }
+
+        private void hit() {
+            if (credits < MAX_CREDITS) {
+                credits++;
+            }
+        }
+
+        private synchronized void fill(long committedAt, byte[] committedJson) {
+            if (committedAt >= sequence) {
+                sequence = committedAt;
+                json = committedJson;
+            }
+        }
+
+        private synchronized void invalidate(long committedAt) {
+            if (committedAt > sequence) {
+                sequence = committedAt;
+                json = null;
+            }
+        }
+    }
+
+}
@@ -1,13 +1,46 @@
 package com.bank.rest.service;
 
+import com.bank.rest.dto.AccountsSnapshotDto;
+import com.bank.rest.dto.AdmissionStatsDto;
+import com.bank.rest.dto.AuditStatsDto;
+import com.bank.rest.dto.BalanceEventsDto;
+import com.bank.rest.dto.BulkOperationDto;
+import com.bank.rest.dto.BulkProgressDto;
+import com.bank.rest.dto.FxRatesDto;
+import com.bank.rest.dto.CacheStatsDto;
+import com.bank.rest.dto.HoldDto;
+import com.bank.rest.dto.ImportResultDto;
+import com.bank.rest.dto.LockStatsDto;
+import com.bank.rest.dto.ReconciliationDto;
+import com.bank.rest.dto.ScheduleTransferDto;
+import com.bank.rest.dto.StatsDto;
+import com.bank.rest.dto.StoreStatsDto;
+import com.bank.rest.dto.TransferMoneyDto;
 import com.bank.rest.exception.ApiException;
+import com.bank.rest.exception.ErrorCode;
 import com.bank.rest.model.Account;
+import com.bank.rest.model.AuditRecord;
+import com.bank.rest.model.Hold;
+import com.bank.rest.model.ScheduledTransfer;
 import com.bank.rest.repo.AccountRepository;
+import com.bank.rest.repo.AccountSnapshot;
 import org.apache.commons.lang3.RandomUtils;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.math.BigDecimal;
+import java.nio.file.Paths;
+import java.time.Clock;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
-import java.util.Set;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import static java.util.Objects.isNull;
 
@@ -17,16 +50,84 @@ import static java.util.Objects.isNull;
 public class AccountService {
 
     private static final AccountService SINGLE_INSTANCE = new AccountService();
+    private static final int MAX_LEGS = Integer.getInteger("bank.transfer.maxLegs", 16);
     private AccountRepository accountRepository;
+    private final AccountStatistics statistics = new AccountStatistics(Clock.systemUTC());
+    private final AdmissionController admission = AdmissionController.fromSystemProperties();
+    private final LockTable locks = LockTable.fromSystemProperties();
+    private final CreditCoalescer credits = CreditCoalescer.fromSystemProperties();
+    private final BalanceEventBus events = BalanceEventBus.fromSystemProperties();
+    private final AuditTrail audit = AuditTrail.fromSystemProperties();
+    private final FxRateTable fxRates = FxRateTable.fromSystemProperties();
+    private final AccountJsonCache responses;
+    private final AccountArchiver archiver;
+    private final BulkOperations bulk;
+    private final AuthorizationHolds holds;
+    private final Reconciler reconciler;
+    // replays its journal when created, so it is created on first use or by startBackgroundTasks()
+    private volatile TransferScheduler scheduler;
+    private final AtomicBoolean backgroundStarted = new AtomicBoolean();
 
     private AccountService() {
         accountRepository = AccountRepository.getSingleInstance();
+        accountRepository.addCommitListener(events);
+        responses = AccountJsonCache.fromSystemProperties(accountRepository);
+        accountRepository.addCommitListener(responses);
+        archiver = new AccountArchiver(accountRepository, locks, credits, Clock.systemUTC());
+        accountRepository.addCommitListener(archiver);
+        reconciler = Reconciler.fromSystemProperties(accountRepository, locks, credits, audit);
+        accountRepository.addCommitListener(reconciler);
+        if (accountRepository.getStoreStats().getAccounts() > 0) {
+            countStoredAccounts();
+        }
+        bulk = BulkOperations.fromSystemProperties(accountRepository, locks, credits, statistics, audit, fxRates);
+        // before any account is changed, a recovered chunk leaves out the accounts committed after it began
+        bulk.recover();
+        holds = AuthorizationHolds.fromSystemProperties(accountRepository, locks, credits, statistics, audit,
+                fxRates);
+        String archive = System.getProperty("bank.archive.path");
+        if (archive != null) {
+            accountRepository.openArchive(Paths.get(archive));
+        }
+        if (!Boolean.getBoolean("bank.fastBoot")) {
+            startBackgroundTasks();
+        }
     }
 
     public static AccountService getSingleInstance() {
         return SINGLE_INSTANCE;
     }
 
+    /**
+     * Starts what the first requests do not need: loads the scheduled transfers and starts the reconciler,
+     * the archiver, the credit folder and the expiry of holds and subscriptions.
+     * Unfinished bulk operations are resumed by the constructor, before any account can be changed.
+     * Done when the service is created, with {@code bank.fastBoot} once the server is ready; later calls do nothing.
+     */
+    public void startBackgroundTasks() {
+        if (!backgroundStarted.compareAndSet(false, true)) {
+            return;
+        }
+        events.start();
+        holds.start();
+        scheduler();
+        reconciler.start(Long.getLong("bank.reconcile.intervalMillis", 3_600_000));
+        if (System.getProperty("bank.archive.path") != null) {
+            archiver.start(Long.getLong("bank.archive.intervalMillis", 3_600_000),
+                    Long.getLong("bank.archive.disabledForMillis", TimeUnit.DAYS.toMillis(90)));
+        }
+        if (credits.isEnabled()) {
+            ScheduledExecutorService folder = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "credit-folder");
+                thread.setDaemon(true);
+                return thread;
+            });
+            long foldPeriod = Long.getLong("bank.coalescing.foldIntervalMillis", 10);
+            folder.scheduleWithFixedDelay(this::foldAllCredits, foldPeriod, foldPeriod, TimeUnit.MILLISECONDS);
+            folder.scheduleAtFixedRate(credits::resetWindow, 1, 1, TimeUnit.SECONDS);
+        }
+    }
+
     /**
      * Creates new account with unique account number.
      *
@@ -34,34 +135,96 @@ public class AccountService {
      * @return created object.
      */
     public Account createAccount(String owner) {
+        return createAccount(owner, null);
+    }
+
+    /**
+     * Creates new account in a currency, which stays the currency of the account.
+     *
+     * @param owner    account user data.
+     * @param currency ISO 4217 code, null for the base currency which is also kept as null.
+     * @return created object.
+     */
+    public Account createAccount(String owner, String currency) {
         if (isNull(owner)) {
-            throw new ApiException("Cannot create account for null owner");
+            throw new ApiException(ErrorCode.NULL_OWNER);
+        }
+        String currencyCode = fxRates.current().accountCurrency(currency);
+        if (accountRepository.isStoreFull()) {
+            throw new ApiException(ErrorCode.STORE_FULL);
         }
 
-        long accountNumber = generateAccountNumber();
-        Account account = new Account.Builder()
-                .accountNumber(accountNumber)
-                .forOwner(owner)
-                .withBalance(BigDecimal.ZERO)
-                .isDisabled(false)
-                .build();
-
-        return accountRepository.save(account);
+        Account account;
+        do {
+            account = new Account.Builder()
+                    .accountNumber(generateAccountNumber())
+                    .forOwner(owner)
+                    .withBalance(BigDecimal.ZERO)
+                    .isDisabled(false)
+                    .inCurrency(currencyCode)
+                    .build();
+            // another creation may have taken the number meanwhile
+        } while (!accountRepository.saveNew(account));
+        statistics.accountCreated();
+        audit.record(AuditRecord.Type.CREATE, account.getNumber(), 0, BigDecimal.ZERO);
+        return account;
     }
 
     public Account getInfo(Long accountNumber) {
         validateAccountNumber(accountNumber);
 
-        return accountRepository.findByNumber(accountNumber)
-                .orElseThrow(() -> new ApiException("No account found with number " + accountNumber));
+        Account account = accountRepository.findByNumber(accountNumber)
+                .orElseThrow(() -> new ApiException(ErrorCode.ACCOUNT_NOT_FOUND, accountNumber));
+        return foldCredits(account);
+    }
+
+    /**
+     * Reads an account as JSON, served from the cache of serialized accounts while it did not change.
+     *
+     * @return JSON of the account, which must not be modified.
+     */
+    public byte[] getInfoJson(Long accountNumber) {
+        validateAccountNumber(accountNumber);
+
+        Account account = accountRepository.findByNumber(accountNumber)
+                .orElseThrow(() -> new ApiException(ErrorCode.ACCOUNT_NOT_FOUND, accountNumber));
+        foldCredits(account);
+        byte[] json = responses.get(accountNumber);
+        if (json == null) {
+            throw new ApiException(ErrorCode.ACCOUNT_NOT_FOUND, accountNumber);
+        }
+        return json;
     }
 
     public List<Account> getAllAccounts() {
+        foldAllCredits();
         return accountRepository.findAll();
     }
 
+    /**
+     * Reads all accounts as of one commit sequence without blocking writers,
+     * so no transfer is seen half applied and the total balance is consistent.
+     *
+     * @return accounts, their total balance and the sequence they were read at.
+     */
+    public AccountsSnapshotDto getAccountsSnapshot() {
+        foldAllCredits();
+        try (AccountSnapshot snapshot = accountRepository.snapshot()) {
+            List<Account> accounts = snapshot.getAccounts();
+            BigDecimal total = BigDecimal.ZERO;
+            for (Account account : accounts) {
+                if (account.getBalance() != null) {
+                    total = total.add(account.getBalance());
+                }
+            }
+            return new AccountsSnapshotDto(snapshot.getSequence(), total, accounts);
+        }
+    }
+
     /**
      * Updates account only if it exists.
+     * The existing account is changed in place, so operations that already found it see the update.
+     * An archived account is loaded back into memory. The held amount is kept, the balance cannot be set below it.
      *
      * @param account new account data.
      * @return updated object.
@@ -70,16 +233,37 @@ public class AccountService {
         validateAccountNumber(account.getNumber());
         validateBalance(account.getBalance());
 
-        boolean accountExist = accountRepository.findByNumber(account.getNumber()).isPresent();
-        if (!accountExist) {
-            throw new ApiException("Cannot update non existing account " + account.getNumber());
+        try (LockTable.Held held = locks.lock(account.getNumber())) {
+            Account existing = accountRepository.findForUpdate(account.getNumber())
+                    .orElseThrow(() -> new ApiException(ErrorCode.UPDATE_NOT_FOUND, account.getNumber()));
+            credits.foldCommitted(accountRepository, existing);
+            if (account.getBalance().compareTo(existing.getHeld()) < 0) {
+                throw new ApiException(ErrorCode.BALANCE_BELOW_HELD, existing.getNumber());
+            }
+            BigDecimal previousBalance = existing.getBalance();
+            boolean previouslyDisabled = existing.isDisabled();
+            existing.setOwner(account.getOwner());
+            existing.setBalance(account.getBalance());
+            existing.setDisabled(account.isDisabled());
+            accountRepository.publish(existing);
+            audit.record(AuditRecord.Type.UPDATE, existing.getNumber(), 0, account.getBalance());
+
+            statistics.balanceChanged(existing.getCurrency(), account.getBalance().subtract(previousBalance));
+            if (account.isDisabled() != previouslyDisabled) {
+                if (account.isDisabled()) {
+                    statistics.accountDisabled();
+                } else {
+                    statistics.accountEnabled();
+                }
+            }
+            return detached(existing);
         }
-
-        return accountRepository.save(account);
     }
 
     /**
      * Adds money to account using its number.
+     * Top ups of hot accounts are coalesced when enabled: they do not wait for the account lock and
+     * the returned copy of the account includes the credits not yet folded into its balance.
      *
      * @param accountNumber account number to which money will be added
      * @param amount        money amount for top up.
@@ -89,13 +273,30 @@ public class AccountService {
         validateAccountNumber(accountNumber);
 
         Account account = accountRepository.findByNumber(accountNumber)
-                .orElseThrow(() -> new ApiException("No account found with number " + accountNumber));
+                .orElseThrow(() -> new ApiException(ErrorCode.ACCOUNT_NOT_FOUND, accountNumber));
+
+        if (credits.tryCredit(account, amount)) {
+            audit.record(AuditRecord.Type.TOP_UP, accountNumber, 0, amount);
+            statistics.balanceChanged(account.getCurrency(), amount);
+            statistics.moved(amount);
+            Account credited = new Account(account.getNumber(), account.getOwner(),
+                    account.getBalance().add(credits.pending(accountNumber)), account.isDisabled());
+            credited.setHeld(account.getHeld());
+            credited.setCurrency(account.getCurrency());
+            return credited;
+        }
 
-        Object lock = account.getLock();
-        synchronized (lock) {
+        try (AdmissionController.Permit permit = admission.admit(accountNumber);
+             LockTable.Held held = locks.lock(accountNumber)) {
+            account = lockedAccount(accountNumber);
             account.topUp(amount);
-            account = accountRepository.save(account);
+            accountRepository.save(account);
+            // recorded under the lock, so the records of an account are in the order of its commits
+            audit.record(AuditRecord.Type.TOP_UP, accountNumber, 0, amount);
+            account = detached(account);
         }
+        statistics.balanceChanged(account.getCurrency(), amount);
+        statistics.moved(amount);
 
         return account;
     }
@@ -110,20 +311,26 @@ public class AccountService {
     public Account deleteAccount(Long accountNumber) {
         validateAccountNumber(accountNumber);
 
-        Account account = accountRepository.findByNumber(accountNumber)
-                .orElseThrow(() -> new ApiException("No account found with number " + accountNumber));
-
-        if (account.isDisabled()) {
-            throw new ApiException("Cannot disable disabled account " + account.getNumber());
-        }
+        try (LockTable.Held held = locks.lock(accountNumber)) {
+            Account account = lockedAccount(accountNumber);
+            if (account.isDisabled()) {
+                throw new ApiException(ErrorCode.ALREADY_DISABLED, account.getNumber());
+            }
 
-        account.setDisabled(true);
+            // credits accepted before the account got disabled are still folded later
+            credits.fold(account);
+            account.setDisabled(true);
 
-        return accountRepository.save(account);
+            accountRepository.save(account);
+            statistics.accountDisabled();
+            return detached(account);
+        }
     }
 
     /**
      * Executes money transfer between 2 accounts using account numbers.
+     * The amount is written off in the currency of the first account and credited converted to the currency of
+     * the second one at the current rates.
      *
      * @param accountNumberFrom account number from which money will be written off.
      * @param accountNumberTo   account number to which money will be transferred.
@@ -133,55 +340,470 @@ public class AccountService {
         validateAccountNumber(accountNumberFrom);
         validateAccountNumber(accountNumberTo);
 
-        Account accountFrom = accountRepository.findByNumber(accountNumberFrom)
-                .orElseThrow(() -> new ApiException("No account found with number " + accountNumberFrom));
-        Account accountTo = accountRepository.findByNumber(accountNumberTo)
-                .orElseThrow(() -> new ApiException("No account found with number " + accountNumberTo));
+        accountRepository.findByNumber(accountNumberFrom)
+                .orElseThrow(() -> new ApiException(ErrorCode.ACCOUNT_NOT_FOUND, accountNumberFrom));
+        accountRepository.findByNumber(accountNumberTo)
+                .orElseThrow(() -> new ApiException(ErrorCode.ACCOUNT_NOT_FOUND, accountNumberTo));
+
+        BigDecimal credited;
+        String currencyFrom;
+        String currencyTo;
+        try (AdmissionController.Permit permit = admission.admit(accountNumberFrom, accountNumberTo);
+             LockTable.Held held = locks.lock(accountNumberFrom, accountNumberTo)) {
+            Account accountFrom = lockedAccount(accountNumberFrom);
+            // an account loaded without being cached is a new instance on every lookup
+            Account accountTo = accountNumberTo.equals(accountNumberFrom) ? accountFrom : lockedAccount(accountNumberTo);
+            credits.foldCommitted(accountRepository, accountFrom, accountTo);
+            // both checked first so a rejected top up leaves no write off behind
+            accountFrom.checkWriteOff(amount);
+            credited = fxRates.current().convert(amount, accountFrom, accountTo);
+            accountTo.checkTopUp(credited);
+            accountFrom.writeOff(amount);
+            accountTo.topUp(credited);
+            accountRepository.publish(accountFrom, accountTo);
+            audit.recordTransfer(accountNumberFrom, accountNumberTo, amount, credited);
+            currencyFrom = accountFrom.getCurrency();
+            currencyTo = accountTo.getCurrency();
+        }
+        statistics.moved(amount);
+        depositsMoved(currencyFrom, amount, currencyTo, credited);
+    }
 
-        Object lock1, lock2;
-        if (accountFrom.getNumber() < accountTo.getNumber()) {
-            lock1 = accountFrom.getLock();
-            lock2 = accountTo.getLock();
-        } else {
-            lock1 = accountTo.getLock();
-            lock2 = accountFrom.getLock();
+    /**
+     * Executes several transfers as one: all legs are applied or none.
+     * The accounts of all legs are locked at once, like the 2 accounts of a single transfer, and the legs are validated in their order, so money received by a leg can be sent on by a later one.
+     * All changed accounts are committed under one sequence, legs between currencies are converted at the same rates.
+     *
+     * @param legs transfers between 2 accounts, at most {@code bank.transfer.maxLegs} (16).
+     */
+    public void transfer(List<TransferMoneyDto> legs) {
+        if (isNull(legs) || legs.isEmpty() || legs.size() > MAX_LEGS) {
+            throw new ApiException(ErrorCode.MALFORMED_REQUEST);
+        }
+        BigDecimal moved = BigDecimal.ZERO;
+        Map<Long, Account> involved = new TreeMap<>();
+        for (TransferMoneyDto leg : legs) {
+            validateAccountNumber(leg.getAccountNumberFrom());
+            validateAccountNumber(leg.getAccountNumberTo());
+            if (isNull(leg.getAmount()) || leg.getAmount().signum() <= 0) {
+                throw new ApiException(ErrorCode.NON_POSITIVE_WRITE_OFF, leg.getAccountNumberFrom());
+            }
+            moved = moved.add(leg.getAmount());
+            for (Long accountNumber : new Long[]{leg.getAccountNumberFrom(), leg.getAccountNumberTo()}) {
+                if (!involved.containsKey(accountNumber)) {
+                    involved.put(accountNumber, accountRepository.findByNumber(accountNumber)
+                            .orElseThrow(() -> new ApiException(ErrorCode.ACCOUNT_NOT_FOUND, accountNumber)));
+                }
+            }
         }
 
-        synchronized (lock1) {
-            synchronized (lock2) {
-                accountFrom.writeOff(amount);
-                accountTo.topUp(amount);
+        long[] numbers = involved.keySet().stream().mapToLong(Long::longValue).toArray();
+        BigDecimal[] credited;
+        try (AdmissionController.Permit permit = admission.admit(numbers);
+             LockTable.Held held = locks.lock(numbers)) {
+            involved.replaceAll((accountNumber, account) -> lockedAccount(accountNumber));
+            credited = applyLegs(legs, involved, fxRates.current());
+            audit.recordLegs(legs, credited);
+        }
+        statistics.moved(moved);
+        for (int i = 0; i < credited.length; i++) {
+            TransferMoneyDto leg = legs.get(i);
+            depositsMoved(involved.get(leg.getAccountNumberFrom()).getCurrency(), leg.getAmount(),
+                    involved.get(leg.getAccountNumberTo()).getCurrency(), credited[i]);
+        }
+    }
+
+    /**
+     * Bulk loads new accounts from NDJSON or CSV rows of (number, owner, balance, disabled).
+     *
+     * @param in     rows, one account per line.
+     * @param format row format.
+     * @return number of imported and rejected rows and the first rejected rows with their line numbers.
+     */
+    public ImportResultDto importAccounts(InputStream in, AccountImporter.Format format) throws IOException {
+        if (accountRepository.isStoreFull()) {
+            throw new ApiException(ErrorCode.STORE_FULL);
+        }
+        return new AccountImporter(accountRepository, statistics, audit, fxRates,
+                Runtime.getRuntime().availableProcessors(), Integer.getInteger("bank.import.maxLineBytes", 1 << 20)).importAccounts(in, format);
+    }
+
+    /**
+     * Starts crediting interest or writing off a fee on all active accounts in parallel chunks.
+     * Starting an operation again with its id reports its progress, or resumes it if it failed.
+     *
+     * @param dto id chosen by the caller, type and rate or fee.
+     * @return progress of the operation.
+     */
+    public BulkProgressDto startBulkOperation(BulkOperationDto dto) {
+        return bulk.start(dto);
+    }
+
+    public BulkProgressDto getBulkProgress(long id) {
+        return bulk.progress(id);
+    }
+
+    /**
+     * Moves accounts disabled for at least the given time from memory to the archive
+     * opened with {@code bank.archive.path}, which also happens every {@code bank.archive.intervalMillis}.
+     *
+     * @return number of accounts moved, 0 without an archive.
+     */
+    public int archiveDisabledAccounts(long disabledForMillis) {
+        return archiver.archive(disabledForMillis);
+    }
+
+    /**
+     * Schedules a future dated or recurring transfer between 2 existing accounts.
+     * Whether the transfer succeeds is only known when it fires.
+     *
+     * @param dto accounts, amount, first execution time and period for a recurring transfer.
+     * @return scheduled transfer with its id.
+     */
+    public ScheduledTransfer scheduleTransfer(ScheduleTransferDto dto) {
+        validateAccountNumber(dto.getAccountNumberFrom());
+        validateAccountNumber(dto.getAccountNumberTo());
+        accountRepository.findByNumber(dto.getAccountNumberFrom())
+                .orElseThrow(() -> new ApiException(ErrorCode.ACCOUNT_NOT_FOUND, dto.getAccountNumberFrom()));
+        accountRepository.findByNumber(dto.getAccountNumberTo())
+                .orElseThrow(() -> new ApiException(ErrorCode.ACCOUNT_NOT_FOUND, dto.getAccountNumberTo()));
+
+        return scheduler().schedule(dto);
+    }
+
+    public ScheduledTransfer getScheduledTransfer(long id) {
+        return scheduler().find(id).orElseThrow(() -> new ApiException(ErrorCode.SCHEDULE_NOT_FOUND, id));
+    }
+
+    public void cancelScheduledTransfer(long id) {
+        if (!scheduler().cancel(id)) {
+            throw new ApiException(ErrorCode.SCHEDULE_NOT_FOUND, id);
+        }
+    }
+
+    /**
+     * Reserves an amount of the available balance of an existing account until the hold is captured or released,
+     * or expires after its timeout.
+     *
+     * @param dto account, optional payee of the captured amount, amount and timeout.
+     * @return active hold with its id.
+     */
+    public Hold placeHold(HoldDto dto) {
+        validateAccountNumber(dto.getAccountNumber());
+        holds.start();
+        return holds.place(dto);
+    }
+
+    public Hold getHold(long id) {
+        return holds.get(id);
+    }
+
+    /**
+     * Writes off the held amount, or a part of it, transferring it to the payee of the hold if it has one.
+     *
+     * @param amount amount to capture, the whole hold if null.
+     * @return captured hold with the captured amount.
+     */
+    public Hold captureHold(long id, BigDecimal amount) {
+        return holds.capture(id, amount);
+    }
+
+    public Hold releaseHold(long id) {
+        return holds.release(id);
+    }
+
+    public FxRatesDto getFxRates() {
+        FxRates rates = fxRates.current();
+        return new FxRatesDto(rates.getBaseCurrency(), rates.getRates(), rates.getUpdatedAt());
+    }
+
+    /**
+     * Replaces all exchange rates at once, transfers in progress finish at the rates they started with.
+     *
+     * @param dto rates against the base currency, which cannot change.
+     * @return the new rates.
+     */
+    public FxRatesDto updateFxRates(FxRatesDto dto) {
+        if (isNull(dto)) {
+            throw new ApiException(ErrorCode.MALFORMED_REQUEST);
+        }
+        FxRates rates = fxRates.update(dto.getBaseCurrency(), dto.getRates());
+        return new FxRatesDto(rates.getBaseCurrency(), rates.getRates(), rates.getUpdatedAt());
+    }
+
+    /**
+     * Subscribes to the balance changes of existing accounts as they are committed.
+     *
+     * @param accountNumbers accounts to follow, empty for all accounts.
+     * @return id of the subscription to poll.
+     */
+    public long subscribeToBalances(List<Long> accountNumbers) {
+        for (Long accountNumber : accountNumbers) {
+            validateAccountNumber(accountNumber);
+            accountRepository.findByNumber(accountNumber)
+                    .orElseThrow(() -> new ApiException(ErrorCode.ACCOUNT_NOT_FOUND, accountNumber));
+        }
+        events.start();
+        return events.subscribe(accountNumbers);
+    }
+
+    /**
+     * Waits up to the timeout for balance changes of a subscription.
+     *
+     * @return changes since the last poll, or a resync if the subscriber fell behind and changes were dropped.
+     */
+    public BalanceEventsDto pollBalanceEvents(long subscriptionId, int max, long timeoutMillis)
+            throws InterruptedException {
+        return events.poll(subscriptionId, max, timeoutMillis);
+    }
+
+    /**
+     * Subscribes to balance changes for a stream, which holds one of the places of waiting requests until it is
+     * closed with {@link #closeBalanceStream(long)}.
+     *
+     * @return id of the subscription to poll with {@link #pollBalanceStream(long, int, long)}.
+     * @throws ApiException SERVER_OVERLOADED if no waiting place is left.
+     */
+    public long openBalanceStream(List<Long> accountNumbers) {
+        if (!events.reserveWaiter()) {
+            throw new ApiException(ErrorCode.SERVER_OVERLOADED);
+        }
+        try {
+            return subscribeToBalances(accountNumbers);
+        } catch (RuntimeException e) {
+            events.releaseWaiter();
+            throw e;
+        }
+    }
+
+    public BalanceEventsDto pollBalanceStream(long subscriptionId, int max, long timeoutMillis)
+            throws InterruptedException {
+        return events.pollReserved(subscriptionId, max, timeoutMillis);
+    }
+
+    public void closeBalanceStream(long subscriptionId) {
+        events.unsubscribe(subscriptionId);
+        events.releaseWaiter();
+    }
+
+    public void unsubscribeFromBalances(long subscriptionId) {
+        if (!events.unsubscribe(subscriptionId)) {
+            throw new ApiException(ErrorCode.SUBSCRIPTION_NOT_FOUND, subscriptionId);
+        }
+    }
+
+    /**
+     * Reads aggregates over all accounts in constant time.
+     *
+     * @param windowMinutes number of recent minutes to also report the moved volume for, 0 for none.
+     * @return total deposits, account counts and volumes.
+     */
+    public StatsDto getStatistics(int windowMinutes) {
+        return statistics.getStats(windowMinutes);
+    }
+
+    /**
+     * @return requests in progress, per account queue depths of the hottest accounts and rejection counts.
+     */
+    public AdmissionStatsDto getAdmissionStats() {
+        return admission.getStats();
+    }
+
+    /**
+     * @return number of account lock stripes, contended acquisitions, waits and timeouts.
+     */
+    public LockStatsDto getLockStats() {
+        return locks.getStats();
+    }
+
+    /**
+     * @return size, hits, misses and evictions of the cache of serialized accounts.
+     */
+    public CacheStatsDto getCacheStats() {
+        return responses.getStats();
+    }
+
+    /**
+     * @return queued, written and dropped audit records, all 0 without {@code bank.audit.path}.
+     */
+    public AuditStatsDto getAuditStats() {
+        return audit.getStats();
+    }
+
+    /**
+     * Verifies now that committed balances match the audit trail, only partitions that changed since the last run.
+     *
+     * @return accounts verified and discrepancies found, not enabled without {@code bank.audit.path}.
+     */
+    public ReconciliationDto reconcile() {
+        return reconciler.reconcile();
+    }
+
+    /**
+     * @return report of the last reconciliation, which runs every {@code bank.reconcile.intervalMillis}.
+     */
+    public ReconciliationDto getReconciliation() {
+        return reconciler.getReport();
+    }
+
+    /**
+     * @return stored accounts and hit rate of the accounts cached on heap, all 0 without {@code bank.store.path}.
+     */
+    public StoreStatsDto getStoreStats() {
+        return accountRepository.getStoreStats();
+    }
+
+    /**
+     * Validates all legs against the running balances less the held amounts before changing any account,
+     * the caller holds all locks.
+     *
+     * @return amounts credited by the legs, converted to the currencies of the accounts topped up.
+     */
+    private BigDecimal[] applyLegs(List<TransferMoneyDto> legs, Map<Long, Account> accounts, FxRates rates) {
+        credits.foldCommitted(accountRepository, accounts.values().toArray(new Account[0]));
+        Map<Long, BigDecimal> balances = new HashMap<>();
+        for (Account account : accounts.values()) {
+            balances.put(account.getNumber(), account.getBalance());
+        }
+        BigDecimal[] credited = new BigDecimal[legs.size()];
+        for (int i = 0; i < credited.length; i++) {
+            TransferMoneyDto leg = legs.get(i);
+            Account from = accounts.get(leg.getAccountNumberFrom());
+            Account to = accounts.get(leg.getAccountNumberTo());
+            if (from.isDisabled()) {
+                throw new ApiException(ErrorCode.WRITE_OFF_DISABLED, from.getNumber());
+            }
+            BigDecimal available = balances.get(from.getNumber());
+            if (from.packedHeld() != 0) {
+                available = available.subtract(from.getHeld());
+            }
+            if (available.compareTo(leg.getAmount()) < 0) {
+                throw new ApiException(ErrorCode.INSUFFICIENT_FUNDS, from.getNumber());
+            }
+            if (to.isDisabled()) {
+                throw new ApiException(ErrorCode.TOP_UP_DISABLED, to.getNumber());
+            }
+            credited[i] = rates.convert(leg.getAmount(), from, to);
+            if (credited[i].signum() <= 0) {
+                throw new ApiException(ErrorCode.NON_POSITIVE_TOP_UP, to.getNumber());
+            }
+            balances.merge(from.getNumber(), leg.getAmount().negate(), BigDecimal::add);
+            balances.merge(to.getNumber(), credited[i], BigDecimal::add);
+        }
+        for (Account account : accounts.values()) {
+            account.setBalance(balances.get(account.getNumber()));
+        }
+        accountRepository.publish(accounts.values().toArray(new Account[0]));
+        return credited;
+    }
+
+    private TransferScheduler scheduler() {
+        TransferScheduler current = scheduler;
+        if (current == null) {
+            synchronized (this) {
+                current = scheduler;
+                if (current == null) {
+                    current = TransferScheduler.fromSystemProperties(this::transfer);
+                    current.start();
+                    scheduler = current;
+                }
+            }
+        }
+        return current;
+    }
+
+    /**
+     * Folds the pending credits of a coalesced account into its balance and commits it.
+     */
+    private Account foldCredits(Account account) {
+        if (credits.pending(account.getNumber()).signum() != 0) {
+            try (LockTable.Held held = locks.lock(account.getNumber())) {
+                Account locked = lockedAccount(account.getNumber());
+                if (credits.fold(locked)) {
+                    accountRepository.save(locked);
+                }
+                return locked;
             }
         }
+        return account;
+    }
+
+    /**
+     * @return the account to change, found again under its lock since an account found before may have been
+     * evicted from the cache of the store meanwhile.
+     */
+    private Account lockedAccount(Long accountNumber) {
+        return accountRepository.findForUpdate(accountNumber)
+                .orElseThrow(() -> new ApiException(ErrorCode.ACCOUNT_NOT_FOUND, accountNumber));
+    }
+
+    /**
+     * Moves deposits between the currencies of the statistics for a transfer, unless both accounts have the same one.
+     */
+    private void depositsMoved(String currencyFrom, BigDecimal amount, String currencyTo, BigDecimal credited) {
+        if (!Objects.equals(currencyFrom, currencyTo)) {
+            statistics.balanceChanged(currencyFrom, amount.negate());
+            statistics.balanceChanged(currencyTo, credited);
+        }
+    }
+
+    /**
+     * Counts the accounts a store kept from earlier runs in the statistics.
+     */
+    private void countStoredAccounts() {
+        long[] counts = new long[2];
+        Map<String, BigDecimal> balances = new HashMap<>();
+        try (AccountSnapshot snapshot = accountRepository.snapshot()) {
+            snapshot.forEach(account -> {
+                counts[account.isDisabled() ? 1 : 0]++;
+                if (account.getBalance() != null) {
+                    balances.merge(account.getCurrency(), account.getBalance(), BigDecimal::add);
+                }
+            });
+        }
+        statistics.accountsImported(counts[0], counts[1], balances);
+    }
+
+    private void foldAllCredits() {
+        for (Long accountNumber : credits.getHotAccounts()) {
+            accountRepository.findByNumber(accountNumber).ifPresent(this::foldCredits);
+        }
     }
 
     /**
-     * Generates unique account number according to existing account numbers.
+     * @return copy of the account as of now, taken under its lock so later changes do not show in a response.
+     */
+    private static Account detached(Account account) {
+        Account copy = new Account(account.getNumber(), account.getOwner(), account.getBalance(), account.isDisabled());
+        copy.setHeld(account.getHeld());
+        copy.setCurrency(account.getCurrency());
+        return copy;
+    }
+
+    /**
+     * Generates an account number not taken yet, a concurrent creation may still take it first.
      *
-     * @return unique long sequence.
+     * @return random non negative number.
      */
     long generateAccountNumber() {
-        int rnd = RandomUtils.nextInt();
-        long accountNumber = rnd > 0 ? rnd : rnd * -1;
-
-        Set<Long> allAccountNumbers = accountRepository.getAllAccountNumbers();
-        while (allAccountNumbers.contains(accountNumber)) {
-            rnd = RandomUtils.nextInt();
+        long accountNumber;
+        do {
+            int rnd = RandomUtils.nextInt();
             accountNumber = rnd > 0 ? rnd : rnd * -1;
-        }
+        } while (accountRepository.findByNumber(accountNumber).isPresent());
 
         return accountNumber;
     }
 
     private void validateAccountNumber(Long accountNumber) {
         if (isNull(accountNumber)) {
-            throw new ApiException("Null account number is not supported fot this operation");
+            throw new ApiException(ErrorCode.NULL_ACCOUNT_NUMBER);
         }
     }
 
     private void validateBalance(BigDecimal balance) {
         if (balance.compareTo(BigDecimal.ZERO) < 0) {
-            throw new ApiException("Balance cannot be negative");
+            throw new ApiException(ErrorCode.NEGATIVE_BALANCE);
         }
     }
 
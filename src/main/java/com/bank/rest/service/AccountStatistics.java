@@ -0,0 +1,170 @@
+package com.bank.rest.service;
+
+import com.bank.rest.dto.StatsDto;
+
+import java.math.BigDecimal;
+import java.time.Clock;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Aggregates over all accounts maintained incrementally by {@link AccountService},
+ * so reading them does not depend on the number of accounts.
+ * Deposits are summed per currency, accounts without a currency count to the total deposits in the base currency.
+ * Money moved by top ups and transfers is also counted per minute for the last hour.
+ */
+public class AccountStatistics {
+
+    public static final int MAX_WINDOW_MINUTES = 60;
+
+    private final Clock clock;
+    private final StripedDecimal totalDeposits = new StripedDecimal();
+    private final Map<String, StripedDecimal> currencyDeposits = new ConcurrentHashMap<>();
+    private final LongAdder activeAccounts = new LongAdder();
+    private final LongAdder disabledAccounts = new LongAdder();
+    private final AtomicReference<Period> today;
+    private final AtomicReferenceArray<Period> minutes = new AtomicReferenceArray<>(MAX_WINDOW_MINUTES);
+
+    public AccountStatistics(Clock clock) {
+        this.clock = clock;
+        this.today = new AtomicReference<>(new Period(currentDay()));
+    }
+
+    public void accountCreated() {
+        activeAccounts.increment();
+    }
+
+    /**
+     * Counts accounts loaded in bulk together with their total balances by currency.
+     */
+    public void accountsImported(long active, long disabled, Map<String, BigDecimal> balances) {
+        activeAccounts.add(active);
+        disabledAccounts.add(disabled);
+        balances.forEach(this::balanceChanged);
+    }
+
+    public void accountDisabled() {
+        activeAccounts.decrement();
+        disabledAccounts.increment();
+    }
+
+    public void accountEnabled() {
+        disabledAccounts.decrement();
+        activeAccounts.increment();
+    }
+
+    /**
+     * @param currency currency of the changed account, null for the base currency.
+     */
+    public void balanceChanged(String currency, BigDecimal delta) {
+        if (delta.signum() != 0) {
+            deposits(currency).add(delta);
+        }
+    }
+
+    /**
+     * Counts money moved by one operation in the daily and per minute volumes.
+     */
+    public void moved(BigDecimal amount) {
+        long now = clock.millis();
+        current(today, TimeUnit.MILLISECONDS.toDays(now)).record(amount);
+
+        long minute = TimeUnit.MILLISECONDS.toMinutes(now);
+        int index = (int) (minute % MAX_WINDOW_MINUTES);
+        Period bucket = minutes.get(index);
+        while (bucket == null || bucket.key < minute) {
+            Period fresh = new Period(minute);
+            if (minutes.compareAndSet(index, bucket, fresh)) {
+                bucket = fresh;
+            } else {
+                bucket = minutes.get(index);
+            }
+        }
+        if (bucket.key == minute) {
+            bucket.record(amount);
+        }
+    }
+
+    /**
+     * @param windowMinutes number of most recent minutes, including the current one, to sum volume over; 0 for none.
+     */
+    public StatsDto getStats(int windowMinutes) {
+        long now = clock.millis();
+        Period day = today.get();
+        boolean sameDay = day.key == TimeUnit.MILLISECONDS.toDays(now);
+
+        BigDecimal windowVolume = null;
+        Long windowOperations = null;
+        if (windowMinutes > 0) {
+            long minute = TimeUnit.MILLISECONDS.toMinutes(now);
+            windowVolume = BigDecimal.ZERO;
+            long operations = 0;
+            for (int i = 0; i < Math.min(windowMinutes, MAX_WINDOW_MINUTES); i++) {
+                Period bucket = minutes.get((int) ((minute - i) % MAX_WINDOW_MINUTES));
+                if (bucket != null && bucket.key == minute - i) {
+                    windowVolume = windowVolume.add(bucket.volume.sum());
+                    operations += bucket.operations.sum();
+                }
+            }
+            windowOperations = operations;
+        }
+
+        Map<String, BigDecimal> depositsByCurrency = null;
+        if (!currencyDeposits.isEmpty()) {
+            depositsByCurrency = new TreeMap<>();
+            for (Map.Entry<String, StripedDecimal> deposits : currencyDeposits.entrySet()) {
+                depositsByCurrency.put(deposits.getKey(), deposits.getValue().sum());
+            }
+        }
+
+        return new StatsDto(totalDeposits.sum(), depositsByCurrency, activeAccounts.sum(), disabledAccounts.sum(),
+                sameDay ? day.volume.sum() : BigDecimal.ZERO, sameDay ? day.operations.sum() : 0,
+                windowMinutes > 0 ? Math.min(windowMinutes, MAX_WINDOW_MINUTES) : null, windowVolume, windowOperations);
+    }
+
+    private StripedDecimal deposits(String currency) {
+        if (currency == null) {
+            return totalDeposits;
+        }
+        StripedDecimal deposits = currencyDeposits.get(currency);
+        return deposits != null ? deposits : currencyDeposits.computeIfAbsent(currency, c -> new StripedDecimal());
+    }
+
+    private long currentDay() {
+        return TimeUnit.MILLISECONDS.toDays(clock.millis());
+    }
+
+    private static Period current(AtomicReference<Period> reference, long key) {
+        Period period = reference.get();
+        while (period.key < key) {
+            reference.compareAndSet(period, new Period(key));
+            period = reference.get();
+        }
+        return period;
+    }
+
+    /**
+     * Volume of one day or one minute.
+     */
+    private static class Period {
+
+        private final long key;
+        private final StripedDecimal volume = new StripedDecimal();
+        private final LongAdder operations = new LongAdder();
+
+        private Period(long key) {
+            this.key = key;
+        }
+
+        private void record(BigDecimal amount) {
+            volume.add(amount);
+            operations.increment();
+        }
+    }
+
+}
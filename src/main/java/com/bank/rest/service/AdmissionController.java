@@ -0,0 +1,197 @@
+package com.bank.rest.service;
+
+import com.bank.rest.dto.AdmissionStatsDto;
+import com.bank.rest.exception.ApiException;
+import com.bank.rest.exception.ErrorCode;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Admission control in front of the account locks. A request is rejected right away instead of queueing when
+ * <ul>
+ * <li>the number of requests in progress on the server reached its limit,</li>
+ * <li>too many requests are already waiting for one of its accounts,</li>
+ * <li>or one of its accounts exceeds its request rate (token bucket kept as a theoretical arrival time).</li>
+ * </ul>
+ * State is only kept for accounts with requests in progress or a not yet refilled bucket.
+ */
+public class AdmissionController {
+
+    private static final int HOT_ACCOUNTS_REPORTED = 10;
+    private static final int SWEEP_INTERVAL = 1024;
+
+    private final int maxConcurrent;
+    private final int maxQueuePerAccount;
+    private final long nanosPerToken;
+    private final long burstNanos;
+
+    private final Semaphore inProgress;
+    private final Map<Long, Gate> gates = new ConcurrentHashMap<>();
+    private final LongAdder rejectedGlobal = new LongAdder();
+    private final LongAdder rejectedQueueFull = new LongAdder();
+    private final LongAdder rejectedRateLimited = new LongAdder();
+    private final AtomicInteger admissions = new AtomicInteger();
+
+    /**
+     * @param maxConcurrent      requests in progress on the server.
+     * @param maxQueuePerAccount requests in progress or waiting per account.
+     * @param ratePerAccount     requests per second per account, 0 for unlimited.
+     * @param burstPerAccount    requests per account allowed at once above the rate.
+     */
+    public AdmissionController(int maxConcurrent, int maxQueuePerAccount, int ratePerAccount, int burstPerAccount) {
+        this.maxConcurrent = maxConcurrent;
+        this.maxQueuePerAccount = maxQueuePerAccount;
+        this.nanosPerToken = ratePerAccount > 0 ? TimeUnit.SECONDS.toNanos(1) / ratePerAccount : 0;
+        this.burstNanos = nanosPerToken * Math.max(0, burstPerAccount - 1);
+        this.inProgress = new Semaphore(maxConcurrent);
+    }
+
+    /**
+     * Creates a controller configured by the {@code bank.admission.*} system properties.
+     */
+    public static AdmissionController fromSystemProperties() {
+        int rate = Integer.getInteger("bank.admission.ratePerAccount", 0);
+        return new AdmissionController(Integer.getInteger("bank.admission.maxConcurrent", 512),
+                Integer.getInteger("bank.admission.maxQueuePerAccount", 64),
+                rate, Integer.getInteger("bank.admission.burstPerAccount", Math.max(1, rate)));
+    }
+
+    /**
+     * Admits a request on the given accounts or rejects it with a 429 error.
+     *
+     * @return permit to close once the request completed.
+     */
+    public Permit admit(long... accountNumbers) {
+        if (!inProgress.tryAcquire()) {
+            rejectedGlobal.increment();
+            throw new ApiException(ErrorCode.SERVER_OVERLOADED);
+        }
+        int entered = 0;
+        try {
+            long now = System.nanoTime();
+            if (admissions.incrementAndGet() % SWEEP_INTERVAL == 0) {
+                sweep(now);
+            }
+            for (long accountNumber : accountNumbers) {
+                enter(accountNumber, now);
+                entered++;
+            }
+            return new Permit(accountNumbers);
+        } catch (RuntimeException e) {
+            for (int i = 0; i < entered; i++) {
+                leave(accountNumbers[i]);
+            }
+            inProgress.release();
+            throw e;
+        }
+    }
+
+    public AdmissionStatsDto getStats() {
+        List<AdmissionStatsDto.AccountQueue> queues = new ArrayList<>();
+        gates.forEach((number, gate) -> {
+            int depth = gate.queued.get();
+            if (depth > 0) {
+                queues.add(new AdmissionStatsDto.AccountQueue(number, depth));
+            }
+        });
+        queues.sort(Comparator.comparingInt(AdmissionStatsDto.AccountQueue::getQueued).reversed());
+
+        return new AdmissionStatsDto(maxConcurrent - inProgress.availablePermits(), maxConcurrent, maxQueuePerAccount,
+                rejectedGlobal.sum(), rejectedQueueFull.sum(), rejectedRateLimited.sum(),
+                queues.subList(0, Math.min(HOT_ACCOUNTS_REPORTED, queues.size())));
+    }
+
+    /**
+     * Drops state of idle accounts whose bucket refilled after their last request left.
+     */
+    private void sweep(long now) {
+        for (Long accountNumber : gates.keySet()) {
+            gates.computeIfPresent(accountNumber, (number, gate) ->
+                    gate.queued.get() == 0 && gate.theoreticalArrival.get() - now <= 0 ? null : gate);
+        }
+    }
+
+    private void enter(long accountNumber, long now) {
+        Gate gate = gates.compute(accountNumber, (number, existing) -> {
+            Gate g = existing == null ? new Gate(now) : existing;
+            g.queued.incrementAndGet();
+            return g;
+        });
+        if (gate.queued.get() > maxQueuePerAccount) {
+            leave(accountNumber);
+            rejectedQueueFull.increment();
+            throw new ApiException(ErrorCode.ACCOUNT_OVERLOADED, accountNumber);
+        }
+        if (nanosPerToken > 0 && !gate.tryTake(now, nanosPerToken, burstNanos)) {
+            leave(accountNumber);
+            rejectedRateLimited.increment();
+            throw new ApiException(ErrorCode.RATE_LIMITED, accountNumber);
+        }
+    }
+
+    private void leave(long accountNumber) {
+        long now = System.nanoTime();
+        gates.computeIfPresent(accountNumber, (number, gate) ->
+                gate.queued.decrementAndGet() == 0 && gate.theoreticalArrival.get() - now <= 0 ? null : gate);
+    }
+
+    /**
+     * Requests in progress on one account and its token bucket.
+     */
+    private static class Gate {
+
+        private final AtomicInteger queued = new AtomicInteger();
+        private final AtomicLong theoreticalArrival;
+
+        private Gate(long now) {
+            theoreticalArrival = new AtomicLong(now);
+        }
+
+        /**
+         * Generic cell rate algorithm: a request conforms if it does not arrive earlier than
+         * the burst tolerance before its theoretical arrival time.
+         */
+        private boolean tryTake(long now, long nanosPerToken, long burstNanos) {
+            while (true) {
+                long arrival = theoreticalArrival.get();
+                long earliest = arrival - now > 0 ? arrival : now;
+                if (earliest - now > burstNanos) {
+                    return false;
+                }
+                if (theoreticalArrival.compareAndSet(arrival, earliest + nanosPerToken)) {
+                    return true;
+                }
+            }
+        }
+    }
+
+    /**
+     * Admission of one request, closing it releases its places.
+     */
+    public class Permit implements AutoCloseable {
+
+        private final long[] accountNumbers;
+
+        private Permit(long[] accountNumbers) {
+            this.accountNumbers = accountNumbers;
+        }
+
+        @Override
+        public void close() {
+            for (long accountNumber : accountNumbers) {
+                leave(accountNumber);
+            }
+            inProgress.release();
+        }
+    }
+
+}
@@ -0,0 +1,578 @@
+package com.bank.rest.service;
+
+import com.bank.rest.dto.AuditStatsDto;
+import com.bank.rest.dto.TransferMoneyDto;
+import com.bank.rest.model.AuditRecord;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.Clock;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+
+/**
+ * Audit records of balance changing calls, written to rotating files by a background thread.
+ * Calls only put a record into a bounded lock free queue; when it is full they either wait for room or drop the
+ * record and count it. The writer takes up to {@code MAX_BATCH} waiting records at once and appends them as one
+ * batch: its length, record count and CRC32, then the records. A new file is started once a file reaches
+ * {@code maxFileBytes} and at every start, files are never appended to after a restart, so a batch torn by
+ * a crash can only be the last one of a file.
+ * Calls record while they still hold the locks of their accounts, so the records of an account are in the order of
+ * its commits; waiting for room with {@link OnFull#BLOCK} therefore holds those locks too.
+ */
+public class AuditTrail implements AutoCloseable {
+
+    /**
+     * What a call does while the queue is full.
+     */
+    public enum OnFull {
+        /**
+         * Waits for room, keeping every record but stalling all calls on the locks the waiting call holds
+         * while the writer is behind.
+         */
+        BLOCK,
+        /**
+         * Drops the record and counts it, calls never wait for the disk.
+         */
+        DROP
+    }
+
+    private static final Logger LOG = Logger.getLogger(AuditTrail.class.getName());
+
+    private static final int MAGIC = 0x41554454;
+    private static final int FILE_HEADER_BYTES = 4;
+    private static final int BATCH_HEADER_BYTES = 16;
+    private static final int MAX_BATCH = 4096;
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+    private static final long FULL_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+    private static final String FILE_PREFIX = "audit-";
+    private static final String FILE_SUFFIX = ".log";
+
+    private final Path directory;
+    private final OnFull onFull;
+    private final long maxFileBytes;
+    private final boolean sync;
+    private final Clock clock;
+    private final Ring queue;
+    private final Thread writer;
+
+    private final LongAdder recorded = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder blocked = new LongAdder();
+    private volatile long written;
+    private volatile long lost;
+    private volatile long batches;
+    private volatile long files;
+    private volatile boolean idle;
+    private volatile boolean closed;
+
+    private Path firstFile;
+
+    // used by the writer thread only
+    private long fileIndex;
+    private FileChannel file;
+    private long fileBytes;
+
+    /**
+     * @param queueCapacity records waiting to be written, rounded up to a power of two.
+     * @param maxFileBytes  size after which a new file is started.
+     * @param sync          forces every batch to the disk before taking the next one.
+     */
+    public AuditTrail(Path directory, int queueCapacity, OnFull onFull, long maxFileBytes, boolean sync, Clock clock) {
+        this.directory = directory;
+        this.onFull = onFull;
+        this.maxFileBytes = maxFileBytes;
+        this.sync = sync;
+        this.clock = clock;
+        this.queue = new Ring(queueCapacity);
+        try {
+            Files.createDirectories(directory);
+            fileIndex = lastFileIndex(directory);
+            nextFile();
+            firstFile = directory.resolve(fileName(fileIndex));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        this.writer = new Thread(this::write, "audit-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    private AuditTrail() {
+        this.directory = null;
+        this.onFull = OnFull.DROP;
+        this.maxFileBytes = 0;
+        this.sync = false;
+        this.clock = null;
+        this.queue = null;
+        this.writer = null;
+    }
+
+    /**
+     * Creates a trail configured by the {@code bank.audit.*} system properties, without {@code bank.audit.path}
+     * nothing is recorded.
+     */
+    public static AuditTrail fromSystemProperties() {
+        String path = System.getProperty("bank.audit.path");
+        if (path == null) {
+            return new AuditTrail();
+        }
+        return new AuditTrail(Paths.get(path), Integer.getInteger("bank.audit.queueCapacity", 65536),
+                OnFull.valueOf(System.getProperty("bank.audit.onFull", OnFull.DROP.name())),
+                Long.getLong("bank.audit.maxFileBytes", 64L << 20), Boolean.getBoolean("bank.audit.sync"),
+                Clock.systemUTC());
+    }
+
+    public boolean isEnabled() {
+        return writer != null;
+    }
+
+    /**
+     * @return directory of the audit files, null if nothing is recorded.
+     */
+    public Path getDirectory() {
+        return directory;
+    }
+
+    /**
+     * @return first file of this trail, the files before it in the directory were written by earlier ones.
+     */
+    public Path getFirstFile() {
+        return firstFile;
+    }
+
+    /**
+     * @return number of records queued so far, they are written to the files of this trail in this order.
+     */
+    public long getPosition() {
+        return writer == null ? 0 : queue.tail.get();
+    }
+
+    /**
+     * @return number of queued records the writer is done with, the records of earlier positions are in the files
+     * unless lost to a write error.
+     */
+    public long getWrittenPosition() {
+        return written + lost;
+    }
+
+    /**
+     * Queues a record of a completed call.
+     *
+     * @param counterparty account topped up by a transfer, bulk operation of interest and fees, 0 for other calls.
+     */
+    public void record(AuditRecord.Type type, long accountNumber, long counterparty, BigDecimal amount) {
+        if (writer == null) {
+            return;
+        }
+        enqueue(new AuditRecord(type, clock.millis(), accountNumber, counterparty, amount));
+    }
+
+    /**
+     * Queues the record of a completed transfer, or the {@code FX_DEBIT} and {@code FX_CREDIT} records next to each
+     * other if the amount was converted between currencies.
+     *
+     * @param credited amount credited in the currency of the account topped up.
+     */
+    public void recordTransfer(long accountNumberFrom, long accountNumberTo, BigDecimal amount, BigDecimal credited) {
+        if (writer == null) {
+            return;
+        }
+        long now = clock.millis();
+        if (credited.compareTo(amount) == 0) {
+            enqueue(new AuditRecord(AuditRecord.Type.TRANSFER, now, accountNumberFrom, accountNumberTo, amount));
+        } else {
+            enqueue(new AuditRecord(AuditRecord.Type.FX_DEBIT, now, accountNumberFrom, accountNumberTo, amount),
+                    new AuditRecord(AuditRecord.Type.FX_CREDIT, now, accountNumberTo, accountNumberFrom, credited));
+        }
+    }
+
+    /**
+     * Queues the legs of a completed multi-leg transfer within one currency next to each other, with the same time.
+     */
+    public void recordLegs(List<TransferMoneyDto> legs) {
+        BigDecimal[] credited = new BigDecimal[legs.size()];
+        for (int i = 0; i < credited.length; i++) {
+            credited[i] = legs.get(i).getAmount();
+        }
+        recordLegs(legs, credited);
+    }
+
+    /**
+     * Queues the legs of a completed multi-leg transfer next to each other, with the same time.
+     * A leg converted between currencies is recorded as an {@code FX_DEBIT} and an {@code FX_CREDIT} record.
+     *
+     * @param credited amounts credited by the legs in the currencies of the accounts topped up.
+     */
+    public void recordLegs(List<TransferMoneyDto> legs, BigDecimal[] credited) {
+        if (writer == null) {
+            return;
+        }
+        long now = clock.millis();
+        List<AuditRecord> records = new ArrayList<>(legs.size());
+        for (int i = 0; i < legs.size(); i++) {
+            TransferMoneyDto leg = legs.get(i);
+            if (credited[i].compareTo(leg.getAmount()) == 0) {
+                records.add(new AuditRecord(AuditRecord.Type.TRANSFER_LEG, now, leg.getAccountNumberFrom(),
+                        leg.getAccountNumberTo(), leg.getAmount()));
+            } else {
+                records.add(new AuditRecord(AuditRecord.Type.FX_DEBIT, now, leg.getAccountNumberFrom(),
+                        leg.getAccountNumberTo(), leg.getAmount()));
+                records.add(new AuditRecord(AuditRecord.Type.FX_CREDIT, now, leg.getAccountNumberTo(),
+                        leg.getAccountNumberFrom(), credited[i]));
+            }
+        }
+        enqueue(records.toArray(new AuditRecord[0]));
+    }
+
+    public AuditStatsDto getStats() {
+        if (writer == null) {
+            return new AuditStatsDto(false, onFull.name(), 0, 0, 0, 0, 0, 0, 0, 0);
+        }
+        return new AuditStatsDto(true, onFull.name(), queue.capacity(), queue.size(), recorded.sum(), written,
+                dropped.sum(), blocked.sum(), batches, files);
+    }
+
+    /**
+     * Writes the queued records and closes the current file, records of later calls are dropped.
+     */
+    @Override
+    public void close() {
+        if (writer == null) {
+            return;
+        }
+        closed = true;
+        LockSupport.unpark(writer);
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * @return audit files of the directory in the order they were written.
+     */
+    public static List<Path> listFiles(Path directory) throws IOException {
+        List<Path> paths = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, FILE_PREFIX + "*" + FILE_SUFFIX)) {
+            stream.forEach(paths::add);
+        }
+        paths.sort(null);
+        return paths;
+    }
+
+    /**
+     * Reads the records of one file, a torn last batch is ignored.
+     *
+     * @throws IOException if the file is no audit file or a batch does not match its checksum.
+     */
+    public static List<AuditRecord> read(Path path) throws IOException {
+        List<AuditRecord> records = new ArrayList<>();
+        read(path, 0, records::add);
+        return records;
+    }
+
+    /**
+     * Reads the records of the complete batches from a position on, so a file still written can be followed.
+     *
+     * @param position 0 for the first batch, or a position returned before.
+     * @return position after the last complete batch.
+     * @throws IOException if the file is no audit file or a batch does not match its checksum.
+     */
+    public static long read(Path path, long position, Consumer<AuditRecord> action) throws IOException {
+        long size = Files.size(path);
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException("Not an audit file " + path);
+            }
+            position = Math.max(position, FILE_HEADER_BYTES);
+            for (long skip = position - FILE_HEADER_BYTES; skip > 0; ) {
+                long skipped = in.skip(skip);
+                if (skipped <= 0) {
+                    return position;
+                }
+                skip -= skipped;
+            }
+            while (true) {
+                byte[] payload;
+                int count;
+                long checksum;
+                try {
+                    int length = in.readInt();
+                    count = in.readInt();
+                    checksum = in.readLong();
+                    if (length < 0) {
+                        throw new IOException("Malformed batch at " + position + " in " + path);
+                    }
+                    if (length > size - position - BATCH_HEADER_BYTES) {
+                        return position;
+                    }
+                    payload = new byte[length];
+                    in.readFully(payload);
+                } catch (EOFException e) {
+                    return position;
+                }
+                CRC32 crc = new CRC32();
+                crc.update(payload, 0, payload.length);
+                if (crc.getValue() != checksum) {
+                    throw new IOException("Checksum mismatch of the batch at " + position + " in " + path);
+                }
+                DataInputStream batch = new DataInputStream(new ByteArrayInputStream(payload));
+                for (int i = 0; i < count; i++) {
+                    action.accept(decode(batch));
+                }
+                position += BATCH_HEADER_BYTES + payload.length;
+            }
+        }
+    }
+
+    private void enqueue(AuditRecord... records) {
+        recorded.add(records.length);
+        if (closed || !queue.offer(records) && !waitForRoom(records)) {
+            dropped.add(records.length);
+            return;
+        }
+        if (idle) {
+            LockSupport.unpark(writer);
+        }
+    }
+
+    private boolean waitForRoom(AuditRecord[] records) {
+        if (onFull == OnFull.DROP || records.length > queue.capacity()) {
+            return false;
+        }
+        blocked.increment();
+        do {
+            if (closed) {
+                return false;
+            }
+            LockSupport.unpark(writer);
+            LockSupport.parkNanos(this, FULL_PARK_NANOS);
+        } while (!queue.offer(records));
+        return true;
+    }
+
+    private void write() {
+        Batch batch = new Batch();
+        DataOutputStream out = new DataOutputStream(batch);
+        while (true) {
+            batch.reset();
+            int count = 0;
+            try {
+                for (AuditRecord record; count < MAX_BATCH && (record = queue.poll()) != null; count++) {
+                    encode(record, out);
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            if (count > 0) {
+                writeBatch(batch, count);
+            } else if (queue.size() > 0) {
+                // a record is being put into the slot it took
+                Thread.yield();
+            } else if (closed) {
+                break;
+            } else {
+                idle = true;
+                if (queue.size() == 0 && !closed) {
+                    LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+                }
+                idle = false;
+            }
+        }
+        try {
+            file.force(false);
+            file.close();
+        } catch (IOException e) {
+            LOG.log(Level.WARNING, "Could not close the audit file", e);
+        }
+    }
+
+    private void writeBatch(Batch batch, int count) {
+        CRC32 crc = new CRC32();
+        crc.update(batch.array(), 0, batch.size());
+        ByteBuffer header = ByteBuffer.allocate(BATCH_HEADER_BYTES);
+        header.putInt(batch.size()).putInt(count).putLong(crc.getValue()).flip();
+        ByteBuffer payload = ByteBuffer.wrap(batch.array(), 0, batch.size());
+        try {
+            if (fileBytes > FILE_HEADER_BYTES && fileBytes + BATCH_HEADER_BYTES + batch.size() > maxFileBytes) {
+                file.force(false);
+                file.close();
+                nextFile();
+            }
+            while (header.hasRemaining() || payload.hasRemaining()) {
+                file.write(new ByteBuffer[]{header, payload});
+            }
+            if (sync) {
+                file.force(false);
+            }
+            fileBytes += BATCH_HEADER_BYTES + batch.size();
+            written += count;
+            batches++;
+        } catch (IOException e) {
+            LOG.log(Level.SEVERE, "Could not write " + count + " audit records", e);
+            dropped.add(count);
+            lost += count;
+        }
+    }
+
+    private void nextFile() throws IOException {
+        fileIndex++;
+        file = FileChannel.open(directory.resolve(fileName(fileIndex)), StandardOpenOption.CREATE_NEW,
+                StandardOpenOption.WRITE);
+        ByteBuffer header = ByteBuffer.allocate(FILE_HEADER_BYTES).putInt(MAGIC);
+        header.flip();
+        while (header.hasRemaining()) {
+            file.write(header);
+        }
+        fileBytes = FILE_HEADER_BYTES;
+        files++;
+    }
+
+    private static String fileName(long index) {
+        return String.format("%s%06d%s", FILE_PREFIX, index, FILE_SUFFIX);
+    }
+
+    private static long lastFileIndex(Path directory) throws IOException {
+        long last = 0;
+        for (Path path : listFiles(directory)) {
+            String name = path.getFileName().toString();
+            try {
+                last = Math.max(last, Long.parseLong(
+                        name.substring(FILE_PREFIX.length(), name.length() - FILE_SUFFIX.length())));
+            } catch (NumberFormatException e) {
+                // not written by a trail
+            }
+        }
+        return last;
+    }
+
+    private static void encode(AuditRecord record, DataOutputStream out) throws IOException {
+        out.writeByte(record.getType().ordinal());
+        out.writeLong(record.getTimeMillis());
+        out.writeLong(record.getAccountNumber());
+        out.writeLong(record.getCounterparty());
+        BigDecimal amount = record.getAmount();
+        if (amount == null) {
+            out.writeShort(0);
+            return;
+        }
+        byte[] unscaled = amount.unscaledValue().toByteArray();
+        out.writeShort(unscaled.length);
+        out.write(unscaled);
+        out.writeInt(amount.scale());
+    }
+
+    private static AuditRecord decode(DataInputStream in) throws IOException {
+        AuditRecord.Type type = AuditRecord.Type.values()[in.readUnsignedByte()];
+        long timeMillis = in.readLong();
+        long accountNumber = in.readLong();
+        long counterparty = in.readLong();
+        int length = in.readUnsignedShort();
+        BigDecimal amount = null;
+        if (length > 0) {
+            byte[] unscaled = new byte[length];
+            in.readFully(unscaled);
+            amount = new BigDecimal(new BigInteger(unscaled), in.readInt());
+        }
+        return new AuditRecord(type, timeMillis, accountNumber, counterparty, amount);
+    }
+
+    /**
+     * Bounded queue of many producers and the writer as its only consumer. A producer takes a slot by advancing
+     * the tail and then fills it; the writer empties slots in order and advances the head.
+     */
+    private static final class Ring {
+
+        private final AtomicReferenceArray<AuditRecord> slots;
+        private final int mask;
+        private final AtomicLong tail = new AtomicLong();
+        private final AtomicLong head = new AtomicLong();
+
+        private Ring(int capacity) {
+            int size = Integer.highestOneBit(Math.max(1, capacity - 1)) << 1;
+            this.slots = new AtomicReferenceArray<>(size);
+            this.mask = size - 1;
+        }
+
+        /**
+         * Takes consecutive slots for all records or none.
+         */
+        private boolean offer(AuditRecord[] records) {
+            while (true) {
+                long t = tail.get();
+                if (t + records.length - head.get() > mask + 1) {
+                    return false;
+                }
+                if (tail.compareAndSet(t, t + records.length)) {
+                    for (int i = 0; i < records.length; i++) {
+                        slots.lazySet((int) (t + i) & mask, records[i]);
+                    }
+                    return true;
+                }
+            }
+        }
+
+        /**
+         * @return next record, null if there is none or it is still being put into its slot.
+         */
+        private AuditRecord poll() {
+            long h = head.get();
+            int slot = (int) h & mask;
+            AuditRecord record = slots.get(slot);
+            if (record != null) {
+                slots.lazySet(slot, null);
+                head.lazySet(h + 1);
+            }
+            return record;
+        }
+
+        private int size() {
+            return (int) (tail.get() - head.get());
+        }
+
+        private int capacity() {
+            return mask + 1;
+        }
+    }
+
+    /**
+     * Byte buffer of one batch, reused for all batches.
+     */
+    private static final class Batch extends ByteArrayOutputStream {
+
+        private Batch() {
+            super(MAX_BATCH * 48);
+        }
+
+        private byte[] array() {
+            return buf;
+        }
+    }
+
+}
@@ -0,0 +1,318 @@
+package com.bank.rest.service;
+
+import com.bank.rest.dto.HoldDto;
+import com.bank.rest.exception.ApiException;
+import com.bank.rest.exception.ErrorCode;
+import com.bank.rest.model.Account;
+import com.bank.rest.model.AuditRecord;
+import com.bank.rest.model.Hold;
+import com.bank.rest.repo.AccountRepository;
+
+import java.math.BigDecimal;
+import java.time.Clock;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static java.util.Objects.isNull;
+
+/**
+ * Authorization holds reserve part of the balance of an account, see {@link Account#getHeld()}, until they are
+ * captured, released or expire. Expiry times are kept in a {@link TimingWheel}, so a tick only touches the holds
+ * expiring in it however many accounts and holds there are.
+ * Holds are kept in memory only, a restart releases them.
+ */
+public class AuthorizationHolds {
+
+    private final AccountRepository repository;
+    private final LockTable locks;
+    private final CreditCoalescer credits;
+    private final AccountStatistics statistics;
+    private final AuditTrail audit;
+    private final FxRateTable fxRates;
+    private final Clock clock;
+    private final long tickMillis;
+    private final long defaultTimeoutMillis;
+    private final AtomicLong nextId = new AtomicLong(1);
+    private final AtomicBoolean started = new AtomicBoolean();
+    // changed under the lock of the account of the hold
+    private final Map<Long, Active> active = new ConcurrentHashMap<>();
+    // guarded by itself
+    private final TimingWheel<Active> wheel;
+
+    /**
+     * @param defaultTimeoutMillis time until a hold placed without a timeout expires.
+     */
+    public AuthorizationHolds(AccountRepository repository, LockTable locks, CreditCoalescer credits,
+                              AccountStatistics statistics, AuditTrail audit, FxRateTable fxRates, Clock clock,
+                              long tickMillis, long defaultTimeoutMillis) {
+        this.repository = repository;
+        this.locks = locks;
+        this.credits = credits;
+        this.statistics = statistics;
+        this.audit = audit;
+        this.fxRates = fxRates;
+        this.clock = clock;
+        this.tickMillis = tickMillis;
+        this.defaultTimeoutMillis = defaultTimeoutMillis;
+        this.wheel = new TimingWheel<>(Math.floorDiv(clock.millis(), tickMillis));
+    }
+
+    /**
+     * Creates the holds configured by {@code bank.holds.tickMillis} (100) and
+     * {@code bank.holds.defaultTimeoutMillis} (7 days).
+     */
+    public static AuthorizationHolds fromSystemProperties(AccountRepository repository, LockTable locks,
+                                                          CreditCoalescer credits, AccountStatistics statistics,
+                                                          AuditTrail audit, FxRateTable fxRates) {
+        return new AuthorizationHolds(repository, locks, credits, statistics, audit, fxRates, Clock.systemUTC(),
+                Long.getLong("bank.holds.tickMillis", 100),
+                Long.getLong("bank.holds.defaultTimeoutMillis", TimeUnit.DAYS.toMillis(7)));
+    }
+
+    /**
+     * Starts releasing expired holds on a daemon thread every tick, later calls do nothing.
+     */
+    public void start() {
+        if (!started.compareAndSet(false, true)) {
+            return;
+        }
+        ScheduledExecutorService ticker = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "hold-expiry");
+            thread.setDaemon(true);
+            return thread;
+        });
+        ticker.scheduleWithFixedDelay(this::expireDue, tickMillis, tickMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Reserves the amount on the account, it must not exceed the available balance.
+     *
+     * @return active hold with its id.
+     */
+    public Hold place(HoldDto dto) {
+        Long accountNumber = dto.getAccountNumber();
+        Long payee = dto.getAccountNumberTo();
+        if (isNull(accountNumber)) {
+            throw new ApiException(ErrorCode.NULL_ACCOUNT_NUMBER);
+        }
+        if (isNull(dto.getAmount())) {
+            throw new ApiException(ErrorCode.NON_POSITIVE_WRITE_OFF, accountNumber);
+        }
+        long timeout = isNull(dto.getTimeoutMillis()) ? defaultTimeoutMillis : dto.getTimeoutMillis();
+        if (timeout <= 0) {
+            throw new ApiException(ErrorCode.NON_POSITIVE_HOLD_TIMEOUT);
+        }
+        if (payee != null && !repository.findByNumber(payee).isPresent()) {
+            throw new ApiException(ErrorCode.ACCOUNT_NOT_FOUND, payee);
+        }
+
+        try (LockTable.Held held = locks.lock(accountNumber)) {
+            Account account = lockedAccount(accountNumber);
+            credits.foldCommitted(repository, account);
+            account.checkWriteOff(dto.getAmount());
+            account.setHeld(account.getHeld().add(dto.getAmount()));
+            repository.publish(account);
+
+            long now = clock.millis();
+            Hold hold = new Hold(nextId.getAndIncrement(), accountNumber, payee, dto.getAmount(),
+                    timeout > Long.MAX_VALUE - now ? Long.MAX_VALUE : now + timeout, Hold.State.ACTIVE);
+            Active entry = new Active(hold);
+            // registered first, an entry handed out by the wheel is only expired while it is active
+            active.put(hold.getId(), entry);
+            synchronized (wheel) {
+                entry.timeout = wheel.schedule(entry, expiryTick(hold.getExpiresAt()));
+            }
+            return hold;
+        }
+    }
+
+    public Hold get(long id) {
+        return find(id).hold;
+    }
+
+    /**
+     * Writes off the amount of the hold, or a part of it, and transfers it to the payee of the hold if it has one.
+     * The rest of the hold is released. The payee is credited the amount converted to its currency.
+     *
+     * @param amount amount to capture, the whole hold if null.
+     * @return captured hold with the captured amount.
+     */
+    public Hold capture(long id, BigDecimal amount) {
+        Active entry = find(id);
+        Hold hold = entry.hold;
+        BigDecimal captured = isNull(amount) ? hold.getAmount() : amount;
+        if (captured.signum() <= 0 || captured.compareTo(hold.getAmount()) > 0) {
+            throw new ApiException(ErrorCode.CAPTURE_EXCEEDS_HOLD, id);
+        }
+        Long accountNumber = hold.getAccountNumber();
+        Long payee = hold.getAccountNumberTo();
+
+        BigDecimal credited;
+        String currency;
+        String payeeCurrency;
+        try (LockTable.Held held = payee == null ? locks.lock(accountNumber) : locks.lock(accountNumber, payee)) {
+            if (active.get(id) != entry) {
+                throw new ApiException(ErrorCode.HOLD_NOT_FOUND, id);
+            }
+            Account account = lockedAccount(accountNumber);
+            // an account loaded without being cached is a new instance on every lookup
+            Account to = payee == null ? null : payee.equals(accountNumber) ? account : lockedAccount(payee);
+            if (to == null) {
+                credits.foldCommitted(repository, account);
+            } else {
+                credits.foldCommitted(repository, account, to);
+            }
+            // checked first so a rejected capture leaves the hold in place and only the folded credits committed
+            if (account.isDisabled()) {
+                throw new ApiException(ErrorCode.WRITE_OFF_DISABLED, accountNumber);
+            }
+            if (account.getAvailableBalance().add(hold.getAmount()).compareTo(captured) < 0) {
+                throw new ApiException(ErrorCode.INSUFFICIENT_FUNDS, accountNumber);
+            }
+            credited = to == null ? null : fxRates.current().convert(captured, account, to);
+            if (to != null) {
+                to.checkTopUp(credited);
+            }
+            unhold(account, hold);
+            account.writeOff(captured);
+            if (to == null) {
+                repository.publish(account);
+                audit.record(AuditRecord.Type.CAPTURE, accountNumber, id, captured);
+            } else {
+                to.topUp(credited);
+                repository.publish(account, to);
+                audit.recordTransfer(accountNumber, payee, captured, credited);
+            }
+            currency = account.getCurrency();
+            payeeCurrency = to == null ? null : to.getCurrency();
+            active.remove(id);
+        }
+        synchronized (wheel) {
+            wheel.cancel(entry.timeout);
+        }
+        if (payee == null) {
+            statistics.balanceChanged(currency, captured.negate());
+        } else if (!Objects.equals(currency, payeeCurrency)) {
+            statistics.balanceChanged(currency, captured.negate());
+            statistics.balanceChanged(payeeCurrency, credited);
+        }
+        statistics.moved(captured);
+        return hold.ended(Hold.State.CAPTURED, captured);
+    }
+
+    /**
+     * Releases the hold without writing anything off.
+     *
+     * @return released hold.
+     */
+    public Hold release(long id) {
+        Hold released = end(find(id), Hold.State.RELEASED);
+        if (released == null) {
+            throw new ApiException(ErrorCode.HOLD_NOT_FOUND, id);
+        }
+        return released;
+    }
+
+    /**
+     * Releases the holds expired at the current time of the clock.
+     *
+     * @return number of holds released.
+     */
+    public int expireDue() {
+        List<Active> due = new ArrayList<>();
+        synchronized (wheel) {
+            wheel.advance(Math.floorDiv(clock.millis(), tickMillis), due::add);
+        }
+        int expired = 0;
+        for (Active entry : due) {
+            try {
+                if (end(entry, Hold.State.EXPIRED) != null) {
+                    expired++;
+                }
+            } catch (ApiException e) {
+                // the account stayed locked too long, tried again next tick
+                synchronized (wheel) {
+                    entry.timeout = wheel.schedule(entry, wheel.getNextTick());
+                }
+            }
+        }
+        return expired;
+    }
+
+    /**
+     * @return number of active holds.
+     */
+    public int size() {
+        return active.size();
+    }
+
+    /**
+     * @return the ended hold, null if it ended before.
+     */
+    private Hold end(Active entry, Hold.State state) {
+        Hold hold = entry.hold;
+        try (LockTable.Held held = locks.lock(hold.getAccountNumber())) {
+            if (active.get(hold.getId()) != entry) {
+                return null;
+            }
+            Account account = lockedAccount(hold.getAccountNumber());
+            unhold(account, hold);
+            repository.publish(account);
+            active.remove(hold.getId());
+        }
+        synchronized (wheel) {
+            wheel.cancel(entry.timeout);
+        }
+        return hold.ended(state, hold.getAmount());
+    }
+
+    private Active find(long id) {
+        Active entry = active.get(id);
+        if (entry == null) {
+            throw new ApiException(ErrorCode.HOLD_NOT_FOUND, id);
+        }
+        return entry;
+    }
+
+    /**
+     * Takes the amount of the hold off the held amount of its account, the caller holds the lock of the account.
+     */
+    private static void unhold(Account account, Hold hold) {
+        account.setHeld(account.getHeld().subtract(hold.getAmount()).max(BigDecimal.ZERO));
+    }
+
+    /**
+     * @return tick of the expiry time rounded up, so a hold never expires before its time.
+     */
+    private long expiryTick(long expiresAt) {
+        return Math.floorDiv(expiresAt, tickMillis) + (Math.floorMod(expiresAt, tickMillis) == 0 ? 0 : 1);
+    }
+
+    private Account lockedAccount(Long accountNumber) {
+        return repository.findForUpdate(accountNumber)
+                .orElseThrow(() -> new ApiException(ErrorCode.ACCOUNT_NOT_FOUND, accountNumber));
+    }
+
+    /**
+     * Active hold and its place in the wheel.
+     */
+    private static class Active {
+
+        private final Hold hold;
+        // guarded by the wheel
+        private TimingWheel.Entry<Active> timeout;
+
+        private Active(Hold hold) {
+            this.hold = hold;
+        }
+    }
+
+}
@@ -0,0 +1,288 @@
+package com.bank.rest.service;
+
+import com.bank.rest.dto.BalanceEventDto;
+import com.bank.rest.dto.BalanceEventsDto;
+import com.bank.rest.exception.ApiException;
+import com.bank.rest.exception.ErrorCode;
+import com.bank.rest.model.Account;
+import com.bank.rest.repo.AccountRepository;
+import com.bank.rest.trace.RequestTrace;
+
+import java.time.Clock;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Fans committed account states out to subscribers of some or all accounts without blocking the commit:
+ * an event is only offered to the bounded buffer of each matching subscriber. When a buffer is full its events
+ * are dropped and the next poll reports a resync, after which the subscriber reads the balances again.
+ * Subscriptions that are not polled for the idle timeout are removed.
+ * Waiting long polls and open streams each hold a request thread, so only a bounded number of them may wait at once,
+ * further ones are rejected with SERVER_OVERLOADED and the other requests keep the rest of the threads.
+ */
+public class BalanceEventBus implements AccountRepository.CommitListener {
+
+    private static final Subscription[] NONE = new Subscription[0];
+
+    private final int bufferSize;
+    private final long idleTimeoutMillis;
+    private final long maxWaitMillis;
+    private final Semaphore waiters;
+    private final Clock clock;
+
+    private final AtomicLong nextId = new AtomicLong(1);
+    private final Map<Long, Subscription> subscriptions = new ConcurrentHashMap<>();
+    private final List<Subscription> allAccounts = new CopyOnWriteArrayList<>();
+    // subscribers per account number, replaced as a whole on change
+    private final Map<Long, Subscription[]> byAccount = new ConcurrentHashMap<>();
+    private final AtomicBoolean started = new AtomicBoolean();
+
+    public BalanceEventBus(int bufferSize, long idleTimeoutMillis, Clock clock) {
+        this(bufferSize, idleTimeoutMillis, idleTimeoutMillis, Integer.MAX_VALUE, clock);
+    }
+
+    /**
+     * @param maxWaitMillis longest wait of a poll, at most the idle timeout.
+     * @param maxWaiters    number of long polls and streams that may wait at once.
+     */
+    public BalanceEventBus(int bufferSize, long idleTimeoutMillis, long maxWaitMillis, int maxWaiters, Clock clock) {
+        this.bufferSize = bufferSize;
+        this.idleTimeoutMillis = idleTimeoutMillis;
+        this.maxWaitMillis = Math.min(maxWaitMillis, idleTimeoutMillis);
+        this.waiters = new Semaphore(maxWaiters);
+        this.clock = clock;
+    }
+
+    /**
+     * Creates a bus configured by the {@code bank.events.*} system properties, by default waiting polls and streams
+     * take at most half of the {@code bank.http.threads} (64) request threads.
+     */
+    public static BalanceEventBus fromSystemProperties() {
+        return new BalanceEventBus(Integer.getInteger("bank.events.bufferSize", 1024),
+                Long.getLong("bank.events.idleTimeoutMillis", 60_000),
+                Long.getLong("bank.events.maxWaitMillis", 30_000),
+                Integer.getInteger("bank.events.maxWaiting",
+                        Math.max(1, Integer.getInteger("bank.http.threads", 64) / 2)),
+                Clock.systemUTC());
+    }
+
+    /**
+     * Removes idle subscriptions on a daemon thread, later calls do nothing.
+     */
+    public void start() {
+        if (!started.compareAndSet(false, true)) {
+            return;
+        }
+        ScheduledExecutorService reaper = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "subscription-reaper");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long period = Math.max(1, idleTimeoutMillis / 4);
+        reaper.scheduleWithFixedDelay(this::expireIdle, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @param accountNumbers accounts to receive events for, empty for all accounts.
+     * @return id of the subscription.
+     */
+    public long subscribe(Collection<Long> accountNumbers) {
+        Set<Long> accounts = accountNumbers.isEmpty() ? null : new HashSet<>(accountNumbers);
+        Subscription subscription = new Subscription(nextId.getAndIncrement(), accounts, bufferSize);
+        subscription.lastPolled = clock.millis();
+        subscriptions.put(subscription.id, subscription);
+        if (accounts == null) {
+            allAccounts.add(subscription);
+        } else {
+            for (Long accountNumber : accounts) {
+                byAccount.compute(accountNumber, (number, current) -> {
+                    Subscription[] added = Arrays.copyOf(current == null ? NONE : current,
+                            current == null ? 1 : current.length + 1);
+                    added[added.length - 1] = subscription;
+                    return added;
+                });
+            }
+        }
+        return subscription.id;
+    }
+
+    /**
+     * @return false if there is no such subscription.
+     */
+    public boolean unsubscribe(long id) {
+        Subscription subscription = subscriptions.remove(id);
+        if (subscription == null) {
+            return false;
+        }
+        if (subscription.accounts == null) {
+            allAccounts.remove(subscription);
+        } else {
+            for (Long accountNumber : subscription.accounts) {
+                byAccount.compute(accountNumber, (number, current) -> {
+                    List<Subscription> left = new ArrayList<>(Arrays.asList(current));
+                    left.remove(subscription);
+                    return left.isEmpty() ? null : left.toArray(NONE);
+                });
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Waits until the subscription has events or the timeout, capped at the longest wait, passed.
+     * A poll that has to wait takes one of the waiting places for the wait.
+     *
+     * @param max maximal number of events returned.
+     * @return buffered events in commit order, or no events and the resync flag if events were dropped.
+     * @throws ApiException SERVER_OVERLOADED if the poll would have to wait and no waiting place is left.
+     */
+    public BalanceEventsDto poll(long id, int max, long timeoutMillis) throws InterruptedException {
+        return poll(id, max, timeoutMillis, false);
+    }
+
+    /**
+     * Waits like {@link #poll(long, int, long)} for a stream that holds a waiting place while it is open.
+     */
+    public BalanceEventsDto pollReserved(long id, int max, long timeoutMillis) throws InterruptedException {
+        return poll(id, max, timeoutMillis, true);
+    }
+
+    /**
+     * Takes a waiting place for a stream, to be given back with {@link #releaseWaiter()} once it ends.
+     *
+     * @return false if none is left.
+     */
+    public boolean reserveWaiter() {
+        return waiters.tryAcquire();
+    }
+
+    public void releaseWaiter() {
+        waiters.release();
+    }
+
+    private BalanceEventsDto poll(long id, int max, long timeoutMillis, boolean reserved)
+            throws InterruptedException {
+        Subscription subscription = subscriptions.get(id);
+        if (subscription == null) {
+            throw new ApiException(ErrorCode.SUBSCRIPTION_NOT_FOUND, id);
+        }
+        timeoutMillis = Math.max(0, Math.min(timeoutMillis, maxWaitMillis));
+        // a waiting poll keeps the subscription alive
+        subscription.lastPolled = clock.millis() + timeoutMillis;
+
+        List<BalanceEventDto> events = new ArrayList<>();
+        if (!subscription.resync.get()) {
+            BalanceEventDto first = subscription.buffer.poll();
+            if (first == null && timeoutMillis > 0) {
+                if (!reserved && !waiters.tryAcquire()) {
+                    subscription.lastPolled = clock.millis();
+                    throw new ApiException(ErrorCode.SERVER_OVERLOADED);
+                }
+                long start = System.nanoTime();
+                try {
+                    first = subscription.buffer.poll(timeoutMillis, TimeUnit.MILLISECONDS);
+                } finally {
+                    if (!reserved) {
+                        waiters.release();
+                    }
+                }
+                RequestTrace.addPollWait(System.nanoTime() - start);
+            }
+            if (first != null) {
+                events.add(first);
+                subscription.buffer.drainTo(events, Math.max(0, max - 1));
+            }
+        }
+        boolean resync = subscription.resync.getAndSet(false);
+        if (resync) {
+            // re-reading the balances covers the events taken before the drop
+            events.clear();
+            subscription.buffer.clear();
+        }
+        subscription.lastPolled = clock.millis();
+        return new BalanceEventsDto(id, resync, events);
+    }
+
+    @Override
+    public void committed(long sequence, Account account) {
+        if (subscriptions.isEmpty()) {
+            return;
+        }
+        BalanceEventDto event = null;
+        for (Subscription subscription : allAccounts) {
+            event = event != null ? event : event(sequence, account);
+            subscription.offer(event);
+        }
+        Subscription[] subscribers = byAccount.get(account.getNumber());
+        if (subscribers != null) {
+            event = event != null ? event : event(sequence, account);
+            for (Subscription subscription : subscribers) {
+                subscription.offer(event);
+            }
+        }
+    }
+
+    /**
+     * @return number of subscriptions removed.
+     */
+    public int expireIdle() {
+        long idleSince = clock.millis() - idleTimeoutMillis;
+        int expired = 0;
+        for (Subscription subscription : subscriptions.values()) {
+            if (subscription.lastPolled < idleSince && unsubscribe(subscription.id)) {
+                expired++;
+            }
+        }
+        return expired;
+    }
+
+    public int size() {
+        return subscriptions.size();
+    }
+
+    private static BalanceEventDto event(long sequence, Account account) {
+        return new BalanceEventDto(sequence, account.getNumber(), account.getBalance(), account.isDisabled());
+    }
+
+    /**
+     * Bounded buffer of one subscriber.
+     */
+    private static final class Subscription {
+
+        private final long id;
+        // null for all accounts
+        private final Set<Long> accounts;
+        private final ArrayBlockingQueue<BalanceEventDto> buffer;
+        private final AtomicBoolean resync = new AtomicBoolean();
+        private volatile long lastPolled;
+
+        private Subscription(long id, Set<Long> accounts, int bufferSize) {
+            this.id = id;
+            this.accounts = accounts;
+            this.buffer = new ArrayBlockingQueue<>(bufferSize);
+        }
+
+        private void offer(BalanceEventDto event) {
+            // once behind everything up to the next poll is dropped
+            if (!resync.get() && !buffer.offer(event)) {
+                resync.set(true);
+                buffer.clear();
+            }
+        }
+    }
+
+}
@@ -0,0 +1,209 @@
+package com.bank.rest.service;
+
+import com.bank.rest.dto.BulkOperationDto;
+
+import java.io.BufferedWriter;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Append only journal of one bulk operation. It starts with the type and amount of the operation and the first
+ * account number of every chunk, written at once, followed by a line when a chunk begins, holding the last commit
+ * sequence read under the locks of its accounts, a line when a chunk is done and a line when the operation ended:
+ * <pre>
+ * O,INTEREST,0.001
+ * K,1000
+ * K,52000
+ * B,0,73
+ * D,0
+ * E
+ * </pre>
+ * Lines reach the file before the commit they announce, a torn last line left by a crash is cut off.
+ */
+class BulkJournal {
+
+    private static final String OPERATION = "O";
+    private static final String CHUNK = "K";
+    private static final String BEGIN = "B";
+    private static final String DONE = "D";
+    private static final String END = "E";
+
+    private final BulkOperationDto.Type type;
+    private final BigDecimal amount;
+    private final long[] firsts;
+    private final Map<Integer, Long> begun = new HashMap<>();
+    private final BitSet done = new BitSet();
+    private boolean ended;
+    private final Writer writer;
+
+    private BulkJournal(Path path, BulkOperationDto.Type type, BigDecimal amount, long[] firsts) throws IOException {
+        this.type = type;
+        this.amount = amount;
+        this.firsts = firsts;
+        this.writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(path.toFile(), true),
+                StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Writes the head of a new journal, which replaces the file only once complete.
+     */
+    static BulkJournal create(Path path, BulkOperationDto.Type type, BigDecimal amount, long[] firsts) {
+        try {
+            Path created = path.resolveSibling(path.getFileName() + ".tmp");
+            try (FileOutputStream out = new FileOutputStream(created.toFile());
+                 Writer head = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8))) {
+                head.write(OPERATION + "," + type + "," + amount + "\n");
+                for (long first : firsts) {
+                    head.write(CHUNK + "," + first + "\n");
+                }
+                head.flush();
+                out.getFD().sync();
+            }
+            Files.move(created, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            return new BulkJournal(path, type, amount, firsts);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * @return journal replayed from the file, null if there is none.
+     */
+    static BulkJournal open(Path path) {
+        if (!Files.exists(path)) {
+            return null;
+        }
+        try {
+            byte[] bytes = Files.readAllBytes(path);
+            int length = bytes.length;
+            while (length > 0 && bytes[length - 1] != '\n') {
+                length--;
+            }
+            if (length < bytes.length) {
+                // cut the torn line so lines appended later start on a line of their own
+                try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+                    channel.truncate(length);
+                }
+            }
+            List<String> lines = Arrays.asList(new String(bytes, 0, length, StandardCharsets.UTF_8).split("\n"));
+            String[] head = lines.get(0).split(",", -1);
+            if (!OPERATION.equals(head[0]) || head.length != 3) {
+                throw new IOException("Not a bulk operation journal " + path);
+            }
+            int chunks = 0;
+            while (chunks + 1 < lines.size() && lines.get(chunks + 1).startsWith(CHUNK + ",")) {
+                chunks++;
+            }
+            long[] firsts = new long[chunks];
+            for (int i = 0; i < chunks; i++) {
+                firsts[i] = Long.parseLong(lines.get(i + 1).substring(CHUNK.length() + 1));
+            }
+            BulkJournal journal = new BulkJournal(path, BulkOperationDto.Type.valueOf(head[1]),
+                    new BigDecimal(head[2]), firsts);
+            journal.replay(lines.subList(chunks + 1, lines.size()));
+            return journal;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    BulkOperationDto.Type getType() {
+        return type;
+    }
+
+    BigDecimal getAmount() {
+        return amount;
+    }
+
+    long[] getFirsts() {
+        return firsts;
+    }
+
+    /**
+     * @return last commit sequence before the chunk began, for the chunks begun but not done.
+     */
+    synchronized Map<Integer, Long> getBegun() {
+        return new HashMap<>(begun);
+    }
+
+    synchronized boolean isDone(int chunk) {
+        return done.get(chunk);
+    }
+
+    synchronized int getDoneCount() {
+        return done.cardinality();
+    }
+
+    synchronized boolean isEnded() {
+        return ended;
+    }
+
+    synchronized void begin(int chunk, long sequence) {
+        begun.put(chunk, sequence);
+        write(BEGIN + "," + chunk + "," + sequence + "\n");
+    }
+
+    synchronized void done(int chunk) {
+        begun.remove(chunk);
+        done.set(chunk);
+        write(DONE + "," + chunk + "\n");
+    }
+
+    synchronized void end() {
+        ended = true;
+        write(END + "\n");
+    }
+
+    synchronized void close() {
+        try {
+            writer.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void write(String line) {
+        try {
+            writer.write(line);
+            writer.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void replay(List<String> lines) {
+        for (String line : lines) {
+            String[] fields = line.split(",", -1);
+            try {
+                if (BEGIN.equals(fields[0]) && fields.length == 3) {
+                    begun.put(Integer.parseInt(fields[1]), Long.parseLong(fields[2]));
+                } else if (DONE.equals(fields[0]) && fields.length == 2) {
+                    begun.remove(Integer.parseInt(fields[1]));
+                    done.set(Integer.parseInt(fields[1]));
+                } else if (END.equals(line)) {
+                    ended = true;
+                } else {
+                    break;
+                }
+            } catch (NumberFormatException e) {
+                break;
+            }
+        }
+    }
+
+}
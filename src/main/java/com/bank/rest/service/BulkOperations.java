@@ -0,0 +1,446 @@
+package com.bank.rest.service;
+
+import com.bank.rest.dto.BulkOperationDto;
+import com.bank.rest.dto.BulkProgressDto;
+import com.bank.rest.exception.ApiException;
+import com.bank.rest.exception.ErrorCode;
+import com.bank.rest.model.Account;
+import com.bank.rest.model.AuditRecord;
+import com.bank.rest.repo.AccountRepository;
+import com.bank.rest.repo.CommittedAccount;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Applies interest or a fee to all active accounts in parallel. The account numbers are split into ranges of
+ * {@code chunkSize} accounts when an operation starts, the chunks are spread over a fork/join pool and each chunk
+ * is applied under the locks of its accounts and committed under one sequence, so transfers running meanwhile
+ * see every account either before or after the operation and none of their changes is lost.
+ * Interest is rounded to the minor unit of the currency of each account, the fee is in the base currency and
+ * converted at the current rates, accounts in a currency without a rate are skipped by it.
+ * <p>
+ * With a journal directory every operation keeps a {@link BulkJournal}. A chunk is journaled as begun with the last
+ * commit sequence before it and as done after its commit and the release of its locks, so after a crash {@link #recover()} finishes the chunks
+ * begun, leaving out the accounts committed after that sequence as they already got the change, and resumes the
+ * operations that did not end. Without a journal directory operations are only kept in memory.
+ */
+public class BulkOperations {
+
+    private static final String JOURNAL_PREFIX = "bulk-";
+    private static final String JOURNAL_SUFFIX = ".journal";
+
+    private final AccountRepository repository;
+    private final LockTable locks;
+    private final CreditCoalescer credits;
+    private final AccountStatistics statistics;
+    private final AuditTrail audit;
+    private final FxRateTable fxRates;
+    private final Path directory;
+    private final int chunkSize;
+    private final ForkJoinPool pool;
+    private final Map<Long, Run> runs = new HashMap<>();
+
+    /**
+     * @param directory where journals are kept, null to keep operations in memory only.
+     * @param chunkSize number of accounts applied under one set of locks and one commit.
+     */
+    public BulkOperations(AccountRepository repository, LockTable locks, CreditCoalescer credits,
+                          AccountStatistics statistics, AuditTrail audit, FxRateTable fxRates, Path directory,
+                          int chunkSize, int parallelism) {
+        this.repository = repository;
+        this.locks = locks;
+        this.credits = credits;
+        this.statistics = statistics;
+        this.audit = audit;
+        this.fxRates = fxRates;
+        this.directory = directory;
+        this.chunkSize = chunkSize;
+        AtomicInteger threads = new AtomicInteger();
+        this.pool = new ForkJoinPool(parallelism, forkJoinPool -> {
+            ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(forkJoinPool);
+            thread.setName("bulk-operation-" + threads.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }, null, false);
+        if (directory != null) {
+            try {
+                Files.createDirectories(directory);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    /**
+     * Creates the operations configured by {@code bank.bulk.chunkSize} (256) and {@code bank.bulk.parallelism}
+     * (number of processors), journaled in {@code bank.bulk.path}, by default next to the store of
+     * {@code bank.store.path}. Without a store accounts do not outlive the process, and neither do operations.
+     */
+    public static BulkOperations fromSystemProperties(AccountRepository repository, LockTable locks,
+                                                      CreditCoalescer credits, AccountStatistics statistics,
+                                                      AuditTrail audit, FxRateTable fxRates) {
+        String path = System.getProperty("bank.bulk.path");
+        if (path == null && repository.isStoreOpen() && System.getProperty("bank.store.path") != null) {
+            path = System.getProperty("bank.store.path") + ".bulk";
+        }
+        return new BulkOperations(repository, locks, credits, statistics, audit, fxRates,
+                path == null ? null : Paths.get(path), Integer.getInteger("bank.bulk.chunkSize", 256),
+                Integer.getInteger("bank.bulk.parallelism", Runtime.getRuntime().availableProcessors()));
+    }
+
+    /**
+     * Loads the journals, finishes the chunks begun before a crash and resumes the operations that did not end.
+     * Called before accounts are changed by anything else.
+     */
+    public void recover() {
+        if (directory == null) {
+            return;
+        }
+        List<Run> unfinished = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory,
+                JOURNAL_PREFIX + "*" + JOURNAL_SUFFIX)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                long id = Long.parseLong(name.substring(JOURNAL_PREFIX.length(),
+                        name.length() - JOURNAL_SUFFIX.length()));
+                BulkJournal journal = BulkJournal.open(file);
+                Run run = new Run(id, journal);
+                for (Map.Entry<Integer, Long> begun : journal.getBegun().entrySet()) {
+                    run.apply(begun.getKey(), begun.getValue());
+                }
+                synchronized (runs) {
+                    runs.put(id, run);
+                }
+                if (journal.isEnded()) {
+                    run.state = BulkProgressDto.State.COMPLETED;
+                    journal.close();
+                } else {
+                    unfinished.add(run);
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        for (Run run : unfinished) {
+            pool.execute(new RunTask(run));
+        }
+    }
+
+    /**
+     * Starts an operation, or reports the operation already started with the id.
+     * A failed operation is resumed, the chunks it applied are not applied again.
+     *
+     * @return progress of the operation.
+     */
+    public BulkProgressDto start(BulkOperationDto dto) {
+        if (dto.getId() == null || dto.getId() < 0 || dto.getType() == null || dto.getAmount() == null
+                || dto.getAmount().signum() <= 0) {
+            throw new ApiException(ErrorCode.MALFORMED_REQUEST);
+        }
+        Run run;
+        synchronized (runs) {
+            run = runs.get(dto.getId());
+            if (run != null) {
+                if (run.type != dto.getType() || run.amount.compareTo(dto.getAmount()) != 0) {
+                    throw new ApiException(ErrorCode.BULK_CONFLICT, dto.getId());
+                }
+                if (run.state != BulkProgressDto.State.FAILED) {
+                    return run.progress();
+                }
+                run.state = BulkProgressDto.State.RUNNING;
+                run.error = null;
+            } else {
+                run = new Run(dto.getId(), dto.getType(), dto.getAmount(), chunkFirsts());
+                runs.put(dto.getId(), run);
+            }
+        }
+        pool.execute(new RunTask(run));
+        return run.progress();
+    }
+
+    public BulkProgressDto progress(long id) {
+        Run run;
+        synchronized (runs) {
+            run = runs.get(id);
+        }
+        if (run == null) {
+            throw new ApiException(ErrorCode.BULK_NOT_FOUND, id);
+        }
+        return run.progress();
+    }
+
+    /**
+     * @return first account number of every chunk of the accounts existing now.
+     */
+    private long[] chunkFirsts() {
+        long[] numbers = sortedAccountNumbers();
+        long[] firsts = new long[(numbers.length + chunkSize - 1) / chunkSize];
+        for (int i = 0; i < firsts.length; i++) {
+            firsts[i] = numbers[i * chunkSize];
+        }
+        return firsts;
+    }
+
+    private long[] sortedAccountNumbers() {
+        long[] numbers = repository.getAllAccountNumbers().stream().mapToLong(Long::longValue).toArray();
+        Arrays.sort(numbers);
+        return numbers;
+    }
+
+    private Path journalPath(long id) {
+        return directory.resolve(JOURNAL_PREFIX + id + JOURNAL_SUFFIX);
+    }
+
+    /**
+     * @return index of the first number not lower than the key.
+     */
+    private static int lowerBound(long[] numbers, long key) {
+        int index = Arrays.binarySearch(numbers, key);
+        return index >= 0 ? index : -index - 1;
+    }
+
+    /**
+     * Operation in progress or completed, chunks are numbered by their position in {@code firsts}.
+     */
+    private class Run {
+
+        final long id;
+        final BulkOperationDto.Type type;
+        final BigDecimal amount;
+        final long[] firsts;
+        final BulkJournal journal;
+        // chunks applied, and chunks a task is applying so a resumed run does not apply them twice
+        final boolean[] done;
+        final boolean[] claimed;
+        final AtomicInteger chunksDone = new AtomicInteger();
+        final LongAdder changed = new LongAdder();
+        final LongAdder skipped = new LongAdder();
+        final StripedDecimal total = new StripedDecimal();
+        // account numbers the chunks are cut from, taken when the run starts or resumes
+        volatile long[] numbers;
+        volatile BulkProgressDto.State state = BulkProgressDto.State.RUNNING;
+        volatile String error;
+
+        Run(long id, BulkOperationDto.Type type, BigDecimal amount, long[] firsts) {
+            this.id = id;
+            this.type = type;
+            this.amount = amount;
+            this.firsts = firsts;
+            this.journal = directory == null ? null : BulkJournal.create(journalPath(id), type, amount, firsts);
+            this.done = new boolean[firsts.length];
+            this.claimed = new boolean[firsts.length];
+        }
+
+        Run(long id, BulkJournal journal) {
+            this.id = id;
+            this.type = journal.getType();
+            this.amount = journal.getAmount();
+            this.firsts = journal.getFirsts();
+            this.journal = journal;
+            this.done = new boolean[firsts.length];
+            this.claimed = new boolean[firsts.length];
+            for (int i = 0; i < firsts.length; i++) {
+                if (journal.isDone(i)) {
+                    done[i] = true;
+                    chunksDone.incrementAndGet();
+                }
+            }
+        }
+
+        /**
+         * Applies a chunk under the locks of its accounts.
+         *
+         * @param appliedAfter last sequence before the chunk began in an earlier run, accounts committed after
+         *                     it already got the change; -1 for a chunk not begun before.
+         */
+        void apply(int chunk, long appliedAfter) {
+            synchronized (done) {
+                if (done[chunk] || claimed[chunk]) {
+                    return;
+                }
+                claimed[chunk] = true;
+            }
+            try {
+                applyClaimed(chunk, appliedAfter);
+            } finally {
+                synchronized (done) {
+                    claimed[chunk] = false;
+                }
+            }
+        }
+
+        private void applyClaimed(int chunk, long appliedAfter) {
+            if (appliedAfter < 0 && journal != null) {
+                // begun by this process before an error, some accounts may have been committed
+                appliedAfter = journal.getBegun().getOrDefault(chunk, -1L);
+            }
+            long[] current = numbers;
+            if (current == null) {
+                current = sortedAccountNumbers();
+                numbers = current;
+            }
+            int from = lowerBound(current, firsts[chunk]);
+            int to = chunk + 1 < firsts.length ? lowerBound(current, firsts[chunk + 1]) : current.length;
+            long[] members = Arrays.copyOfRange(current, from, to);
+
+            List<Account> applied = new ArrayList<>(members.length);
+            List<BigDecimal> deltas = new ArrayList<>(members.length);
+            List<Account> changedAccounts = new ArrayList<>(members.length);
+            BigDecimal sum = BigDecimal.ZERO;
+            FxRates rates = fxRates.current();
+            // only changes in memory, the begin line and the audit records are made under the locks
+            try (LockTable.Held held = locks.lock(members)) {
+                if (journal != null) {
+                    journal.begin(chunk, appliedAfter >= 0 ? appliedAfter : repository.getLastSequence());
+                }
+                for (long accountNumber : members) {
+                    if (appliedAfter >= 0) {
+                        Optional<CommittedAccount> committed = repository.findCommitted(accountNumber);
+                        if (committed.isPresent() && committed.get().getSequence() > appliedAfter) {
+                            continue;
+                        }
+                    }
+                    Account account = repository.findForUpdate(accountNumber).orElse(null);
+                    if (account == null || account.isDisabled() || account.getBalance() == null) {
+                        skipped.increment();
+                        continue;
+                    }
+                    boolean folded = credits.fold(account);
+                    BigDecimal delta;
+                    try {
+                        delta = delta(account, rates);
+                    } catch (ApiException e) {
+                        // no rate to convert the fee into the currency of the account
+                        skipped.increment();
+                        delta = BigDecimal.ZERO;
+                    }
+                    if (delta.signum() != 0) {
+                        account.setBalance(account.getBalance().add(delta));
+                        applied.add(account);
+                        deltas.add(delta);
+                        sum = sum.add(delta);
+                    }
+                    if (folded || delta.signum() != 0) {
+                        changedAccounts.add(account);
+                    }
+                }
+                if (!changedAccounts.isEmpty()) {
+                    repository.publish(changedAccounts.toArray(new Account[0]));
+                }
+                AuditRecord.Type record = type == BulkOperationDto.Type.INTEREST
+                        ? AuditRecord.Type.INTEREST : AuditRecord.Type.FEE;
+                for (int i = 0; i < applied.size(); i++) {
+                    audit.record(record, applied.get(i).getNumber(), id, deltas.get(i).abs());
+                }
+            }
+            // a crash before the done line finishes the chunk again, leaving out the accounts committed above
+            if (journal != null) {
+                journal.done(chunk);
+            }
+            synchronized (done) {
+                done[chunk] = true;
+            }
+            chunksDone.incrementAndGet();
+            changed.add(applied.size());
+            total.add(sum);
+            Map<String, BigDecimal> deposits = new HashMap<>();
+            for (int i = 0; i < applied.size(); i++) {
+                deposits.merge(applied.get(i).getCurrency(), deltas.get(i), BigDecimal::add);
+            }
+            deposits.forEach(statistics::balanceChanged);
+        }
+
+        /**
+         * @return interest on the ledger balance rounded to the minor unit of the currency of the account, or the
+         * fee converted from the base currency and limited to the available balance so held money stays.
+         */
+        BigDecimal delta(Account account, FxRates rates) {
+            if (type == BulkOperationDto.Type.INTEREST) {
+                return rates.round(account.getBalance().multiply(amount), account);
+            }
+            return rates.fromBase(amount, account).min(account.getAvailableBalance().max(BigDecimal.ZERO)).negate();
+        }
+
+        BulkProgressDto progress() {
+            return new BulkProgressDto(id, type, amount, state, firsts.length, chunksDone.get(), changed.sum(),
+                    skipped.sum(), total.sum(), error);
+        }
+    }
+
+    /**
+     * Applies the chunks of a run not done yet and completes it, or marks it failed on the first error.
+     */
+    private class RunTask extends RecursiveAction {
+
+        private final Run run;
+
+        RunTask(Run run) {
+            this.run = run;
+        }
+
+        @Override
+        protected void compute() {
+            try {
+                // accounts created since the run was cut into chunks are included as far as they fall in a chunk
+                run.numbers = sortedAccountNumbers();
+                new ChunkTask(run, 0, run.firsts.length).invoke();
+                if (run.chunksDone.get() < run.firsts.length) {
+                    // claimed by tasks of an attempt that failed, which are still running
+                    throw new IllegalStateException("Chunks of bulk operation " + run.id + " are still applied");
+                }
+                if (run.journal != null) {
+                    run.journal.end();
+                    run.journal.close();
+                }
+                run.state = BulkProgressDto.State.COMPLETED;
+            } catch (RuntimeException e) {
+                run.error = e.getMessage() != null ? e.getMessage() : e.toString();
+                run.state = BulkProgressDto.State.FAILED;
+            }
+        }
+    }
+
+    /**
+     * Splits a range of chunks in halves until single chunks are applied.
+     */
+    private static class ChunkTask extends RecursiveAction {
+
+        private final Run run;
+        private final int from;
+        private final int to;
+
+        ChunkTask(Run run, int from, int to) {
+            this.run = run;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > 1) {
+                int middle = (from + to) >>> 1;
+                invokeAll(new ChunkTask(run, from, middle), new ChunkTask(run, middle, to));
+            } else if (to > from) {
+                run.apply(from, -1);
+            }
+        }
+    }
+
+}
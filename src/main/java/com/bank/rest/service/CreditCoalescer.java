@@ -0,0 +1,139 @@
+package com.bank.rest.service;
+
+import com.bank.rest.model.Account;
+import com.bank.rest.repo.AccountRepository;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Coalesces top ups of hot accounts. Credits are counted per account in a small hashed sketch and once an
+ * account receives more than {@code hotCreditsPerWindow} credits in one window its further credits are added to a
+ * {@link StripedDecimal} of pending credits instead of taking the account lock.
+ * Pending credits are folded into the balance under the account lock by the caller, before every debit and read
+ * of the account and periodically, so a debit never sees more than the folded balance.
+ * Hot accounts stay hot, their number is bounded by {@code maxHotAccounts}.
+ */
+public class CreditCoalescer {
+
+    private static final int SKETCH_SIZE = 4096;
+
+    private final int hotCreditsPerWindow;
+    private final int maxHotAccounts;
+    private final AtomicIntegerArray creditCounts = new AtomicIntegerArray(SKETCH_SIZE);
+    private final Map<Long, StripedDecimal> pendingCredits = new ConcurrentHashMap<>();
+
+    /**
+     * @param hotCreditsPerWindow credits per window after which an account is coalesced, 0 disables coalescing.
+     * @param maxHotAccounts      accounts coalesced at most.
+     */
+    public CreditCoalescer(int hotCreditsPerWindow, int maxHotAccounts) {
+        this.hotCreditsPerWindow = hotCreditsPerWindow;
+        this.maxHotAccounts = maxHotAccounts;
+    }
+
+    /**
+     * Creates a coalescer configured by the {@code bank.coalescing.*} system properties, disabled by default.
+     * The window is one second, so the threshold is in credits per second.
+     */
+    public static CreditCoalescer fromSystemProperties() {
+        return new CreditCoalescer(Integer.getInteger("bank.coalescing.hotCreditsPerSecond", 0),
+                Integer.getInteger("bank.coalescing.maxHotAccounts", 1024));
+    }
+
+    public boolean isEnabled() {
+        return hotCreditsPerWindow > 0;
+    }
+
+    /**
+     * Adds the credit to the pending credits if the account is hot, otherwise only counts it.
+     * A rejected credit is never counted as pending.
+     *
+     * @return true if the credit is pending, false if the caller has to apply it under the account lock.
+     */
+    public boolean tryCredit(Account account, BigDecimal amount) {
+        if (!isEnabled()) {
+            return false;
+        }
+        long accountNumber = account.getNumber();
+        StripedDecimal pending = pendingCredits.get(accountNumber);
+        if (pending == null) {
+            if (creditCounts.incrementAndGet(slot(accountNumber)) <= hotCreditsPerWindow
+                    || pendingCredits.size() >= maxHotAccounts) {
+                return false;
+            }
+            pending = pendingCredits.computeIfAbsent(accountNumber, number -> new StripedDecimal());
+        }
+        account.checkTopUp(amount);
+        pending.add(amount);
+        return true;
+    }
+
+    /**
+     * Moves the pending credits of the account into its balance, the caller holds the account lock.
+     *
+     * @return true if the balance changed.
+     */
+    public boolean fold(Account account) {
+        StripedDecimal pending = pendingCredits.get(account.getNumber());
+        if (pending == null) {
+            return false;
+        }
+        BigDecimal credits = pending.drain();
+        if (credits.signum() == 0) {
+            return false;
+        }
+        account.setBalance(account.getBalance().add(credits));
+        return true;
+    }
+
+    /**
+     * @return credits not yet folded into the balance of the account.
+     */
+    /**
+     * Folds the pending credits of locked accounts and publishes the accounts that had any. Called before the
+     * operation on them is validated, so folded credits stay committed even if it is rejected.
+     */
+    public void foldCommitted(AccountRepository repository, Account... accounts) {
+        List<Account> folded = new ArrayList<>(accounts.length);
+        for (Account account : accounts) {
+            if (fold(account)) {
+                folded.add(account);
+            }
+        }
+        if (!folded.isEmpty()) {
+            repository.publish(folded.toArray(new Account[0]));
+        }
+    }
+
+    public BigDecimal pending(long accountNumber) {
+        StripedDecimal pending = pendingCredits.get(accountNumber);
+        return pending == null ? BigDecimal.ZERO : pending.sum();
+    }
+
+    public Set<Long> getHotAccounts() {
+        return pendingCredits.keySet();
+    }
+
+    /**
+     * Starts a new counting window.
+     */
+    public void resetWindow() {
+        for (int i = 0; i < SKETCH_SIZE; i++) {
+            if (creditCounts.get(i) != 0) {
+                creditCounts.set(i, 0);
+            }
+        }
+    }
+
+    private static int slot(long accountNumber) {
+        long hash = accountNumber * 0x9E3779B97F4A7C15L;
+        return (int) (hash >>> 52) & (SKETCH_SIZE - 1);
+    }
+
+}
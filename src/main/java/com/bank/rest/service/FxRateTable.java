@@ -0,0 +1,68 @@
+package com.bank.rest.service;
+
+import com.bank.rest.exception.ApiException;
+import com.bank.rest.exception.ErrorCode;
+
+import java.math.BigDecimal;
+import java.time.Clock;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Current exchange rates. Transfers read the {@link FxRates} in place without locking and keep using it for the whole
+ * call, an update builds a new table and swaps it in, so it never waits for transfers and none sees it half done.
+ */
+public class FxRateTable {
+
+    private final Clock clock;
+    private volatile FxRates current;
+
+    public FxRateTable(FxRates initial, Clock clock) {
+        this.current = initial;
+        this.clock = clock;
+    }
+
+    /**
+     * Creates the table for the base currency {@code bank.fx.baseCurrency} (USD) with the initial rates of
+     * {@code bank.fx.rates}, a list like {@code EUR:0.92,GBP:0.79}.
+     */
+    public static FxRateTable fromSystemProperties() {
+        Map<String, BigDecimal> rates = new LinkedHashMap<>();
+        String list = System.getProperty("bank.fx.rates", "");
+        for (String entry : list.split(",")) {
+            if (entry.trim().isEmpty()) {
+                continue;
+            }
+            int colon = entry.indexOf(':');
+            if (colon < 0) {
+                throw new IllegalArgumentException("Malformed exchange rate: " + entry);
+            }
+            rates.put(entry.substring(0, colon).trim(), new BigDecimal(entry.substring(colon + 1).trim()));
+        }
+        Clock clock = Clock.systemUTC();
+        return new FxRateTable(new FxRates(System.getProperty("bank.fx.baseCurrency", "USD"), rates, clock.millis()),
+                clock);
+    }
+
+    public FxRates current() {
+        return current;
+    }
+
+    /**
+     * Replaces all rates, the base currency stays.
+     *
+     * @param baseCurrency base currency the rates are against, null for the current one.
+     * @return the new rates.
+     */
+    public FxRates update(String baseCurrency, Map<String, BigDecimal> rates) {
+        String base = current.getBaseCurrency();
+        if (baseCurrency != null && !base.equals(FxRates.currencyCode(baseCurrency))) {
+            throw new ApiException(ErrorCode.MALFORMED_REQUEST);
+        }
+        FxRates updated = new FxRates(base, rates == null ? Collections.emptyMap() : rates, clock.millis());
+        current = updated;
+        return updated;
+    }
+
+}
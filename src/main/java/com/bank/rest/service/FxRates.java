@@ -0,0 +1,172 @@
+package com.bank.rest.service;
+
+import com.bank.rest.exception.ApiException;
+import com.bank.rest.exception.ErrorCode;
+import com.bank.rest.model.Account;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.math.RoundingMode;
+import java.util.Currency;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Immutable table of exchange rates against the base currency, replaced as a whole when rates change, see
+ * {@link FxRateTable}. The rates between every pair of currencies are computed when the table is built, so a
+ * conversion is one multiplication and a rounding to the minor unit of the target currency.
+ */
+public final class FxRates {
+
+    private final String baseCurrency;
+    private final long updatedAt;
+    private final Map<String, Integer> indexes = new HashMap<>();
+    private final Map<String, BigDecimal> rates = new TreeMap<>();
+    private final int size;
+    private final int[] fractionDigits;
+    // rate from the currency of the row to the currency of the column, the base currency first
+    private final BigDecimal[] crossRates;
+
+    /**
+     * @param rates     units of each currency worth one unit of the base currency.
+     * @param updatedAt epoch millis of the rates.
+     */
+    public FxRates(String baseCurrency, Map<String, BigDecimal> rates, long updatedAt) {
+        this.baseCurrency = currencyCode(baseCurrency);
+        this.updatedAt = updatedAt;
+        this.rates.put(this.baseCurrency, BigDecimal.ONE);
+        for (Map.Entry<String, BigDecimal> rate : rates.entrySet()) {
+            String currency = currencyCode(rate.getKey());
+            if (rate.getValue() == null || rate.getValue().signum() <= 0) {
+                throw new ApiException(ErrorCode.NON_POSITIVE_FX_RATE);
+            }
+            if (currency.equals(this.baseCurrency) && rate.getValue().compareTo(BigDecimal.ONE) != 0) {
+                throw new ApiException(ErrorCode.MALFORMED_REQUEST);
+            }
+            if (!currency.equals(this.baseCurrency)) {
+                this.rates.put(currency, rate.getValue());
+            }
+        }
+
+        size = this.rates.size();
+        String[] currencies = new String[size];
+        BigDecimal[] values = new BigDecimal[size];
+        fractionDigits = new int[size];
+        currencies[0] = this.baseCurrency;
+        values[0] = BigDecimal.ONE;
+        int next = 1;
+        for (Map.Entry<String, BigDecimal> rate : this.rates.entrySet()) {
+            if (!rate.getKey().equals(this.baseCurrency)) {
+                currencies[next] = rate.getKey();
+                values[next++] = rate.getValue();
+            }
+        }
+        crossRates = new BigDecimal[size * size];
+        for (int from = 0; from < size; from++) {
+            indexes.put(currencies[from], from);
+            fractionDigits[from] = Currency.getInstance(currencies[from]).getDefaultFractionDigits();
+            for (int to = 0; to < size; to++) {
+                crossRates[from * size + to] = values[to].divide(values[from], MathContext.DECIMAL128);
+            }
+        }
+    }
+
+    /**
+     * @return the upper case ISO 4217 code shared by all accounts in the currency.
+     */
+    public static String currencyCode(String code) {
+        if (code == null) {
+            throw new ApiException(ErrorCode.UNKNOWN_CURRENCY);
+        }
+        try {
+            return Currency.getInstance(code.toUpperCase(Locale.ROOT)).getCurrencyCode();
+        } catch (IllegalArgumentException e) {
+            throw new ApiException(ErrorCode.UNKNOWN_CURRENCY);
+        }
+    }
+
+    /**
+     * @return the code kept by an account in the currency, null for null and the base currency so all accounts in
+     * the base currency look the same.
+     */
+    public String accountCurrency(String code) {
+        if (code == null) {
+            return null;
+        }
+        String currency = currencyCode(code);
+        return currency.equals(baseCurrency) ? null : currency;
+    }
+
+    /**
+     * Converts an amount written off one account into the amount credited to the other, rounded half even to the
+     * minor unit of the currency of the credited account. Accounts without a currency are in the base currency.
+     *
+     * @return the same amount if both accounts are in one currency.
+     */
+    public BigDecimal convert(BigDecimal amount, Account from, Account to) {
+        String fromCurrency = from.getCurrency();
+        String toCurrency = to.getCurrency();
+        // codes are shared instances, see currencyCode
+        if (fromCurrency == toCurrency || fromCurrency != null && fromCurrency.equals(toCurrency)) {
+            return amount;
+        }
+        int fromIndex = indexOf(fromCurrency, from);
+        int toIndex = indexOf(toCurrency, to);
+        if (fromIndex == toIndex) {
+            return amount;
+        }
+        return round(amount.multiply(crossRates[fromIndex * size + toIndex]), fractionDigits[toIndex]);
+    }
+
+    /**
+     * Converts an amount in the base currency into the currency of the account, rounded like {@link #convert}.
+     *
+     * @return the same amount if the account is in the base currency.
+     */
+    public BigDecimal fromBase(BigDecimal amount, Account to) {
+        int toIndex = indexOf(to.getCurrency(), to);
+        return toIndex == 0 ? amount : round(amount.multiply(crossRates[toIndex]), fractionDigits[toIndex]);
+    }
+
+    /**
+     * Rounds half even to the minor unit of the currency of the account, which needs no rate.
+     */
+    public BigDecimal round(BigDecimal amount, Account account) {
+        String currency = account.getCurrency() == null ? baseCurrency : account.getCurrency();
+        return round(amount, Currency.getInstance(currency).getDefaultFractionDigits());
+    }
+
+    public String getBaseCurrency() {
+        return baseCurrency;
+    }
+
+    /**
+     * @return rates by currency, the base currency included.
+     */
+    public Map<String, BigDecimal> getRates() {
+        return new TreeMap<>(rates);
+    }
+
+    public long getUpdatedAt() {
+        return updatedAt;
+    }
+
+    private static BigDecimal round(BigDecimal amount, int digits) {
+        // currencies without minor units, like gold, keep the significant digits
+        return digits < 0 ? amount.round(MathContext.DECIMAL64) : amount.setScale(digits, RoundingMode.HALF_EVEN);
+    }
+
+    private int indexOf(String currency, Account account) {
+        if (currency == null) {
+            return 0;
+        }
+        Integer index = indexes.get(currency);
+        if (index == null) {
+            throw new ApiException(ErrorCode.NO_EXCHANGE_RATE, account.getNumber());
+        }
+        return index;
+    }
+
+}
@@ -0,0 +1,143 @@
+package com.bank.rest.service;
+
+import com.bank.rest.dto.LockStatsDto;
+import com.bank.rest.exception.ApiException;
+import com.bank.rest.exception.ErrorCode;
+import com.bank.rest.trace.RequestTrace;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Fixed number of locks shared by all accounts, an account is guarded by the stripe its number hashes to.
+ * Locks do not belong to account instances, so replacing an account keeps its lock and memory does not grow
+ * with the number of accounts. Stripes of one operation are taken in ascending stripe order, so operations on
+ * several accounts do not deadlock, and waiting for a stripe longer than the timeout rejects the operation.
+ */
+public class LockTable {
+
+    private final ReentrantLock[] stripes;
+    private final int mask;
+    private final long timeoutMillis;
+
+    private final LongAdder acquisitions = new LongAdder();
+    private final LongAdder contended = new LongAdder();
+    private final LongAdder timeouts = new LongAdder();
+    private final LongAdder waitNanos = new LongAdder();
+
+    /**
+     * @param stripes       number of locks, rounded up to a power of two.
+     * @param timeoutMillis time to wait for the locks of one operation.
+     */
+    public LockTable(int stripes, long timeoutMillis) {
+        int size = Integer.highestOneBit(Math.max(1, stripes - 1)) << 1;
+        this.stripes = new ReentrantLock[stripes <= 1 ? 1 : size];
+        for (int i = 0; i < this.stripes.length; i++) {
+            this.stripes[i] = new ReentrantLock();
+        }
+        this.mask = this.stripes.length - 1;
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    /**
+     * Creates a table configured by the {@code bank.locks.*} system properties.
+     */
+    public static LockTable fromSystemProperties() {
+        return new LockTable(Integer.getInteger("bank.locks.stripes", 4096),
+                Long.getLong("bank.locks.timeoutMillis", 5000));
+    }
+
+    /**
+     * Locks the stripes of the given accounts, waiting at most the timeout for all of them.
+     * Locks are reentrant, a thread may lock an account it already holds.
+     *
+     * @return held locks to close once the operation completed.
+     */
+    public Held lock(long... accountNumbers) {
+        // stripe index in the high half, position of the account in the low half
+        long[] order = new long[accountNumbers.length];
+        for (int i = 0; i < accountNumbers.length; i++) {
+            order[i] = (long) stripe(accountNumbers[i]) << 32 | i;
+        }
+        Arrays.sort(order);
+        int[] held = new int[order.length];
+        int count = 0;
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        try {
+            for (long entry : order) {
+                int stripe = (int) (entry >>> 32);
+                if (count > 0 && held[count - 1] == stripe) {
+                    continue;
+                }
+                acquire(stripe, deadline, accountNumbers[(int) entry]);
+                held[count++] = stripe;
+            }
+        } catch (RuntimeException e) {
+            release(held, count);
+            throw e;
+        }
+        acquisitions.increment();
+        return new Held(held, count);
+    }
+
+    public LockStatsDto getStats() {
+        long waited = contended.sum();
+        return new LockStatsDto(stripes.length, timeoutMillis, acquisitions.sum(), waited, timeouts.sum(),
+                waited == 0 ? 0 : TimeUnit.NANOSECONDS.toMicros(waitNanos.sum() / waited));
+    }
+
+    private void acquire(int stripe, long deadline, long accountNumber) {
+        ReentrantLock lock = stripes[stripe];
+        if (lock.tryLock()) {
+            return;
+        }
+        contended.increment();
+        long start = System.nanoTime();
+        try {
+            boolean locked = lock.tryLock(deadline - start, TimeUnit.NANOSECONDS);
+            long waited = System.nanoTime() - start;
+            waitNanos.add(waited);
+            RequestTrace.addLockWait(waited);
+            if (!locked) {
+                timeouts.increment();
+                throw new ApiException(ErrorCode.LOCK_TIMEOUT, accountNumber);
+            }
+        } catch (InterruptedException e) {
+            // the caller is being stopped, for it the lock is not available in time
+            Thread.currentThread().interrupt();
+            throw new ApiException(ErrorCode.LOCK_TIMEOUT, accountNumber);
+        }
+    }
+
+    private void release(int[] held, int count) {
+        for (int i = count - 1; i >= 0; i--) {
+            stripes[held[i]].unlock();
+        }
+    }
+
+    private int stripe(long accountNumber) {
+        return (int) ((accountNumber * 0x9E3779B97F4A7C15L) >>> 32) & mask;
+    }
+
+    /**
+     * Locks held by one operation, closing it releases them.
+     */
+    public class Held implements AutoCloseable {
+
+        private final int[] stripes;
+        private final int count;
+
+        private Held(int[] stripes, int count) {
+            this.stripes = stripes;
+            this.count = count;
+        }
+
+        @Override
+        public void close() {
+            release(stripes, count);
+        }
+    }
+
+}
@@ -0,0 +1,641 @@
+package com.bank.rest.service;
+
+import com.bank.rest.dto.ReconciliationDto;
+import com.bank.rest.model.Account;
+import com.bank.rest.model.AuditRecord;
+import com.bank.rest.model.PackedDecimal;
+import com.bank.rest.repo.AccountRepository;
+import com.bank.rest.repo.CommittedAccount;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.ObjLongConsumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Verifies online that committed balances match the balances the audit trail adds up to.
+ * <p>
+ * Account numbers are hashed into a fixed number of partitions. A commit notes its account in its partition and
+ * replayed audit records mark the partitions they touch, so a run only walks the partitions that changed on either
+ * side since they were last verified, and those with discrepancies, in parallel. The accounts of a partition are
+ * those with recorded balances and those committed since, only the first run walks all accounts to find the ones
+ * without any record. The checksums of the partitions are the leaves of a hash tree whose root changes whenever
+ * a verified balance changed.
+ * <p>
+ * The records of the audit trail are replayed up to the position it had reached when the run started, split by
+ * partition across the worker threads, and compared with the latest committed balances. Balance changes are recorded
+ * under the locks of their accounts, so the records of an account are in the order of its commits, which the
+ * absolute balance of an update relies on. A mismatching account is read again under its lock together with the
+ * position of the trail, when the records of all its commits are queued, and compared with the balance its records
+ * up to that position add up to, so accounts changed all the time are verified as well. Recorded balances are kept
+ * packed in one table per partition.
+ */
+public class Reconciler implements AccountRepository.CommitListener {
+
+    private static final Logger LOG = Logger.getLogger(Reconciler.class.getName());
+    private static final int MAX_REPORTED = 1000;
+    private static final int CHUNK = 65_536;
+    // a mismatching account is read again this often, a coalesced top up may be counted before it is recorded
+    private static final int EXACT_READS = 3;
+    private static final long AUDIT_WAIT_MILLIS = 10_000;
+    private static final long GOLDEN = 0x9E3779B97F4A7C15L;
+
+    private final AccountRepository repository;
+    private final LockTable locks;
+    private final CreditCoalescer credits;
+    private final AuditTrail audit;
+    private final Clock clock;
+    private final int partitionBits;
+    private final int partitions;
+    private final int parallelism;
+    private final ExecutorService workers;
+
+    // accounts committed since their partition was verified with the sequence of their last commit,
+    // put by the committing threads
+    private final List<Map<Long, Long>> changed;
+    // balances the recorded history adds up to, per partition
+    private final RecordedBalances[] recorded;
+    // partitions with records replayed since they were verified
+    private final boolean[] replayed;
+    // partitions verified again by the next run whatever changed, those with discrepancies
+    private final boolean[] unsettled;
+    // hash tree over the partition checksums, the leaf of partition p at partitions + p and the root at 1
+    private final long[] tree;
+    private final Map<Long, ReconciliationDto.Discrepancy> discrepancies = new TreeMap<>();
+    private boolean enumerated;
+
+    // records of this trail read but not replayed yet, the first one at aheadPosition
+    private final List<AuditRecord> ahead = new ArrayList<>();
+    private long aheadPosition;
+    private Path currentFile;
+    private long filePosition;
+
+    private long runs;
+    private volatile ReconciliationDto report;
+
+    /**
+     * @param partitions  number of partitions of the account numbers, rounded up to a power of two.
+     * @param parallelism threads replaying and verifying partitions.
+     */
+    public Reconciler(AccountRepository repository, LockTable locks, CreditCoalescer credits, AuditTrail audit,
+                      int partitions, int parallelism, Clock clock) {
+        this.repository = repository;
+        this.locks = locks;
+        this.credits = credits;
+        this.audit = audit;
+        this.clock = clock;
+        this.partitionBits = Integer.numberOfTrailingZeros(Integer.highestOneBit(Math.max(1, partitions - 1)) << 1);
+        this.partitions = 1 << partitionBits;
+        this.parallelism = Math.max(1, Math.min(parallelism, this.partitions));
+        this.changed = new ArrayList<>(this.partitions);
+        this.recorded = new RecordedBalances[this.partitions];
+        for (int i = 0; i < this.partitions; i++) {
+            changed.add(new ConcurrentHashMap<>());
+            recorded[i] = new RecordedBalances();
+        }
+        this.replayed = new boolean[this.partitions];
+        this.unsettled = new boolean[this.partitions];
+        this.tree = new long[2 * this.partitions];
+        this.workers = !audit.isEnabled() ? null : Executors.newFixedThreadPool(this.parallelism, runnable -> {
+            Thread thread = new Thread(runnable, "reconciliation");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.report = report(0, 0, 0, 0, 0);
+    }
+
+    /**
+     * Creates a reconciler of {@code bank.reconcile.partitions} (1024) partitions replayed and verified by
+     * {@code bank.reconcile.parallelism} (number of processors) threads.
+     */
+    public static Reconciler fromSystemProperties(AccountRepository repository, LockTable locks,
+                                                  CreditCoalescer credits, AuditTrail audit) {
+        return new Reconciler(repository, locks, credits, audit, Integer.getInteger("bank.reconcile.partitions", 1024),
+                Integer.getInteger("bank.reconcile.parallelism", Runtime.getRuntime().availableProcessors()),
+                Clock.systemUTC());
+    }
+
+    /**
+     * Runs the reconciliation every interval, nothing happens without an audit trail or a positive interval.
+     */
+    public void start(long intervalMillis) {
+        if (!audit.isEnabled() || intervalMillis <= 0) {
+            return;
+        }
+        ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "reconciliation-timer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        timer.scheduleWithFixedDelay(() -> {
+            try {
+                reconcile();
+            } catch (RuntimeException e) {
+                // the partitions stay unverified and are tried again next time
+                LOG.log(Level.WARNING, "Reconciliation failed", e);
+            }
+        }, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void committed(long sequence, Account account) {
+        changed.get(partition(account.getNumber())).put(account.getNumber(), sequence);
+    }
+
+    /**
+     * @return report of the last run.
+     */
+    public ReconciliationDto getReport() {
+        return report;
+    }
+
+    /**
+     * Replays the audit records queued since the last run and verifies the partitions that changed.
+     *
+     * @return report of this run.
+     */
+    public synchronized ReconciliationDto reconcile() {
+        if (!audit.isEnabled()) {
+            return report;
+        }
+        long started = clock.millis();
+        long sequence = repository.getLastSequence();
+        // queued before the committed balances are read, so records of later commits can only be missing
+        replay(audit.getPosition());
+
+        List<Integer> selected = new ArrayList<>();
+        List<Set<Long>> others = new ArrayList<>(Collections.nCopies(partitions, null));
+        for (int p = 0; p < partitions; p++) {
+            if (!enumerated || replayed[p] || unsettled[p] || !changed.get(p).isEmpty()) {
+                selected.add(p);
+                others.set(p, new HashSet<>(changed.get(p).keySet()));
+            }
+        }
+        for (Long accountNumber : discrepancies.keySet()) {
+            others.get(partition(accountNumber)).add(accountNumber);
+        }
+        if (!enumerated) {
+            for (Long accountNumber : repository.getAllAccountNumbers()) {
+                others.get(partition(accountNumber)).add(accountNumber);
+            }
+        }
+
+        List<Callable<PartitionResult>> tasks = new ArrayList<>(selected.size());
+        for (int p : selected) {
+            tasks.add(() -> verify(p, others.get(p)));
+        }
+        List<PartitionResult> results = invokeAll(tasks);
+
+        List<Candidate> candidates = new ArrayList<>();
+        for (PartitionResult result : results) {
+            candidates.addAll(result.candidates);
+        }
+        discrepancies.keySet().removeIf(accountNumber -> others.get(partition(accountNumber)) != null);
+        for (int read = 0; read < EXACT_READS && !candidates.isEmpty(); read++) {
+            candidates = verifyExactly(candidates);
+        }
+        for (Candidate candidate : candidates) {
+            discrepancies.put(candidate.accountNumber, new ReconciliationDto.Discrepancy(candidate.accountNumber,
+                    candidate.balance, candidate.recordedBalance));
+        }
+
+        long accounts = 0;
+        for (PartitionResult result : results) {
+            int p = result.partition;
+            accounts += result.accounts;
+            replayed[p] = false;
+            unsettled[p] = false;
+            updateTree(p, result.checksum);
+            Map<Long, Long> committed = changed.get(p);
+            for (Map.Entry<Long, Long> entry : committed.entrySet()) {
+                if (entry.getValue() <= sequence) {
+                    // a later commit replaced the entry and stays for the next run
+                    committed.remove(entry.getKey(), entry.getValue());
+                }
+            }
+        }
+        for (Long accountNumber : discrepancies.keySet()) {
+            unsettled[partition(accountNumber)] = true;
+        }
+        enumerated = true;
+        runs++;
+        report = report(sequence, started, clock.millis() - started, selected.size(), accounts);
+        return report;
+    }
+
+    /**
+     * Compares the latest committed balances of the accounts of a partition with their replayed ones.
+     *
+     * @param others accounts of the partition that may have no recorded balance.
+     */
+    private PartitionResult verify(int partition, Set<Long> others) {
+        PartitionResult result = new PartitionResult(partition);
+        RecordedBalances balances = recorded[partition];
+        balances.forEach((recordedBalance, accountNumber) -> verify(result, accountNumber, recordedBalance));
+        for (Long accountNumber : others) {
+            if (!balances.contains(accountNumber)) {
+                verify(result, accountNumber, null);
+            }
+        }
+        return result;
+    }
+
+    private void verify(PartitionResult result, long accountNumber, BigDecimal recordedBalance) {
+        BigDecimal balance = repository.findCommitted(accountNumber).map(this::balanceOf).orElse(null);
+        result.accounts++;
+        if (balance != null) {
+            result.checksum += hash(accountNumber, balance);
+        }
+        if (!matches(balance, recordedBalance)) {
+            result.candidates.add(new Candidate(accountNumber));
+        }
+    }
+
+    /**
+     * Reads mismatching accounts again under their locks and compares them with the balances their records
+     * up to the position of the trail at that moment add up to.
+     *
+     * @return accounts that still mismatch.
+     */
+    private List<Candidate> verifyExactly(List<Candidate> candidates) {
+        long position = 0;
+        for (Candidate candidate : candidates) {
+            try (LockTable.Held held = locks.lock(candidate.accountNumber)) {
+                candidate.balance = repository.findCommitted(candidate.accountNumber).map(this::balanceOf)
+                        .orElse(null);
+                candidate.position = audit.getPosition();
+            }
+            position = Math.max(position, candidate.position);
+        }
+        read(position);
+        List<Candidate> mismatched = new ArrayList<>();
+        for (Candidate candidate : candidates) {
+            BigDecimal balance = recorded[partition(candidate.accountNumber)].get(candidate.accountNumber);
+            int end = (int) Math.min(ahead.size(), candidate.position - aheadPosition);
+            for (int i = 0; i < end; i++) {
+                balance = replay(ahead.get(i), candidate.accountNumber, balance);
+            }
+            candidate.recordedBalance = balance;
+            if (!matches(candidate.balance, balance)) {
+                mismatched.add(candidate);
+            }
+        }
+        return mismatched;
+    }
+
+    /**
+     * Replays the records of earlier trails and those of this trail before the position, in chunks whose records
+     * are replayed by partition in parallel.
+     */
+    private void replay(long position) {
+        List<AuditRecord> earlier = new ArrayList<>();
+        read(position, earlier);
+        replayChunk(earlier);
+        int count = (int) Math.min(ahead.size(), position - aheadPosition);
+        for (int from = 0; from < count; from += CHUNK) {
+            replayChunk(ahead.subList(from, Math.min(count, from + CHUNK)));
+        }
+        ahead.subList(0, count).clear();
+        aheadPosition += count;
+    }
+
+    private void read(long position) {
+        List<AuditRecord> earlier = new ArrayList<>();
+        read(position, earlier);
+        replayChunk(earlier);
+    }
+
+    /**
+     * Waits until the records before the position are written and reads the batches written since the last read.
+     * Records of this trail are kept for replay, those of earlier trails are collected and replayed once a chunk
+     * is full.
+     */
+    private void read(long position, List<AuditRecord> earlier) {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(AUDIT_WAIT_MILLIS);
+        while (audit.getWrittenPosition() < position) {
+            if (System.nanoTime() > deadline) {
+                throw new IllegalStateException("Audit records not written within " + AUDIT_WAIT_MILLIS + " ms");
+            }
+            try {
+                Thread.sleep(1);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Reconciliation interrupted", e);
+            }
+        }
+        try {
+            for (Path file : AuditTrail.listFiles(audit.getDirectory())) {
+                if (currentFile != null && file.compareTo(currentFile) < 0) {
+                    continue;
+                }
+                long from = file.equals(currentFile) ? filePosition : 0;
+                if (file.compareTo(audit.getFirstFile()) >= 0) {
+                    filePosition = AuditTrail.read(file, from, ahead::add);
+                } else {
+                    filePosition = AuditTrail.read(file, from, record -> {
+                        earlier.add(record);
+                        if (earlier.size() == CHUNK) {
+                            replayChunk(earlier);
+                            earlier.clear();
+                        }
+                    });
+                }
+                currentFile = file;
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Replays records into the recorded balances, every worker the records of its own partitions in their order.
+     */
+    private void replayChunk(List<AuditRecord> chunk) {
+        if (chunk.isEmpty()) {
+            return;
+        }
+        List<Callable<Void>> tasks = new ArrayList<>(parallelism);
+        for (int worker = 0; worker < parallelism; worker++) {
+            int group = worker;
+            tasks.add(() -> {
+                for (AuditRecord record : chunk) {
+                    if (record.getAmount() == null) {
+                        continue;
+                    }
+                    replay(record, record.getAccountNumber(), group);
+                    long counterparty = counterpartyOf(record);
+                    if (counterparty != record.getAccountNumber()) {
+                        replay(record, counterparty, group);
+                    }
+                }
+                return null;
+            });
+        }
+        invokeAll(tasks);
+    }
+
+    private void replay(AuditRecord record, long accountNumber, int group) {
+        int partition = partition(accountNumber);
+        if (partition % parallelism != group) {
+            return;
+        }
+        RecordedBalances balances = recorded[partition];
+        balances.put(accountNumber, replay(record, accountNumber, balances.get(accountNumber)));
+        replayed[partition] = true;
+    }
+
+    /**
+     * @param balance recorded balance of the account before the record, null if nothing was recorded.
+     * @return recorded balance of the account after the record.
+     */
+    private static BigDecimal replay(AuditRecord record, long accountNumber, BigDecimal balance) {
+        BigDecimal amount = record.getAmount();
+        if (amount == null) {
+            return balance;
+        }
+        switch (record.getType()) {
+            case UPDATE:
+                return record.getAccountNumber() == accountNumber ? amount : balance;
+            case TRANSFER:
+            case TRANSFER_LEG:
+                if (record.getAccountNumber() == accountNumber) {
+                    balance = add(balance, amount.negate());
+                }
+                return record.getCounterparty() == accountNumber ? add(balance, amount) : balance;
+            case FEE:
+            case CAPTURE:
+            case FX_DEBIT:
+                return record.getAccountNumber() == accountNumber ? add(balance, amount.negate()) : balance;
+            default:
+                // accounts are created and imported with their first balance, which adds to nothing
+                return record.getAccountNumber() == accountNumber ? add(balance, amount) : balance;
+        }
+    }
+
+    /**
+     * @return account topped up by a transfer record, the account itself for other records.
+     */
+    private static long counterpartyOf(AuditRecord record) {
+        switch (record.getType()) {
+            case TRANSFER:
+            case TRANSFER_LEG:
+                return record.getCounterparty();
+            default:
+                return record.getAccountNumber();
+        }
+    }
+
+    private static BigDecimal add(BigDecimal balance, BigDecimal amount) {
+        return balance == null ? amount : balance.add(amount);
+    }
+
+    private <T> List<T> invokeAll(List<Callable<T>> tasks) {
+        List<T> results = new ArrayList<>(tasks.size());
+        try {
+            for (Future<T> result : workers.invokeAll(tasks)) {
+                results.add(result.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Reconciliation interrupted", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Reconciliation failed", e.getCause());
+        }
+        return results;
+    }
+
+    private BigDecimal balanceOf(CommittedAccount committed) {
+        BigDecimal balance = committed.getAccount().getBalance();
+        long accountNumber = committed.getAccount().getNumber();
+        return (balance == null ? BigDecimal.ZERO : balance).add(credits.pending(accountNumber));
+    }
+
+    private void updateTree(int partition, long checksum) {
+        int node = partitions + partition;
+        tree[node] = checksum;
+        for (node >>>= 1; node > 0; node >>>= 1) {
+            tree[node] = mix(tree[2 * node] * GOLDEN + tree[2 * node + 1]);
+        }
+    }
+
+    private ReconciliationDto report(long sequence, long started, long duration, int verified, long accounts) {
+        List<ReconciliationDto.Discrepancy> reported = new ArrayList<>();
+        for (ReconciliationDto.Discrepancy discrepancy : discrepancies.values()) {
+            if (reported.size() == MAX_REPORTED) {
+                break;
+            }
+            reported.add(discrepancy);
+        }
+        return new ReconciliationDto(audit.isEnabled(), runs, sequence, started, duration, partitions, verified,
+                accounts, audit.getStats().getDropped(), String.format("%016x", tree[1]), discrepancies.size(),
+                reported);
+    }
+
+    private int partition(long accountNumber) {
+        return partitionBits == 0 ? 0 : (int) ((accountNumber * GOLDEN) >>> (64 - partitionBits));
+    }
+
+    private static boolean matches(BigDecimal balance, BigDecimal recordedBalance) {
+        if (balance == null || recordedBalance == null) {
+            return balance == recordedBalance;
+        }
+        return balance.compareTo(recordedBalance) == 0;
+    }
+
+    /**
+     * @return hash of the account and its balance, equal for balances of different scales.
+     */
+    private static long hash(long accountNumber, BigDecimal balance) {
+        BigDecimal normalized = balance.signum() == 0 ? BigDecimal.ZERO : balance.stripTrailingZeros();
+        return mix(accountNumber * GOLDEN + normalized.hashCode());
+    }
+
+    private static long mix(long value) {
+        value ^= value >>> 33;
+        value *= 0xFF51AFD7ED558CCDL;
+        value ^= value >>> 33;
+        value *= 0xC4CEB9FE1A85EC53L;
+        return value ^ value >>> 33;
+    }
+
+    private static final class Candidate {
+
+        final long accountNumber;
+        // committed balance read under the lock of the account and the position of the trail at that moment
+        BigDecimal balance;
+        long position;
+        BigDecimal recordedBalance;
+
+        Candidate(long accountNumber) {
+            this.accountNumber = accountNumber;
+        }
+    }
+
+    private static final class PartitionResult {
+
+        final int partition;
+        final List<Candidate> candidates = new ArrayList<>();
+        long checksum;
+        long accounts;
+
+        PartitionResult(int partition) {
+            this.partition = partition;
+        }
+    }
+
+    /**
+     * Recorded balances of the accounts of one partition: an open addressing table of account numbers and packed
+     * balances, with the balances that do not pack and the account number 0, which marks free slots, kept apart.
+     */
+    private static final class RecordedBalances {
+
+        private static final long FREE = 0;
+
+        private long[] keys = new long[16];
+        private long[] values = new long[16];
+        private final Map<Long, BigDecimal> wide = new HashMap<>();
+        private int size;
+
+        boolean contains(long accountNumber) {
+            return accountNumber == FREE ? wide.containsKey(FREE) : keys[slot(accountNumber)] == accountNumber;
+        }
+
+        /**
+         * @return recorded balance, null if nothing was recorded for the account.
+         */
+        BigDecimal get(long accountNumber) {
+            if (accountNumber == FREE) {
+                return wide.get(FREE);
+            }
+            int slot = slot(accountNumber);
+            if (keys[slot] != accountNumber) {
+                return null;
+            }
+            return values[slot] == PackedDecimal.WIDE ? wide.get(accountNumber)
+                    : PackedDecimal.unpack(values[slot], null);
+        }
+
+        void put(long accountNumber, BigDecimal balance) {
+            if (accountNumber == FREE) {
+                wide.put(FREE, balance);
+                return;
+            }
+            int slot = slot(accountNumber);
+            if (keys[slot] != accountNumber) {
+                if (4 * (size + 1) > 3 * keys.length) {
+                    grow();
+                    slot = slot(accountNumber);
+                }
+                keys[slot] = accountNumber;
+                values[slot] = 0;
+                size++;
+            }
+            long packed = PackedDecimal.pack(balance);
+            if (packed == PackedDecimal.WIDE) {
+                wide.put(accountNumber, balance);
+            } else if (values[slot] == PackedDecimal.WIDE) {
+                wide.remove(accountNumber);
+            }
+            values[slot] = packed;
+        }
+
+        /**
+         * Passes every recorded balance with its account number to the action.
+         */
+        void forEach(ObjLongConsumer<BigDecimal> action) {
+            for (int slot = 0; slot < keys.length; slot++) {
+                if (keys[slot] != FREE) {
+                    action.accept(values[slot] == PackedDecimal.WIDE ? wide.get(keys[slot])
+                            : PackedDecimal.unpack(values[slot], null), keys[slot]);
+                }
+            }
+            if (wide.containsKey(FREE)) {
+                action.accept(wide.get(FREE), FREE);
+            }
+        }
+
+        private int slot(long accountNumber) {
+            int mask = keys.length - 1;
+            int slot = (int) mix(accountNumber) & mask;
+            while (keys[slot] != FREE && keys[slot] != accountNumber) {
+                slot = (slot + 1) & mask;
+            }
+            return slot;
+        }
+
+        private void grow() {
+            long[] oldKeys = keys;
+            long[] oldValues = values;
+            keys = new long[oldKeys.length * 2];
+            values = new long[oldKeys.length * 2];
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldKeys[i] != FREE) {
+                    int slot = slot(oldKeys[i]);
+                    keys[slot] = oldKeys[i];
+                    values[slot] = oldValues[i];
+                }
+            }
+        }
+    }
+
+}
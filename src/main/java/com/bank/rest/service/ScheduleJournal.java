@@ -0,0 +1,152 @@
+package com.bank.rest.service;
+
+import com.bank.rest.model.ScheduledTransfer;
+
+import java.io.BufferedWriter;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Append only journal of scheduled transfers: a line per saved state and a line per removal.
+ * Replayed and compacted when opened and compacted again once it holds mostly stale lines,
+ * a torn last line left by a crash is ignored.
+ */
+class ScheduleJournal {
+
+    private static final String SAVE = "S";
+    private static final String REMOVE = "D";
+
+    private static final int MIN_COMPACTION_LINES = 1024;
+
+    private final Path path;
+    private FileOutputStream file;
+    private Writer writer;
+    private int lines;
+
+    /**
+     * @param loaded receives the transfers that were scheduled when the journal was last written.
+     */
+    ScheduleJournal(Path path, Map<Long, ScheduledTransfer> loaded) {
+        this.path = path;
+        try {
+            if (Files.exists(path)) {
+                replay(Files.readAllLines(path, StandardCharsets.UTF_8), loaded);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        compact(loaded.values());
+    }
+
+    /**
+     * @return true once the journal holds more than twice as many lines as there are scheduled transfers.
+     */
+    boolean isStale(int scheduled) {
+        return lines > MIN_COMPACTION_LINES && lines > 2 * scheduled;
+    }
+
+    /**
+     * Replaces the journal by one line per scheduled transfer.
+     */
+    void compact(Collection<ScheduledTransfer> scheduled) {
+        try {
+            if (writer != null) {
+                writer.close();
+            }
+            Path compacted = path.resolveSibling(path.getFileName() + ".tmp");
+            try (FileOutputStream out = new FileOutputStream(compacted.toFile());
+                 Writer compactedWriter = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8))) {
+                for (ScheduledTransfer transfer : scheduled) {
+                    compactedWriter.write(line(transfer));
+                }
+                compactedWriter.flush();
+                out.getFD().sync();
+            }
+            Files.move(compacted, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            lines = scheduled.size();
+            file = new FileOutputStream(path.toFile(), true);
+            writer = new BufferedWriter(new OutputStreamWriter(file, StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    void save(ScheduledTransfer transfer) {
+        write(line(transfer));
+    }
+
+    void remove(long id) {
+        write(REMOVE + "," + id + "\n");
+    }
+
+    /**
+     * Forces what was written so far to disk.
+     */
+    void sync() {
+        try {
+            writer.flush();
+            file.getFD().sync();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    void close() {
+        try {
+            writer.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void write(String line) {
+        lines++;
+        try {
+            writer.write(line);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static void replay(List<String> lines, Map<Long, ScheduledTransfer> loaded) {
+        Map<Long, ScheduledTransfer> replayed = new LinkedHashMap<>();
+        for (String line : lines) {
+            String[] fields = line.split(",", -1);
+            try {
+                if (SAVE.equals(fields[0]) && fields.length == 9) {
+                    long id = Long.parseLong(fields[1]);
+                    replayed.put(id, new ScheduledTransfer(id, Long.valueOf(fields[2]), Long.valueOf(fields[3]),
+                            new BigDecimal(fields[4]), Long.parseLong(fields[5]), Long.parseLong(fields[6]),
+                            Long.parseLong(fields[7]), fields[8].isEmpty() ? null : fields[8]));
+                } else if (REMOVE.equals(fields[0]) && fields.length == 2) {
+                    replayed.remove(Long.parseLong(fields[1]));
+                } else {
+                    break;
+                }
+            } catch (NumberFormatException e) {
+                break;
+            }
+        }
+        loaded.putAll(replayed);
+    }
+
+    private static String line(ScheduledTransfer transfer) {
+        return SAVE + "," + transfer.getId() + "," + transfer.getAccountNumberFrom() + ","
+                + transfer.getAccountNumberTo() + "," + transfer.getAmount() + "," + transfer.getExecuteAt() + ","
+                + transfer.getIntervalMillis() + "," + transfer.getExecutions() + ","
+                + (transfer.getLastError() == null ? "" : transfer.getLastError()) + "\n";
+    }
+
+}
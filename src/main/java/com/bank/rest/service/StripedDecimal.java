@@ -0,0 +1,60 @@
+package com.bank.rest.service;
+
+import java.math.BigDecimal;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * {@link BigDecimal} sum spread over several cells so that concurrent writers rarely contend on one value,
+ * in the spirit of {@link java.util.concurrent.atomic.LongAdder} but without limiting amounts to longs.
+ */
+public class StripedDecimal {
+
+    private static final int STRIPES = Integer.highestOneBit(Math.max(1, Runtime.getRuntime().availableProcessors() * 2 - 1)) << 1;
+
+    private final AtomicReferenceArray<BigDecimal> cells = new AtomicReferenceArray<>(STRIPES);
+
+    public StripedDecimal() {
+        for (int i = 0; i < STRIPES; i++) {
+            cells.set(i, BigDecimal.ZERO);
+        }
+    }
+
+    public void add(BigDecimal amount) {
+        int index = stripe();
+        BigDecimal current;
+        do {
+            current = cells.get(index);
+        } while (!cells.compareAndSet(index, current, current.add(amount)));
+    }
+
+    /**
+     * @return sum of all cells, not an atomic snapshot while writers are running.
+     */
+    public BigDecimal sum() {
+        BigDecimal sum = BigDecimal.ZERO;
+        for (int i = 0; i < STRIPES; i++) {
+            sum = sum.add(cells.get(i));
+        }
+        return sum;
+    }
+
+    /**
+     * Takes the value of every cell out of the sum, each amount added is returned by exactly one call.
+     */
+    public BigDecimal drain() {
+        BigDecimal sum = BigDecimal.ZERO;
+        for (int i = 0; i < STRIPES; i++) {
+            if (cells.get(i).signum() != 0) {
+                sum = sum.add(cells.getAndSet(i, BigDecimal.ZERO));
+            }
+        }
+        return sum;
+    }
+
+    private static int stripe() {
+        long id = Thread.currentThread().getId();
+        int hash = (int) (id ^ (id >>> 32)) * 0x9E3779B9;
+        return (hash ^ (hash >>> 16)) & (STRIPES - 1);
+    }
+
+}
@@ -0,0 +1,157 @@
+package com.bank.rest.service;
+
+import java.util.function.Consumer;
+
+/**
+ * Hierarchical timing wheel over absolute tick numbers, not thread safe.
+ * Four levels of 64 slots cover 2^24 ticks; entries further away are parked in the last level and placed again
+ * when their slot comes up. Scheduling and cancelling are O(1), advancing by one tick fires one slot and
+ * every 64th tick cascades the entries of one slot of the next level down.
+ *
+ * @param <T> type of the scheduled values.
+ */
+public class TimingWheel<T> {
+
+    private static final int SLOT_BITS = 6;
+    private static final int SLOTS = 1 << SLOT_BITS;
+    private static final int LEVELS = 4;
+    private static final long SPAN = 1L << (SLOT_BITS * LEVELS);
+
+    private final Entry<T>[][] wheels;
+    // next tick to fire, entries due before it fire with it
+    private long nextTick;
+    private int size;
+
+    @SuppressWarnings("unchecked")
+    public TimingWheel(long startTick) {
+        this.nextTick = startTick;
+        wheels = (Entry<T>[][]) new Entry<?>[LEVELS][SLOTS];
+        for (int level = 0; level < LEVELS; level++) {
+            for (int slot = 0; slot < SLOTS; slot++) {
+                Entry<T> head = new Entry<>(null, 0);
+                head.previous = head;
+                head.next = head;
+                wheels[level][slot] = head;
+            }
+        }
+    }
+
+    /**
+     * @param value    value handed out once its tick passed.
+     * @param deadline tick to fire at, ticks already passed fire with the next one.
+     * @return handle to cancel the entry.
+     */
+    public Entry<T> schedule(T value, long deadline) {
+        Entry<T> entry = new Entry<>(value, deadline);
+        place(entry);
+        size++;
+        return entry;
+    }
+
+    /**
+     * @return false if the entry already fired or was cancelled.
+     */
+    public boolean cancel(Entry<T> entry) {
+        if (entry.next == null) {
+            return false;
+        }
+        unlink(entry);
+        size--;
+        return true;
+    }
+
+    /**
+     * Fires all entries due up to and including the given tick, in tick order.
+     */
+    public void advance(long tick, Consumer<T> expired) {
+        while (nextTick <= tick) {
+            long current = nextTick;
+            for (int level = LEVELS - 1; level > 0; level--) {
+                if ((current & ((1L << (SLOT_BITS * level)) - 1)) == 0) {
+                    cascade(wheels[level][slot(current, level)]);
+                }
+            }
+            Entry<T> head = wheels[0][(int) (current & (SLOTS - 1))];
+            while (head.next != head) {
+                Entry<T> entry = head.next;
+                unlink(entry);
+                size--;
+                expired.accept(entry.value);
+            }
+            nextTick = current + 1;
+        }
+    }
+
+    /**
+     * @return next tick to fire.
+     */
+    public long getNextTick() {
+        return nextTick;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    private void cascade(Entry<T> head) {
+        Entry<T> entry = head.next;
+        head.next = head;
+        head.previous = head;
+        while (entry != head) {
+            Entry<T> following = entry.next;
+            place(entry);
+            entry = following;
+        }
+    }
+
+    private void place(Entry<T> entry) {
+        long deadline = Math.max(entry.deadline, nextTick);
+        long delta = deadline - nextTick;
+        if (delta >= SPAN) {
+            // parked until its slot in the last level comes up, then placed again
+            deadline = nextTick + SPAN - 1;
+            delta = SPAN - 1;
+        }
+        int level = 0;
+        while (delta >= 1L << (SLOT_BITS * (level + 1))) {
+            level++;
+        }
+        Entry<T> head = wheels[level][slot(deadline, level)];
+        entry.previous = head.previous;
+        entry.next = head;
+        head.previous.next = entry;
+        head.previous = entry;
+    }
+
+    private static int slot(long tick, int level) {
+        return (int) (tick >>> (SLOT_BITS * level)) & (SLOTS - 1);
+    }
+
+    private static <T> void unlink(Entry<T> entry) {
+        entry.previous.next = entry.next;
+        entry.next.previous = entry.previous;
+        entry.previous = null;
+        entry.next = null;
+    }
+
+    /**
+     * Scheduled value linked into its slot.
+     */
+    public static final class Entry<T> {
+
+        private final T value;
+        private final long deadline;
+        private Entry<T> previous;
+        private Entry<T> next;
+
+        private Entry(T value, long deadline) {
+            this.value = value;
+            this.deadline = deadline;
+        }
+
+        public long getDeadline() {
+            return deadline;
+        }
+    }
+
+}
@@ -0,0 +1,249 @@
+package com.bank.rest.service;
+
+import com.bank.rest.dto.ScheduleTransferDto;
+import com.bank.rest.exception.ApiException;
+import com.bank.rest.exception.ErrorCode;
+import com.bank.rest.model.ScheduledTransfer;
+
+import java.math.BigDecimal;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Clock;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static java.util.Objects.isNull;
+
+/**
+ * Fires future dated and recurring transfers from a {@link TimingWheel}.
+ * Every transfer fires a fixed pseudo random delay of up to {@code jitterMillis} after its execution time, so
+ * standing orders all set to the top of the hour are spread over the jitter window, and at most
+ * {@code maxFiringsPerTick} transfers fire per tick, the rest moves to the next tick.
+ * When a journal is configured schedules survive restarts, executions missed meanwhile fire once.
+ */
+public class TransferScheduler {
+
+    /**
+     * Executes one transfer, rejections are reported as {@link ApiException}.
+     */
+    public interface TransferExecutor {
+        void transfer(Long accountNumberFrom, Long accountNumberTo, BigDecimal amount);
+    }
+
+    private final TransferExecutor executor;
+    private final Clock clock;
+    private final long tickMillis;
+    private final long jitterMillis;
+    private final int maxFiringsPerTick;
+    private final ScheduleJournal journal;
+
+    // guarded by this
+    private final Map<Long, Scheduled> scheduled = new HashMap<>();
+    private final TimingWheel<Scheduled> wheel;
+    private long nextId = 1;
+
+    /**
+     * @param journal file the schedules are kept in, null to keep them in memory only.
+     */
+    public TransferScheduler(TransferExecutor executor, Clock clock, long tickMillis, long jitterMillis,
+                             int maxFiringsPerTick, Path journal) {
+        this.executor = executor;
+        this.clock = clock;
+        this.tickMillis = tickMillis;
+        this.jitterMillis = jitterMillis;
+        this.maxFiringsPerTick = maxFiringsPerTick;
+        this.wheel = new TimingWheel<>(tick(clock.millis()));
+
+        Map<Long, ScheduledTransfer> loaded = new LinkedHashMap<>();
+        this.journal = journal == null ? null : new ScheduleJournal(journal, loaded);
+        for (ScheduledTransfer transfer : loaded.values()) {
+            add(transfer);
+            nextId = Math.max(nextId, transfer.getId() + 1);
+        }
+    }
+
+    /**
+     * Creates a scheduler configured by the {@code bank.schedule.*} system properties.
+     */
+    public static TransferScheduler fromSystemProperties(TransferExecutor executor) {
+        String journal = System.getProperty("bank.schedule.journal");
+        return new TransferScheduler(executor, Clock.systemUTC(), Long.getLong("bank.schedule.tickMillis", 100),
+                Long.getLong("bank.schedule.jitterMillis", 30_000),
+                Integer.getInteger("bank.schedule.maxFiringsPerTick", 500),
+                journal == null ? null : Paths.get(journal));
+    }
+
+    /**
+     * Starts firing due transfers on a daemon thread every tick.
+     */
+    public void start() {
+        ScheduledExecutorService ticker = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "transfer-scheduler");
+            thread.setDaemon(true);
+            return thread;
+        });
+        ticker.scheduleWithFixedDelay(this::fireDue, tickMillis, tickMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Schedules a transfer, the caller checked that both accounts exist.
+     *
+     * @return scheduled transfer with its id.
+     */
+    public ScheduledTransfer schedule(ScheduleTransferDto dto) {
+        if (isNull(dto.getAccountNumberFrom()) || isNull(dto.getAccountNumberTo())) {
+            throw new ApiException(ErrorCode.NULL_ACCOUNT_NUMBER);
+        }
+        if (isNull(dto.getAmount()) || dto.getAmount().signum() <= 0) {
+            throw new ApiException(ErrorCode.NON_POSITIVE_WRITE_OFF, dto.getAccountNumberFrom());
+        }
+        if (dto.getIntervalMillis() < 0) {
+            throw new ApiException(ErrorCode.NEGATIVE_INTERVAL);
+        }
+        long executeAt = isNull(dto.getExecuteAt()) ? clock.millis() : dto.getExecuteAt();
+
+        synchronized (this) {
+            ScheduledTransfer transfer = new ScheduledTransfer(nextId++, dto.getAccountNumberFrom(),
+                    dto.getAccountNumberTo(), dto.getAmount(), executeAt, dto.getIntervalMillis(), 0, null);
+            add(transfer);
+            if (journal != null) {
+                journal.save(transfer);
+                journal.sync();
+            }
+            return transfer;
+        }
+    }
+
+    public synchronized Optional<ScheduledTransfer> find(long id) {
+        Scheduled entry = scheduled.get(id);
+        return entry == null ? Optional.empty() : Optional.of(entry.transfer);
+    }
+
+    /**
+     * @return false if there is no such scheduled transfer.
+     */
+    public synchronized boolean cancel(long id) {
+        Scheduled entry = scheduled.remove(id);
+        if (entry == null) {
+            return false;
+        }
+        wheel.cancel(entry.timeout);
+        if (journal != null) {
+            journal.remove(id);
+            journal.sync();
+        }
+        return true;
+    }
+
+    public synchronized int size() {
+        return scheduled.size();
+    }
+
+    /**
+     * Executes the transfers due at the current time of the clock. A single transfer is forgotten
+     * after its execution, a recurring one moves on to its next period.
+     *
+     * @return number of transfers executed.
+     */
+    public int fireDue() {
+        List<Scheduled> due = new ArrayList<>();
+        synchronized (this) {
+            wheel.advance(tick(clock.millis()), due::add);
+            if (due.size() > maxFiringsPerTick) {
+                for (Scheduled entry : due.subList(maxFiringsPerTick, due.size())) {
+                    entry.timeout = wheel.schedule(entry, wheel.getNextTick());
+                }
+                due = due.subList(0, maxFiringsPerTick);
+            }
+        }
+
+        for (Scheduled entry : due) {
+            ScheduledTransfer transfer = entry.transfer;
+            String error = null;
+            try {
+                executor.transfer(transfer.getAccountNumberFrom(), transfer.getAccountNumberTo(), transfer.getAmount());
+            } catch (ApiException e) {
+                error = e.getCode().name();
+            } catch (RuntimeException e) {
+                error = ErrorCode.INTERNAL_ERROR.name();
+            }
+            completed(entry, transfer.executed(clock.millis(), error));
+        }
+
+        if (journal != null && !due.isEmpty()) {
+            synchronized (this) {
+                if (journal.isStale(scheduled.size())) {
+                    List<ScheduledTransfer> live = new ArrayList<>(scheduled.size());
+                    scheduled.values().forEach(entry -> live.add(entry.transfer));
+                    journal.compact(live);
+                } else {
+                    journal.sync();
+                }
+            }
+        }
+        return due.size();
+    }
+
+    private synchronized void completed(Scheduled entry, ScheduledTransfer executed) {
+        if (scheduled.get(executed.getId()) != entry) {
+            // cancelled while executing
+            return;
+        }
+        if (executed.isRecurring()) {
+            entry.transfer = executed;
+            entry.timeout = wheel.schedule(entry, fireTick(executed));
+            if (journal != null) {
+                journal.save(executed);
+            }
+        } else {
+            scheduled.remove(executed.getId());
+            if (journal != null) {
+                journal.remove(executed.getId());
+            }
+        }
+    }
+
+    private void add(ScheduledTransfer transfer) {
+        Scheduled entry = new Scheduled(transfer);
+        entry.timeout = wheel.schedule(entry, fireTick(transfer));
+        scheduled.put(transfer.getId(), entry);
+    }
+
+    /**
+     * @return tick of the execution time plus the jitter of the transfer, which stays below its period.
+     */
+    private long fireTick(ScheduledTransfer transfer) {
+        long jitter = transfer.isRecurring() ? Math.min(jitterMillis, transfer.getIntervalMillis()) : jitterMillis;
+        long fireTime = transfer.getExecuteAt();
+        if (jitter > 0) {
+            fireTime += Math.floorMod(transfer.getId() * 0x9E3779B97F4A7C15L, jitter);
+        }
+        // rounded up so a transfer never fires before its time
+        return Math.floorDiv(fireTime + tickMillis - 1, tickMillis);
+    }
+
+    private long tick(long millis) {
+        return Math.floorDiv(millis, tickMillis);
+    }
+
+    /**
+     * Current state of a scheduled transfer and its place in the wheel.
+     */
+    private static class Scheduled {
+
+        private ScheduledTransfer transfer;
+        private TimingWheel.Entry<Scheduled> timeout;
+
+        private Scheduled(ScheduledTransfer transfer) {
+            this.transfer = transfer;
+        }
+    }
+
+}
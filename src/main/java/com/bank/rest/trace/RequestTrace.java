@@ -0,0 +1,157 @@
+package com.bank.rest.trace;
+
+import java.util.Locale;
+
+/**
+ * Time one HTTP request spent in each phase, kept in a thread local while the request runs on its thread.
+ * Lock and poll waits happen during the service phase and are part of it.
+ */
+public final class RequestTrace {
+
+    private static final ThreadLocal<RequestTrace> CURRENT = new ThreadLocal<>();
+
+    private final long queueNanos;
+    private boolean begun;
+    private long start;
+    private long deserializeNanos;
+    private long serviceNanos;
+    private long lockNanos;
+    private long pollNanos;
+    private long serializeNanos;
+
+    private RequestTrace(long queueNanos) {
+        this.queueNanos = queueNanos;
+    }
+
+    /**
+     * Adds time spent reading the request entity to the request of the calling thread, if it is traced.
+     */
+    public static void addDeserialize(long nanos) {
+        RequestTrace trace = CURRENT.get();
+        if (trace != null) {
+            trace.deserializeNanos += nanos;
+        }
+    }
+
+    /**
+     * Adds time spent waiting for account locks to the request of the calling thread, if it is traced.
+     */
+    public static void addLockWait(long nanos) {
+        RequestTrace trace = CURRENT.get();
+        if (trace != null) {
+            trace.lockNanos += nanos;
+        }
+    }
+
+    /**
+     * Adds time a long poll waited for events, it does not make a request slow.
+     */
+    public static void addPollWait(long nanos) {
+        RequestTrace trace = CURRENT.get();
+        if (trace != null) {
+            trace.pollNanos += nanos;
+        }
+    }
+
+    /**
+     * Called by the thread that took the request from the executor queue.
+     */
+    static void dequeued(long queueNanos) {
+        CURRENT.set(new RequestTrace(queueNanos));
+    }
+
+    /**
+     * Starts handling the request, reusing the trace left by {@link #dequeued(long)} if there is one.
+     */
+    static RequestTrace begin() {
+        RequestTrace trace = CURRENT.get();
+        if (trace == null || trace.begun) {
+            trace = new RequestTrace(0);
+            CURRENT.set(trace);
+        }
+        trace.begun = true;
+        trace.start = System.nanoTime();
+        return trace;
+    }
+
+    static RequestTrace current() {
+        return CURRENT.get();
+    }
+
+    static void end() {
+        CURRENT.remove();
+    }
+
+    void serviceDone(long now) {
+        serviceNanos = now - start - deserializeNanos;
+    }
+
+    void serializeDone(long now) {
+        serializeNanos = now - start - deserializeNanos - serviceNanos;
+    }
+
+    public long getQueueNanos() {
+        return queueNanos;
+    }
+
+    public long getDeserializeNanos() {
+        return deserializeNanos;
+    }
+
+    public long getServiceNanos() {
+        return serviceNanos;
+    }
+
+    public long getLockNanos() {
+        return lockNanos;
+    }
+
+    public long getPollNanos() {
+        return pollNanos;
+    }
+
+    public long getSerializeNanos() {
+        return serializeNanos;
+    }
+
+    public long getTotalNanos() {
+        return queueNanos + deserializeNanos + serviceNanos + serializeNanos;
+    }
+
+    /**
+     * @return value of a {@code Server-Timing} header, durations in milliseconds.
+     */
+    String toServerTiming() {
+        StringBuilder timing = new StringBuilder();
+        append(timing, "queue;dur=", queueNanos, ", ");
+        append(timing, "deserialize;dur=", deserializeNanos, ", ");
+        append(timing, "service;dur=", serviceNanos, ", ");
+        append(timing, "lock;dur=", lockNanos, ", ");
+        if (pollNanos > 0) {
+            append(timing, "poll;dur=", pollNanos, ", ");
+        }
+        append(timing, "serialize;dur=", serializeNanos, ", ");
+        append(timing, "total;dur=", getTotalNanos(), "");
+        return timing.toString();
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder phases = new StringBuilder();
+        append(phases, "total=", getTotalNanos(), "ms ");
+        append(phases, "queue=", queueNanos, "ms ");
+        append(phases, "deserialize=", deserializeNanos, "ms ");
+        append(phases, "service=", serviceNanos, "ms ");
+        append(phases, "lock=", lockNanos, "ms ");
+        if (pollNanos > 0) {
+            append(phases, "poll=", pollNanos, "ms ");
+        }
+        append(phases, "serialize=", serializeNanos, "ms");
+        return phases.toString();
+    }
+
+    private static void append(StringBuilder builder, String name, long nanos, String suffix) {
+        builder.append(name).append(String.format(Locale.ROOT, "%.3f", nanos / 1e6)).append(suffix);
+    }
+
+}
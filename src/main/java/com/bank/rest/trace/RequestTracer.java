@@ -0,0 +1,162 @@
+package com.bank.rest.trace;
+
+import com.sun.jersey.api.core.ResourceConfig;
+import com.sun.jersey.spi.container.ContainerRequest;
+import com.sun.jersey.spi.container.ContainerRequestFilter;
+import com.sun.jersey.spi.container.ContainerResponse;
+import com.sun.jersey.spi.container.ContainerResponseFilter;
+import com.sun.jersey.spi.container.ContainerResponseWriter;
+
+import javax.ws.rs.core.StreamingOutput;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Jersey filters timing the phases of each request: queue wait, reading the entity, the resource method,
+ * lock waits within it and writing the response. The timings are returned as a {@code Server-Timing} header
+ * if enabled, which buffers response entities to time their serialization, and requests taking at least the
+ * slow threshold, not counting long poll waits, are written to the slow request log.
+ * Streamed responses are not traced.
+ */
+public class RequestTracer implements ContainerRequestFilter, ContainerResponseFilter {
+
+    public static final String SERVER_TIMING = "Server-Timing";
+
+    private static final RequestTracer SINGLE_INSTANCE = fromSystemProperties();
+
+    private final boolean serverTiming;
+    private final long slowNanos;
+    private final SlowRequestLog slowLog;
+
+    /**
+     * @param serverTiming adds the {@code Server-Timing} header to responses.
+     * @param slowMillis   requests taking at least as long are logged, negative for none.
+     */
+    public RequestTracer(boolean serverTiming, long slowMillis, SlowRequestLog slowLog) {
+        this.serverTiming = serverTiming;
+        this.slowNanos = slowMillis < 0 ? Long.MAX_VALUE : TimeUnit.MILLISECONDS.toNanos(slowMillis);
+        this.slowLog = slowLog;
+    }
+
+    public static RequestTracer getSingleInstance() {
+        return SINGLE_INSTANCE;
+    }
+
+    /**
+     * Creates a tracer configured by the {@code bank.trace.*} system properties.
+     */
+    private static RequestTracer fromSystemProperties() {
+        String file = System.getProperty("bank.trace.slowLog");
+        int capacity = Integer.getInteger("bank.trace.slowLogCapacity", 10_000);
+        SlowRequestLog slowLog;
+        try {
+            slowLog = file == null ? SlowRequestLog.toStandardOutput(capacity)
+                    : SlowRequestLog.open(Paths.get(file), capacity);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return new RequestTracer(Boolean.getBoolean("bank.trace.serverTiming"),
+                Long.getLong("bank.trace.slowMillis", 1000), slowLog);
+    }
+
+    /**
+     * Times how long tasks of the executor, requests of the HTTP server, wait for a thread.
+     */
+    public static Executor timingQueue(Executor executor) {
+        return command -> {
+            long submitted = System.nanoTime();
+            executor.execute(() -> {
+                RequestTrace.dequeued(System.nanoTime() - submitted);
+                try {
+                    command.run();
+                } finally {
+                    RequestTrace.end();
+                }
+            });
+        };
+    }
+
+    @SuppressWarnings("unchecked")
+    public void install(ResourceConfig resourceConfig) {
+        resourceConfig.getContainerRequestFilters().add(this);
+        resourceConfig.getContainerResponseFilters().add(this);
+    }
+
+    @Override
+    public ContainerRequest filter(ContainerRequest request) {
+        RequestTrace.begin();
+        return request;
+    }
+
+    @Override
+    public ContainerResponse filter(ContainerRequest request, ContainerResponse response) {
+        RequestTrace trace = RequestTrace.current();
+        if (trace == null) {
+            return response;
+        }
+        if (response.getEntity() instanceof StreamingOutput) {
+            RequestTrace.end();
+            return response;
+        }
+        trace.serviceDone(System.nanoTime());
+        response.setContainerResponseWriter(new TracingWriter(response.getContainerResponseWriter(), trace,
+                request.getMethod() + " " + request.getRequestUri().getRawPath()));
+        return response;
+    }
+
+    private void completed(RequestTrace trace, String request, int status) {
+        if (trace.getTotalNanos() - trace.getPollNanos() >= slowNanos) {
+            slowLog.log(Instant.now() + " " + request + " " + status + " " + trace);
+        }
+    }
+
+    /**
+     * Times writing the response, holding it back until written when the header is enabled.
+     */
+    private class TracingWriter implements ContainerResponseWriter {
+
+        private final ContainerResponseWriter delegate;
+        private final RequestTrace trace;
+        private final String request;
+        private ContainerResponse response;
+        private ByteArrayOutputStream buffer;
+
+        private TracingWriter(ContainerResponseWriter delegate, RequestTrace trace, String request) {
+            this.delegate = delegate;
+            this.trace = trace;
+            this.request = request;
+        }
+
+        @Override
+        public OutputStream writeStatusAndHeaders(long contentLength, ContainerResponse response) throws IOException {
+            this.response = response;
+            if (serverTiming) {
+                buffer = new ByteArrayOutputStream(contentLength > 0 ? (int) contentLength : 256);
+                return buffer;
+            }
+            return delegate.writeStatusAndHeaders(contentLength, response);
+        }
+
+        @Override
+        public void finish() throws IOException {
+            trace.serializeDone(System.nanoTime());
+            if (RequestTrace.current() == trace) {
+                RequestTrace.end();
+            }
+            if (buffer != null) {
+                response.getHttpHeaders().putSingle(SERVER_TIMING, trace.toServerTiming());
+                OutputStream out = delegate.writeStatusAndHeaders(buffer.size(), response);
+                buffer.writeTo(out);
+            }
+            delegate.finish();
+            completed(trace, request, response != null ? response.getStatus() : 0);
+        }
+    }
+
+}
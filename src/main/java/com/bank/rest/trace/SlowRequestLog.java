@@ -0,0 +1,124 @@
+package com.bank.rest.trace;
+
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Lines written by a background thread. Request threads only append to a lock free queue and never wait for
+ * the output; once {@code capacity} lines are waiting further lines are dropped and counted.
+ */
+public class SlowRequestLog implements AutoCloseable {
+
+    private static final Logger LOG = Logger.getLogger(SlowRequestLog.class.getName());
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    private final Writer out;
+    private final boolean closeOut;
+    private final int capacity;
+    private final Queue<String> lines = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pending = new AtomicInteger();
+    private final LongAdder written = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final Thread writer;
+    private volatile boolean closed;
+
+    private SlowRequestLog(Writer out, boolean closeOut, int capacity) {
+        this.out = out;
+        this.closeOut = closeOut;
+        this.capacity = capacity;
+        this.writer = new Thread(this::write, "slow-request-log");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Appends to the file, creating it if needed.
+     */
+    public static SlowRequestLog open(Path file, int capacity) throws IOException {
+        return new SlowRequestLog(Files.newBufferedWriter(file, StandardCharsets.UTF_8, StandardOpenOption.CREATE,
+                StandardOpenOption.APPEND), true, capacity);
+    }
+
+    public static SlowRequestLog toStandardOutput(int capacity) {
+        return new SlowRequestLog(new OutputStreamWriter(System.out, StandardCharsets.UTF_8), false, capacity);
+    }
+
+    public void log(String line) {
+        if (closed || pending.incrementAndGet() > capacity) {
+            pending.decrementAndGet();
+            dropped.increment();
+            return;
+        }
+        lines.offer(line);
+        LockSupport.unpark(writer);
+    }
+
+    public long getWritten() {
+        return written.sum();
+    }
+
+    public long getDropped() {
+        return dropped.sum();
+    }
+
+    /**
+     * Writes the waiting lines and closes the output.
+     */
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        LockSupport.unpark(writer);
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (closeOut) {
+            out.close();
+        }
+    }
+
+    private void write() {
+        while (true) {
+            String line = lines.poll();
+            if (line == null) {
+                flush();
+                if (closed && lines.isEmpty()) {
+                    return;
+                }
+                LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+                continue;
+            }
+            pending.decrementAndGet();
+            try {
+                out.write(line);
+                out.write('\n');
+                written.increment();
+            } catch (IOException e) {
+                dropped.increment();
+            }
+        }
+    }
+
+    private void flush() {
+        try {
+            out.flush();
+        } catch (IOException e) {
+            LOG.log(Level.WARNING, "Could not write the slow request log", e);
+        }
+    }
+
+}
@@ -0,0 +1,143 @@
+package com.bank.rest.wire;
+
+import com.bank.rest.exception.ApiException;
+import com.bank.rest.exception.ErrorCode;
+import com.bank.rest.model.Account;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Blocking client for the binary protocol, not thread safe.
+ * The {@code send*} methods only buffer a request so that several can be pipelined before
+ * {@link #flush()}; responses are then taken in the same order with {@link #receive()}.
+ */
+public class BinaryProtocolClient implements Closeable {
+
+    private final Socket socket;
+    private final DataInputStream in;
+    private final OutputStream out;
+    private final ByteBuffer request = ByteBuffer.allocate(64);
+    private final ByteBuffer response = ByteBuffer.allocate(WireProtocol.MAX_FRAME_LENGTH);
+    private int nextRequestId;
+
+    public BinaryProtocolClient(String host, int port) throws IOException {
+        socket = new Socket(host, port);
+        socket.setTcpNoDelay(true);
+        in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+        out = new BufferedOutputStream(socket.getOutputStream());
+    }
+
+    public Account query(long accountNumber) throws IOException {
+        sendQuery(accountNumber);
+        flush();
+        return receive();
+    }
+
+    public Account topUp(long accountNumber, BigDecimal amount) throws IOException {
+        sendTopUp(accountNumber, amount);
+        flush();
+        return receive();
+    }
+
+    public void transfer(long accountNumberFrom, long accountNumberTo, BigDecimal amount) throws IOException {
+        sendTransfer(accountNumberFrom, accountNumberTo, amount);
+        flush();
+        receive();
+    }
+
+    public int sendQuery(long accountNumber) throws IOException {
+        int requestId = begin(WireProtocol.QUERY);
+        request.putLong(accountNumber);
+        return end(requestId);
+    }
+
+    public int sendTopUp(long accountNumber, BigDecimal amount) throws IOException {
+        int requestId = begin(WireProtocol.TOP_UP);
+        request.putLong(accountNumber);
+        WireProtocol.writeAmount(request, amount);
+        return end(requestId);
+    }
+
+    public int sendTransfer(long accountNumberFrom, long accountNumberTo, BigDecimal amount) throws IOException {
+        int requestId = begin(WireProtocol.TRANSFER);
+        request.putLong(accountNumberFrom).putLong(accountNumberTo);
+        WireProtocol.writeAmount(request, amount);
+        return end(requestId);
+    }
+
+    public void flush() throws IOException {
+        out.flush();
+    }
+
+    /**
+     * Reads the next response.
+     *
+     * @return account of a query or top up, {@code null} for a transfer.
+     * @throws ApiException when the server rejected the request.
+     */
+    public Account receive() throws IOException {
+        int length = in.readInt();
+        response.clear();
+        in.readFully(response.array(), 0, length);
+        response.limit(length);
+
+        byte status = response.get();
+        response.getInt();
+        if (status == WireProtocol.ERROR) {
+            byte[] code = new byte[response.getShort()];
+            response.get(code);
+            long accountNumber = response.getLong();
+            throw new ApiException(ErrorCode.valueOf(new String(code, StandardCharsets.US_ASCII)),
+                    accountNumber < 0 ? null : accountNumber);
+        }
+        if (!response.hasRemaining()) {
+            return null;
+        }
+
+        // fields of later versions are ignored
+        byte version = response.get();
+        long number = response.getLong();
+        BigDecimal balance = WireProtocol.readAmount(response);
+        boolean disabled = response.get() != 0;
+        byte[] owner = new byte[response.getShort()];
+        response.get(owner);
+        Account account = new Account(number, new String(owner, StandardCharsets.UTF_8), balance, disabled);
+        if (version >= 2) {
+            account.setHeld(WireProtocol.readAmount(response));
+        }
+        if (version >= 3) {
+            byte[] currency = new byte[response.get()];
+            response.get(currency);
+            account.setCurrency(currency.length == 0 ? null : new String(currency, StandardCharsets.US_ASCII));
+        }
+        return account;
+    }
+
+    @Override
+    public void close() throws IOException {
+        socket.close();
+    }
+
+    private int begin(byte opcode) {
+        int requestId = nextRequestId++;
+        request.clear();
+        request.putInt(0).put(opcode).putInt(requestId);
+        return requestId;
+    }
+
+    private int end(int requestId) throws IOException {
+        request.putInt(0, request.position() - Integer.BYTES);
+        out.write(request.array(), 0, request.position());
+        return requestId;
+    }
+
+}
@@ -0,0 +1,251 @@
+package com.bank.rest.wire;
+
+import com.bank.rest.exception.ApiException;
+import com.bank.rest.exception.ErrorCode;
+import com.bank.rest.model.Account;
+import com.bank.rest.service.AccountService;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * TCP listener for the binary protocol described in {@link WireProtocol}.
+ * Every connection is served by a thread of a bounded pool which executes requests in arrival order
+ * against the same {@link AccountService} as the REST API, a connection beyond the pool is answered with
+ * SERVER_OVERLOADED and closed.
+ * Responses are flushed once no further pipelined request is already buffered.
+ */
+public class BinaryProtocolServer implements Closeable {
+
+    private static final Logger LOG = Logger.getLogger(BinaryProtocolServer.class.getName());
+
+    private final AccountService accountService;
+    private final ServerSocket serverSocket;
+    private final ThreadPoolExecutor workers;
+    private final Set<Socket> connections = ConcurrentHashMap.newKeySet();
+    private volatile boolean running;
+
+    /**
+     * Creates the server serving up to {@code bank.binary.maxConnections} (256) connections at once.
+     */
+    public BinaryProtocolServer(AccountService accountService, InetSocketAddress address) throws IOException {
+        this(accountService, address, Integer.getInteger("bank.binary.maxConnections", 256));
+    }
+
+    public BinaryProtocolServer(AccountService accountService, InetSocketAddress address, int maxConnections)
+            throws IOException {
+        this.accountService = accountService;
+        AtomicInteger threads = new AtomicInteger();
+        // no queue, a connection waiting for a thread would get no answer at all
+        this.workers = new ThreadPoolExecutor(maxConnections, maxConnections, 60, TimeUnit.SECONDS,
+                new SynchronousQueue<>(), runnable -> {
+                    Thread thread = new Thread(runnable, "binary-connection-" + threads.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        this.workers.allowCoreThreadTimeOut(true);
+        this.serverSocket = new ServerSocket();
+        this.serverSocket.setReuseAddress(true);
+        this.serverSocket.bind(address);
+    }
+
+    public void start() {
+        running = true;
+        Thread acceptor = new Thread(this::acceptLoop, "binary-acceptor");
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    @Override
+    public void close() throws IOException {
+        running = false;
+        serverSocket.close();
+        for (Socket connection : connections) {
+            connection.close();
+        }
+        workers.shutdown();
+    }
+
+    private void acceptLoop() {
+        while (running) {
+            try {
+                Socket socket = serverSocket.accept();
+                socket.setTcpNoDelay(true);
+                connections.add(socket);
+                try {
+                    workers.execute(() -> serve(socket));
+                } catch (RejectedExecutionException e) {
+                    reject(socket);
+                }
+            } catch (IOException e) {
+                if (running) {
+                    LOG.log(Level.WARNING, "Could not accept a binary protocol connection", e);
+                }
+            }
+        }
+    }
+
+    private void reject(Socket socket) {
+        try (Socket s = socket) {
+            ByteBuffer response = ByteBuffer.allocate(64);
+            writeError(response, 0, new ApiException(ErrorCode.SERVER_OVERLOADED));
+            s.getOutputStream().write(response.array(), 0, response.position());
+        } catch (IOException e) {
+            // client went away
+        } finally {
+            connections.remove(socket);
+        }
+    }
+
+    private void serve(Socket socket) {
+        try (Socket s = socket) {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(s.getInputStream()));
+            OutputStream out = new BufferedOutputStream(s.getOutputStream());
+            ByteBuffer request = ByteBuffer.allocate(WireProtocol.MAX_FRAME_LENGTH);
+            ByteBuffer response = ByteBuffer.allocate(WireProtocol.MAX_FRAME_LENGTH + Integer.BYTES);
+
+            while (running) {
+                int length = in.readInt();
+                if (length < 1 + Integer.BYTES || length > WireProtocol.MAX_FRAME_LENGTH) {
+                    response.clear();
+                    writeError(response, 0, new ApiException(ErrorCode.MALFORMED_REQUEST));
+                    out.write(response.array(), 0, response.position());
+                    out.flush();
+                    return;
+                }
+                request.clear();
+                in.readFully(request.array(), 0, length);
+                request.limit(length);
+
+                response.clear();
+                handle(request, response);
+                out.write(response.array(), 0, response.position());
+                if (in.available() == 0) {
+                    out.flush();
+                }
+            }
+        } catch (EOFException | SocketException e) {
+            // client went away
+        } catch (IOException e) {
+            LOG.log(Level.WARNING, "Binary protocol connection failed", e);
+        } finally {
+            connections.remove(socket);
+        }
+    }
+
+    /**
+     * Executes one request frame and writes the complete response frame, length prefix included.
+     */
+    void handle(ByteBuffer request, ByteBuffer response) {
+        byte opcode = request.get();
+        int requestId = request.getInt();
+        try {
+            switch (opcode) {
+                case WireProtocol.QUERY:
+                    requireRemaining(request, Long.BYTES);
+                    writeAccount(response, requestId, accountService.getInfo(request.getLong()));
+                    break;
+                case WireProtocol.TOP_UP:
+                    requireRemaining(request, Long.BYTES + WireProtocol.AMOUNT_LENGTH);
+                    long accountNumber = request.getLong();
+                    BigDecimal amount = WireProtocol.readAmount(request);
+                    // checked before the top up is applied, so an applied top up is never answered with an error
+                    Account account = accountService.getInfo(accountNumber);
+                    checkEncodable(account, account.getBalance().add(amount));
+                    writeAccount(response, requestId, accountService.topUp(accountNumber, amount));
+                    break;
+                case WireProtocol.TRANSFER:
+                    requireRemaining(request, 2 * Long.BYTES + WireProtocol.AMOUNT_LENGTH);
+                    long accountNumberFrom = request.getLong();
+                    long accountNumberTo = request.getLong();
+                    accountService.transfer(accountNumberFrom, accountNumberTo, WireProtocol.readAmount(request));
+                    response.putInt(1 + Integer.BYTES).put(WireProtocol.OK).putInt(requestId);
+                    break;
+                default:
+                    throw new ApiException(ErrorCode.MALFORMED_REQUEST);
+            }
+        } catch (ApiException ex) {
+            response.clear();
+            writeError(response, requestId, ex);
+        } catch (RuntimeException ex) {
+            response.clear();
+            writeError(response, requestId, new ApiException(ErrorCode.INTERNAL_ERROR));
+        }
+    }
+
+    private static void requireRemaining(ByteBuffer request, int length) {
+        if (request.remaining() != length) {
+            throw new ApiException(ErrorCode.MALFORMED_REQUEST);
+        }
+    }
+
+    /**
+     * Rejects an account whose owner or amounts do not fit the account frame, with the given balance.
+     * A change of the account between this check and the reply, such as a longer owner, can still fail the reply.
+     */
+    private static void checkEncodable(Account account, BigDecimal balance) {
+        if (ownerBytes(account).length > Short.MAX_VALUE || !WireProtocol.fits(balance)
+                || !WireProtocol.fits(account.getHeld())) {
+            throw new ApiException(ErrorCode.NOT_ENCODABLE, account.getNumber());
+        }
+    }
+
+    private static byte[] ownerBytes(Account account) {
+        return account.getOwner() == null ? new byte[0] : account.getOwner().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static void writeAccount(ByteBuffer response, int requestId, Account account) {
+        checkEncodable(account, account.getBalance());
+        byte[] owner = ownerBytes(account);
+        int start = response.position();
+        response.putInt(0).put(WireProtocol.OK).putInt(requestId);
+        response.put(WireProtocol.ACCOUNT_VERSION).putLong(account.getNumber());
+        WireProtocol.writeAmount(response, account.getBalance());
+        response.put((byte) (account.isDisabled() ? 1 : 0));
+        response.putShort((short) owner.length).put(owner);
+        WireProtocol.writeAmount(response, account.getHeld());
+        String currency = account.getCurrency() == null ? "" : account.getCurrency();
+        response.put((byte) currency.length());
+        for (int i = 0; i < currency.length(); i++) {
+            response.put((byte) currency.charAt(i));
+        }
+        response.putInt(start, response.position() - start - Integer.BYTES);
+    }
+
+    private static void writeError(ByteBuffer response, int requestId, ApiException ex) {
+        String code = ex.getCode().name();
+        response.putInt(1 + Integer.BYTES + Short.BYTES + code.length() + Long.BYTES)
+                .put(WireProtocol.ERROR).putInt(requestId);
+        response.putShort((short) code.length());
+        for (int i = 0; i < code.length(); i++) {
+            response.put((byte) code.charAt(i));
+        }
+        response.putLong(ex.getAccountNumber() == null ? -1 : ex.getAccountNumber());
+    }
+
+}
@@ -0,0 +1,67 @@
+package com.bank.rest.wire;
+
+import com.bank.rest.exception.ApiException;
+import com.bank.rest.exception.ErrorCode;
+
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+
+/**
+ * Layout of the binary protocol. All numbers are big endian.
+ * <pre>
+ * frame    := int length, body                (length counts the bytes of body)
+ * request  := byte opcode, int requestId, payload
+ *   QUERY     long accountNumber
+ *   TOP_UP    long accountNumber, amount
+ *   TRANSFER  long accountNumberFrom, long accountNumberTo, amount
+ * response := byte status, int requestId, payload
+ *   OK        account (QUERY, TOP_UP) or nothing (TRANSFER)
+ *   ERROR     short codeLength, code name (ASCII), long accountNumber or -1
+ * amount   := long unscaledValue, byte scale
+ * account  := byte version, long number, amount balance, byte disabled, short ownerLength, owner (UTF-8),
+ *             amount held                    (since version 2),
+ *             byte currencyLength, currency (ASCII), length 0 for the base currency (since version 3)
+ * </pre>
+ * Requests on one connection may be pipelined; responses come back in request order.
+ * Fields added to the account come last and raise {@link #ACCOUNT_VERSION}, a client reads the fields of the
+ * versions it knows and skips the rest of the frame.
+ */
+public final class WireProtocol {
+
+    public static final byte QUERY = 1;
+    public static final byte TOP_UP = 2;
+    public static final byte TRANSFER = 3;
+
+    public static final byte OK = 0;
+    public static final byte ERROR = 1;
+
+    public static final byte ACCOUNT_VERSION = 3;
+
+    public static final int MAX_FRAME_LENGTH = 64 * 1024;
+    public static final int AMOUNT_LENGTH = Long.BYTES + 1;
+
+    private WireProtocol() {
+    }
+
+    static BigDecimal readAmount(ByteBuffer buffer) {
+        long unscaled = buffer.getLong();
+        return BigDecimal.valueOf(unscaled, buffer.get());
+    }
+
+    static void writeAmount(ByteBuffer buffer, BigDecimal amount) {
+        if (!fits(amount)) {
+            throw new ApiException(ErrorCode.INTERNAL_ERROR);
+        }
+        buffer.putLong(amount.unscaledValue().longValue());
+        buffer.put((byte) amount.scale());
+    }
+
+    /**
+     * @return whether the amount has an unscaled value of at most 63 bits and a scale within a byte.
+     */
+    static boolean fits(BigDecimal amount) {
+        return amount.scale() >= Byte.MIN_VALUE && amount.scale() <= Byte.MAX_VALUE
+                && amount.unscaledValue().bitLength() <= 63;
+    }
+
+}
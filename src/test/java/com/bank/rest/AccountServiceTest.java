@@ -1,14 +1,58 @@
 package com.bank.rest;
 
+import com.bank.rest.dto.AccountsSnapshotDto;
+import com.bank.rest.dto.AdmissionStatsDto;
+import com.bank.rest.dto.BalanceEventDto;
+import com.bank.rest.dto.BalanceEventsDto;
+import com.bank.rest.dto.CacheStatsDto;
+import com.bank.rest.dto.FxRatesDto;
+import com.bank.rest.dto.HoldDto;
+import com.bank.rest.dto.ImportResultDto;
+import com.bank.rest.dto.LockStatsDto;
+import com.bank.rest.dto.StatsDto;
+import com.bank.rest.dto.StoreStatsDto;
+import com.bank.rest.dto.TransferMoneyDto;
 import com.bank.rest.exception.ApiException;
+import com.bank.rest.exception.ErrorCode;
 import com.bank.rest.model.Account;
+import com.bank.rest.model.Hold;
+import com.bank.rest.model.OwnerPool;
+import com.bank.rest.model.PackedDecimal;
 import com.bank.rest.repo.AccountRepository;
+import com.bank.rest.repo.AccountSnapshot;
+import com.bank.rest.repo.CommittedAccount;
+import com.bank.rest.service.AccountImporter;
+import com.bank.rest.service.AccountJsonCache;
 import com.bank.rest.service.AccountService;
+import com.bank.rest.service.AccountStatistics;
+import com.bank.rest.service.AdmissionController;
+import com.bank.rest.service.BalanceEventBus;
+import com.bank.rest.service.CreditCoalescer;
+import com.bank.rest.service.LockTable;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
 import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Collectors;
 
 import static org.junit.Assert.*;
 import static org.junit.jupiter.api.Assertions.assertThrows;
@@ -38,6 +82,20 @@ public class AccountServiceTest {
         assertFalse(resultAccount.isDisabled());
     }
 
+    @Test
+    public void create_Test_BaseCurrencyKeptAsNull() {
+        StatsDto before = accountService.getStatistics(0);
+
+        Account dollars = accountService.createAccount("Harry Potter", "usd");
+        accountService.topUp(dollars.getNumber(), BigDecimal.TEN);
+
+        assertNull(dollars.getCurrency());
+        assertEquals("EUR", accountService.createAccount("Harry Potter", "eur").getCurrency());
+        StatsDto after = accountService.getStatistics(0);
+        assertEquals(0, before.getTotalDeposits().add(BigDecimal.TEN).compareTo(after.getTotalDeposits()));
+        assertTrue(after.getCurrencyDeposits() == null || !after.getCurrencyDeposits().containsKey("USD"));
+    }
+
     @Test
     public void create_Test_NullOwner() {
         ApiException e = assertThrows(ApiException.class, () -> accountService.createAccount(null));
@@ -123,6 +181,23 @@ public class AccountServiceTest {
         assertEquals("Balance cannot be negative", e.getMessage());
     }
 
+    @Test
+    public void updateAccount_Test_ExceptionBalanceBelowHeld() {
+        Long number = accountService.createAccount("Minerva").getNumber();
+        accountService.topUp(number, BigDecimal.valueOf(100));
+        Hold hold = accountService.placeHold(new HoldDto(number, null, BigDecimal.valueOf(60), null));
+
+        ApiException e = assertThrows(ApiException.class, () -> accountService.updateAccount(
+                new Account(number, "Minerva", BigDecimal.valueOf(59), false)));
+
+        assertEquals(ErrorCode.BALANCE_BELOW_HELD, e.getCode());
+        assertEquals("Balance cannot be less than the amount held on account " + number, e.getMessage());
+        assertEquals(BigDecimal.valueOf(100), accountService.getInfo(number).getBalance());
+        Account updated = accountService.updateAccount(new Account(number, "Minerva", BigDecimal.valueOf(60), false));
+        assertEquals(BigDecimal.valueOf(60), updated.getHeld());
+        accountService.releaseHold(hold.getId());
+    }
+
     @Test
     public void getAllAccounts_Test_Successful() {
         int expected = accountRepository.findAll().size();
@@ -285,6 +360,20 @@ public class AccountServiceTest {
         assertEquals("Not sufficient funds for write off on account " + accountFrom.getNumber(), exception.getMessage());
     }
 
+    @Test
+    public void transfer_Test_RejectionIsTypedAndStackless() {
+        Account accountFrom = accountService.createAccount("Andy");
+        Account accountTo = accountService.createAccount("Sandy");
+
+        ApiException exception = assertThrows(ApiException.class,
+                () -> accountService.transfer(accountFrom.getNumber(), accountTo.getNumber(), BigDecimal.ONE));
+
+        assertEquals(ErrorCode.INSUFFICIENT_FUNDS, exception.getCode());
+        assertEquals(409, exception.getCode().getStatus());
+        assertEquals(accountFrom.getNumber(), exception.getAccountNumber());
+        assertEquals(0, exception.getStackTrace().length);
+    }
+
     @Test
     public void transfer_Test_ExceptionNegativeTransferAmount() throws ApiException {
         //get data from repo
@@ -333,4 +422,1020 @@ public class AccountServiceTest {
         assertEquals("Null account number is not supported fot this operation", exception.getMessage());
     }
 
-}
\ No newline at end of file
+    @Test
+    public void snapshot_Test_IsolatedFromLaterCommits() {
+        Account alice = accountService.createAccount("Alice");
+        Account bob = accountService.createAccount("Bob");
+        accountService.topUp(alice.getNumber(), BigDecimal.valueOf(100));
+
+        try (AccountSnapshot snapshot = accountRepository.snapshot()) {
+            accountService.transfer(alice.getNumber(), bob.getNumber(), BigDecimal.valueOf(40));
+
+            Map<Long, BigDecimal> balances = snapshot.getAccounts().stream()
+                    .collect(Collectors.toMap(Account::getNumber, Account::getBalance));
+            assertEquals(BigDecimal.valueOf(100), balances.get(alice.getNumber()));
+            assertEquals(BigDecimal.ZERO, balances.get(bob.getNumber()));
+        }
+
+        AccountsSnapshotDto latest = accountService.getAccountsSnapshot();
+        Map<Long, BigDecimal> balances = latest.getAccounts().stream()
+                .collect(Collectors.toMap(Account::getNumber, Account::getBalance));
+        assertEquals(BigDecimal.valueOf(60), balances.get(alice.getNumber()));
+        assertEquals(BigDecimal.valueOf(40), balances.get(bob.getNumber()));
+    }
+
+    @Test
+    public void snapshot_Test_TotalConsistentDuringTransfers() throws Exception {
+        List<Long> numbers = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            Account account = accountService.createAccount("Owner " + i);
+            accountService.topUp(account.getNumber(), BigDecimal.valueOf(1000));
+            numbers.add(account.getNumber());
+        }
+        AtomicBoolean running = new AtomicBoolean(true);
+        List<Thread> writers = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            Thread writer = new Thread(() -> {
+                Random random = new Random();
+                while (running.get()) {
+                    try {
+                        accountService.transfer(numbers.get(random.nextInt(8)), numbers.get(random.nextInt(8)),
+                                BigDecimal.valueOf(1 + random.nextInt(50)));
+                    } catch (ApiException e) {
+                        // not sufficient funds
+                    }
+                }
+            });
+            writer.start();
+            writers.add(writer);
+        }
+
+        try {
+            for (int i = 0; i < 2000; i++) {
+                BigDecimal total = accountService.getAccountsSnapshot().getAccounts().stream()
+                        .filter(account -> numbers.contains(account.getNumber()))
+                        .map(Account::getBalance)
+                        .reduce(BigDecimal.ZERO, BigDecimal::add);
+                assertEquals(BigDecimal.valueOf(8000), total);
+            }
+        } finally {
+            running.set(false);
+            for (Thread writer : writers) {
+                writer.join();
+            }
+        }
+    }
+
+    @Test
+    public void statistics_Test_MaintainedByOperations() {
+        StatsDto before = accountService.getStatistics(0);
+
+        Account alice = accountService.createAccount("Alice");
+        Account bob = accountService.createAccount("Bob");
+        accountService.topUp(alice.getNumber(), BigDecimal.valueOf(100));
+        accountService.transfer(alice.getNumber(), bob.getNumber(), BigDecimal.valueOf(40));
+        accountService.deleteAccount(bob.getNumber());
+
+        StatsDto after = accountService.getStatistics(0);
+        assertEquals(before.getActiveAccounts() + 1, after.getActiveAccounts());
+        assertEquals(before.getDisabledAccounts() + 1, after.getDisabledAccounts());
+        assertEquals(before.getTotalDeposits().add(BigDecimal.valueOf(100)), after.getTotalDeposits());
+        assertEquals(before.getDailyVolume().add(BigDecimal.valueOf(140)), after.getDailyVolume());
+        assertEquals(before.getDailyOperations() + 2, after.getDailyOperations());
+        assertNull(after.getWindowVolume());
+    }
+
+    @Test
+    public void statistics_Test_DepositsKeptPerCurrency() {
+        accountService.updateFxRates(new FxRatesDto(null, Collections.singletonMap("EUR", new BigDecimal("0.9")), 0));
+        StatsDto before = accountService.getStatistics(0);
+
+        Account dollars = accountService.createAccount("Alice");
+        Account euros = accountService.createAccount("Bob", "EUR");
+        accountService.topUp(dollars.getNumber(), BigDecimal.valueOf(100));
+        // 36.00 EUR credited
+        accountService.transfer(dollars.getNumber(), euros.getNumber(), BigDecimal.valueOf(40));
+        // 10.00 USD credited
+        accountService.transfer(euros.getNumber(), dollars.getNumber(), new BigDecimal("9"));
+
+        StatsDto after = accountService.getStatistics(0);
+        assertEquals(0, before.getTotalDeposits().add(new BigDecimal("70")).compareTo(after.getTotalDeposits()));
+        assertEquals(0, euroDeposits(before).add(new BigDecimal("27")).compareTo(euroDeposits(after)));
+    }
+
+    private static BigDecimal euroDeposits(StatsDto stats) {
+        return stats.getCurrencyDeposits() == null
+                ? BigDecimal.ZERO : stats.getCurrencyDeposits().getOrDefault("EUR", BigDecimal.ZERO);
+    }
+
+    @Test
+    public void statistics_Test_RollingWindows() {
+        MutableClock clock = new MutableClock(Instant.parse("2026-01-01T23:58:30Z"));
+        AccountStatistics statistics = new AccountStatistics(clock);
+
+        statistics.moved(BigDecimal.valueOf(10));
+        clock.advance(Duration.ofMinutes(1));
+        statistics.moved(BigDecimal.valueOf(20));
+        clock.advance(Duration.ofMinutes(1));
+        statistics.moved(BigDecimal.valueOf(30));
+
+        StatsDto stats = statistics.getStats(2);
+        assertEquals(Integer.valueOf(2), stats.getWindowMinutes());
+        assertEquals(BigDecimal.valueOf(50), stats.getWindowVolume());
+        assertEquals(Long.valueOf(2), stats.getWindowOperations());
+        // a new day started with the last operation
+        assertEquals(BigDecimal.valueOf(30), stats.getDailyVolume());
+
+        clock.advance(Duration.ofMinutes(60));
+        stats = statistics.getStats(AccountStatistics.MAX_WINDOW_MINUTES);
+        assertEquals(BigDecimal.ZERO, stats.getWindowVolume());
+        assertEquals(Long.valueOf(0), stats.getWindowOperations());
+    }
+
+    @Test
+    public void admission_Test_AccountQueueFull() {
+        AdmissionController admission = new AdmissionController(10, 2, 0, 0);
+        AdmissionController.Permit first = admission.admit(1L);
+        AdmissionController.Permit second = admission.admit(1L, 2L);
+
+        ApiException e = assertThrows(ApiException.class, () -> admission.admit(2L, 1L));
+
+        assertEquals(ErrorCode.ACCOUNT_OVERLOADED, e.getCode());
+        assertEquals("Too many requests waiting for account 1", e.getMessage());
+        AdmissionStatsDto stats = admission.getStats();
+        assertEquals(2, stats.getInProgress());
+        assertEquals(1, stats.getRejectedAccountOverloaded());
+        assertEquals(1L, stats.getHotAccounts().get(0).getAccountNumber());
+        assertEquals(2, stats.getHotAccounts().get(0).getQueued());
+        // the rejected request left account 2 again
+        assertEquals(1, stats.getHotAccounts().get(1).getQueued());
+
+        first.close();
+        admission.admit(2L, 1L).close();
+        second.close();
+        assertEquals(0, admission.getStats().getInProgress());
+        assertTrue(admission.getStats().getHotAccounts().isEmpty());
+    }
+
+    @Test
+    public void admission_Test_ServerOverloaded() {
+        AdmissionController admission = new AdmissionController(1, 10, 0, 0);
+        AdmissionController.Permit permit = admission.admit(1L);
+
+        ApiException e = assertThrows(ApiException.class, () -> admission.admit(2L));
+
+        assertEquals(ErrorCode.SERVER_OVERLOADED, e.getCode());
+        assertEquals(1, admission.getStats().getRejectedServerOverloaded());
+        permit.close();
+        admission.admit(2L).close();
+    }
+
+    @Test
+    public void admission_Test_RateLimited() throws InterruptedException {
+        AdmissionController admission = new AdmissionController(10, 10, 20, 2);
+        admission.admit(1L).close();
+        admission.admit(1L).close();
+
+        ApiException e = assertThrows(ApiException.class, () -> admission.admit(1L));
+
+        assertEquals(ErrorCode.RATE_LIMITED, e.getCode());
+        assertEquals(429, e.getCode().getStatus());
+        assertEquals(1, admission.getStats().getRejectedRateLimited());
+        // other accounts have their own bucket
+        admission.admit(2L).close();
+        Thread.sleep(100);
+        admission.admit(1L).close();
+    }
+
+    @Test
+    public void coalescing_Test_HotAccountCreditsFolded() {
+        CreditCoalescer credits = new CreditCoalescer(2, 10);
+        Account account = new Account(7L, "Merchant", BigDecimal.ZERO, false);
+
+        assertFalse(credits.tryCredit(account, BigDecimal.ONE));
+        assertFalse(credits.tryCredit(account, BigDecimal.ONE));
+        assertTrue(credits.tryCredit(account, BigDecimal.ONE));
+        assertTrue(credits.tryCredit(account, BigDecimal.TEN));
+
+        assertEquals(BigDecimal.ZERO, account.getBalance());
+        assertEquals(BigDecimal.valueOf(11), credits.pending(7L));
+        assertTrue(credits.getHotAccounts().contains(7L));
+        assertTrue(credits.fold(account));
+        assertEquals(BigDecimal.valueOf(11), account.getBalance());
+        assertEquals(BigDecimal.ZERO, credits.pending(7L));
+        assertFalse(credits.fold(account));
+    }
+
+    @Test
+    public void coalescing_Test_RejectedCreditNotPending() {
+        CreditCoalescer credits = new CreditCoalescer(1, 10);
+        Account account = new Account(8L, "Merchant", BigDecimal.ZERO, false);
+        credits.tryCredit(account, BigDecimal.ONE);
+        credits.tryCredit(account, BigDecimal.ONE);
+
+        ApiException e = assertThrows(ApiException.class, () -> credits.tryCredit(account, BigDecimal.ZERO));
+        assertEquals(ErrorCode.NON_POSITIVE_TOP_UP, e.getCode());
+        account.setDisabled(true);
+        e = assertThrows(ApiException.class, () -> credits.tryCredit(account, BigDecimal.ONE));
+        assertEquals(ErrorCode.TOP_UP_DISABLED, e.getCode());
+
+        assertEquals(BigDecimal.ONE, credits.pending(8L));
+    }
+
+    @Test
+    public void coalescing_Test_FoldedCreditsCommittedWhenRejected() {
+        AccountRepository repository = AccountRepository.inMemory();
+        AccountJsonCache responses = new AccountJsonCache(repository, 16);
+        repository.addCommitListener(responses);
+        CreditCoalescer credits = new CreditCoalescer(1, 10);
+        repository.saveNew(new Account(7L, "Merchant", BigDecimal.ZERO, false));
+        assertTrue(new String(responses.get(7L), StandardCharsets.UTF_8).contains("\"balance\":0"));
+        credits.tryCredit(repository.findByNumber(7L).get(), BigDecimal.ONE);
+        assertTrue(credits.tryCredit(repository.findByNumber(7L).get(), BigDecimal.TEN));
+
+        Account locked = repository.findForUpdate(7L).get();
+        credits.foldCommitted(repository, locked);
+        // the write off is rejected once the credits are folded
+        ApiException e = assertThrows(ApiException.class, () -> locked.checkWriteOff(BigDecimal.valueOf(100)));
+        assertEquals(ErrorCode.INSUFFICIENT_FUNDS, e.getCode());
+
+        assertEquals(BigDecimal.ZERO, credits.pending(7L));
+        assertTrue(new String(responses.get(7L), StandardCharsets.UTF_8).contains("\"balance\":10"));
+        try (AccountSnapshot snapshot = repository.snapshot()) {
+            assertEquals(BigDecimal.TEN, snapshot.getAccounts().get(0).getBalance());
+        }
+    }
+
+    @Test
+    public void coalescing_Test_DebitsNeverOverdraw() throws InterruptedException {
+        CreditCoalescer credits = new CreditCoalescer(1, 10);
+        Account account = new Account(9L, "Merchant", BigDecimal.ZERO, false);
+        Object lock = new Object();
+        AtomicBoolean creditsDone = new AtomicBoolean();
+        List<Thread> creditors = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            Thread creditor = new Thread(() -> {
+                for (int i = 0; i < 5000; i++) {
+                    if (!credits.tryCredit(account, BigDecimal.ONE)) {
+                        synchronized (lock) {
+                            account.topUp(BigDecimal.ONE);
+                        }
+                    }
+                }
+            });
+            creditors.add(creditor);
+            creditor.start();
+        }
+
+        long debits = 0;
+        while (!creditsDone.get()) {
+            creditsDone.set(creditors.stream().noneMatch(Thread::isAlive));
+            synchronized (lock) {
+                credits.fold(account);
+                if (account.getBalance().compareTo(BigDecimal.ONE) >= 0) {
+                    account.writeOff(BigDecimal.ONE);
+                    debits++;
+                }
+                assertTrue(account.getBalance().signum() >= 0);
+            }
+        }
+        for (Thread creditor : creditors) {
+            creditor.join();
+        }
+
+        credits.fold(account);
+        assertEquals(BigDecimal.valueOf(20000 - debits), account.getBalance());
+    }
+
+    @Test
+    public void import_Test_NdjsonRowsValidatedAndReported() throws Exception {
+        StatsDto before = accountService.getStatistics(0);
+        String rows = "{\"number\":9000000001,\"owner\":\"Ron\",\"balance\":10.5,\"disabled\":false}\n"
+                + "{\"number\":9000000002,\"owner\":\"Ginny\",\"balance\":-1}\n"
+                + "\n"
+                + "{\"number\":9000000003,\"balance\":1}\n"
+                + "{\"number\":1,\"owner\":\"Harry Potter\",\"balance\":1}\n"
+                + "not json\n"
+                + "{\"number\":9000000001,\"owner\":\"Ron again\",\"balance\":1}\r\n"
+                + "{\"number\":9000000004,\"owner\":\"Fred\",\"balance\":2,\"disabled\":true}";
+
+        ImportResultDto result = accountService.importAccounts(
+                new ByteArrayInputStream(rows.getBytes(StandardCharsets.UTF_8)), AccountImporter.Format.NDJSON);
+
+        assertEquals(2, result.getImported());
+        assertEquals(5, result.getRejected());
+        List<String> errors = result.getErrors().stream().map(error -> error.getLine() + " " + error.getCode())
+                .collect(Collectors.toList());
+        assertEquals(Arrays.asList("2 NEGATIVE_BALANCE", "4 NULL_OWNER", "5 ACCOUNT_EXISTS", "6 MALFORMED_REQUEST",
+                "7 ACCOUNT_EXISTS"), errors);
+        assertEquals("Account already exists with number 1", result.getErrors().get(2).getMessage());
+        assertEquals("Ron", accountService.getInfo(9000000001L).getOwner());
+        assertEquals(new BigDecimal("10.5"), accountService.getInfo(9000000001L).getBalance());
+        assertTrue(accountService.getInfo(9000000004L).isDisabled());
+        StatsDto after = accountService.getStatistics(0);
+        assertEquals(before.getActiveAccounts() + 1, after.getActiveAccounts());
+        assertEquals(before.getDisabledAccounts() + 1, after.getDisabledAccounts());
+    }
+
+    @Test
+    public void import_Test_CsvWithHeaderAndQuotes() throws Exception {
+        String rows = "number,owner,balance,disabled\n"
+                + "9000000101,\"Weasley, Arthur\",100,false\n"
+                + "9000000102,\"Molly \"\"Mum\"\" Weasley\",0.01,TRUE\n"
+                + "9000000103,Percy,abc,false\n"
+                + "9000000104,Bill,5\n";
+
+        ImportResultDto result = accountService.importAccounts(
+                new ByteArrayInputStream(rows.getBytes(StandardCharsets.UTF_8)), AccountImporter.Format.CSV);
+
+        assertEquals(3, result.getImported());
+        assertEquals(1, result.getRejected());
+        assertEquals(4, result.getErrors().get(0).getLine());
+        assertEquals("MALFORMED_REQUEST", result.getErrors().get(0).getCode());
+        assertEquals("Weasley, Arthur", accountService.getInfo(9000000101L).getOwner());
+        assertEquals("Molly \"Mum\" Weasley", accountService.getInfo(9000000102L).getOwner());
+        assertTrue(accountService.getInfo(9000000102L).isDisabled());
+        assertFalse(accountService.getInfo(9000000104L).isDisabled());
+    }
+
+    @Test
+    public void import_Test_CurrencyValidated() throws Exception {
+        String rows = "{\"number\":9000000301,\"owner\":\"Luna\",\"balance\":10,\"currency\":\"XYZ\"}\n"
+                + "{\"number\":9000000302,\"owner\":\"Luna\",\"balance\":10,\"currency\":\"eur\"}\n"
+                + "{\"number\":9000000303,\"owner\":\"Luna\",\"balance\":10,\"currency\":\"USD\"}\n";
+
+        ImportResultDto result = accountService.importAccounts(
+                new ByteArrayInputStream(rows.getBytes(StandardCharsets.UTF_8)), AccountImporter.Format.NDJSON);
+
+        assertEquals(2, result.getImported());
+        assertEquals(1, result.getErrors().get(0).getLine());
+        assertEquals(ErrorCode.UNKNOWN_CURRENCY.name(), result.getErrors().get(0).getCode());
+        ApiException e = assertThrows(ApiException.class, () -> accountService.getInfo(9000000301L));
+        assertEquals(ErrorCode.ACCOUNT_NOT_FOUND, e.getCode());
+        assertEquals("EUR", accountService.getInfo(9000000302L).getCurrency());
+        // the base currency
+        assertNull(accountService.getInfo(9000000303L).getCurrency());
+    }
+
+    @Test
+    public void import_Test_HeldAmountNotImported() throws Exception {
+        String rows = "{\"number\":9000000201,\"owner\":\"Neville\",\"balance\":10,\"held\":10}\n";
+
+        ImportResultDto result = accountService.importAccounts(
+                new ByteArrayInputStream(rows.getBytes(StandardCharsets.UTF_8)), AccountImporter.Format.NDJSON);
+
+        assertEquals(1, result.getImported());
+        assertEquals(BigDecimal.ZERO, accountService.getInfo(9000000201L).getHeld());
+        // all of the balance is available, the row reserved nothing
+        Hold hold = accountService.placeHold(new HoldDto(9000000201L, null, BigDecimal.TEN, null));
+        accountService.releaseHold(hold.getId());
+    }
+
+    @Test
+    public void import_Test_LineNumbersAcrossChunks() throws Exception {
+        StringBuilder rows = new StringBuilder();
+        int count = 50_000;
+        for (int i = 1; i <= count; i++) {
+            rows.append(9100000000L + i).append(",Owner ").append(i).append(',').append(i % 100 == 0 ? "1" : "-1")
+                    .append(",false\n");
+        }
+
+        ImportResultDto result = accountService.importAccounts(
+                new ByteArrayInputStream(rows.toString().getBytes(StandardCharsets.UTF_8)), AccountImporter.Format.CSV);
+
+        assertEquals(count / 100, result.getImported());
+        assertEquals(count - count / 100, result.getRejected());
+        assertEquals(1000, result.getErrors().size());
+        long expectedLine = 0;
+        for (ImportResultDto.RowError error : result.getErrors()) {
+            expectedLine += expectedLine % 100 == 99 ? 2 : 1;
+            assertEquals(expectedLine, error.getLine());
+        }
+        assertEquals("Owner 50000", accountService.getInfo(9100000000L + 50_000).getOwner());
+    }
+
+    @Test
+    public void import_Test_LineLongerThanMaximumSkipped() throws Exception {
+        StringBuilder owner = new StringBuilder();
+        for (int i = 0; i < 300_000; i++) {
+            owner.append('x');
+        }
+        String rows = "9300000001,Ron,1,false\n"
+                + "9300000002," + owner + ",1,false\n"
+                + "9300000003,Ginny,1,false\n";
+
+        System.setProperty("bank.import.maxLineBytes", "1");
+        ImportResultDto result;
+        try {
+            result = accountService.importAccounts(
+                    new ByteArrayInputStream(rows.getBytes(StandardCharsets.UTF_8)), AccountImporter.Format.CSV);
+        } finally {
+            System.clearProperty("bank.import.maxLineBytes");
+        }
+
+        assertEquals(2, result.getImported());
+        assertEquals(1, result.getRejected());
+        assertEquals(2, result.getErrors().get(0).getLine());
+        assertEquals("MALFORMED_REQUEST", result.getErrors().get(0).getCode());
+        assertEquals("Ginny", accountService.getInfo(9300000003L).getOwner());
+        assertThrows(ApiException.class, () -> accountService.getInfo(9300000002L));
+    }
+
+    @Test
+    public void events_Test_FanOutToMatchingSubscribers() throws InterruptedException {
+        BalanceEventBus bus = new BalanceEventBus(16, 60_000, Clock.systemUTC());
+        long harry = bus.subscribe(Arrays.asList(1L, 1L));
+        long all = bus.subscribe(new ArrayList<>());
+        Account account = new Account(1L, "Harry Potter", BigDecimal.ONE, false);
+        Account other = new Account(2L, "Voldemort", BigDecimal.TEN, false);
+
+        bus.committed(5, account);
+        bus.committed(6, other);
+
+        BalanceEventsDto events = bus.poll(harry, 10, 0);
+        assertFalse(events.isResync());
+        assertEquals(1, events.getEvents().size());
+        assertEquals(5, events.getEvents().get(0).getSequence());
+        assertEquals(BigDecimal.ONE, events.getEvents().get(0).getBalance());
+        assertEquals(2, bus.poll(all, 10, 0).getEvents().size());
+        assertEquals(0, bus.poll(all, 10, 0).getEvents().size());
+
+        assertTrue(bus.unsubscribe(harry));
+        assertFalse(bus.unsubscribe(harry));
+        ApiException e = assertThrows(ApiException.class, () -> bus.poll(harry, 10, 0));
+        assertEquals(ErrorCode.SUBSCRIPTION_NOT_FOUND, e.getCode());
+    }
+
+    @Test
+    public void events_Test_OverflowDropsAndResyncs() throws InterruptedException {
+        BalanceEventBus bus = new BalanceEventBus(4, 60_000, Clock.systemUTC());
+        long id = bus.subscribe(Collections.singletonList(1L));
+        Account account = new Account(1L, "Harry Potter", BigDecimal.ZERO, false);
+        for (long sequence = 1; sequence <= 5; sequence++) {
+            bus.committed(sequence, account);
+        }
+
+        BalanceEventsDto events = bus.poll(id, 10, 0);
+        assertTrue(events.isResync());
+        assertTrue(events.getEvents().isEmpty());
+
+        bus.committed(6, account);
+        events = bus.poll(id, 10, 0);
+        assertFalse(events.isResync());
+        assertEquals(6, events.getEvents().get(0).getSequence());
+    }
+
+    @Test
+    public void events_Test_WaitingPollsAndStreamsBounded() throws Exception {
+        BalanceEventBus bus = new BalanceEventBus(4, 60_000, 50, 1, Clock.systemUTC());
+        long first = bus.subscribe(Collections.singletonList(1L));
+        long second = bus.subscribe(Collections.singletonList(1L));
+        assertTrue(bus.reserveWaiter());
+
+        ApiException e = assertThrows(ApiException.class, () -> bus.poll(second, 10, 25_000));
+        assertEquals(ErrorCode.SERVER_OVERLOADED, e.getCode());
+        assertFalse(bus.reserveWaiter());
+        // polls that do not wait need no place
+        assertTrue(bus.poll(second, 10, 0).getEvents().isEmpty());
+        bus.committed(1, new Account(1L, "Harry Potter", BigDecimal.ONE, false));
+        assertEquals(1, bus.poll(second, 10, 25_000).getEvents().size());
+        // waits at most the longest wait
+        long start = System.nanoTime();
+        assertEquals(1, bus.pollReserved(first, 10, 0).getEvents().size());
+        assertTrue(bus.pollReserved(first, 10, 25_000).getEvents().isEmpty());
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(5));
+
+        bus.releaseWaiter();
+        assertTrue(bus.poll(second, 10, 25_000).getEvents().isEmpty());
+        assertTrue(bus.reserveWaiter());
+    }
+
+    @Test
+    public void events_Test_IdleSubscriptionExpires() {
+        MutableClock clock = new MutableClock(Instant.parse("2024-03-01T10:00:00Z"));
+        BalanceEventBus bus = new BalanceEventBus(4, 1000, clock);
+        bus.subscribe(Collections.singletonList(1L));
+
+        assertEquals(0, bus.expireIdle());
+        clock.advance(Duration.ofMillis(1001));
+        assertEquals(1, bus.expireIdle());
+        assertEquals(0, bus.size());
+    }
+
+    @Test
+    public void events_Test_ServicePublishesCommittedBalances() throws InterruptedException {
+        long id = accountService.subscribeToBalances(Arrays.asList(1L, 2L));
+        try {
+            accountService.transfer(1L, 2L, BigDecimal.TEN);
+
+            BalanceEventsDto events = accountService.pollBalanceEvents(id, 10, 1000);
+            assertEquals(2, events.getEvents().size());
+            BalanceEventDto from = events.getEvents().get(0);
+            BalanceEventDto to = events.getEvents().get(1);
+            assertEquals(from.getSequence(), to.getSequence());
+            assertEquals(BigDecimal.valueOf(990), from.getBalance());
+            assertEquals(BigDecimal.valueOf(1010), to.getBalance());
+        } finally {
+            accountService.unsubscribeFromBalances(id);
+        }
+
+        ApiException e = assertThrows(ApiException.class,
+                () -> accountService.subscribeToBalances(Collections.singletonList(404L)));
+        assertEquals(ErrorCode.ACCOUNT_NOT_FOUND, e.getCode());
+    }
+
+    @Test
+    public void cache_Test_ServesJsonUntilCommit() throws Exception {
+        CacheStatsDto before = accountService.getCacheStats();
+        byte[] first = accountService.getInfoJson(1L);
+        byte[] second = accountService.getInfoJson(1L);
+
+        assertSame(first, second);
+        assertEquals("{\"number\":1,\"owner\":\"Harry Potter\",\"balance\":1000,\"disabled\":false}",
+                new String(first, StandardCharsets.UTF_8));
+        CacheStatsDto after = accountService.getCacheStats();
+        assertEquals(before.getHits() + 1, after.getHits());
+
+        accountService.topUp(1L, BigDecimal.TEN);
+        String json = new String(accountService.getInfoJson(1L), StandardCharsets.UTF_8);
+        assertTrue(json.contains("\"balance\":1010"));
+        ApiException e = assertThrows(ApiException.class, () -> accountService.getInfoJson(404L));
+        assertEquals(ErrorCode.ACCOUNT_NOT_FOUND, e.getCode());
+    }
+
+    @Test
+    public void cache_Test_EvictionKeepsHotAccounts() {
+        AccountJsonCache cache = new AccountJsonCache(accountRepository, 2);
+        for (int i = 0; i < 8; i++) {
+            cache.get(1L);
+        }
+        for (int i = 0; i < 3; i++) {
+            cache.get(2L);
+            cache.get(3L);
+        }
+        cache.get(1L);
+
+        CacheStatsDto stats = cache.getStats();
+        assertEquals(2, stats.getSize());
+        assertEquals(8, stats.getHits());
+        assertEquals(7, stats.getMisses());
+        assertEquals(5, stats.getEvictions());
+        assertEquals(8.0 / 15, stats.getHitRate(), 1e-9);
+    }
+
+    @Test
+    public void cache_Test_OlderStateNeverStored() {
+        AccountJsonCache cache = new AccountJsonCache(accountRepository, 10);
+        Account account = accountRepository.findByNumber(2L).get();
+        cache.get(2L);
+
+        // a commit the repository has not seen yet
+        cache.committed(Long.MAX_VALUE, account);
+        cache.get(2L);
+        cache.get(2L);
+
+        assertEquals(0, cache.getStats().getHits());
+        assertEquals(3, cache.getStats().getMisses());
+    }
+
+    @Test
+    public void multiTransfer_Test_Successful() {
+        accountService.transfer(Arrays.asList(
+                new TransferMoneyDto(1L, 2L, BigDecimal.valueOf(600)),
+                new TransferMoneyDto(1L, 3L, BigDecimal.valueOf(300)),
+                new TransferMoneyDto(2L, 3L, BigDecimal.valueOf(1500))));
+
+        assertEquals(BigDecimal.valueOf(100), accountService.getInfo(1L).getBalance());
+        assertEquals(BigDecimal.valueOf(100), accountService.getInfo(2L).getBalance());
+        assertEquals(BigDecimal.valueOf(2800), accountService.getInfo(3L).getBalance());
+    }
+
+    @Test
+    public void multiTransfer_Test_RejectedLegAppliesNothing() {
+        ApiException e = assertThrows(ApiException.class, () -> accountService.transfer(Arrays.asList(
+                new TransferMoneyDto(1L, 2L, BigDecimal.valueOf(600)),
+                new TransferMoneyDto(1L, 3L, BigDecimal.valueOf(600)))));
+        assertEquals(ErrorCode.INSUFFICIENT_FUNDS, e.getCode());
+        assertEquals(Long.valueOf(1L), e.getAccountNumber());
+
+        accountService.deleteAccount(3L);
+        e = assertThrows(ApiException.class, () -> accountService.transfer(Arrays.asList(
+                new TransferMoneyDto(1L, 2L, BigDecimal.TEN),
+                new TransferMoneyDto(2L, 3L, BigDecimal.TEN))));
+        assertEquals(ErrorCode.TOP_UP_DISABLED, e.getCode());
+
+        assertEquals(BigDecimal.valueOf(1000), accountService.getInfo(1L).getBalance());
+        assertEquals(BigDecimal.valueOf(1000), accountService.getInfo(2L).getBalance());
+        assertEquals(BigDecimal.valueOf(1000), accountService.getInfo(3L).getBalance());
+    }
+
+    @Test
+    public void multiTransfer_Test_Validation() {
+        ApiException e = assertThrows(ApiException.class, () -> accountService.transfer(new ArrayList<>()));
+        assertEquals(ErrorCode.MALFORMED_REQUEST, e.getCode());
+        e = assertThrows(ApiException.class, () -> accountService.transfer(Collections.nCopies(17,
+                new TransferMoneyDto(1L, 2L, BigDecimal.ONE))));
+        assertEquals(ErrorCode.MALFORMED_REQUEST, e.getCode());
+        e = assertThrows(ApiException.class, () -> accountService.transfer(Arrays.asList(
+                new TransferMoneyDto(1L, 2L, BigDecimal.ONE),
+                new TransferMoneyDto(2L, 404L, BigDecimal.ONE))));
+        assertEquals(ErrorCode.ACCOUNT_NOT_FOUND, e.getCode());
+        e = assertThrows(ApiException.class, () -> accountService.transfer(Collections.singletonList(
+                new TransferMoneyDto(1L, 2L, BigDecimal.ZERO))));
+        assertEquals(ErrorCode.NON_POSITIVE_WRITE_OFF, e.getCode());
+    }
+
+    @Test
+    public void transfer_Test_RejectedTopUpLeavesNoWriteOff() {
+        accountService.deleteAccount(2L);
+
+        assertThrows(ApiException.class, () -> accountService.transfer(1L, 2L, BigDecimal.TEN));
+
+        assertEquals(BigDecimal.valueOf(1000), accountService.getInfo(1L).getBalance());
+        try (AccountSnapshot snapshot = accountRepository.snapshot()) {
+            assertEquals(BigDecimal.valueOf(1000), snapshot.getAccounts().stream()
+                    .filter(account -> account.getNumber() == 1L).findFirst().get().getBalance());
+        }
+    }
+
+    @Test
+    public void update_Test_KeepsAccountInstance() {
+        Account found = accountRepository.findByNumber(3L).get();
+
+        Account updated = accountService.updateAccount(new Account(3L, "Albus", BigDecimal.valueOf(5), false));
+
+        assertSame(found, accountRepository.findByNumber(3L).get());
+        assertEquals(BigDecimal.valueOf(5), found.getBalance());
+        assertEquals("Albus", updated.getOwner());
+    }
+
+    @Test
+    public void locks_Test_TimeoutReleasesTakenStripes() throws InterruptedException {
+        LockTable locks = new LockTable(1024, 50);
+        AtomicReference<ApiException> rejected = new AtomicReference<>();
+        AtomicBoolean firstFree = new AtomicBoolean();
+
+        try (LockTable.Held held = locks.lock(2L)) {
+            Thread waiter = new Thread(() -> {
+                try (LockTable.Held both = locks.lock(1L, 2L)) {
+                    fail();
+                } catch (ApiException e) {
+                    rejected.set(e);
+                }
+                try (LockTable.Held first = locks.lock(1L)) {
+                    firstFree.set(true);
+                }
+            });
+            waiter.start();
+            waiter.join();
+        }
+
+        assertEquals(ErrorCode.LOCK_TIMEOUT, rejected.get().getCode());
+        assertEquals(Long.valueOf(2L), rejected.get().getAccountNumber());
+        assertTrue(firstFree.get());
+        LockStatsDto stats = locks.getStats();
+        assertEquals(1, stats.getTimeouts());
+        assertEquals(1, stats.getContended());
+        assertEquals(2, stats.getAcquisitions());
+    }
+
+    @Test
+    public void locks_Test_InterruptedWaitRejectedAsTimeout() throws InterruptedException {
+        LockTable locks = new LockTable(1024, 60_000);
+        AtomicReference<ApiException> rejected = new AtomicReference<>();
+        AtomicBoolean interrupted = new AtomicBoolean();
+
+        try (LockTable.Held held = locks.lock(2L)) {
+            Thread waiter = new Thread(() -> {
+                try (LockTable.Held taken = locks.lock(2L)) {
+                    fail();
+                } catch (ApiException e) {
+                    rejected.set(e);
+                    interrupted.set(Thread.currentThread().isInterrupted());
+                }
+            });
+            waiter.start();
+            while (locks.getStats().getContended() == 0) {
+                Thread.sleep(1);
+            }
+            waiter.interrupt();
+            waiter.join();
+        }
+
+        assertEquals(ErrorCode.LOCK_TIMEOUT, rejected.get().getCode());
+        assertEquals(Long.valueOf(2L), rejected.get().getAccountNumber());
+        assertTrue(interrupted.get());
+    }
+
+    @Test
+    public void locks_Test_OppositeOrdersAndSharedStripes() throws InterruptedException {
+        LockTable single = new LockTable(1, 50);
+        try (LockTable.Held held = single.lock(1L, 2L, 1L)) {
+            assertEquals(1, single.getStats().getStripes());
+        }
+
+        LockTable locks = new LockTable(16, 5000);
+        assertEquals(16, locks.getStats().getStripes());
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            long[] numbers = t % 2 == 0 ? new long[]{1, 2, 3} : new long[]{3, 2, 1};
+            Thread thread = new Thread(() -> {
+                for (int i = 0; i < 20_000; i++) {
+                    try (LockTable.Held held = locks.lock(numbers)) {
+                        assertNotNull(held);
+                    }
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals(0, locks.getStats().getTimeouts());
+        assertEquals(80_000, locks.getStats().getAcquisitions());
+    }
+
+    @Test
+    public void archive_Test_DisabledAccountsServedFromArchive() throws IOException {
+        Account ghost = accountService.createAccount("Ghost");
+        accountService.topUp(ghost.getNumber(), new BigDecimal("5.25"));
+        accountService.deleteAccount(ghost.getNumber());
+        Account resident = accountService.createAccount("Resident");
+        Account ghostInMemory = accountRepository.findByNumber(ghost.getNumber()).get();
+        BigDecimal totalBefore;
+        try (AccountSnapshot snapshot = accountRepository.snapshot()) {
+            totalBefore = snapshot.getTotalBalance();
+        }
+        openArchive();
+
+        assertTrue(accountService.archiveDisabledAccounts(0) >= 1);
+
+        Account archived = accountService.getInfo(ghost.getNumber());
+        assertNotSame(ghostInMemory, archived);
+        assertEquals("Ghost", archived.getOwner());
+        assertEquals(new BigDecimal("5.25"), archived.getBalance());
+        assertTrue(archived.isDisabled());
+        assertSame(resident, accountRepository.findByNumber(resident.getNumber()).get());
+        assertTrue(new String(accountService.getInfoJson(ghost.getNumber()), StandardCharsets.UTF_8)
+                .contains("\"owner\":\"Ghost\""));
+        try (AccountSnapshot snapshot = accountRepository.snapshot()) {
+            assertEquals(totalBefore, snapshot.getTotalBalance());
+            assertEquals(1, snapshot.getAccounts().stream()
+                    .filter(account -> account.getNumber().equals(ghost.getNumber())).count());
+        }
+        assertEquals(1, accountRepository.findAll().stream()
+                .filter(account -> account.getNumber().equals(ghost.getNumber())).count());
+        ApiException e = assertThrows(ApiException.class,
+                () -> accountService.topUp(ghost.getNumber(), BigDecimal.ONE));
+        assertEquals(ErrorCode.TOP_UP_DISABLED, e.getCode());
+        e = assertThrows(ApiException.class, () -> accountService.deleteAccount(ghost.getNumber()));
+        assertEquals(ErrorCode.ALREADY_DISABLED, e.getCode());
+    }
+
+    @Test
+    public void archive_Test_UpdateLoadsAccountBack() throws IOException {
+        Account first = accountService.createAccount("First");
+        Account second = accountService.createAccount("Second");
+        accountService.deleteAccount(first.getNumber());
+        openArchive();
+        accountService.archiveDisabledAccounts(0);
+        long archivedBefore = accountRepository.getArchivedCount();
+
+        accountService.updateAccount(new Account(first.getNumber(), "First", BigDecimal.TEN, false));
+
+        Account loaded = accountRepository.findByNumber(first.getNumber()).get();
+        assertSame(loaded, accountRepository.findByNumber(first.getNumber()).get());
+        assertFalse(loaded.isDisabled());
+        assertEquals(archivedBefore - 1, accountRepository.getArchivedCount());
+        CommittedAccount committed = accountRepository.findCommitted(first.getNumber()).get();
+        assertEquals(BigDecimal.TEN, committed.getAccount().getBalance());
+
+        accountService.deleteAccount(second.getNumber());
+        assertTrue(accountService.archiveDisabledAccounts(0) >= 1);
+        assertEquals(BigDecimal.TEN, accountService.getInfo(first.getNumber()).getBalance());
+        assertTrue(accountService.getInfo(second.getNumber()).isDisabled());
+        assertEquals(archivedBefore, accountRepository.getArchivedCount());
+    }
+
+    @Test
+    public void compact_Test_BalancesKeepValueAndScale() {
+        String[] values = {"0", "1000", "5.25", "-0.10", "0.000000000000000000000000000000000000000000000000000000000001",
+                "99999999999999999", "123456789012345678", "1E+3", "-123456789.123456789"};
+        for (String value : values) {
+            BigDecimal balance = new BigDecimal(value);
+            Account account = new Account(1L, "Owner", balance, false);
+            assertEquals(balance, account.getBalance());
+            assertEquals(balance.scale(), account.getBalance().scale());
+        }
+        assertNull(new Account(1L, "Owner", null, false).getBalance());
+        assertEquals(PackedDecimal.WIDE, PackedDecimal.pack(new BigDecimal("123456789012345678")));
+        assertEquals(PackedDecimal.WIDE, PackedDecimal.pack(new BigDecimal("1E+3")));
+        assertNotEquals(PackedDecimal.WIDE, PackedDecimal.pack(new BigDecimal("-99999999999999999")));
+    }
+
+    @Test
+    public void compact_Test_OwnersSharedAndWideBalancesCommitted() {
+        Account first = new Account(9100000001L, new String("Hermione Granger"), BigDecimal.ONE, false);
+        Account second = new Account(9100000002L, new String("Hermione Granger"), new BigDecimal("1E+3"), false);
+        assertEquals(first.ownerId(), second.ownerId());
+        assertSame(first.getOwner(), second.getOwner());
+        assertNull(new Account(null, null, BigDecimal.ONE, false).getNumber());
+
+        accountRepository.saveAllNew(Arrays.asList(first, second));
+        assertEquals(new BigDecimal("1E+3"),
+                accountRepository.findCommitted(second.getNumber()).get().getAccount().getBalance());
+        try (AccountSnapshot snapshot = accountRepository.snapshot()) {
+            Account committed = snapshot.getAccounts().stream()
+                    .filter(account -> account.getNumber().equals(second.getNumber())).findFirst().get();
+            assertEquals(new BigDecimal("1E+3"), committed.getBalance());
+            assertEquals("Hermione Granger", committed.getOwner());
+        }
+        accountService.updateAccount(new Account(second.getNumber(), "Hermione Granger", BigDecimal.TEN, false));
+        assertEquals(BigDecimal.TEN, accountService.getInfo(second.getNumber()).getBalance());
+    }
+
+    @Test
+    public void compact_Test_FullOwnerPoolKeepsNamesUnshared() {
+        OwnerPool pool = new OwnerPool(2);
+        int first = pool.id("Ron Weasley");
+        int second = pool.id("Ginny Weasley");
+        assertEquals(first, pool.id(new String("Ron Weasley")));
+        assertNotEquals(first, second);
+        assertEquals(OwnerPool.NO_OWNER, pool.id(null));
+        assertNull(pool.owner(OwnerPool.NO_OWNER));
+
+        assertEquals(OwnerPool.NOT_POOLED, pool.id("Percy Weasley"));
+        assertEquals(2, pool.size());
+        assertEquals(second, pool.id("Ginny Weasley"));
+        assertEquals("Ron Weasley", pool.owner(first));
+    }
+
+    @Test
+    public void compact_Test_IdleAccountsKeepNoVersions() throws InterruptedException {
+        int count = 200_000;
+        long first = 9500000000L;
+        long before = usedHeap();
+        AccountRepository repository = AccountRepository.inMemory();
+        List<Account> accounts = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            accounts.add(new Account(first + i, "Owner " + i / 3, BigDecimal.valueOf(i, 2), false));
+        }
+        assertTrue(repository.saveAllNew(accounts).isEmpty());
+        accounts = null;
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (repository.getVersionedCount() > 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(50);
+        }
+        assertEquals(0, repository.getVersionedCount());
+        // about 240 bytes while every account kept a version
+        assertTrue((usedHeap() - before) / count < 210);
+
+        Long changed = first + 7;
+        Account account = repository.findForUpdate(changed).get();
+        account.topUp(BigDecimal.ONE);
+        assertEquals(1, repository.getVersionedCount());
+        try (AccountSnapshot snapshot = repository.snapshot()) {
+            assertEquals(new BigDecimal("0.07"), balanceIn(snapshot, changed));
+            repository.publish(account);
+            assertEquals(new BigDecimal("0.07"), balanceIn(snapshot, changed));
+            assertEquals(new BigDecimal("1999.99"), balanceIn(snapshot, first + count - 1));
+            assertEquals(count, snapshot.getAccounts().size());
+        }
+        try (AccountSnapshot snapshot = repository.snapshot()) {
+            assertEquals(new BigDecimal("1.07"), balanceIn(snapshot, changed));
+        }
+        assertEquals(new BigDecimal("1.07"), repository.findCommitted(changed).get().getAccount().getBalance());
+        assertEquals(new BigDecimal("0.08"), repository.findCommitted(first + 8).get().getAccount().getBalance());
+    }
+
+    @Test
+    public void store_Test_KeepsUsedAccountsAndWritesChangesBack() throws IOException {
+        Path path = Files.createTempDirectory("store").resolve("accounts.store");
+        AccountRepository store = AccountRepository.openStore(path, 1000, 8);
+        List<Account> accounts = new ArrayList<>();
+        for (long number = 1; number <= 100; number++) {
+            accounts.add(new Account(number, "Owner " + number, BigDecimal.valueOf(number), false));
+        }
+        assertTrue(store.saveAllNew(accounts).isEmpty());
+        assertFalse(store.saveNew(new Account(7L, "Taken", BigDecimal.ONE, false)));
+
+        Account hot = store.findByNumber(1L).get();
+        for (long number = 2; number <= 100; number++) {
+            assertEquals(BigDecimal.valueOf(number), store.findByNumber(number).get().getBalance());
+            assertSame(hot, store.findByNumber(1L).get());
+        }
+        StoreStatsDto stats = store.getStoreStats();
+        assertEquals(100, stats.getAccounts());
+        assertEquals(8, stats.getCached());
+        assertTrue(stats.getRejections() > 0);
+        assertTrue(stats.getHitRate() > 0.4);
+
+        String longOwner = "Owner with a name longer than what fits into the record of the account in the store file";
+        Account changed = store.findForUpdate(50L).get();
+        changed.setOwner(longOwner);
+        changed.setBalance(new BigDecimal("1E+3"));
+        store.publish(changed);
+        for (long number = 2; number <= 100; number++) {
+            store.findByNumber(number);
+        }
+        assertEquals(longOwner, store.findByNumber(50L).get().getOwner());
+        assertEquals(new BigDecimal("1E+3"), store.findCommitted(50L).get().getAccount().getBalance());
+
+        try (AccountSnapshot snapshot = store.snapshot()) {
+            Account later = store.findForUpdate(60L).get();
+            later.setBalance(BigDecimal.ZERO);
+            store.publish(later);
+            store.saveNew(new Account(101L, "Late", BigDecimal.TEN, false));
+
+            assertEquals(new BigDecimal("6000"), snapshot.getTotalBalance());
+            assertEquals(100, snapshot.getAccounts().size());
+        }
+        store.closeStore();
+
+        AccountRepository reopened = AccountRepository.openStore(path, 1000, 8);
+        assertEquals(101, reopened.findAll().size());
+        assertEquals(BigDecimal.ZERO, reopened.findByNumber(60L).get().getBalance());
+        assertEquals(longOwner, reopened.findByNumber(50L).get().getOwner());
+        try (AccountSnapshot snapshot = reopened.snapshot()) {
+            assertEquals(101, snapshot.getAccounts().size());
+            assertEquals(new BigDecimal("5950"), snapshot.getTotalBalance());
+        }
+        reopened.closeStore();
+    }
+
+    @Test
+    public void store_Test_FullStoreRejectsNewAccounts() throws IOException {
+        AccountRepository store = AccountRepository.openStore(
+                Files.createTempDirectory("store").resolve("accounts.store"), 2, 2);
+        assertTrue(store.saveNew(new Account(1L, "First", BigDecimal.ONE, false)));
+        assertFalse(store.isStoreFull());
+        assertTrue(store.saveNew(new Account(2L, "Second", BigDecimal.ONE, false)));
+
+        assertTrue(store.isStoreFull());
+        assertFalse(store.saveNew(new Account(2L, "Taken", BigDecimal.ONE, false)));
+        assertThrows(IllegalStateException.class, () -> store.saveNew(new Account(3L, "Third", BigDecimal.ONE, false)));
+        assertFalse(accountRepository.isStoreFull());
+        store.closeStore();
+    }
+
+    /**
+     * Opens the archive of the shared repository once, it stays open for all later tests.
+     */
+    private static BigDecimal balanceIn(AccountSnapshot snapshot, Long accountNumber) {
+        BigDecimal[] balance = new BigDecimal[1];
+        snapshot.forEach(account -> {
+            if (account.getNumber().equals(accountNumber)) {
+                balance[0] = account.getBalance();
+            }
+        });
+        return balance[0];
+    }
+
+    private static long usedHeap() throws InterruptedException {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+            Thread.sleep(100);
+        }
+        Runtime runtime = Runtime.getRuntime();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    private void openArchive() throws IOException {
+        if (!accountRepository.isArchiveOpen()) {
+            Path directory = Files.createTempDirectory("archive");
+            directory.toFile().deleteOnExit();
+            accountRepository.openArchive(directory.resolve("accounts.archive"));
+        }
+    }
+
+    private static class MutableClock extends Clock {
+
+        private Instant instant;
+
+        private MutableClock(Instant instant) {
+            this.instant = instant;
+        }
+
+        private void advance(Duration duration) {
+            instant = instant.plus(duration);
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return instant;
+        }
+    }
+
+}
@@ -1,8 +1,26 @@
 package com.bank.rest;
 
+import com.bank.rest.dto.AuditStatsDto;
+import com.bank.rest.dto.BalanceEventDto;
+import com.bank.rest.dto.BalanceEventsDto;
+import com.bank.rest.dto.BulkOperationDto;
+import com.bank.rest.dto.BulkProgressDto;
+import com.bank.rest.dto.CacheStatsDto;
+import com.bank.rest.dto.FxRatesDto;
+import com.bank.rest.dto.HoldDto;
+import com.bank.rest.dto.ImportResultDto;
+import com.bank.rest.dto.LockStatsDto;
+import com.bank.rest.dto.ReconciliationDto;
+import com.bank.rest.dto.ScheduleTransferDto;
+import com.bank.rest.dto.StoreStatsDto;
 import com.bank.rest.dto.TopUpDto;
 import com.bank.rest.dto.TransferMoneyDto;
 import com.bank.rest.model.Account;
+import com.bank.rest.model.Hold;
+import com.bank.rest.model.ScheduledTransfer;
+import com.bank.rest.server.IdempotencyFilter;
+import com.bank.rest.trace.RequestTracer;
+import com.bank.rest.trace.SlowRequestLog;
 import com.sun.jersey.api.client.Client;
 import com.sun.jersey.api.client.ClientResponse;
 import com.sun.jersey.api.client.WebResource;
@@ -11,6 +29,7 @@ import com.sun.jersey.api.core.PackagesResourceConfig;
 import com.sun.jersey.api.core.ResourceConfig;
 import com.sun.jersey.api.json.JSONConfiguration;
 import com.sun.net.httpserver.HttpServer;
+import org.codehaus.jackson.JsonNode;
 import org.codehaus.jackson.map.ObjectMapper;
 import org.codehaus.jackson.type.TypeReference;
 import org.junit.After;
@@ -19,11 +38,19 @@ import org.junit.Test;
 
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.UriBuilder;
+import java.io.BufferedReader;
 import java.io.IOException;
+import java.io.InputStreamReader;
 import java.math.BigDecimal;
+import java.net.HttpURLConnection;
 import java.net.InetAddress;
 import java.net.URI;
 import java.net.UnknownHostException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 
 import static org.junit.Assert.*;
@@ -34,6 +61,8 @@ public class ApiClientTest {
     private Client client;
     private WebResource webResource;
     private ObjectMapper objectMapper;
+    private Path slowLogFile;
+    private SlowRequestLog slowLog;
 
 
     @Before
@@ -43,13 +72,17 @@ public class ApiClientTest {
 
         objectMapper = new ObjectMapper();
 
+        slowLogFile = Files.createTempFile("slow", ".log");
+        slowLog = SlowRequestLog.open(slowLogFile, 100);
         server = createHttpServer();
         server.start();
     }
 
     @After
-    public void tearDown() {
+    public void tearDown() throws IOException {
         server.stop(1);
+        slowLog.close();
+        Files.delete(slowLogFile);
     }
 
     @Test
@@ -82,12 +115,11 @@ public class ApiClientTest {
     }
 
     @Test
-    public void getInfo_Test_ExceptionGivenAccountNumberDoesNotExist() {
+    public void getInfo_Test_ExceptionGivenAccountNumberDoesNotExist() throws Exception {
         ClientResponse response = webResource.path(String.valueOf(1)).get(ClientResponse.class);
         String output = response.getEntity(String.class);
 
-        assertEquals(500, response.getStatus());
-        assertEquals("No account found with number 1", output);
+        assertError(404, "ACCOUNT_NOT_FOUND", "No account found with number 1", response.getStatus(), output);
     }
 
     @Test
@@ -116,8 +148,7 @@ public class ApiClientTest {
                 .put(ClientResponse.class, objectMapper.writeValueAsString(expected));
         String output = response.getEntity(String.class);
 
-        assertEquals(500, response.getStatus());
-        assertEquals("Cannot update non existing account " + expected.getNumber(), output);
+        assertError(404, "UPDATE_NOT_FOUND", "Cannot update non existing account " + expected.getNumber(), response.getStatus(), output);
     }
 
     @Test
@@ -130,8 +161,7 @@ public class ApiClientTest {
                 .put(ClientResponse.class, objectMapper.writeValueAsString(expected));
         String output = response.getEntity(String.class);
 
-        assertEquals(500, response.getStatus());
-        assertEquals("Null account number is not supported fot this operation", output);
+        assertError(400, "NULL_ACCOUNT_NUMBER", "Null account number is not supported fot this operation", response.getStatus(), output);
     }
 
     @Test
@@ -143,8 +173,7 @@ public class ApiClientTest {
                 .put(ClientResponse.class, objectMapper.writeValueAsString(expected));
         String output = response.getEntity(String.class);
 
-        assertEquals(500, response.getStatus());
-        assertEquals("Balance cannot be negative", output);
+        assertError(400, "NEGATIVE_BALANCE", "Balance cannot be negative", response.getStatus(), output);
     }
 
     @Test
@@ -168,6 +197,365 @@ public class ApiClientTest {
         compareAccounts(bobAccount, bobAccountFound);
     }
 
+    @Test
+    public void stats_Test_Successful() throws Exception {
+        createAccountFor("Alice");
+
+        ClientResponse response = webResource.path("stats").queryParam("windowMinutes", "5").get(ClientResponse.class);
+        String output = response.getEntity(String.class);
+
+        assertEquals(200, response.getStatus());
+        JsonNode stats = objectMapper.readTree(output);
+        assertTrue(stats.get("activeAccounts").getLongValue() > 0);
+        assertNotNull(stats.get("totalDeposits"));
+        assertNotNull(stats.get("dailyVolume"));
+        assertEquals(5, stats.get("windowMinutes").getIntValue());
+    }
+
+    @Test
+    public void admission_Test_Successful() throws Exception {
+        ClientResponse response = webResource.path("admission").get(ClientResponse.class);
+        String output = response.getEntity(String.class);
+
+        assertEquals(200, response.getStatus());
+        JsonNode admission = objectMapper.readTree(output);
+        assertEquals(0, admission.get("rejectedServerOverloaded").getLongValue());
+        assertTrue(admission.get("maxConcurrent").getIntValue() > 0);
+        assertTrue(admission.get("hotAccounts").isArray());
+    }
+
+    @Test
+    public void schedule_Test_ScheduleFindAndCancel() throws Exception {
+        Account aliceAccount = createAccountFor("Alice");
+        Account bobAccount = createAccountFor("Bob");
+        long executeAt = System.currentTimeMillis() + 3_600_000;
+        ScheduleTransferDto dto = new ScheduleTransferDto(aliceAccount.getNumber(), bobAccount.getNumber(),
+                BigDecimal.TEN, executeAt, 86_400_000);
+
+        ClientResponse response = webResource.path("schedule").type(MediaType.APPLICATION_JSON_TYPE)
+                .post(ClientResponse.class, objectMapper.writeValueAsString(dto));
+        assertEquals(200, response.getStatus());
+        ScheduledTransfer scheduled = objectMapper.readValue(response.getEntity(String.class), ScheduledTransfer.class);
+        assertEquals(executeAt, scheduled.getExecuteAt());
+        assertEquals(0, scheduled.getExecutions());
+
+        String path = String.valueOf(scheduled.getId());
+        response = webResource.path("schedule").path(path).get(ClientResponse.class);
+        assertEquals(200, response.getStatus());
+        ScheduledTransfer found = objectMapper.readValue(response.getEntity(String.class), ScheduledTransfer.class);
+        assertEquals(aliceAccount.getNumber(), found.getAccountNumberFrom());
+        assertEquals(BigDecimal.TEN, found.getAmount());
+
+        assertEquals(204, webResource.path("schedule").path(path).delete(ClientResponse.class).getStatus());
+        response = webResource.path("schedule").path(path).get(ClientResponse.class);
+        assertError(404, "SCHEDULE_NOT_FOUND", "No scheduled transfer with id " + path, response.getStatus(),
+                response.getEntity(String.class));
+    }
+
+    @Test
+    public void holds_Test_PlaceCaptureAndRelease() throws Exception {
+        Account aliceAccount = topUp(createAccountFor("Alice"), new BigDecimal("100"));
+        Account bobAccount = createAccountFor("Bob");
+        HoldDto dto = new HoldDto(aliceAccount.getNumber(), bobAccount.getNumber(), new BigDecimal("60"), 60_000L);
+
+        ClientResponse response = webResource.path("holds").type(MediaType.APPLICATION_JSON_TYPE)
+                .post(ClientResponse.class, objectMapper.writeValueAsString(dto));
+        assertEquals(200, response.getStatus());
+        Hold hold = objectMapper.readValue(response.getEntity(String.class), Hold.class);
+        assertEquals(Hold.State.ACTIVE, hold.getState());
+        String path = String.valueOf(hold.getId());
+        JsonNode held = objectMapper.readTree(webResource.path(aliceAccount.getNumber().toString()).get(String.class));
+        assertEquals(new BigDecimal("100"), held.get("balance").getDecimalValue());
+        assertEquals(new BigDecimal("60"), held.get("held").getDecimalValue());
+
+        TransferMoneyDto transfer = new TransferMoneyDto(aliceAccount.getNumber(), bobAccount.getNumber(),
+                new BigDecimal("41"));
+        response = webResource.path("transfer").type(MediaType.APPLICATION_JSON_TYPE)
+                .post(ClientResponse.class, objectMapper.writeValueAsString(transfer));
+        assertError(409, "INSUFFICIENT_FUNDS", "Not sufficient funds for write off on account "
+                + aliceAccount.getNumber(), response.getStatus(), response.getEntity(String.class));
+
+        response = webResource.path("holds").path(path).path("capture").queryParam("amount", "25")
+                .post(ClientResponse.class);
+        assertEquals(200, response.getStatus());
+        Hold captured = objectMapper.readValue(response.getEntity(String.class), Hold.class);
+        assertEquals(Hold.State.CAPTURED, captured.getState());
+        assertEquals(new BigDecimal("25"), captured.getAmount());
+        Account alice = findAccount(aliceAccount.getNumber());
+        assertEquals(new BigDecimal("75"), alice.getBalance());
+        assertEquals(BigDecimal.ZERO, alice.getHeld());
+        assertFalse(webResource.path(aliceAccount.getNumber().toString()).get(String.class).contains("held"));
+        assertEquals(new BigDecimal("25"), findAccount(bobAccount.getNumber()).getBalance());
+
+        response = webResource.path("holds").path(path).delete(ClientResponse.class);
+        assertError(404, "HOLD_NOT_FOUND", "No active hold with id " + path, response.getStatus(),
+                response.getEntity(String.class));
+
+        hold = objectMapper.readValue(webResource.path("holds").type(MediaType.APPLICATION_JSON_TYPE)
+                .post(String.class, objectMapper.writeValueAsString(dto)), Hold.class);
+        response = webResource.path("holds").path(String.valueOf(hold.getId())).delete(ClientResponse.class);
+        assertEquals(Hold.State.RELEASED, objectMapper.readValue(response.getEntity(String.class), Hold.class)
+                .getState());
+        assertEquals(BigDecimal.ZERO, findAccount(aliceAccount.getNumber()).getHeld());
+    }
+
+    @Test
+    public void fxRates_Test_TransferBetweenCurrencies() throws Exception {
+        FxRatesDto rates = new FxRatesDto(null, Collections.singletonMap("EUR", new BigDecimal("0.9")), 0);
+        ClientResponse response = webResource.path("fx").path("rates").type(MediaType.APPLICATION_JSON_TYPE)
+                .put(ClientResponse.class, objectMapper.writeValueAsString(rates));
+        assertEquals(200, response.getStatus());
+        FxRatesDto updated = objectMapper.readValue(response.getEntity(String.class), FxRatesDto.class);
+        assertEquals("USD", updated.getBaseCurrency());
+        assertEquals(new BigDecimal("0.9"), updated.getRates().get("EUR"));
+        assertTrue(updated.getUpdatedAt() > 0);
+
+        Account dollars = topUp(createAccountFor("Alice"), new BigDecimal("100"));
+        response = webResource.path("create").path("Bob").queryParam("currency", "eur").post(ClientResponse.class);
+        Account euros = objectMapper.readValue(response.getEntity(String.class), Account.class);
+        assertEquals("EUR", euros.getCurrency());
+        assertNull(dollars.getCurrency());
+
+        TransferMoneyDto transfer = new TransferMoneyDto(dollars.getNumber(), euros.getNumber(),
+                new BigDecimal("10.01"));
+        response = webResource.path("transfer").type(MediaType.APPLICATION_JSON_TYPE)
+                .post(ClientResponse.class, objectMapper.writeValueAsString(transfer));
+        assertEquals(204, response.getStatus());
+        assertEquals(new BigDecimal("89.99"), findAccount(dollars.getNumber()).getBalance());
+        // 9.009 rounded to cents
+        assertEquals(new BigDecimal("9.01"), findAccount(euros.getNumber()).getBalance());
+
+        response = webResource.path("create").path("Carol").queryParam("currency", "XYZ").post(ClientResponse.class);
+        assertError(400, "UNKNOWN_CURRENCY", "Unknown ISO 4217 currency code", response.getStatus(),
+                response.getEntity(String.class));
+        response = webResource.path("create").path("Carol").queryParam("currency", "CHF").post(ClientResponse.class);
+        Account francs = objectMapper.readValue(response.getEntity(String.class), Account.class);
+        transfer = new TransferMoneyDto(dollars.getNumber(), francs.getNumber(), BigDecimal.ONE);
+        response = webResource.path("transfer").type(MediaType.APPLICATION_JSON_TYPE)
+                .post(ClientResponse.class, objectMapper.writeValueAsString(transfer));
+        assertError(409, "NO_EXCHANGE_RATE", "No exchange rate for the currency of account " + francs.getNumber(),
+                response.getStatus(), response.getEntity(String.class));
+        assertEquals(new BigDecimal("89.99"), findAccount(dollars.getNumber()).getBalance());
+    }
+
+    @Test
+    public void cache_Test_ServedAccountsCounted() throws Exception {
+        Account account = createAccountFor("Tom");
+        String accountNumber = String.valueOf(account.getNumber());
+        webResource.path(accountNumber).get(String.class);
+
+        ClientResponse response = webResource.path(accountNumber).get(ClientResponse.class);
+        assertEquals(MediaType.APPLICATION_JSON_TYPE, response.getType());
+        compareAccounts(account, objectMapper.readValue(response.getEntity(String.class), Account.class));
+
+        response = webResource.path("cache").get(ClientResponse.class);
+        assertEquals(200, response.getStatus());
+        CacheStatsDto stats = objectMapper.readValue(response.getEntity(String.class), CacheStatsDto.class);
+        assertTrue(stats.getHits() >= 1);
+        assertTrue(stats.getSize() >= 1);
+    }
+
+    @Test
+    public void locks_Test_AcquisitionsCounted() throws Exception {
+        Account account = createAccountFor("Tom");
+        TopUpDto topUp = new TopUpDto(account.getNumber(), BigDecimal.ONE);
+        webResource.path("top_up").type(MediaType.APPLICATION_JSON_TYPE)
+                .post(ClientResponse.class, objectMapper.writeValueAsString(topUp));
+
+        ClientResponse response = webResource.path("locks").get(ClientResponse.class);
+        assertEquals(200, response.getStatus());
+        LockStatsDto stats = objectMapper.readValue(response.getEntity(String.class), LockStatsDto.class);
+        assertTrue(stats.getAcquisitions() >= 1);
+        assertEquals(0, stats.getTimeouts());
+        assertEquals(1, Integer.bitCount(stats.getStripes()));
+    }
+
+    @Test
+    public void store_Test_EmptyWithoutStore() throws Exception {
+        ClientResponse response = webResource.path("store").get(ClientResponse.class);
+        assertEquals(200, response.getStatus());
+        StoreStatsDto stats = objectMapper.readValue(response.getEntity(String.class), StoreStatsDto.class);
+        assertEquals(0, stats.getCapacity());
+        assertEquals(0, stats.getCached());
+    }
+
+    @Test
+    public void audit_Test_DisabledWithoutPath() throws Exception {
+        ClientResponse response = webResource.path("audit").get(ClientResponse.class);
+        assertEquals(200, response.getStatus());
+        AuditStatsDto stats = objectMapper.readValue(response.getEntity(String.class), AuditStatsDto.class);
+        assertFalse(stats.isEnabled());
+        assertEquals(0, stats.getRecorded());
+    }
+
+    @Test
+    public void reconcile_Test_DisabledWithoutAudit() throws Exception {
+        ClientResponse response = webResource.path("reconciliation").post(ClientResponse.class);
+        assertEquals(200, response.getStatus());
+        ReconciliationDto report = objectMapper.readValue(response.getEntity(String.class), ReconciliationDto.class);
+        assertFalse(report.isEnabled());
+        assertEquals(0, report.getRuns());
+
+        response = webResource.path("reconciliation").get(ClientResponse.class);
+        assertEquals(200, response.getStatus());
+        assertTrue(response.getEntity(String.class).contains("\"discrepancies\":[]"));
+    }
+
+    @Test
+    public void bulk_Test_StartAndPollUntilCompleted() throws Exception {
+        Account account = createAccountFor("Tom");
+        topUp(account, new BigDecimal(1000));
+        long id = System.nanoTime();
+        BulkOperationDto dto = new BulkOperationDto(id, BulkOperationDto.Type.INTEREST, new BigDecimal("0.0001"));
+
+        ClientResponse response = webResource.path("bulk").type(MediaType.APPLICATION_JSON_TYPE)
+                .post(ClientResponse.class, objectMapper.writeValueAsString(dto));
+        assertEquals(200, response.getStatus());
+        BulkProgressDto progress = objectMapper.readValue(response.getEntity(String.class), BulkProgressDto.class);
+        while (progress.getState() == BulkProgressDto.State.RUNNING) {
+            Thread.sleep(5);
+            response = webResource.path("bulk").path(String.valueOf(id)).get(ClientResponse.class);
+            assertEquals(200, response.getStatus());
+            progress = objectMapper.readValue(response.getEntity(String.class), BulkProgressDto.class);
+        }
+        assertEquals(BulkProgressDto.State.COMPLETED, progress.getState());
+        assertEquals(progress.getChunks(), progress.getChunksDone());
+        assertTrue(progress.getChanged() >= 1);
+        assertEquals(new BigDecimal("1000.10"), findAccount(account.getNumber()).getBalance());
+
+        response = webResource.path("bulk").path("-1").get(ClientResponse.class);
+        assertError(404, "BULK_NOT_FOUND", "No bulk operation with id -1", response.getStatus(),
+                response.getEntity(String.class));
+    }
+
+    @Test
+    public void trace_Test_ServerTimingHeader() throws Exception {
+        Account account = createAccountFor("Tom");
+        TopUpDto topUp = new TopUpDto(account.getNumber(), new BigDecimal(10));
+
+        ClientResponse response = webResource.path("top_up").type(MediaType.APPLICATION_JSON_TYPE)
+                .post(ClientResponse.class, objectMapper.writeValueAsString(topUp));
+        assertEquals(200, response.getStatus());
+        String timing = response.getHeaders().getFirst(RequestTracer.SERVER_TIMING);
+        assertNotNull(timing);
+        for (String phase : new String[]{"queue", "deserialize", "service", "lock", "serialize", "total"}) {
+            assertTrue(timing, timing.contains(phase + ";dur="));
+        }
+        assertEquals(new BigDecimal(10), objectMapper.readValue(response.getEntity(String.class), Account.class)
+                .getBalance());
+
+        response = webResource.path(String.valueOf(1)).get(ClientResponse.class);
+        assertEquals(404, response.getStatus());
+        assertNotNull(response.getHeaders().getFirst(RequestTracer.SERVER_TIMING));
+    }
+
+    @Test
+    public void trace_Test_SlowRequestsLogged() throws Exception {
+        Account account = createAccountFor("Tom");
+        webResource.path(String.valueOf(account.getNumber())).get(ClientResponse.class).getEntity(String.class);
+        ClientResponse response = webResource.path("events").queryParam("account", String.valueOf(account.getNumber()))
+                .post(ClientResponse.class);
+        long id = objectMapper.readValue(response.getEntity(String.class), BalanceEventsDto.class)
+                .getSubscriptionId();
+        webResource.path("events").path(String.valueOf(id)).queryParam("timeoutMillis", "50")
+                .get(ClientResponse.class).getEntity(String.class);
+        webResource.path("events").path(String.valueOf(id)).delete(ClientResponse.class);
+
+        slowLog.close();
+        List<String> lines = Files.readAllLines(slowLogFile, StandardCharsets.UTF_8);
+        assertTrue(lines.toString(), lines.stream().anyMatch(line ->
+                line.contains(" GET /accounts/" + account.getNumber() + " 200 total=") && line.contains(" serialize=")));
+        assertTrue(lines.toString(), lines.stream().anyMatch(line ->
+                line.contains(" GET /accounts/events/" + id + " 200 ") && line.contains(" poll=")));
+    }
+
+    @Test
+    public void events_Test_LongPoll() throws Exception {
+        Account account = createAccountFor("Tom");
+        String accountNumber = String.valueOf(account.getNumber());
+
+        ClientResponse response = webResource.path("events").queryParam("account", accountNumber)
+                .post(ClientResponse.class);
+        assertEquals(200, response.getStatus());
+        BalanceEventsDto subscription = objectMapper.readValue(response.getEntity(String.class), BalanceEventsDto.class);
+        String id = String.valueOf(subscription.getSubscriptionId());
+
+        topUp(account, BigDecimal.TEN);
+        response = webResource.path("events").path(id).queryParam("timeoutMillis", "1000").get(ClientResponse.class);
+        assertEquals(200, response.getStatus());
+        BalanceEventsDto events = objectMapper.readValue(response.getEntity(String.class), BalanceEventsDto.class);
+        assertFalse(events.isResync());
+        assertEquals(1, events.getEvents().size());
+        assertEquals(account.getNumber(), events.getEvents().get(0).getAccountNumber());
+        assertEquals(BigDecimal.TEN, events.getEvents().get(0).getBalance());
+
+        assertEquals(204, webResource.path("events").path(id).delete(ClientResponse.class).getStatus());
+        response = webResource.path("events").path(id).get(ClientResponse.class);
+        assertError(404, "SUBSCRIPTION_NOT_FOUND", "No subscription with id " + id, response.getStatus(),
+                response.getEntity(String.class));
+    }
+
+    @Test
+    public void events_Test_ServerSentEvents() throws Exception {
+        Account account = createAccountFor("Tom");
+        HttpURLConnection connection = (HttpURLConnection) getURI().resolve("/accounts/events/stream?account="
+                + account.getNumber()).toURL().openConnection();
+        connection.setReadTimeout(5000);
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(connection.getInputStream(), StandardCharsets.UTF_8))) {
+            assertEquals("text/event-stream", connection.getContentType());
+            assertTrue(reader.readLine().startsWith(": subscription "));
+            assertEquals("", reader.readLine());
+
+            topUp(account, BigDecimal.ONE);
+            assertTrue(reader.readLine().startsWith("id: "));
+            assertEquals("event: balance", reader.readLine());
+            BalanceEventDto event = objectMapper.readValue(reader.readLine().substring("data: ".length()),
+                    BalanceEventDto.class);
+            assertEquals(account.getNumber(), event.getAccountNumber());
+            assertEquals(BigDecimal.ONE, event.getBalance());
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    @Test
+    public void multiTransfer_Test_SplitPayment() throws Exception {
+        Account buyer = topUp(createAccountFor("Buyer"), BigDecimal.valueOf(100));
+        Account seller = createAccountFor("Seller");
+        Account platform = createAccountFor("Platform");
+        List<TransferMoneyDto> legs = Arrays.asList(
+                new TransferMoneyDto(buyer.getNumber(), seller.getNumber(), BigDecimal.valueOf(80)),
+                new TransferMoneyDto(buyer.getNumber(), platform.getNumber(), BigDecimal.valueOf(20)));
+
+        ClientResponse response = webResource.path("multi_transfer").type(MediaType.APPLICATION_JSON_TYPE)
+                .post(ClientResponse.class, objectMapper.writeValueAsString(legs));
+        assertEquals(204, response.getStatus());
+        assertEquals(BigDecimal.ZERO, findAccount(buyer.getNumber()).getBalance());
+        assertEquals(BigDecimal.valueOf(80), findAccount(seller.getNumber()).getBalance());
+
+        response = webResource.path("multi_transfer").type(MediaType.APPLICATION_JSON_TYPE)
+                .post(ClientResponse.class, objectMapper.writeValueAsString(legs));
+        assertError(409, "INSUFFICIENT_FUNDS", "Not sufficient funds for write off on account " + buyer.getNumber(),
+                response.getStatus(), response.getEntity(String.class));
+    }
+
+    @Test
+    public void import_Test_Csv() throws Exception {
+        String rows = "9200000001,Luna,12.5,false\n9200000002,,1,false\n";
+
+        ClientResponse response = webResource.path("import").type("text/csv").post(ClientResponse.class, rows);
+        String output = response.getEntity(String.class);
+
+        assertEquals(200, response.getStatus());
+        ImportResultDto result = objectMapper.readValue(output, ImportResultDto.class);
+        assertEquals(1, result.getImported());
+        assertEquals(1, result.getRejected());
+        assertEquals(2, result.getErrors().get(0).getLine());
+        Account luna = objectMapper.readValue(webResource.path("9200000001").get(String.class), Account.class);
+        assertEquals(new BigDecimal("12.5"), luna.getBalance());
+    }
+
     @Test
     public void topUp_Test_Successful() throws Exception {
         Account tomAccount = createAccountFor("Tom");
@@ -182,6 +570,41 @@ public class ApiClientTest {
         assertEquals(BigDecimal.valueOf(1000), result.getBalance());
     }
 
+    @Test
+    public void topUp_Test_IdempotencyKeyAppliesOnce() throws Exception {
+        Account tomAccount = createAccountFor("Tom");
+        String dto = objectMapper.writeValueAsString(new TopUpDto(tomAccount.getNumber(), BigDecimal.TEN));
+
+        ClientResponse first = webResource.path("top_up").type(MediaType.APPLICATION_JSON_TYPE)
+                .header(IdempotencyFilter.IDEMPOTENCY_KEY, "key-1").post(ClientResponse.class, dto);
+        ClientResponse repeated = webResource.path("top_up").type(MediaType.APPLICATION_JSON_TYPE)
+                .header(IdempotencyFilter.IDEMPOTENCY_KEY, "key-1").post(ClientResponse.class, dto);
+        ClientResponse other = webResource.path("top_up").type(MediaType.APPLICATION_JSON_TYPE)
+                .header(IdempotencyFilter.IDEMPOTENCY_KEY, "key-2").post(ClientResponse.class, dto);
+
+        assertEquals(200, first.getStatus());
+        assertNull(first.getHeaders().getFirst(IdempotencyFilter.REPLAYED));
+        assertEquals(BigDecimal.TEN, objectMapper.readValue(first.getEntity(String.class), Account.class).getBalance());
+        assertEquals(200, repeated.getStatus());
+        assertEquals("true", repeated.getHeaders().getFirst(IdempotencyFilter.REPLAYED));
+        assertEquals(BigDecimal.TEN,
+                objectMapper.readValue(repeated.getEntity(String.class), Account.class).getBalance());
+        assertEquals(new BigDecimal("20"),
+                objectMapper.readValue(other.getEntity(String.class), Account.class).getBalance());
+
+        ClientResponse rejected = webResource.path("top_up").type(MediaType.APPLICATION_JSON_TYPE)
+                .header(IdempotencyFilter.IDEMPOTENCY_KEY, "key-3")
+                .post(ClientResponse.class, objectMapper.writeValueAsString(new TopUpDto(1L, BigDecimal.TEN)));
+        ClientResponse rejectedAgain = webResource.path("top_up").type(MediaType.APPLICATION_JSON_TYPE)
+                .header(IdempotencyFilter.IDEMPOTENCY_KEY, "key-3")
+                .post(ClientResponse.class, objectMapper.writeValueAsString(new TopUpDto(1L, BigDecimal.TEN)));
+        assertError(404, "ACCOUNT_NOT_FOUND", "No account found with number 1", rejected.getStatus(),
+                rejected.getEntity(String.class));
+        assertEquals("true", rejectedAgain.getHeaders().getFirst(IdempotencyFilter.REPLAYED));
+        assertError(404, "ACCOUNT_NOT_FOUND", "No account found with number 1", rejectedAgain.getStatus(),
+                rejectedAgain.getEntity(String.class));
+    }
+
     @Test
     public void topUp_Test_ExceptionNullAccount() throws Exception {
         TopUpDto dto = new TopUpDto(null, BigDecimal.valueOf(1000));
@@ -190,7 +613,7 @@ public class ApiClientTest {
                 .post(ClientResponse.class, objectMapper.writeValueAsString(dto));
         String output = topUpResponse.getEntity(String.class);
 
-        assertEquals("Null account number is not supported fot this operation", output);
+        assertError(400, "NULL_ACCOUNT_NUMBER", "Null account number is not supported fot this operation", topUpResponse.getStatus(), output);
     }
 
     @Test
@@ -202,7 +625,16 @@ public class ApiClientTest {
                 .post(ClientResponse.class, objectMapper.writeValueAsString(dto));
         String output = topUpResponse.getEntity(String.class);
 
-        assertEquals("No account found with number " + nonExistingAccountNumber, output);
+        assertError(404, "ACCOUNT_NOT_FOUND", "No account found with number " + nonExistingAccountNumber, topUpResponse.getStatus(), output);
+    }
+
+    @Test
+    public void topUp_Test_ExceptionMalformedBody() throws Exception {
+        ClientResponse topUpResponse = webResource.path("top_up").type(MediaType.APPLICATION_JSON_TYPE)
+                .post(ClientResponse.class, "{\"accountNumber\":1,");
+        String output = topUpResponse.getEntity(String.class);
+
+        assertError(400, "MALFORMED_REQUEST", "Malformed request", topUpResponse.getStatus(), output);
     }
 
     @Test
@@ -215,7 +647,7 @@ public class ApiClientTest {
                 .post(ClientResponse.class, objectMapper.writeValueAsString(dto));
         String output = topUpResponse.getEntity(String.class);
 
-        assertEquals("Could not execute top up on disabled account " + tomAccount.getNumber(), output);
+        assertError(409, "TOP_UP_DISABLED", "Could not execute top up on disabled account " + tomAccount.getNumber(), topUpResponse.getStatus(), output);
     }
 
     @Test
@@ -229,7 +661,7 @@ public class ApiClientTest {
         String output = topUpResponse.getEntity(String.class);
 
 
-        assertEquals("Could not execute top up on disabled account " + tomAccount.getNumber(), output);
+        assertError(409, "TOP_UP_DISABLED", "Could not execute top up on disabled account " + tomAccount.getNumber(), topUpResponse.getStatus(), output);
     }
 
     @Test
@@ -247,13 +679,12 @@ public class ApiClientTest {
 
 
     @Test
-    public void delete_Test_ExceptionAccountNotFound() {
+    public void delete_Test_ExceptionAccountNotFound() throws Exception {
         long nonExistingAccountNumber = 1L;
         ClientResponse response = webResource.path("delete").path(String.valueOf(nonExistingAccountNumber)).delete(ClientResponse.class);
         String output = response.getEntity(String.class);
 
-        assertEquals(500, response.getStatus());
-        assertEquals("No account found with number " + nonExistingAccountNumber, output);
+        assertError(404, "ACCOUNT_NOT_FOUND", "No account found with number " + nonExistingAccountNumber, response.getStatus(), output);
     }
 
     @Test
@@ -263,8 +694,7 @@ public class ApiClientTest {
         webResource.path("delete").path(tomAccount.getNumber().toString()).delete(ClientResponse.class);
         ClientResponse deleteResponse = webResource.path("delete").path(tomAccount.getNumber().toString()).delete(ClientResponse.class);
 
-        assertEquals(500, deleteResponse.getStatus());
-        assertEquals("Cannot disable disabled account " + tomAccount.getNumber(), deleteResponse.getEntity(String.class));
+        assertError(409, "ALREADY_DISABLED", "Cannot disable disabled account " + tomAccount.getNumber(), deleteResponse.getStatus(), deleteResponse.getEntity(String.class));
     }
 
     @Test
@@ -296,8 +726,7 @@ public class ApiClientTest {
                 .post(ClientResponse.class, objectMapper.writeValueAsString(dto));
 
         String output = transferResponse.getEntity(String.class);
-        assertEquals(500, transferResponse.getStatus());
-        assertEquals("Could not execute write off from disabled account " + aliceAccount.getNumber(), output);
+        assertError(409, "WRITE_OFF_DISABLED", "Could not execute write off from disabled account " + aliceAccount.getNumber(), transferResponse.getStatus(), output);
     }
 
     @Test
@@ -312,8 +741,7 @@ public class ApiClientTest {
                 .post(ClientResponse.class, objectMapper.writeValueAsString(dto));
 
         String output = transferResponse.getEntity(String.class);
-        assertEquals(500, transferResponse.getStatus());
-        assertEquals("Could not execute top up on disabled account " + bobAccount.getNumber(), output);
+        assertError(409, "TOP_UP_DISABLED", "Could not execute top up on disabled account " + bobAccount.getNumber(), transferResponse.getStatus(), output);
     }
 
     @Test
@@ -326,8 +754,7 @@ public class ApiClientTest {
                 .post(ClientResponse.class, objectMapper.writeValueAsString(dto));
 
         String output = transferResponse.getEntity(String.class);
-        assertEquals(500, transferResponse.getStatus());
-        assertEquals("Not sufficient funds for write off on account " + aliceAccount.getNumber(), output);
+        assertError(409, "INSUFFICIENT_FUNDS", "Not sufficient funds for write off on account " + aliceAccount.getNumber(), transferResponse.getStatus(), output);
     }
 
     @Test
@@ -340,8 +767,7 @@ public class ApiClientTest {
                 .post(ClientResponse.class, objectMapper.writeValueAsString(dto));
 
         String output = transferResponse.getEntity(String.class);
-        assertEquals(500, transferResponse.getStatus());
-        assertEquals("Write off amount cannot be zero or negative. Account " + aliceAccount.getNumber(), output);
+        assertError(400, "NON_POSITIVE_WRITE_OFF", "Write off amount cannot be zero or negative. Account " + aliceAccount.getNumber(), transferResponse.getStatus(), output);
     }
 
     @Test
@@ -354,8 +780,7 @@ public class ApiClientTest {
                 .post(ClientResponse.class, objectMapper.writeValueAsString(dto));
 
         String output = transferResponse.getEntity(String.class);
-        assertEquals(500, transferResponse.getStatus());
-        assertEquals("Write off amount cannot be zero or negative. Account " + aliceAccount.getNumber(), output);
+        assertError(400, "NON_POSITIVE_WRITE_OFF", "Write off amount cannot be zero or negative. Account " + aliceAccount.getNumber(), transferResponse.getStatus(), output);
     }
 
     @Test
@@ -367,8 +792,7 @@ public class ApiClientTest {
                 .post(ClientResponse.class, objectMapper.writeValueAsString(dto));
 
         String output = transferResponse.getEntity(String.class);
-        assertEquals(500, transferResponse.getStatus());
-        assertEquals("Null account number is not supported fot this operation", output);
+        assertError(400, "NULL_ACCOUNT_NUMBER", "Null account number is not supported fot this operation", transferResponse.getStatus(), output);
     }
 
     @Test
@@ -380,14 +804,16 @@ public class ApiClientTest {
                 .post(ClientResponse.class, objectMapper.writeValueAsString(dto));
 
         String output = transferResponse.getEntity(String.class);
-        assertEquals(500, transferResponse.getStatus());
-        assertEquals("Null account number is not supported fot this operation", output);
+        assertError(400, "NULL_ACCOUNT_NUMBER", "Null account number is not supported fot this operation", transferResponse.getStatus(), output);
     }
 
 
     private HttpServer createHttpServer() throws IOException {
         ResourceConfig resourceConfig = new PackagesResourceConfig("com.bank.rest");
         resourceConfig.getFeatures().put(JSONConfiguration.FEATURE_POJO_MAPPING, Boolean.TRUE);
+        // every request counts as slow
+        new RequestTracer(true, 0, slowLog).install(resourceConfig);
+        new IdempotencyFilter(100, 60_000, 5000, 60_000).install(resourceConfig);
 
         return HttpServerFactory.create(getURI(), resourceConfig);
     }
@@ -432,6 +858,14 @@ public class ApiClientTest {
         return objectMapper.readValue(output, Account.class);
     }
 
+    private void assertError(int expectedStatus, String expectedCode, String expectedMessage,
+                             int status, String output) throws IOException {
+        assertEquals(expectedStatus, status);
+        JsonNode error = objectMapper.readTree(output);
+        assertEquals(expectedCode, error.get("code").getTextValue());
+        assertEquals(expectedMessage, error.get("message").getTextValue());
+    }
+
     private void compareAccounts(Account expected, Account result) {
         assertEquals(expected.getNumber(), result.getNumber());
         assertEquals(expected.getBalance(), result.getBalance());
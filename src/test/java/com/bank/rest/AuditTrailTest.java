@@ -0,0 +1,147 @@
+package com.bank.rest;
+
+import com.bank.rest.dto.AuditStatsDto;
+import com.bank.rest.dto.TransferMoneyDto;
+import com.bank.rest.model.AuditRecord;
+import com.bank.rest.service.AuditTrail;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class AuditTrailTest {
+
+    private static final Clock CLOCK = Clock.fixed(Instant.ofEpochMilli(1_700_000_000_000L), ZoneOffset.UTC);
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void audit_Test_RecordsReadBackInOrder() throws IOException {
+        Path directory = folder.getRoot().toPath();
+        AuditTrail trail = new AuditTrail(directory, 16, AuditTrail.OnFull.BLOCK, 1 << 20, true, CLOCK);
+        trail.record(AuditRecord.Type.CREATE, 1, 0, BigDecimal.ZERO);
+        trail.record(AuditRecord.Type.TOP_UP, 1, 0, new BigDecimal("12.50"));
+        trail.record(AuditRecord.Type.TRANSFER, 1, 2, new BigDecimal("-1E+3"));
+        trail.recordLegs(Arrays.asList(new TransferMoneyDto(1L, 2L, BigDecimal.ONE),
+                new TransferMoneyDto(2L, 3L, new BigDecimal("123456789012345678901234567890.123"))));
+        trail.record(AuditRecord.Type.UPDATE, 3, 0, null);
+        trail.close();
+
+        List<AuditRecord> records = readAll(directory);
+        assertEquals(6, records.size());
+        assertEquals("1700000000000 CREATE 1 0", records.get(0).toString());
+        assertEquals("1700000000000 TOP_UP 1 12.50", records.get(1).toString());
+        assertEquals("1700000000000 TRANSFER 1 -> 2 -1E+3", records.get(2).toString());
+        assertEquals("1700000000000 TRANSFER_LEG 1 -> 2 1", records.get(3).toString());
+        assertEquals("1700000000000 TRANSFER_LEG 2 -> 3 123456789012345678901234567890.123",
+                records.get(4).toString());
+        assertNull(records.get(5).getAmount());
+
+        AuditStatsDto stats = trail.getStats();
+        assertEquals(6, stats.getRecorded());
+        assertEquals(6, stats.getWritten());
+        assertEquals(0, stats.getDropped());
+        assertEquals(1, stats.getFiles());
+    }
+
+    @Test
+    public void audit_Test_RotatesFilesAndStartsNewFileAfterRestart() throws Exception {
+        Path directory = folder.getRoot().toPath();
+        AuditTrail trail = new AuditTrail(directory, 16, AuditTrail.OnFull.BLOCK, 90, false, CLOCK);
+        for (int i = 1; i <= 10; i++) {
+            trail.record(AuditRecord.Type.TOP_UP, i, 0, BigDecimal.ONE);
+            // one batch per record
+            while (trail.getStats().getWritten() < i) {
+                Thread.sleep(1);
+            }
+        }
+        trail.close();
+        assertEquals(10, AuditTrail.listFiles(directory).size());
+
+        trail = new AuditTrail(directory, 16, AuditTrail.OnFull.BLOCK, 90, false, CLOCK);
+        trail.record(AuditRecord.Type.TOP_UP, 11, 0, BigDecimal.ONE);
+        trail.close();
+
+        List<Path> files = AuditTrail.listFiles(directory);
+        assertEquals(11, files.size());
+        assertTrue(files.get(10).getFileName().toString().endsWith("000011.log"));
+        List<AuditRecord> records = readAll(directory);
+        for (int i = 0; i < 11; i++) {
+            assertEquals(i + 1, records.get(i).getAccountNumber());
+        }
+    }
+
+    @Test
+    public void audit_Test_ChecksumDetectsCorruptionAndTornTailIsIgnored() throws Exception {
+        Path directory = folder.getRoot().toPath();
+        AuditTrail trail = new AuditTrail(directory, 16, AuditTrail.OnFull.BLOCK, 1 << 20, false, CLOCK);
+        trail.record(AuditRecord.Type.TOP_UP, 1, 0, BigDecimal.ONE);
+        while (trail.getStats().getWritten() < 1) {
+            Thread.sleep(1);
+        }
+        trail.record(AuditRecord.Type.TOP_UP, 2, 0, BigDecimal.ONE);
+        trail.close();
+        Path file = AuditTrail.listFiles(directory).get(0);
+        byte[] bytes = Files.readAllBytes(file);
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.truncate(bytes.length - 3);
+        }
+        List<AuditRecord> records = AuditTrail.read(file);
+        assertEquals(1, records.size());
+        assertEquals(1, records.get(0).getAccountNumber());
+
+        // account number of the first record
+        bytes[4 + 16 + 1 + 8 + 7] ^= 1;
+        Files.write(file, bytes);
+        assertThrows(IOException.class, () -> AuditTrail.read(file));
+    }
+
+    @Test
+    public void audit_Test_DropPolicyCountsLostRecords() throws IOException {
+        Path directory = folder.getRoot().toPath();
+        AuditTrail trail = new AuditTrail(directory, 2, AuditTrail.OnFull.DROP, 1 << 20, false, CLOCK);
+        List<TransferMoneyDto> legs = new ArrayList<>();
+        for (long i = 1; i <= 3; i++) {
+            legs.add(new TransferMoneyDto(i, i + 1, BigDecimal.ONE));
+        }
+        // more legs than the queue holds
+        trail.recordLegs(legs);
+        for (int i = 0; i < 10_000; i++) {
+            trail.record(AuditRecord.Type.TOP_UP, i, 0, BigDecimal.ONE);
+        }
+        trail.close();
+
+        AuditStatsDto stats = trail.getStats();
+        assertEquals("DROP", stats.getOnFull());
+        assertEquals(10_003, stats.getRecorded());
+        assertTrue(stats.getDropped() >= 3);
+        assertEquals(stats.getRecorded(), stats.getWritten() + stats.getDropped());
+        assertEquals(stats.getWritten(), readAll(directory).size());
+    }
+
+    private static List<AuditRecord> readAll(Path directory) throws IOException {
+        List<AuditRecord> records = new ArrayList<>();
+        for (Path file : AuditTrail.listFiles(directory)) {
+            records.addAll(AuditTrail.read(file));
+        }
+        return records;
+    }
+
+}
@@ -0,0 +1,237 @@
+package com.bank.rest;
+
+import com.bank.rest.dto.HoldDto;
+import com.bank.rest.exception.ApiException;
+import com.bank.rest.exception.ErrorCode;
+import com.bank.rest.model.Account;
+import com.bank.rest.model.AuditRecord;
+import com.bank.rest.model.Hold;
+import com.bank.rest.repo.AccountRepository;
+import com.bank.rest.service.AccountStatistics;
+import com.bank.rest.service.AuditTrail;
+import com.bank.rest.service.AuthorizationHolds;
+import com.bank.rest.service.CreditCoalescer;
+import com.bank.rest.service.FxRateTable;
+import com.bank.rest.service.FxRates;
+import com.bank.rest.service.LockTable;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.math.BigDecimal;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class AuthorizationHoldsTest {
+
+    private static final long START = 1_700_000_000_000L;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final MutableClock clock = new MutableClock(START);
+    private Path storePath;
+    private Path auditDirectory;
+    private AccountRepository store;
+    private AuditTrail audit;
+    private AuthorizationHolds holds;
+
+    @Before
+    public void setUp() throws Exception {
+        storePath = folder.getRoot().toPath().resolve("accounts.store");
+        auditDirectory = folder.newFolder("audit").toPath();
+        store = AccountRepository.openStore(storePath, 1000, 16);
+        List<Account> accounts = new ArrayList<>();
+        for (long number = 1; number <= 40; number++) {
+            accounts.add(new Account(number, "Owner " + number, new BigDecimal("100"), false));
+        }
+        store.saveAllNew(accounts);
+        audit = new AuditTrail(auditDirectory, 16, AuditTrail.OnFull.BLOCK, 1 << 20, false, clock);
+        holds = new AuthorizationHolds(store, new LockTable(64, 5000), new CreditCoalescer(0, 0),
+                new AccountStatistics(clock), audit,
+                new FxRateTable(new FxRates("USD", Collections.emptyMap(), START), clock), clock, 100, 60_000);
+    }
+
+    @After
+    public void tearDown() {
+        audit.close();
+        store.closeStore();
+    }
+
+    @Test
+    public void place_Test_HeldAmountIsNotAvailable() {
+        Hold hold = holds.place(new HoldDto(1L, null, new BigDecimal("70"), null));
+        assertEquals(Hold.State.ACTIVE, hold.getState());
+        assertEquals(START + 60_000, hold.getExpiresAt());
+
+        Account account = store.findForUpdate(1L).get();
+        assertEquals(new BigDecimal("100"), account.getBalance());
+        assertEquals(new BigDecimal("70"), account.getHeld());
+        assertEquals(new BigDecimal("30"), account.getAvailableBalance());
+        ApiException e = assertThrows(ApiException.class, () -> account.checkWriteOff(new BigDecimal("31")));
+        assertEquals(ErrorCode.INSUFFICIENT_FUNDS, e.getCode());
+        e = assertThrows(ApiException.class, () -> holds.place(new HoldDto(1L, null, new BigDecimal("31"), null)));
+        assertEquals(ErrorCode.INSUFFICIENT_FUNDS, e.getCode());
+        assertEquals(new BigDecimal("70"), store.findCommitted(1L).get().getAccount().getHeld());
+    }
+
+    @Test
+    public void place_Test_RejectedHoldsCommitFoldedCredits() {
+        CreditCoalescer credits = new CreditCoalescer(1, 10);
+        AuthorizationHolds coalesced = new AuthorizationHolds(store, new LockTable(64, 5000), credits,
+                new AccountStatistics(clock), audit,
+                new FxRateTable(new FxRates("USD", Collections.emptyMap(), START), clock), clock, 100, 60_000);
+        Hold hold = coalesced.place(new HoldDto(6L, 7L, new BigDecimal("50"), null));
+        Account payee = store.findForUpdate(7L).get();
+        payee.setDisabled(true);
+        store.publish(payee);
+        for (long number : new long[]{5L, 6L}) {
+            credits.tryCredit(store.findByNumber(number).get(), BigDecimal.ONE);
+            assertTrue(credits.tryCredit(store.findByNumber(number).get(), BigDecimal.TEN));
+        }
+
+        ApiException e = assertThrows(ApiException.class,
+                () -> coalesced.place(new HoldDto(5L, null, new BigDecimal("200"), null)));
+        assertEquals(ErrorCode.INSUFFICIENT_FUNDS, e.getCode());
+        e = assertThrows(ApiException.class, () -> coalesced.capture(hold.getId(), null));
+        assertEquals(ErrorCode.TOP_UP_DISABLED, e.getCode());
+
+        assertEquals(new BigDecimal("110"), store.findCommitted(5L).get().getAccount().getBalance());
+        assertEquals(new BigDecimal("110"), store.findCommitted(6L).get().getAccount().getBalance());
+        assertEquals(new BigDecimal("50"), store.findCommitted(6L).get().getAccount().getHeld());
+        assertEquals(BigDecimal.ZERO, credits.pending(6L));
+    }
+
+    @Test
+    public void place_Test_HeldAmountSurvivesCacheEvictionButNotReopening() {
+        holds.place(new HoldDto(1L, null, new BigDecimal("12.5"), null));
+        for (long number = 2; number <= 40; number++) {
+            store.findForUpdate(number);
+        }
+        assertEquals(new BigDecimal("12.5"), store.findForUpdate(1L).get().getHeld());
+
+        store.closeStore();
+        store = AccountRepository.openStore(storePath, 1000, 16);
+        Account reopened = store.findForUpdate(1L).get();
+        assertEquals(new BigDecimal("100"), reopened.getBalance());
+        assertEquals(BigDecimal.ZERO, reopened.getHeld());
+    }
+
+    @Test
+    public void capture_Test_PartialCaptureToPayeeReleasesTheRest() throws Exception {
+        Hold hold = holds.place(new HoldDto(1L, 2L, new BigDecimal("50"), 10_000L));
+
+        ApiException e = assertThrows(ApiException.class, () -> holds.capture(hold.getId(), new BigDecimal("51")));
+        assertEquals(ErrorCode.CAPTURE_EXCEEDS_HOLD, e.getCode());
+        Hold captured = holds.capture(hold.getId(), new BigDecimal("20"));
+        assertEquals(Hold.State.CAPTURED, captured.getState());
+        assertEquals(new BigDecimal("20"), captured.getAmount());
+
+        Account payer = store.findForUpdate(1L).get();
+        assertEquals(new BigDecimal("80"), payer.getBalance());
+        assertEquals(BigDecimal.ZERO, payer.getHeld());
+        assertEquals(new BigDecimal("120"), store.findForUpdate(2L).get().getBalance());
+        e = assertThrows(ApiException.class, () -> holds.release(hold.getId()));
+        assertEquals(ErrorCode.HOLD_NOT_FOUND, e.getCode());
+
+        Hold written = holds.place(new HoldDto(3L, null, new BigDecimal("5"), null));
+        holds.capture(written.getId(), null);
+        assertEquals(new BigDecimal("95"), store.findForUpdate(3L).get().getBalance());
+
+        audit.close();
+        List<AuditRecord> records = new ArrayList<>();
+        for (Path file : AuditTrail.listFiles(auditDirectory)) {
+            records.addAll(AuditTrail.read(file));
+        }
+        assertEquals(2, records.size());
+        assertEquals(AuditRecord.Type.TRANSFER, records.get(0).getType());
+        assertEquals(2, records.get(0).getCounterparty());
+        assertEquals(AuditRecord.Type.CAPTURE, records.get(1).getType());
+        assertEquals(written.getId(), records.get(1).getCounterparty());
+        assertEquals(new BigDecimal("5"), records.get(1).getAmount());
+    }
+
+    @Test
+    public void expireDue_Test_OnlyExpiredHoldsReleased() {
+        Hold first = holds.place(new HoldDto(1L, null, new BigDecimal("10"), 1_000L));
+        Hold second = holds.place(new HoldDto(1L, null, new BigDecimal("20"), 1_050L));
+        Hold later = holds.place(new HoldDto(2L, null, new BigDecimal("30"), 5_000L));
+
+        clock.advance(999);
+        assertEquals(0, holds.expireDue());
+        clock.advance(1);
+        assertEquals(1, holds.expireDue());
+        assertEquals(new BigDecimal("20"), store.findForUpdate(1L).get().getHeld());
+        ApiException e = assertThrows(ApiException.class, () -> holds.get(first.getId()));
+        assertEquals(ErrorCode.HOLD_NOT_FOUND, e.getCode());
+
+        // expires with the tick after its time, never before it
+        clock.advance(50);
+        assertEquals(0, holds.expireDue());
+        clock.advance(50);
+        assertEquals(1, holds.expireDue());
+        assertEquals(BigDecimal.ZERO, store.findForUpdate(1L).get().getHeld());
+        assertEquals(Hold.State.ACTIVE, holds.get(later.getId()).getState());
+        assertEquals(1, holds.size());
+
+        assertEquals(Hold.State.RELEASED, holds.release(later.getId()).getState());
+        clock.advance(10_000);
+        assertEquals(0, holds.expireDue());
+        assertEquals(BigDecimal.ZERO, store.findForUpdate(2L).get().getHeld());
+        assertNotEquals(first.getId(), second.getId());
+    }
+
+    @Test
+    public void place_Test_ExceptionInvalidHold() {
+        ApiException e = assertThrows(ApiException.class,
+                () -> holds.place(new HoldDto(1L, null, BigDecimal.ZERO, null)));
+        assertEquals(ErrorCode.NON_POSITIVE_WRITE_OFF, e.getCode());
+        e = assertThrows(ApiException.class, () -> holds.place(new HoldDto(1L, null, BigDecimal.ONE, 0L)));
+        assertEquals(ErrorCode.NON_POSITIVE_HOLD_TIMEOUT, e.getCode());
+        e = assertThrows(ApiException.class, () -> holds.place(new HoldDto(1L, 999L, BigDecimal.ONE, null)));
+        assertEquals(ErrorCode.ACCOUNT_NOT_FOUND, e.getCode());
+        e = assertThrows(ApiException.class, () -> holds.place(new HoldDto(999L, null, BigDecimal.ONE, null)));
+        assertEquals(ErrorCode.ACCOUNT_NOT_FOUND, e.getCode());
+        assertEquals(0, holds.size());
+    }
+
+    private static class MutableClock extends Clock {
+
+        private long millis;
+
+        private MutableClock(long millis) {
+            this.millis = millis;
+        }
+
+        private void advance(long delta) {
+            millis += delta;
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return Instant.ofEpochMilli(millis);
+        }
+    }
+
+}
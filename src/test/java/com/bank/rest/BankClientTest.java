@@ -0,0 +1,153 @@
+package com.bank.rest;
+
+import com.bank.rest.client.BankClient;
+import com.bank.rest.dto.TopUpDto;
+import com.bank.rest.dto.TransferMoneyDto;
+import com.bank.rest.exception.ApiException;
+import com.bank.rest.exception.ErrorCode;
+import com.bank.rest.model.Account;
+import com.bank.rest.server.IdempotencyFilter;
+import com.sun.jersey.api.container.httpserver.HttpServerFactory;
+import com.sun.jersey.api.core.PackagesResourceConfig;
+import com.sun.jersey.api.core.ResourceConfig;
+import com.sun.jersey.api.json.JSONConfiguration;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.ws.rs.core.UriBuilder;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+import static org.junit.Assert.*;
+
+public class BankClientTest {
+
+    private static final URI URI = UriBuilder.fromUri("http://localhost/").port(8086).build();
+
+    private HttpServer server;
+    private BankClient client;
+
+    @Before
+    public void setUp() throws IOException {
+        ResourceConfig resourceConfig = new PackagesResourceConfig("com.bank.rest");
+        resourceConfig.getFeatures().put(JSONConfiguration.FEATURE_POJO_MAPPING, Boolean.TRUE);
+        new IdempotencyFilter(1000, 60_000, 5000, 60_000).install(resourceConfig);
+        server = HttpServerFactory.create(URI, resourceConfig);
+        server.start();
+        client = new BankClient(URI, 2, 16, 3);
+    }
+
+    @After
+    public void tearDown() {
+        client.close();
+        server.stop(0);
+    }
+
+    @Test
+    public void topUp_Test_ConcurrentCallsOverPooledConnections() throws Exception {
+        Account account = client.create("Tom").get();
+        assertEquals("Tom", account.getOwner());
+
+        List<CompletableFuture<Account>> topUps = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            topUps.add(client.topUp(new TopUpDto(account.getNumber(), BigDecimal.ONE)));
+        }
+        CompletableFuture.allOf(topUps.toArray(new CompletableFuture<?>[0])).get();
+
+        assertEquals(new BigDecimal("50"), client.getInfo(account.getNumber()).get().getBalance());
+        assertEquals(52, client.getRequests());
+        assertEquals(0, client.getRetries());
+    }
+
+    @Test
+    public void transfer_Test_BatchesTransfersAndRejectsOnlyTheFailingOne() throws Exception {
+        Account from = client.create("Tom").get();
+        Account to = client.create("Ann").get();
+        Account empty = client.create("Bob").get();
+        client.topUp(new TopUpDto(from.getNumber(), new BigDecimal("100"))).get();
+
+        List<CompletableFuture<Void>> transfers = new ArrayList<>();
+        for (int i = 0; i < 40; i++) {
+            transfers.add(client.transfer(new TransferMoneyDto(from.getNumber(), to.getNumber(), BigDecimal.ONE)));
+            if (i == 20) {
+                transfers.add(client.transfer(new TransferMoneyDto(empty.getNumber(), to.getNumber(), BigDecimal.TEN)));
+            }
+        }
+
+        CompletableFuture<Void> rejected = transfers.remove(21);
+        for (CompletableFuture<Void> transfer : transfers) {
+            transfer.get();
+        }
+        try {
+            rejected.get();
+            fail("Transfer from an empty account succeeded");
+        } catch (ExecutionException e) {
+            ApiException cause = (ApiException) e.getCause();
+            assertEquals(ErrorCode.INSUFFICIENT_FUNDS, cause.getCode());
+            assertEquals(empty.getNumber(), cause.getAccountNumber());
+        }
+        assertEquals(new BigDecimal("60"), client.getInfo(from.getNumber()).get().getBalance());
+        assertEquals(new BigDecimal("40"), client.getInfo(to.getNumber()).get().getBalance());
+        assertTrue(client.getBatches() > 0);
+    }
+
+    @Test
+    public void transfer_Test_BatchesLimitedToTheLegsTheServerTakes() throws Exception {
+        try (BankClient wide = new BankClient(URI, 1, 64, 3)) {
+            Account from = wide.create("Tom").get();
+            Account to = wide.create("Ann").get();
+            wide.topUp(new TopUpDto(from.getNumber(), new BigDecimal("100"))).get();
+            long setUp = wide.getRequests();
+
+            List<CompletableFuture<Void>> transfers = new ArrayList<>();
+            for (int i = 0; i < 40; i++) {
+                transfers.add(wide.transfer(new TransferMoneyDto(from.getNumber(), to.getNumber(), BigDecimal.ONE)));
+            }
+            CompletableFuture.allOf(transfers.toArray(new CompletableFuture<?>[0])).get();
+
+            assertEquals(new BigDecimal("40"), wide.getInfo(to.getNumber()).get().getBalance());
+            assertTrue(wide.getBatches() > 0);
+            // no batch was rejected and sent again transfer by transfer
+            assertTrue(wide.getRequests() - setUp < 40);
+        }
+    }
+
+    @Test
+    public void transfer_Test_MultiLegTransferIsOneCall() throws Exception {
+        Account from = client.create("Tom").get();
+        Account to = client.create("Ann").get();
+        client.topUp(new TopUpDto(from.getNumber(), new BigDecimal("10"))).get();
+
+        try {
+            client.transfer(Arrays.asList(
+                    new TransferMoneyDto(from.getNumber(), to.getNumber(), new BigDecimal("6")),
+                    new TransferMoneyDto(from.getNumber(), to.getNumber(), new BigDecimal("6")))).get();
+            fail("Legs over the balance were applied");
+        } catch (ExecutionException e) {
+            assertEquals(ErrorCode.INSUFFICIENT_FUNDS, ((ApiException) e.getCause()).getCode());
+        }
+        assertEquals(new BigDecimal("10"), client.getInfo(from.getNumber()).get().getBalance());
+    }
+
+    @Test
+    public void getInfo_Test_ErrorCodeOfRejectedCall() throws Exception {
+        try {
+            client.getInfo(1).get();
+            fail("Found a non existing account");
+        } catch (ExecutionException e) {
+            ApiException cause = (ApiException) e.getCause();
+            assertEquals(ErrorCode.ACCOUNT_NOT_FOUND, cause.getCode());
+            assertEquals(Long.valueOf(1), cause.getAccountNumber());
+            assertEquals("No account found with number 1", cause.getMessage());
+        }
+    }
+
+}
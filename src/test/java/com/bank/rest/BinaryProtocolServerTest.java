@@ -0,0 +1,183 @@
+package com.bank.rest;
+
+import com.bank.rest.dto.HoldDto;
+import com.bank.rest.exception.ApiException;
+import com.bank.rest.exception.ErrorCode;
+import com.bank.rest.model.Account;
+import com.bank.rest.model.Hold;
+import com.bank.rest.service.AccountService;
+import com.bank.rest.wire.BinaryProtocolClient;
+import com.bank.rest.wire.BinaryProtocolServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+
+import static org.junit.Assert.*;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class BinaryProtocolServerTest {
+
+    private AccountService accountService = AccountService.getSingleInstance();
+    private BinaryProtocolServer server;
+    private BinaryProtocolClient client;
+
+    @Before
+    public void setUp() throws IOException {
+        server = new BinaryProtocolServer(accountService, new InetSocketAddress("localhost", 0));
+        server.start();
+        client = new BinaryProtocolClient("localhost", server.getPort());
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        client.close();
+        server.close();
+    }
+
+    @Test
+    public void query_Test_Successful() throws IOException {
+        Account expected = accountService.createAccount("Tom");
+
+        Account result = client.query(expected.getNumber());
+
+        assertEquals(expected.getNumber(), result.getNumber());
+        assertEquals("Tom", result.getOwner());
+        assertEquals(BigDecimal.ZERO, result.getBalance());
+        assertFalse(result.isDisabled());
+    }
+
+    @Test
+    public void query_Test_HeldAmount() throws IOException {
+        Account account = accountService.createAccount("Tom");
+        accountService.topUp(account.getNumber(), BigDecimal.TEN);
+        Hold hold = accountService.placeHold(new HoldDto(account.getNumber(), null, new BigDecimal("2.5"), null));
+
+        assertEquals(new BigDecimal("2.5"), client.query(account.getNumber()).getHeld());
+        accountService.releaseHold(hold.getId());
+        assertEquals(BigDecimal.ZERO, client.query(account.getNumber()).getHeld());
+    }
+
+    @Test
+    public void query_Test_Currency() throws IOException {
+        Account euros = accountService.createAccount("Tom", "EUR");
+        Account dollars = accountService.createAccount("Tom");
+
+        assertEquals("EUR", client.query(euros.getNumber()).getCurrency());
+        assertNull(client.query(dollars.getNumber()).getCurrency());
+    }
+
+    @Test
+    public void topUp_Test_Successful() throws IOException {
+        Account account = accountService.createAccount("Tom");
+
+        Account result = client.topUp(account.getNumber(), new BigDecimal("10.25"));
+
+        assertEquals(new BigDecimal("10.25"), result.getBalance());
+        assertEquals(new BigDecimal("10.25"), accountService.getInfo(account.getNumber()).getBalance());
+    }
+
+    @Test
+    public void topUp_Test_NotAppliedWhenReplyCannotBeEncoded() {
+        StringBuilder owner = new StringBuilder();
+        while (owner.length() <= Short.MAX_VALUE) {
+            owner.append("Tom ");
+        }
+        Account longOwner = accountService.createAccount(owner.toString());
+        Account large = accountService.createAccount("Tom");
+        accountService.topUp(large.getNumber(), BigDecimal.valueOf(Long.MAX_VALUE));
+
+        ApiException e = assertThrows(ApiException.class, () -> client.topUp(longOwner.getNumber(), BigDecimal.ONE));
+        assertEquals(ErrorCode.NOT_ENCODABLE, e.getCode());
+        e = assertThrows(ApiException.class, () -> client.topUp(large.getNumber(), BigDecimal.ONE));
+        assertEquals(ErrorCode.NOT_ENCODABLE, e.getCode());
+
+        assertEquals(BigDecimal.ZERO, accountService.getInfo(longOwner.getNumber()).getBalance());
+        assertEquals(BigDecimal.valueOf(Long.MAX_VALUE), accountService.getInfo(large.getNumber()).getBalance());
+    }
+
+    @Test
+    public void transfer_Test_Successful() throws IOException {
+        Account alice = accountService.createAccount("Alice");
+        Account bob = accountService.createAccount("Bob");
+        accountService.topUp(alice.getNumber(), BigDecimal.valueOf(1000));
+
+        client.transfer(alice.getNumber(), bob.getNumber(), BigDecimal.valueOf(400));
+
+        assertEquals(BigDecimal.valueOf(600), accountService.getInfo(alice.getNumber()).getBalance());
+        assertEquals(BigDecimal.valueOf(400), accountService.getInfo(bob.getNumber()).getBalance());
+    }
+
+    @Test
+    public void transfer_Test_ExceptionNotSufficientFunds() {
+        Account alice = accountService.createAccount("Alice");
+        Account bob = accountService.createAccount("Bob");
+
+        ApiException e = assertThrows(ApiException.class,
+                () -> client.transfer(alice.getNumber(), bob.getNumber(), BigDecimal.TEN));
+
+        assertEquals(ErrorCode.INSUFFICIENT_FUNDS, e.getCode());
+        assertEquals("Not sufficient funds for write off on account " + alice.getNumber(), e.getMessage());
+    }
+
+    @Test
+    public void pipelining_Test_ResponsesInRequestOrder() throws IOException {
+        Account account = accountService.createAccount("Tom");
+
+        client.sendTopUp(account.getNumber(), BigDecimal.ONE);
+        client.sendQuery(-5L);
+        client.sendTopUp(account.getNumber(), BigDecimal.ONE);
+        client.sendQuery(account.getNumber());
+        client.flush();
+
+        assertEquals(BigDecimal.valueOf(1), client.receive().getBalance());
+        ApiException e = assertThrows(ApiException.class, () -> client.receive());
+        assertEquals(ErrorCode.ACCOUNT_NOT_FOUND, e.getCode());
+        assertEquals(BigDecimal.valueOf(2), client.receive().getBalance());
+        assertEquals(BigDecimal.valueOf(2), client.receive().getBalance());
+    }
+
+    @Test
+    public void accept_Test_ConnectionBeyondLimitRejected() throws IOException {
+        Account account = accountService.createAccount("Tom");
+        try (BinaryProtocolServer limited = new BinaryProtocolServer(accountService,
+                new InetSocketAddress("localhost", 0), 1);
+             BinaryProtocolClient first = new BinaryProtocolClient("localhost", limited.getPort())) {
+            limited.start();
+            // answered once the connection holds the only thread
+            assertEquals(account.getNumber(), first.query(account.getNumber()).getNumber());
+
+            try (BinaryProtocolClient second = new BinaryProtocolClient("localhost", limited.getPort())) {
+                ApiException e = assertThrows(ApiException.class, second::receive);
+                assertEquals(ErrorCode.SERVER_OVERLOADED, e.getCode());
+            }
+            assertEquals(account.getNumber(), first.query(account.getNumber()).getNumber());
+        }
+    }
+
+    @Test
+    public void handle_Test_UnknownOpcode() throws IOException {
+        try (Socket socket = new Socket("localhost", server.getPort())) {
+            DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+            out.writeInt(5);
+            out.writeByte(42);
+            out.writeInt(7);
+            out.flush();
+
+            DataInputStream in = new DataInputStream(socket.getInputStream());
+            in.readInt();
+            assertEquals(1, in.readByte());
+            assertEquals(7, in.readInt());
+            byte[] code = new byte[in.readShort()];
+            in.readFully(code);
+            assertEquals("MALFORMED_REQUEST", new String(code, "US-ASCII"));
+        }
+    }
+
+}
@@ -0,0 +1,274 @@
+package com.bank.rest;
+
+import com.bank.rest.dto.BulkOperationDto;
+import com.bank.rest.dto.BulkProgressDto;
+import com.bank.rest.exception.ApiException;
+import com.bank.rest.exception.ErrorCode;
+import com.bank.rest.model.Account;
+import com.bank.rest.model.AuditRecord;
+import com.bank.rest.repo.AccountRepository;
+import com.bank.rest.repo.AccountSnapshot;
+import com.bank.rest.service.AccountStatistics;
+import com.bank.rest.service.AuditTrail;
+import com.bank.rest.service.BulkOperations;
+import com.bank.rest.service.CreditCoalescer;
+import com.bank.rest.service.FxRateTable;
+import com.bank.rest.service.FxRates;
+import com.bank.rest.service.LockTable;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.*;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class BulkOperationsTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final LockTable locks = new LockTable(64, 5000);
+    private final CreditCoalescer credits = new CreditCoalescer(0, 0);
+    private final AccountStatistics statistics = new AccountStatistics(Clock.systemUTC());
+    private final FxRateTable fxRates = new FxRateTable(new FxRates("USD",
+            Collections.singletonMap("JPY", new BigDecimal("150")), 0L), Clock.systemUTC());
+
+    @Test
+    public void bulk_Test_InterestAndFeeSkipDisabledAccounts() throws Exception {
+        AccountRepository store = openStore(folder.getRoot().toPath().resolve("accounts.store"));
+        store.saveAllNew(Arrays.asList(new Account(1L, "A", new BigDecimal("100.00"), false),
+                new Account(2L, "B", new BigDecimal("0.05"), false),
+                new Account(3L, "C", new BigDecimal("100"), true),
+                new Account(4L, "D", new BigDecimal("1234.56"), false)));
+        Path auditDirectory = folder.newFolder("audit").toPath();
+        AuditTrail audit = new AuditTrail(auditDirectory, 16, AuditTrail.OnFull.BLOCK, 1 << 20, false,
+                Clock.systemUTC());
+        BulkOperations bulk = new BulkOperations(store, locks, credits, statistics, audit, fxRates,
+                folder.newFolder("bulk").toPath(), 3, 2);
+
+        BulkProgressDto interest = await(bulk, bulk.start(new BulkOperationDto(1L, BulkOperationDto.Type.INTEREST,
+                new BigDecimal("0.01"))).getId());
+        assertEquals(2, interest.getChunks());
+        assertEquals(2, interest.getChunksDone());
+        assertEquals(2, interest.getChanged());
+        assertEquals(1, interest.getSkipped());
+        assertEquals(new BigDecimal("13.35"), interest.getTotal());
+        assertEquals(new BigDecimal("101.00"), balance(store, 1));
+        // interest of 0.0005 rounds to 0
+        assertEquals(new BigDecimal("0.05"), balance(store, 2));
+        assertEquals(new BigDecimal("100"), balance(store, 3));
+        assertEquals(new BigDecimal("1246.91"), balance(store, 4));
+
+        BulkProgressDto fee = await(bulk, bulk.start(new BulkOperationDto(2L, BulkOperationDto.Type.FEE,
+                new BigDecimal("5"))).getId());
+        assertEquals(3, fee.getChanged());
+        assertEquals(new BigDecimal("-10.05"), fee.getTotal());
+        assertEquals(new BigDecimal("96.00"), balance(store, 1));
+        assertEquals(new BigDecimal("0.00"), balance(store, 2));
+        assertEquals(new BigDecimal("100"), balance(store, 3));
+        assertEquals(new BigDecimal("1241.91"), balance(store, 4));
+        assertEquals(new BigDecimal("3.30"), statistics.getStats(0).getTotalDeposits());
+
+        audit.close();
+        List<AuditRecord> records = new ArrayList<>();
+        for (Path file : AuditTrail.listFiles(auditDirectory)) {
+            records.addAll(AuditTrail.read(file));
+        }
+        assertEquals(5, records.size());
+        assertEquals(AuditRecord.Type.INTEREST, records.get(0).getType());
+        assertEquals(1, records.get(0).getCounterparty());
+        assertEquals(AuditRecord.Type.FEE, records.get(4).getType());
+        assertEquals(2, records.get(4).getCounterparty());
+        store.closeStore();
+    }
+
+    @Test
+    public void bulk_Test_RoundedAndChargedInTheCurrencyOfEachAccount() throws Exception {
+        AccountRepository store = openStore(folder.getRoot().toPath().resolve("accounts.store"));
+        store.saveAllNew(Arrays.asList(
+                new Account.Builder().accountNumber(1L).forOwner("A").withBalance(new BigDecimal("1234"))
+                        .inCurrency("JPY").build(),
+                new Account.Builder().accountNumber(2L).forOwner("B").withBalance(new BigDecimal("12.345"))
+                        .inCurrency("KWD").build(),
+                new Account(3L, "C", new BigDecimal("100.00"), false)));
+        AuditTrail audit = new AuditTrail(folder.newFolder("audit").toPath(), 16, AuditTrail.OnFull.BLOCK, 1 << 20,
+                false, Clock.systemUTC());
+        BulkOperations bulk = new BulkOperations(store, locks, credits, statistics, audit, fxRates,
+                folder.newFolder("bulk").toPath(), 3, 2);
+
+        await(bulk, bulk.start(new BulkOperationDto(1L, BulkOperationDto.Type.INTEREST, new BigDecimal("0.01")))
+                .getId());
+        // 12.34 JPY and 0.12345 KWD
+        assertEquals(new BigDecimal("1246"), balance(store, 1));
+        assertEquals(new BigDecimal("12.468"), balance(store, 2));
+        assertEquals(new BigDecimal("101.00"), balance(store, 3));
+
+        BulkProgressDto fee = await(bulk, bulk.start(new BulkOperationDto(2L, BulkOperationDto.Type.FEE,
+                new BigDecimal("0.5"))).getId());
+        // 75 JPY, no rate for KWD
+        assertEquals(new BigDecimal("1171"), balance(store, 1));
+        assertEquals(new BigDecimal("12.468"), balance(store, 2));
+        assertEquals(new BigDecimal("100.50"), balance(store, 3));
+        assertEquals(2, fee.getChanged());
+        assertEquals(1, fee.getSkipped());
+
+        audit.close();
+        store.closeStore();
+    }
+
+    @Test
+    public void bulk_Test_FeeLeavesHeldAmount() throws Exception {
+        AccountRepository store = openStore(folder.getRoot().toPath().resolve("accounts.store"));
+        store.saveAllNew(Arrays.asList(new Account(1L, "A", new BigDecimal("10.00"), false),
+                new Account(2L, "B", new BigDecimal("3.00"), false)));
+        for (long number = 1; number <= 2; number++) {
+            Account account = store.findForUpdate(number).get();
+            account.setHeld(new BigDecimal("2.00"));
+            store.publish(account);
+        }
+        AuditTrail audit = new AuditTrail(folder.newFolder("audit").toPath(), 16, AuditTrail.OnFull.BLOCK, 1 << 20,
+                false, Clock.systemUTC());
+        BulkOperations bulk = new BulkOperations(store, locks, credits, statistics, audit, fxRates,
+                folder.newFolder("bulk").toPath(), 3, 2);
+
+        BulkProgressDto fee = await(bulk, bulk.start(new BulkOperationDto(1L, BulkOperationDto.Type.FEE,
+                new BigDecimal("5"))).getId());
+        assertEquals(new BigDecimal("-6.00"), fee.getTotal());
+        assertEquals(new BigDecimal("5.00"), balance(store, 1));
+        assertEquals(new BigDecimal("2.00"), balance(store, 2));
+        assertEquals(new BigDecimal("2.00"), store.findCommitted(2L).get().getAccount().getHeld());
+
+        audit.close();
+        store.closeStore();
+    }
+
+    @Test
+    public void bulk_Test_RecoveryFinishesBegunChunkWithoutApplyingTwice() throws Exception {
+        Path path = folder.getRoot().toPath().resolve("accounts.store");
+        Path journals = folder.newFolder("bulk").toPath();
+        AccountRepository store = openStore(path);
+        List<Account> accounts = new ArrayList<>();
+        for (long number = 1; number <= 4; number++) {
+            accounts.add(new Account(number, "Owner " + number, new BigDecimal("100"), false));
+        }
+        store.saveAllNew(accounts);
+        long begunAfter = store.getLastSequence();
+        // the crash hit after the first account of the chunk was written to the store
+        Account applied = store.findForUpdate(1L).get();
+        applied.setBalance(new BigDecimal("110.00"));
+        store.publish(applied);
+        store.closeStore();
+        Files.write(journals.resolve("bulk-7.journal"), ("O,INTEREST,0.1\nK,1\nK,3\nB,0," + begunAfter + "\nD,")
+                .getBytes(StandardCharsets.UTF_8));
+
+        store = openStore(path);
+        BulkOperations bulk = new BulkOperations(store, locks, credits, statistics, AuditTrail.fromSystemProperties(),
+                fxRates, journals, 2, 2);
+        bulk.recover();
+        BulkProgressDto progress = await(bulk, 7);
+        assertEquals(BulkOperationDto.Type.INTEREST, progress.getType());
+        assertEquals(2, progress.getChunksDone());
+        assertEquals(3, progress.getChanged());
+        for (long number = 1; number <= 4; number++) {
+            assertEquals(new BigDecimal("110.00"), balance(store, number));
+        }
+
+        BulkOperationDto again = new BulkOperationDto(7L, BulkOperationDto.Type.INTEREST, new BigDecimal("0.10"));
+        assertEquals(BulkProgressDto.State.COMPLETED, bulk.start(again).getState());
+        ApiException conflict = assertThrows(ApiException.class, () -> bulk.start(
+                new BulkOperationDto(7L, BulkOperationDto.Type.INTEREST, new BigDecimal("0.2"))));
+        assertEquals(ErrorCode.BULK_CONFLICT, conflict.getCode());
+        store.closeStore();
+
+        store = openStore(path);
+        BulkOperations restarted = new BulkOperations(store, locks, credits, statistics,
+                AuditTrail.fromSystemProperties(), fxRates, journals, 2, 2);
+        restarted.recover();
+        assertEquals(BulkProgressDto.State.COMPLETED, restarted.progress(7).getState());
+        assertEquals(new BigDecimal("110.00"), balance(store, 3));
+        ApiException missing = assertThrows(ApiException.class, () -> restarted.progress(8));
+        assertEquals(ErrorCode.BULK_NOT_FOUND, missing.getCode());
+        store.closeStore();
+    }
+
+    @Test
+    public void bulk_Test_ConcurrentTransfersKeepTotal() throws Exception {
+        AccountRepository store = openStore(folder.getRoot().toPath().resolve("accounts.store"));
+        List<Account> accounts = new ArrayList<>();
+        for (long number = 1; number <= 500; number++) {
+            accounts.add(new Account(number, "Owner " + number, new BigDecimal("1000"), false));
+        }
+        store.saveAllNew(accounts);
+        BulkOperations bulk = new BulkOperations(store, locks, credits, statistics, AuditTrail.fromSystemProperties(),
+                fxRates, null, 16, 2);
+
+        AtomicBoolean running = new AtomicBoolean(true);
+        List<Thread> transfers = new ArrayList<>();
+        for (int t = 0; t < 2; t++) {
+            Thread thread = new Thread(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                while (running.get()) {
+                    long from = 1 + random.nextInt(500);
+                    long to = 1 + random.nextInt(500);
+                    if (from == to) {
+                        continue;
+                    }
+                    try (LockTable.Held held = locks.lock(from, to)) {
+                        Account accountFrom = store.findForUpdate(from).get();
+                        Account accountTo = store.findForUpdate(to).get();
+                        accountFrom.writeOff(BigDecimal.ONE);
+                        accountTo.topUp(BigDecimal.ONE);
+                        store.publish(accountFrom, accountTo);
+                    }
+                }
+            });
+            thread.start();
+            transfers.add(thread);
+        }
+        BulkProgressDto progress = await(bulk, bulk.start(new BulkOperationDto(1L, BulkOperationDto.Type.FEE,
+                new BigDecimal("2.5"))).getId());
+        running.set(false);
+        for (Thread thread : transfers) {
+            thread.join();
+        }
+
+        assertEquals(500, progress.getChanged());
+        assertEquals(new BigDecimal("-1250.0"), progress.getTotal());
+        try (AccountSnapshot snapshot = store.snapshot()) {
+            assertEquals(0, new BigDecimal("498750").compareTo(snapshot.getTotalBalance()));
+        }
+        store.closeStore();
+    }
+
+    private static AccountRepository openStore(Path path) {
+        return AccountRepository.openStore(path, 1000, 16);
+    }
+
+    private static BigDecimal balance(AccountRepository store, long number) {
+        return store.findByNumber(number).get().getBalance();
+    }
+
+    private static BulkProgressDto await(BulkOperations bulk, long id) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10_000;
+        BulkProgressDto progress = bulk.progress(id);
+        while (progress.getState() == BulkProgressDto.State.RUNNING && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+            progress = bulk.progress(id);
+        }
+        assertEquals(progress.getError(), BulkProgressDto.State.COMPLETED, progress.getState());
+        return progress;
+    }
+
+}
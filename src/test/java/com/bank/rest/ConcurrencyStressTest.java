@@ -0,0 +1,62 @@
+package com.bank.rest;
+
+import com.bank.rest.stress.History;
+import com.bank.rest.stress.LinearizabilityChecker;
+import com.bank.rest.stress.StressHarness;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class ConcurrencyStressTest {
+
+    @Test
+    public void stress_Test_InvariantsHoldUnderMixedLoad() throws Exception {
+        StressHarness harness = StressHarness.fromSystemProperties(2000);
+
+        List<String> violations = harness.run();
+
+        assertTrue("seed " + harness.getSeed() + ": " + violations, violations.isEmpty());
+        assertTrue(harness.getOperations() > 1000);
+    }
+
+    @Test
+    public void stress_Test_AccountOperationsLinearizable() throws Exception {
+        StressHarness harness = StressHarness.fromSystemProperties(0);
+
+        assertTrue("seed " + harness.getSeed(), harness.checkLinearizability(50, 12));
+    }
+
+    @Test
+    public void checker_Test_AcceptsOverlappingOperationsInAnyOrder() {
+        List<History.Operation> history = Arrays.asList(
+                History.Operation.of(History.Kind.TOP_UP, 5, 0, 10, 15),
+                History.Operation.of(History.Kind.READ, 0, 1, 3, 10),
+                History.Operation.of(History.Kind.UPDATE, 10, 2, 4, 10),
+                History.Operation.of(History.Kind.READ, 0, 11, 12, 15));
+
+        assertTrue(LinearizabilityChecker.isLinearizable(history, 0));
+    }
+
+    @Test
+    public void checker_Test_RejectsStaleRead() {
+        List<History.Operation> history = Arrays.asList(
+                History.Operation.of(History.Kind.TOP_UP, 5, 0, 1, 5),
+                History.Operation.of(History.Kind.READ, 0, 2, 3, 0));
+
+        assertFalse(LinearizabilityChecker.isLinearizable(history, 0));
+    }
+
+    @Test
+    public void checker_Test_RejectsLostTopUp() {
+        List<History.Operation> history = Arrays.asList(
+                History.Operation.of(History.Kind.TOP_UP, 5, 0, 4, 5),
+                History.Operation.of(History.Kind.TOP_UP, 7, 1, 3, 7),
+                History.Operation.of(History.Kind.READ, 0, 5, 6, 7));
+
+        assertFalse(LinearizabilityChecker.isLinearizable(history, 0));
+    }
+
+}
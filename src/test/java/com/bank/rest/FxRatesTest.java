@@ -0,0 +1,121 @@
+package com.bank.rest;
+
+import com.bank.rest.exception.ApiException;
+import com.bank.rest.exception.ErrorCode;
+import com.bank.rest.model.Account;
+import com.bank.rest.service.FxRateTable;
+import com.bank.rest.service.FxRates;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.time.Clock;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class FxRatesTest {
+
+    private final Account dollars = account(1L, null);
+    private final Account euros = account(2L, "EUR");
+    private final Account pounds = account(3L, "GBP");
+    private final Account yen = account(4L, "JPY");
+
+    @Test
+    public void convert_Test_CrossRatesRoundedToMinorUnit() {
+        FxRates rates = new FxRates("USD", rates("0.8", "0.64", "150"), 1L);
+
+        assertEquals(new BigDecimal("80.00"), rates.convert(new BigDecimal("100"), dollars, euros));
+        assertEquals(new BigDecimal("125.00"), rates.convert(new BigDecimal("100"), euros, dollars));
+        assertEquals(new BigDecimal("80.00"), rates.convert(new BigDecimal("100"), euros, pounds));
+        // 0.005 rounded half even
+        assertEquals(new BigDecimal("0.00"), rates.convert(new BigDecimal("0.00625"), dollars, euros));
+        assertEquals(new BigDecimal("1875"), rates.convert(new BigDecimal("10"), euros, yen));
+        assertEquals(new BigDecimal("0.01"), rates.convert(new BigDecimal("1.5"), yen, dollars));
+
+        BigDecimal amount = new BigDecimal("12.345");
+        assertSame(amount, rates.convert(amount, euros, account(5L, "EUR")));
+        assertSame(amount, rates.convert(amount, dollars, account(6L, "USD")));
+        assertEquals("USD", rates.getBaseCurrency());
+        assertEquals(4, rates.getRates().size());
+    }
+
+    @Test
+    public void convert_Test_ExceptionNoRate() {
+        FxRates rates = new FxRates("USD", Collections.singletonMap("EUR", new BigDecimal("0.8")), 1L);
+
+        ApiException e = assertThrows(ApiException.class, () -> rates.convert(BigDecimal.ONE, euros, pounds));
+        assertEquals(ErrorCode.NO_EXCHANGE_RATE, e.getCode());
+        assertEquals("No exchange rate for the currency of account 3", e.getMessage());
+        e = assertThrows(ApiException.class, () -> rates.convert(BigDecimal.ONE, yen, dollars));
+        assertEquals(ErrorCode.NO_EXCHANGE_RATE, e.getCode());
+    }
+
+    @Test
+    public void rates_Test_ExceptionInvalidRates() {
+        ApiException e = assertThrows(ApiException.class,
+                () -> new FxRates("USD", Collections.singletonMap("EUR", BigDecimal.ZERO), 1L));
+        assertEquals(ErrorCode.NON_POSITIVE_FX_RATE, e.getCode());
+        e = assertThrows(ApiException.class,
+                () -> new FxRates("USD", Collections.singletonMap("ABC", BigDecimal.ONE), 1L));
+        assertEquals(ErrorCode.UNKNOWN_CURRENCY, e.getCode());
+        e = assertThrows(ApiException.class,
+                () -> new FxRates("USD", Collections.singletonMap("USD", new BigDecimal("2")), 1L));
+        assertEquals(ErrorCode.MALFORMED_REQUEST, e.getCode());
+
+        FxRateTable table = new FxRateTable(new FxRates("USD", Collections.emptyMap(), 1L), Clock.systemUTC());
+        e = assertThrows(ApiException.class, () -> table.update("EUR", Collections.emptyMap()));
+        assertEquals(ErrorCode.MALFORMED_REQUEST, e.getCode());
+        assertEquals(1L, table.current().getUpdatedAt());
+    }
+
+    @Test
+    public void update_Test_ReadersSeeWholeTables() throws Exception {
+        FxRateTable table = new FxRateTable(new FxRates("USD", rates("1", "1", "1"), 1L), Clock.systemUTC());
+        AtomicBoolean done = new AtomicBoolean();
+        AtomicReference<String> failure = new AtomicReference<>();
+        CountDownLatch started = new CountDownLatch(1);
+        Thread reader = new Thread(() -> {
+            started.countDown();
+            while (!done.get()) {
+                // every table has one rate for all currencies, a torn one would convert two of them differently
+                FxRates rates = table.current();
+                BigDecimal toEuros = rates.convert(BigDecimal.TEN, dollars, euros);
+                BigDecimal toPounds = rates.convert(BigDecimal.TEN, dollars, pounds);
+                if (toEuros.compareTo(toPounds) != 0) {
+                    failure.set(toEuros + " != " + toPounds);
+                }
+            }
+        });
+        reader.start();
+        started.await();
+        for (int i = 2; i < 2_000; i++) {
+            String rate = String.valueOf(i);
+            table.update(null, rates(rate, rate, rate));
+        }
+        done.set(true);
+        reader.join();
+
+        assertNull(failure.get());
+        assertEquals(new BigDecimal("1999"), table.current().getRates().get("GBP"));
+    }
+
+    private static Map<String, BigDecimal> rates(String eur, String gbp, String jpy) {
+        Map<String, BigDecimal> rates = new HashMap<>();
+        rates.put("EUR", new BigDecimal(eur));
+        rates.put("GBP", new BigDecimal(gbp));
+        rates.put("JPY", new BigDecimal(jpy));
+        return rates;
+    }
+
+    private static Account account(long number, String currency) {
+        return new Account.Builder().accountNumber(number).forOwner("Owner " + number).withBalance(BigDecimal.ZERO)
+                .inCurrency(currency).build();
+    }
+
+}
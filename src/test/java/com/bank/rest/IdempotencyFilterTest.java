@@ -0,0 +1,104 @@
+package com.bank.rest;
+
+import com.bank.rest.server.IdempotencyFilter;
+import com.sun.jersey.api.client.Client;
+import com.sun.jersey.api.client.ClientResponse;
+import com.sun.jersey.api.client.WebResource;
+import com.sun.jersey.api.container.httpserver.HttpServerFactory;
+import com.sun.jersey.api.core.DefaultResourceConfig;
+import com.sun.jersey.api.core.ResourceConfig;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.ws.rs.POST;
+import javax.ws.rs.core.UriBuilder;
+import java.io.IOException;
+import java.net.URI;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class IdempotencyFilterTest {
+
+    private static final URI URI = UriBuilder.fromUri("http://localhost/").port(8087).build();
+    private static final AtomicInteger CALLS = new AtomicInteger();
+
+    private HttpServer server;
+    private WebResource failing;
+
+    @Before
+    public void setUp() throws IOException {
+        CALLS.set(0);
+        ResourceConfig resourceConfig = new DefaultResourceConfig();
+        // registered without a class level path, so scanning the package does not pick it up elsewhere
+        resourceConfig.getExplicitRootResources().put("failing", FailingResource.class);
+        new IdempotencyFilter(100, 60_000, 100, 500).install(resourceConfig);
+        server = HttpServerFactory.create(URI, resourceConfig);
+        server.start();
+        failing = Client.create().resource(URI).path("failing");
+    }
+
+    @After
+    public void tearDown() {
+        server.stop(0);
+    }
+
+    @Test
+    public void filter_Test_RequestFailedByUnmappedExceptionCanBeRetried() {
+        ClientResponse first = failing.header(IdempotencyFilter.IDEMPOTENCY_KEY, "key-1").post(ClientResponse.class);
+        assertEquals(500, first.getStatus());
+        assertTrue(first.getEntity(String.class).contains("INTERNAL_ERROR"));
+
+        ClientResponse retried = failing.header(IdempotencyFilter.IDEMPOTENCY_KEY, "key-1")
+                .post(ClientResponse.class);
+        assertEquals(200, retried.getStatus());
+        assertEquals("call 2", retried.getEntity(String.class));
+        assertNull(retried.getHeaders().getFirst(IdempotencyFilter.REPLAYED));
+
+        ClientResponse repeated = failing.header(IdempotencyFilter.IDEMPOTENCY_KEY, "key-1")
+                .post(ClientResponse.class);
+        assertEquals("call 2", repeated.getEntity(String.class));
+        assertEquals("true", repeated.getHeaders().getFirst(IdempotencyFilter.REPLAYED));
+        assertEquals(2, CALLS.get());
+    }
+
+    @Test
+    public void filter_Test_RequestEndedWithoutResponseIsTakenOver() throws Exception {
+        CALLS.set(10);
+        try {
+            failing.header(IdempotencyFilter.IDEMPOTENCY_KEY, "key-2").post(ClientResponse.class);
+        } catch (RuntimeException e) {
+            // the connection may be closed without a response
+        }
+
+        ClientResponse waiting = failing.header(IdempotencyFilter.IDEMPOTENCY_KEY, "key-2")
+                .post(ClientResponse.class);
+        assertEquals(409, waiting.getStatus());
+        Thread.sleep(500);
+        ClientResponse retried = failing.header(IdempotencyFilter.IDEMPOTENCY_KEY, "key-2")
+                .post(ClientResponse.class);
+        assertEquals(200, retried.getStatus());
+        assertEquals("call 12", retried.getEntity(String.class));
+    }
+
+    public static class FailingResource {
+
+        /**
+         * Fails the first call with an exception no resource maps, and the eleventh without any response.
+         */
+        @POST
+        public String call() {
+            int call = CALLS.incrementAndGet();
+            if (call == 1) {
+                throw new IllegalStateException("First call fails");
+            }
+            if (call == 11) {
+                throw new AssertionError("First call ends without response");
+            }
+            return "call " + call;
+        }
+    }
+
+}
@@ -0,0 +1,139 @@
+package com.bank.rest;
+
+import com.bank.rest.dto.TopUpDto;
+import com.bank.rest.dto.TransferMoneyDto;
+import com.bank.rest.exception.ApiWebException;
+import com.bank.rest.json.JsonCodecProvider;
+import com.bank.rest.model.Account;
+import org.codehaus.jackson.map.ObjectMapper;
+import org.junit.Test;
+
+import javax.ws.rs.core.MediaType;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class JsonCodecTest {
+
+    private static final List<Account> ACCOUNTS = Arrays.asList(
+            new Account(1L, "Harry Potter", BigDecimal.valueOf(1000), false),
+            new Account(-42L, "Tom \"Riddle\" \\ /", new BigDecimal("10.50"), true),
+            new Account(Long.MAX_VALUE, "\n\t\b\f\r\u0001\u001f\u007f", new BigDecimal("-0.00000001"), false),
+            new Account(Long.MIN_VALUE, "Gell\u00e9rt \u2028 \ud83d\ude00", new BigDecimal("1E+3"), false),
+            new Account(7L, "", new BigDecimal("123456789012345678901234567890.123"), false),
+            held(new Account(8L, "Ron", new BigDecimal("10.50"), false), new BigDecimal("2.5")),
+            held(new Account(9L, "Ginny", BigDecimal.TEN, false), new BigDecimal("12345678901234567890.1")),
+            new Account.Builder().accountNumber(10L).forOwner("Luna").withBalance(new BigDecimal("1500"))
+                    .inCurrency("JPY").build(),
+            new Account(null, null, null, true));
+
+    private JsonCodecProvider provider = new JsonCodecProvider();
+    private ObjectMapper objectMapper = new ObjectMapper();
+
+    @Test
+    public void writeAccount_Test_SameBytesAsJackson() throws IOException {
+        for (Account account : ACCOUNTS) {
+            assertArrayEquals(objectMapper.writeValueAsBytes(account), write(account, Account.class, Account.class));
+        }
+    }
+
+    @Test
+    public void writeAccountList_Test_SameBytesAsJackson() throws Exception {
+        Type listType = JsonCodecTest.class.getDeclaredField("ACCOUNTS").getGenericType();
+
+        assertArrayEquals(objectMapper.writeValueAsBytes(ACCOUNTS), write(ACCOUNTS, List.class, listType));
+        assertArrayEquals(objectMapper.writeValueAsBytes(new ArrayList<>()), write(new ArrayList<>(), List.class, listType));
+    }
+
+    @Test
+    public void writeDto_Test_SameBytesAsJackson() throws IOException {
+        TopUpDto topUp = new TopUpDto(5L, new BigDecimal("0.01"));
+        TransferMoneyDto transfer = new TransferMoneyDto(5L, null, BigDecimal.TEN);
+
+        assertArrayEquals(objectMapper.writeValueAsBytes(topUp), write(topUp, TopUpDto.class, TopUpDto.class));
+        assertArrayEquals(objectMapper.writeValueAsBytes(transfer), write(transfer, TransferMoneyDto.class, TransferMoneyDto.class));
+    }
+
+    @Test
+    public void readAccount_Test_RoundTrip() throws IOException {
+        for (Account expected : ACCOUNTS) {
+            Account result = (Account) read(objectMapper.writeValueAsString(expected), Account.class);
+
+            assertEquals(expected.getNumber(), result.getNumber());
+            assertEquals(expected.getOwner(), result.getOwner());
+            assertEquals(expected.getBalance(), result.getBalance());
+            assertEquals(expected.isDisabled(), result.isDisabled());
+            assertEquals(BigDecimal.ZERO, result.getHeld());
+            assertEquals(expected.getCurrency(), result.getCurrency());
+        }
+    }
+
+    @Test
+    public void readAccount_Test_HeldIgnoredLikeJackson() throws IOException {
+        String json = "{\"number\":8,\"owner\":\"Ron\",\"balance\":10.50,\"disabled\":false,\"held\":2.5}";
+
+        assertEquals(BigDecimal.ZERO, ((Account) read(json, Account.class)).getHeld());
+        assertEquals(BigDecimal.ZERO, objectMapper.readValue(json, Account.class).getHeld());
+    }
+
+    @Test
+    public void readAccount_Test_LenientLikeJackson() throws IOException {
+        Account result = (Account) read(" { \"lock\" : {}, \"number\": \"12\", \"balance\": \"2.50\",\n"
+                + "\"disabled\": \"false\", \"extra\": [1, {\"a\": \"]\"}] } ", Account.class);
+
+        assertEquals(Long.valueOf(12), result.getNumber());
+        assertEquals(new BigDecimal("2.50"), result.getBalance());
+        assertNull(result.getOwner());
+        assertFalse(result.isDisabled());
+    }
+
+    @Test
+    public void readDto_Test_Amounts() throws IOException {
+        TopUpDto topUp = (TopUpDto) read("{\"accountNumber\":5,\"amount\":-1.25e-2}", TopUpDto.class);
+        TransferMoneyDto transfer = (TransferMoneyDto) read(
+                "{\"amount\":99999999999999999999.5,\"accountNumberTo\":2,\"accountNumberFrom\":1}", TransferMoneyDto.class);
+
+        assertEquals(Long.valueOf(5), topUp.getAccountNumber());
+        assertEquals(new BigDecimal("-1.25e-2"), topUp.getAmount());
+        assertEquals(Long.valueOf(1), transfer.getAccountNumberFrom());
+        assertEquals(Long.valueOf(2), transfer.getAccountNumberTo());
+        assertEquals(new BigDecimal("99999999999999999999.5"), transfer.getAmount());
+    }
+
+    @Test
+    public void read_Test_ExceptionMalformed() {
+        assertThrows(ApiWebException.class, () -> read("{\"accountNumber\":5,", TopUpDto.class));
+        assertThrows(ApiWebException.class, () -> read("{\"accountNumber\":1.5}", TopUpDto.class));
+        assertThrows(ApiWebException.class, () -> read("{\"amount\":1.}", TopUpDto.class));
+        assertThrows(ApiWebException.class, () -> read("{} {}", TopUpDto.class));
+    }
+
+    private static Account held(Account account, BigDecimal held) {
+        account.setHeld(held);
+        return account;
+    }
+
+    private byte[] write(Object value, Class<?> type, Type genericType) throws IOException {
+        assertTrue(provider.isWriteable(type, genericType, null, MediaType.APPLICATION_JSON_TYPE));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        provider.writeTo(value, type, genericType, null, MediaType.APPLICATION_JSON_TYPE, null, out);
+        return out.toByteArray();
+    }
+
+    @SuppressWarnings("unchecked")
+    private Object read(String json, Class<?> type) throws IOException {
+        assertTrue(provider.isReadable(type, type, null, MediaType.APPLICATION_JSON_TYPE));
+        return provider.readFrom((Class<Object>) type, type, null, MediaType.APPLICATION_JSON_TYPE, null,
+                new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8)));
+    }
+
+}
@@ -0,0 +1,213 @@
+package com.bank.rest;
+
+import com.bank.rest.dto.ReconciliationDto;
+import com.bank.rest.model.Account;
+import com.bank.rest.model.AuditRecord;
+import com.bank.rest.repo.AccountRepository;
+import com.bank.rest.service.AuditTrail;
+import com.bank.rest.service.CreditCoalescer;
+import com.bank.rest.service.LockTable;
+import com.bank.rest.service.Reconciler;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.time.Clock;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.*;
+
+public class ReconcilerTest {
+
+    private static final int ACCOUNTS = 50;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final LockTable locks = new LockTable(64, 5000);
+    private AccountRepository store;
+    private AuditTrail audit;
+    private Reconciler reconciler;
+
+    @Before
+    public void open() throws IOException {
+        store = AccountRepository.openStore(folder.getRoot().toPath().resolve("accounts.store"), 1000, 16);
+        audit = new AuditTrail(folder.newFolder("audit").toPath(), 1024, AuditTrail.OnFull.BLOCK, 1 << 20, false,
+                Clock.systemUTC());
+        reconciler = new Reconciler(store, locks, new CreditCoalescer(0, 0), audit, 16, 2, Clock.systemUTC());
+        store.addCommitListener(reconciler);
+        for (long number = 1; number <= ACCOUNTS; number++) {
+            store.saveNew(new Account(number, "Owner " + number, BigDecimal.ZERO, false));
+            audit.record(AuditRecord.Type.CREATE, number, 0, BigDecimal.ZERO);
+            topUp(number, new BigDecimal("100.00"));
+        }
+    }
+
+    @After
+    public void close() {
+        audit.close();
+        store.closeStore();
+    }
+
+    @Test
+    public void reconcile_Test_VerifiesOnlyChangedPartitionsAndReportsDiscrepancies() {
+        ReconciliationDto first = reconciler.reconcile();
+        assertTrue(first.isEnabled());
+        assertEquals(1, first.getRuns());
+        assertEquals(16, first.getPartitionsVerified());
+        assertEquals(ACCOUNTS, first.getAccountsVerified());
+        assertEquals(0, first.getDiscrepancyCount());
+
+        ReconciliationDto unchanged = reconciler.reconcile();
+        assertEquals(0, unchanged.getPartitionsVerified());
+        assertEquals(first.getChecksum(), unchanged.getChecksum());
+
+        transfer(3, 4, new BigDecimal("12.5"));
+        ReconciliationDto transferred = reconciler.reconcile();
+        assertTrue(transferred.getPartitionsVerified() >= 1 && transferred.getPartitionsVerified() <= 2);
+        assertEquals(0, transferred.getDiscrepancyCount());
+        assertNotEquals(first.getChecksum(), transferred.getChecksum());
+
+        // changed without being recorded
+        Account tampered = store.findForUpdate(9L).get();
+        tampered.setBalance(new BigDecimal("999"));
+        store.publish(tampered);
+        ReconciliationDto found = reconciler.reconcile();
+        assertEquals(1, found.getPartitionsVerified());
+        assertEquals(1, found.getDiscrepancyCount());
+        ReconciliationDto.Discrepancy discrepancy = found.getDiscrepancies().get(0);
+        assertEquals(9, discrepancy.getAccountNumber());
+        assertEquals(new BigDecimal("999"), discrepancy.getBalance());
+        assertEquals(new BigDecimal("100.00"), discrepancy.getRecordedBalance());
+
+        // partitions with discrepancies are verified on every run
+        ReconciliationDto again = reconciler.reconcile();
+        assertEquals(1, again.getPartitionsVerified());
+        assertEquals(1, again.getDiscrepancyCount());
+
+        audit.record(AuditRecord.Type.UPDATE, 9, 0, new BigDecimal("999"));
+        assertEquals(0, reconciler.reconcile().getDiscrepancyCount());
+        assertEquals(0, reconciler.reconcile().getPartitionsVerified());
+    }
+
+    @Test
+    public void reconcile_Test_ConcurrentTransfersAreNoDiscrepancies() throws Exception {
+        assertEquals(ACCOUNTS, reconciler.reconcile().getAccountsVerified());
+        AtomicBoolean running = new AtomicBoolean(true);
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 2; t++) {
+            Thread thread = new Thread(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                while (running.get()) {
+                    long from = 1 + random.nextInt(ACCOUNTS);
+                    long to = 1 + random.nextInt(ACCOUNTS);
+                    if (from != to) {
+                        transfer(from, to, new BigDecimal("0.01"));
+                    }
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+        try {
+            for (int i = 0; i < 20; i++) {
+                assertEquals(0, reconciler.reconcile().getDiscrepancyCount());
+            }
+        } finally {
+            running.set(false);
+            for (Thread thread : threads) {
+                thread.join();
+            }
+        }
+        assertEquals(0, reconciler.reconcile().getDiscrepancyCount());
+
+        // every account changed once the writers stopped
+        for (long number = 1; number <= ACCOUNTS; number++) {
+            transfer(number, number % ACCOUNTS + 1, new BigDecimal("0.01"));
+        }
+        ReconciliationDto settled = reconciler.reconcile();
+        assertEquals(16, settled.getPartitionsVerified());
+        assertEquals(ACCOUNTS, settled.getAccountsVerified());
+        assertEquals(0, settled.getDiscrepancyCount());
+        ReconciliationDto unchanged = reconciler.reconcile();
+        assertEquals(0, unchanged.getPartitionsVerified());
+        assertEquals(0, unchanged.getAccountsVerified());
+        assertEquals(settled.getChecksum(), unchanged.getChecksum());
+    }
+
+    @Test
+    public void reconcile_Test_HotAccountsAreVerified() throws Exception {
+        reconciler.reconcile();
+        transfer(1, 2, new BigDecimal("0.01"));
+        long hotPartitions = reconciler.reconcile().getAccountsVerified();
+        assertTrue(hotPartitions >= 2);
+
+        AtomicBoolean running = new AtomicBoolean(true);
+        Thread writer = new Thread(() -> {
+            while (running.get()) {
+                transfer(1, 2, new BigDecimal("0.01"));
+                transfer(2, 1, new BigDecimal("0.01"));
+            }
+        });
+        writer.start();
+        try {
+            for (int i = 0; i < 20; i++) {
+                // the partitions of both accounts changed since the last run whatever the writer did
+                transfer(2, 1, new BigDecimal("0.01"));
+                ReconciliationDto report = reconciler.reconcile();
+                assertEquals(0, report.getDiscrepancyCount());
+                assertEquals(hotPartitions, report.getAccountsVerified());
+            }
+        } finally {
+            running.set(false);
+            writer.join();
+        }
+        assertEquals(hotPartitions, reconciler.reconcile().getAccountsVerified());
+        assertEquals(0, reconciler.reconcile().getAccountsVerified());
+    }
+
+    @Test
+    public void reconcile_Test_ReplaysFilesOfEarlierTrails() throws IOException {
+        transfer(3, 4, new BigDecimal("12.5"));
+        audit.close();
+        audit = new AuditTrail(folder.getRoot().toPath().resolve("audit"), 1024, AuditTrail.OnFull.BLOCK, 1 << 20,
+                false, Clock.systemUTC());
+        transfer(4, 5, new BigDecimal("2.5"));
+
+        Reconciler restarted = new Reconciler(store, locks, new CreditCoalescer(0, 0), audit, 16, 2,
+                Clock.systemUTC());
+        store.addCommitListener(restarted);
+        ReconciliationDto report = restarted.reconcile();
+        assertEquals(ACCOUNTS, report.getAccountsVerified());
+        assertEquals(0, report.getDiscrepancyCount());
+        assertEquals(0, restarted.reconcile().getPartitionsVerified());
+    }
+
+    private void topUp(long number, BigDecimal amount) {
+        try (LockTable.Held held = locks.lock(number)) {
+            Account account = store.findForUpdate(number).get();
+            account.topUp(amount);
+            store.publish(account);
+            audit.record(AuditRecord.Type.TOP_UP, number, 0, amount);
+        }
+    }
+
+    private void transfer(long from, long to, BigDecimal amount) {
+        try (LockTable.Held held = locks.lock(from, to)) {
+            Account accountFrom = store.findForUpdate(from).get();
+            Account accountTo = store.findForUpdate(to).get();
+            accountFrom.writeOff(amount);
+            accountTo.topUp(amount);
+            store.publish(accountFrom, accountTo);
+            audit.record(AuditRecord.Type.TRANSFER, from, to, amount);
+        }
+    }
+
+}
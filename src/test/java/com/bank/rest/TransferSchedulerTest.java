@@ -0,0 +1,222 @@
+package com.bank.rest;
+
+import com.bank.rest.dto.ScheduleTransferDto;
+import com.bank.rest.exception.ApiException;
+import com.bank.rest.exception.ErrorCode;
+import com.bank.rest.model.ScheduledTransfer;
+import com.bank.rest.service.TimingWheel;
+import com.bank.rest.service.TransferScheduler;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.math.BigDecimal;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class TransferSchedulerTest {
+
+    private static final long START = 1_700_000_000_000L;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final MutableClock clock = new MutableClock(START);
+    private final List<Long> executed = new ArrayList<>();
+
+    @Test
+    public void wheel_Test_FiresAtDeadlineOnEveryLevel() {
+        TimingWheel<Long> wheel = new TimingWheel<>(1000);
+        long[] deadlines = {900, 1000, 1001, 1063, 1064, 1065, 5095, 5096, 263_143, 263_144, 16_778_215, 16_778_216,
+                20_000_000};
+        for (long deadline : deadlines) {
+            wheel.schedule(deadline, deadline);
+        }
+        Random random = new Random(42);
+        List<Long> randomDeadlines = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            long deadline = 1000 + random.nextInt(1 << 25);
+            randomDeadlines.add(deadline);
+            wheel.schedule(deadline, deadline);
+        }
+
+        Map<Long, Long> firedAt = new HashMap<>();
+        long tick = 1000;
+        while (wheel.size() > 0) {
+            long current = tick;
+            wheel.advance(current, deadline -> firedAt.put(deadline, current));
+            tick += 1 + random.nextInt(3);
+        }
+
+        for (long deadline : deadlines) {
+            assertTrue(firedAt.get(deadline) >= deadline);
+            assertTrue(firedAt.get(deadline) <= Math.max(deadline, 1000) + 3);
+        }
+        for (long deadline : randomDeadlines) {
+            assertTrue(firedAt.get(deadline) >= deadline);
+            assertTrue(firedAt.get(deadline) <= deadline + 3);
+        }
+    }
+
+    @Test
+    public void wheel_Test_Cancel() {
+        TimingWheel<String> wheel = new TimingWheel<>(0);
+        TimingWheel.Entry<String> cancelled = wheel.schedule("cancelled", 100_000);
+        wheel.schedule("kept", 100_000);
+
+        assertTrue(wheel.cancel(cancelled));
+        assertFalse(wheel.cancel(cancelled));
+
+        List<String> fired = new ArrayList<>();
+        wheel.advance(100_000, fired::add);
+        assertEquals(1, fired.size());
+        assertEquals("kept", fired.get(0));
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    public void schedule_Test_SingleTransferFiresOnce() {
+        TransferScheduler scheduler = scheduler(0, 100, null);
+        ScheduledTransfer scheduled = scheduler.schedule(new ScheduleTransferDto(1L, 2L, BigDecimal.TEN, START + 1000, 0));
+
+        clock.advance(999);
+        assertEquals(0, scheduler.fireDue());
+        clock.advance(1);
+        assertEquals(1, scheduler.fireDue());
+        clock.advance(10_000);
+        assertEquals(0, scheduler.fireDue());
+
+        assertEquals(1, executed.size());
+        assertFalse(scheduler.find(scheduled.getId()).isPresent());
+    }
+
+    @Test
+    public void schedule_Test_RecurringTransferKeepsPeriodAndRecordsErrors() {
+        List<Long> failing = new ArrayList<>();
+        TransferScheduler scheduler = new TransferScheduler((from, to, amount) -> {
+            if (!failing.isEmpty()) {
+                throw new ApiException(ErrorCode.INSUFFICIENT_FUNDS, from);
+            }
+            executed.add(clock.millis());
+        }, clock, 100, 0, 100, null);
+        ScheduledTransfer scheduled = scheduler.schedule(new ScheduleTransferDto(1L, 2L, BigDecimal.ONE, START, 60_000));
+
+        for (int minute = 0; minute < 3; minute++) {
+            scheduler.fireDue();
+            clock.advance(60_000);
+        }
+        failing.add(1L);
+        scheduler.fireDue();
+
+        assertEquals(3, executed.size());
+        ScheduledTransfer state = scheduler.find(scheduled.getId()).get();
+        assertEquals(4, state.getExecutions());
+        assertEquals(START + 4 * 60_000, state.getExecuteAt());
+        assertEquals("INSUFFICIENT_FUNDS", state.getLastError());
+
+        assertTrue(scheduler.cancel(scheduled.getId()));
+        clock.advance(60_000);
+        assertEquals(0, scheduler.fireDue());
+        assertFalse(scheduler.cancel(scheduled.getId()));
+    }
+
+    @Test
+    public void schedule_Test_FiringSpreadOverJitterWindowAndCapped() {
+        TransferScheduler scheduler = scheduler(10_000, 20, null);
+        for (int i = 0; i < 1000; i++) {
+            scheduler.schedule(new ScheduleTransferDto(1L, 2L, BigDecimal.ONE, START, 3_600_000));
+        }
+
+        int maxPerTick = 0;
+        for (int t = 0; t <= 200; t++) {
+            maxPerTick = Math.max(maxPerTick, scheduler.fireDue());
+            clock.advance(100);
+        }
+
+        assertEquals(1000, executed.size());
+        assertTrue(maxPerTick <= 20);
+        assertTrue(executed.get(999) - executed.get(0) > 5_000);
+    }
+
+    @Test
+    public void schedule_Test_Validation() {
+        TransferScheduler scheduler = scheduler(0, 100, null);
+
+        ApiException e = assertThrows(ApiException.class,
+                () -> scheduler.schedule(new ScheduleTransferDto(1L, 2L, BigDecimal.ZERO, null, 0)));
+        assertEquals(ErrorCode.NON_POSITIVE_WRITE_OFF, e.getCode());
+        e = assertThrows(ApiException.class,
+                () -> scheduler.schedule(new ScheduleTransferDto(1L, 2L, BigDecimal.ONE, null, -1)));
+        assertEquals(ErrorCode.NEGATIVE_INTERVAL, e.getCode());
+        e = assertThrows(ApiException.class,
+                () -> scheduler.schedule(new ScheduleTransferDto(null, 2L, BigDecimal.ONE, null, 0)));
+        assertEquals(ErrorCode.NULL_ACCOUNT_NUMBER, e.getCode());
+        assertEquals(0, scheduler.size());
+    }
+
+    @Test
+    public void journal_Test_SchedulesSurviveRestart() throws Exception {
+        Path journal = folder.getRoot().toPath().resolve("schedules.log");
+        TransferScheduler scheduler = scheduler(0, 100, journal);
+        ScheduledTransfer recurring = scheduler.schedule(new ScheduleTransferDto(1L, 2L, BigDecimal.ONE, START, 60_000));
+        ScheduledTransfer cancelled = scheduler.schedule(new ScheduleTransferDto(1L, 2L, BigDecimal.ONE, START + 5000, 0));
+        ScheduledTransfer single = scheduler.schedule(new ScheduleTransferDto(2L, 1L, new BigDecimal("2.50"), START + 90_000, 0));
+        scheduler.cancel(cancelled.getId());
+        scheduler.fireDue();
+
+        TransferScheduler restarted = scheduler(0, 100, journal);
+
+        assertEquals(2, restarted.size());
+        assertFalse(restarted.find(cancelled.getId()).isPresent());
+        assertEquals(1, restarted.find(recurring.getId()).get().getExecutions());
+        assertEquals(START + 60_000, restarted.find(recurring.getId()).get().getExecuteAt());
+        assertEquals(new BigDecimal("2.50"), restarted.find(single.getId()).get().getAmount());
+        ScheduledTransfer next = restarted.schedule(new ScheduleTransferDto(1L, 2L, BigDecimal.ONE, null, 0));
+        assertTrue(next.getId() > single.getId());
+    }
+
+    private TransferScheduler scheduler(long jitterMillis, int maxFiringsPerTick, Path journal) {
+        return new TransferScheduler((from, to, amount) -> executed.add(clock.millis()), clock, 100, jitterMillis,
+                maxFiringsPerTick, journal);
+    }
+
+    private static class MutableClock extends Clock {
+
+        private long millis;
+
+        private MutableClock(long millis) {
+            this.millis = millis;
+        }
+
+        private void advance(long delta) {
+            millis += delta;
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return Instant.ofEpochMilli(millis);
+        }
+    }
+
+}
@@ -0,0 +1,54 @@
+package com.bank.rest.bench;
+
+import com.bank.rest.exception.ApiException;
+import com.bank.rest.model.Account;
+import com.bank.rest.service.AccountService;
+
+import java.math.BigDecimal;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Top up latency of a cold account while 64 threads hammer one hot account.
+ * Run with {@code -Dbank.admission.maxQueuePerAccount=4} to compare against the default queue bound.
+ */
+public class AdmissionBenchmark {
+
+    private static final int HOT_THREADS = 64;
+
+    public static void main(String[] args) throws Exception {
+        AccountService accountService = AccountService.getSingleInstance();
+        long hot = accountService.createAccount("Hot").getNumber();
+        long cold = accountService.createAccount("Cold").getNumber();
+
+        Bench.latency("cold top up, idle server", 20_000, () -> accountService.topUp(cold, BigDecimal.ONE));
+
+        AtomicBoolean running = new AtomicBoolean(true);
+        LongAdder served = new LongAdder();
+        LongAdder rejected = new LongAdder();
+        for (int t = 0; t < HOT_THREADS; t++) {
+            Thread worker = new Thread(() -> {
+                while (running.get()) {
+                    try {
+                        Account account = accountService.topUp(hot, BigDecimal.ONE);
+                        if (account != null) {
+                            served.increment();
+                        }
+                    } catch (ApiException e) {
+                        rejected.increment();
+                    }
+                }
+            });
+            worker.setDaemon(true);
+            worker.start();
+        }
+        try {
+            Bench.latency("cold top up, hot account under load", 20_000, () -> accountService.topUp(cold, BigDecimal.ONE));
+        } finally {
+            running.set(false);
+        }
+        System.out.printf("hot account: %,d served, %,d rejected%n", served.sum(), rejected.sum());
+        System.out.println(accountService.getAdmissionStats().getRejectedAccountOverloaded() + " rejected as overloaded");
+    }
+
+}
@@ -0,0 +1,69 @@
+package com.bank.rest.bench;
+
+import com.bank.rest.model.Account;
+import com.bank.rest.repo.AccountRepository;
+import com.bank.rest.service.AccountService;
+
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * One million accounts of which 70% are disabled: heap used before and after archiving the disabled ones
+ * and the latency of reading a resident, an archived and a missing account.
+ */
+public class ArchiveBenchmark {
+
+    private static final int ACCOUNTS = 1_000_000;
+    private static final long FIRST_NUMBER = 7_000_000_000L;
+
+    public static void main(String[] args) throws Exception {
+        AccountRepository repository = AccountRepository.getSingleInstance();
+        AccountService accountService = AccountService.getSingleInstance();
+        long baseline = usedHeap();
+        Random random = new Random(42);
+        List<Account> accounts = new ArrayList<>(ACCOUNTS);
+        for (int i = 0; i < ACCOUNTS; i++) {
+            accounts.add(new Account(FIRST_NUMBER + i, "Owner " + i,
+                    BigDecimal.valueOf(random.nextInt(1_000_000), 2), i % 10 < 7));
+        }
+        repository.saveAllNew(accounts);
+        accounts = null;
+        long resident = usedHeap() - baseline;
+
+        Path directory = Files.createTempDirectory("archive");
+        Path file = directory.resolve("accounts.archive");
+        repository.openArchive(file);
+        long start = System.nanoTime();
+        int archived = accountService.archiveDisabledAccounts(0);
+        long millis = (System.nanoTime() - start) / 1_000_000;
+        long tiered = usedHeap() - baseline;
+        System.out.printf("archived %,d accounts in %,d ms, file %,d bytes%n", archived, millis, Files.size(file));
+        System.out.printf("heap for accounts: %,d bytes in memory, %,d bytes after archiving (%.0f%%)%n",
+                resident, tiered, 100.0 * tiered / resident);
+
+        int[] next = {0};
+        Bench.latency("read resident account", 200_000,
+                () -> accountService.getInfo(FIRST_NUMBER + 7 + 10L * (next[0]++ % (ACCOUNTS / 10))));
+        Bench.latency("read archived account", 200_000,
+                () -> accountService.getInfo(FIRST_NUMBER + 10L * (next[0]++ % (ACCOUNTS / 10))));
+        Bench.latency("look up missing account", 200_000,
+                () -> repository.findByNumber(FIRST_NUMBER + ACCOUNTS + next[0]++));
+
+        Files.delete(file);
+        Files.delete(directory);
+    }
+
+    private static long usedHeap() throws InterruptedException {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+            Thread.sleep(100);
+        }
+        Runtime runtime = Runtime.getRuntime();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+}
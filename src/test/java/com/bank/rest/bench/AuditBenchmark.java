@@ -0,0 +1,56 @@
+package com.bank.rest.bench;
+
+import com.bank.rest.dto.AuditStatsDto;
+import com.bank.rest.model.AuditRecord;
+import com.bank.rest.service.AuditTrail;
+
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Clock;
+
+/**
+ * Throughput ceiling of the audit trail: threads record as fast as they can, with the blocking policy they are
+ * held to the rate the writer gets records onto the disk, with the dropping policy the difference is dropped.
+ * Pass a directory as argument to write somewhere else than the temporary directory.
+ */
+public class AuditBenchmark {
+
+    private static final BigDecimal AMOUNT = new BigDecimal("12.34");
+
+    public static void main(String[] args) throws Exception {
+        int threads = Math.max(4, Runtime.getRuntime().availableProcessors() * 2);
+        Path parent = args.length > 0 ? Paths.get(args[0]) : Paths.get(System.getProperty("java.io.tmpdir"));
+
+        measure("block", parent, AuditTrail.OnFull.BLOCK, false, threads);
+        measure("drop", parent, AuditTrail.OnFull.DROP, false, threads);
+        measure("block, sync", parent, AuditTrail.OnFull.BLOCK, true, threads);
+    }
+
+    private static void measure(String name, Path parent, AuditTrail.OnFull onFull, boolean sync, int threads)
+            throws Exception {
+        Path directory = Files.createTempDirectory(parent, "audit");
+        AuditTrail trail = new AuditTrail(directory, 65536, onFull, 64L << 20, sync, Clock.systemUTC());
+        long start = System.nanoTime();
+        Bench.run("record, " + name, threads, 5, i -> trail.record(AuditRecord.Type.TRANSFER, i, i + 1, AMOUNT));
+        long[] next = {0};
+        Bench.latency("record, " + name, 1_000_000, () ->
+                trail.record(AuditRecord.Type.TOP_UP, next[0]++, 0, AMOUNT));
+        trail.close();
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        AuditStatsDto stats = trail.getStats();
+        long bytes = 0;
+        for (Path file : AuditTrail.listFiles(directory)) {
+            bytes += Files.size(file);
+            Files.delete(file);
+        }
+        Files.delete(directory);
+        System.out.printf("%-48s %,14.0f written/s, %,d dropped, %,d blocked, %.1f records per batch, "
+                        + "%.1f bytes per record%n", "", stats.getWritten() / seconds, stats.getDropped(),
+                stats.getBlocked(), stats.getWritten() / (double) Math.max(1, stats.getBatches()),
+                bytes / (double) Math.max(1, stats.getWritten()));
+    }
+
+}
@@ -0,0 +1,78 @@
+package com.bank.rest.bench;
+
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntConsumer;
+
+/**
+ * Minimal harness for the benchmarks in this package.
+ * Benchmarks are plain main classes, so they are not picked up by surefire and are run by hand:
+ * {@code mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=com.bank.rest.bench.<Name>}
+ */
+public final class Bench {
+
+    private Bench() {
+    }
+
+    /**
+     * Runs the operation on the given number of threads for a warm up and a measured period.
+     *
+     * @param name      label printed with the result.
+     * @param threads   number of worker threads, each gets its index passed to the operation.
+     * @param seconds   length of the measured period.
+     * @param operation operation to repeat.
+     * @return measured throughput in operations per second.
+     */
+    public static double run(String name, int threads, int seconds, IntConsumer operation) throws InterruptedException {
+        measure(threads, Math.max(1, seconds / 2), operation);
+        double opsPerSecond = measure(threads, seconds, operation);
+        System.out.printf("%-48s %,14.0f ops/s (%d threads)%n", name, opsPerSecond, threads);
+        return opsPerSecond;
+    }
+
+    /**
+     * Runs the operation {@code count} times on one thread and prints latency percentiles in microseconds.
+     */
+    public static void latency(String name, int count, Runnable operation) {
+        for (int i = 0; i < count / 10; i++) {
+            operation.run();
+        }
+        long[] samples = new long[count];
+        for (int i = 0; i < count; i++) {
+            long start = System.nanoTime();
+            operation.run();
+            samples[i] = System.nanoTime() - start;
+        }
+        Arrays.sort(samples);
+        System.out.printf("%-48s p50 %8.1f us  p99 %8.1f us  p99.9 %8.1f us%n", name,
+                samples[count / 2] / 1000.0, samples[(int) (count * 0.99)] / 1000.0,
+                samples[(int) (count * 0.999)] / 1000.0);
+    }
+
+    private static double measure(int threads, int seconds, IntConsumer operation) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+        long[] counts = new long[threads];
+        CountDownLatch done = new CountDownLatch(threads);
+        for (int t = 0; t < threads; t++) {
+            int index = t;
+            Thread worker = new Thread(() -> {
+                long count = 0;
+                try {
+                    while ((count & 63) != 0 || System.nanoTime() < deadline) {
+                        operation.accept(index);
+                        count++;
+                    }
+                } finally {
+                    counts[index] = count;
+                    done.countDown();
+                }
+            });
+            worker.setDaemon(true);
+            worker.start();
+        }
+        done.await();
+        return Arrays.stream(counts).sum() / (double) seconds;
+    }
+
+}
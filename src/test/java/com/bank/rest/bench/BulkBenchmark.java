@@ -0,0 +1,78 @@
+package com.bank.rest.bench;
+
+import com.bank.rest.dto.BulkOperationDto;
+import com.bank.rest.dto.BulkProgressDto;
+import com.bank.rest.model.Account;
+import com.bank.rest.repo.AccountRepository;
+import com.bank.rest.service.AccountStatistics;
+import com.bank.rest.service.AuditTrail;
+import com.bank.rest.service.BulkOperations;
+import com.bank.rest.service.CreditCoalescer;
+import com.bank.rest.service.FxRateTable;
+import com.bank.rest.service.LockTable;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Interest on all accounts of the heap repository, one account per lock and commit the way single top ups apply it,
+ * against bulk operations of growing chunk sizes, with and without a journal.
+ * Pass the number of accounts as argument, 1 000 000 by default.
+ */
+public class BulkBenchmark {
+
+    private static final BigDecimal RATE = new BigDecimal("0.001");
+
+    public static void main(String[] args) throws Exception {
+        int count = args.length == 0 ? 1_000_000 : Integer.parseInt(args[0]);
+        AccountRepository repository = AccountRepository.getSingleInstance();
+        List<Account> accounts = new ArrayList<>(count);
+        for (long number = 1; number <= count; number++) {
+            accounts.add(new Account(number, "Owner " + number, BigDecimal.valueOf(number % 100_000, 2), false));
+        }
+        repository.saveAllNew(accounts);
+        LockTable locks = LockTable.fromSystemProperties();
+        CreditCoalescer credits = new CreditCoalescer(0, 0);
+        AccountStatistics statistics = new AccountStatistics(Clock.systemUTC());
+        AuditTrail audit = AuditTrail.fromSystemProperties();
+
+        long start = System.nanoTime();
+        for (long number = 1; number <= count; number++) {
+            try (LockTable.Held held = locks.lock(number)) {
+                Account account = repository.findForUpdate(number).get();
+                account.setBalance(account.getBalance().add(
+                        account.getBalance().multiply(RATE).setScale(2, RoundingMode.HALF_EVEN)));
+                repository.publish(account);
+            }
+        }
+        report("one account per commit", count, start);
+
+        long id = 0;
+        for (int chunkSize : new int[]{16, 256, 4096}) {
+            for (boolean journaled : new boolean[]{true, false}) {
+                Path directory = journaled ? Files.createTempDirectory("bulk") : null;
+                BulkOperations bulk = new BulkOperations(repository, locks, credits, statistics, audit,
+                        FxRateTable.fromSystemProperties(), directory, chunkSize, Runtime.getRuntime().availableProcessors());
+                start = System.nanoTime();
+                BulkProgressDto progress = bulk.start(new BulkOperationDto(++id, BulkOperationDto.Type.INTEREST,
+                        RATE));
+                while (progress.getState() == BulkProgressDto.State.RUNNING) {
+                    Thread.sleep(1);
+                    progress = bulk.progress(id);
+                }
+                report("chunks of " + chunkSize + (journaled ? ", journaled" : ""), count, start);
+            }
+        }
+    }
+
+    private static void report(String name, int count, long start) {
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("%-48s %,14.0f accounts/s%n", name, count / seconds);
+    }
+
+}
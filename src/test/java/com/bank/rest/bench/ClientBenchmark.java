@@ -0,0 +1,91 @@
+package com.bank.rest.bench;
+
+import com.bank.rest.client.BankClient;
+import com.bank.rest.dto.TopUpDto;
+import com.bank.rest.dto.TransferMoneyDto;
+import com.bank.rest.model.Account;
+import com.bank.rest.repo.AccountRepository;
+import com.bank.rest.server.IdempotencyFilter;
+import com.sun.jersey.api.client.Client;
+import com.sun.jersey.api.client.ClientResponse;
+import com.sun.jersey.api.client.WebResource;
+import com.sun.jersey.api.container.httpserver.HttpServerFactory;
+import com.sun.jersey.api.core.PackagesResourceConfig;
+import com.sun.jersey.api.core.ResourceConfig;
+import com.sun.jersey.api.json.JSONConfiguration;
+import com.sun.net.httpserver.HttpServer;
+
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.UriBuilder;
+import java.math.BigDecimal;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Top ups and transfers against an in process server from 64 threads waiting for their calls: a shared Jersey client
+ * sending one request at a time, like the ad hoc clients, against {@link BankClient} with growing connection counts,
+ * and transfers sent on their own against batched ones.
+ */
+public class ClientBenchmark {
+
+    private static final int ACCOUNTS = 10_000;
+    private static final int THREADS = 64;
+
+    public static void main(String[] args) throws Exception {
+        // as set by the application, see Application.NO_DELAY_PROPERTY
+        System.setProperty("sun.net.httpserver.nodelay", "true");
+        List<Account> accounts = new ArrayList<>(ACCOUNTS);
+        for (long number = 1; number <= ACCOUNTS; number++) {
+            accounts.add(new Account(number, "Owner " + number, new BigDecimal("1000000"), false));
+        }
+        AccountRepository.getSingleInstance().saveAllNew(accounts);
+
+        URI uri = UriBuilder.fromUri("http://localhost/").port(8087).build();
+        ResourceConfig resourceConfig = new PackagesResourceConfig("com.bank.rest");
+        resourceConfig.getFeatures().put(JSONConfiguration.FEATURE_POJO_MAPPING, Boolean.TRUE);
+        IdempotencyFilter.getSingleInstance().install(resourceConfig);
+        HttpServer server = HttpServerFactory.create(uri, resourceConfig);
+        server.setExecutor(Executors.newFixedThreadPool(64));
+        server.start();
+
+        WebResource jersey = Client.create().resource(uri).path("accounts");
+        Bench.run("jersey client, top up", THREADS, 5, i -> {
+            ClientResponse response = jersey.path("top_up").type(MediaType.APPLICATION_JSON_TYPE)
+                    .post(ClientResponse.class, "{\"accountNumber\":" + randomAccount() + ",\"amount\":1}");
+            response.close();
+        });
+        Bench.run("jersey client, transfer", THREADS, 5, i -> {
+            ClientResponse response = jersey.path("transfer").type(MediaType.APPLICATION_JSON_TYPE)
+                    .post(ClientResponse.class, "{\"accountNumberFrom\":" + randomAccount()
+                            + ",\"accountNumberTo\":" + randomAccount() + ",\"amount\":1}");
+            response.close();
+        });
+
+        for (int connections : new int[]{1, 4, 16}) {
+            try (BankClient client = new BankClient(uri, connections, 1, 3)) {
+                Bench.run("bank client, top up, " + connections + " connections", THREADS, 5,
+                        i -> client.topUp(new TopUpDto(randomAccount(), BigDecimal.ONE)).join());
+            }
+        }
+        for (int maxBatch : new int[]{1, 16}) {
+            for (int connections : new int[]{1, 4, 16}) {
+                try (BankClient client = new BankClient(uri, connections, maxBatch, 3)) {
+                    Bench.run("bank client, transfer, " + connections + " connections, batches of " + maxBatch,
+                            THREADS, 5, i -> client.transfer(new TransferMoneyDto(randomAccount(), randomAccount(),
+                                    BigDecimal.ONE)).join());
+                    System.out.printf("  %,d requests, %,d batches%n", client.getRequests(), client.getBatches());
+                }
+            }
+        }
+        server.stop(0);
+        System.exit(0);
+    }
+
+    private static long randomAccount() {
+        return 1 + ThreadLocalRandom.current().nextInt(ACCOUNTS);
+    }
+
+}
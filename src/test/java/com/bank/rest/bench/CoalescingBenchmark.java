@@ -0,0 +1,41 @@
+package com.bank.rest.bench;
+
+import com.bank.rest.service.AccountService;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Top up throughput with targets drawn from a Zipf distribution (s = 1.1) over 10 000 accounts.
+ * Run once as is and once with {@code -Dbank.coalescing.hotCreditsPerSecond=1000} to compare.
+ */
+public class CoalescingBenchmark {
+
+    private static final int ACCOUNTS = 10_000;
+    private static final double EXPONENT = 1.1;
+
+    public static void main(String[] args) throws Exception {
+        AccountService accountService = AccountService.getSingleInstance();
+        long[] numbers = new long[ACCOUNTS];
+        for (int i = 0; i < ACCOUNTS; i++) {
+            numbers[i] = accountService.createAccount("Zipf " + i).getNumber();
+        }
+        double[] cumulative = new double[ACCOUNTS];
+        double sum = 0;
+        for (int i = 0; i < ACCOUNTS; i++) {
+            sum += 1 / Math.pow(i + 1, EXPONENT);
+            cumulative[i] = sum;
+        }
+        double total = sum;
+
+        String mode = Integer.getInteger("bank.coalescing.hotCreditsPerSecond", 0) > 0 ? "coalesced" : "locked";
+        int threads = Math.max(4, Runtime.getRuntime().availableProcessors() * 2);
+        Bench.run("zipf top up, " + mode, threads, 5, i -> {
+            int index = Arrays.binarySearch(cumulative, ThreadLocalRandom.current().nextDouble(total));
+            accountService.topUp(numbers[index < 0 ? -index - 1 : index], BigDecimal.ONE);
+        });
+        System.out.println("balance of the hottest account " + accountService.getInfo(numbers[0]).getBalance());
+    }
+
+}
@@ -0,0 +1,71 @@
+package com.bank.rest.bench;
+
+import com.bank.rest.service.AccountService;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Transfer throughput and latency without subscribers and with subscribers that never poll, so every commit
+ * runs into full buffers, compared to subscribers that are drained by a polling thread.
+ */
+public class EventFanOutBenchmark {
+
+    private static final int ACCOUNTS = 1000;
+    private static final int SUBSCRIBERS = 100;
+
+    public static void main(String[] args) throws Exception {
+        AccountService accountService = AccountService.getSingleInstance();
+        long[] numbers = new long[ACCOUNTS];
+        for (int i = 0; i < ACCOUNTS; i++) {
+            numbers[i] = accountService.createAccount("Fan out " + i).getNumber();
+            accountService.topUp(numbers[i], BigDecimal.valueOf(1_000_000_000));
+        }
+        int threads = Math.max(4, Runtime.getRuntime().availableProcessors() * 2);
+
+        measure("no subscribers", accountService, numbers, threads);
+
+        List<Long> stalled = new ArrayList<>();
+        for (int i = 0; i < SUBSCRIBERS; i++) {
+            stalled.add(accountService.subscribeToBalances(Collections.emptyList()));
+        }
+        measure(SUBSCRIBERS + " stalled subscribers", accountService, numbers, threads);
+        stalled.forEach(accountService::unsubscribeFromBalances);
+
+        List<Long> polled = new ArrayList<>();
+        for (int i = 0; i < SUBSCRIBERS; i++) {
+            polled.add(accountService.subscribeToBalances(Collections.emptyList()));
+        }
+        Thread poller = new Thread(() -> {
+            try {
+                while (!Thread.currentThread().isInterrupted()) {
+                    for (long id : polled) {
+                        accountService.pollBalanceEvents(id, 4096, 0);
+                    }
+                }
+            } catch (InterruptedException e) {
+                // done
+            }
+        });
+        poller.setDaemon(true);
+        poller.start();
+        measure(SUBSCRIBERS + " polled subscribers", accountService, numbers, threads);
+        poller.interrupt();
+    }
+
+    private static void measure(String name, AccountService accountService, long[] numbers, int threads)
+            throws InterruptedException {
+        Bench.run("transfer, " + name, threads, 5, i -> {
+            int from = (i * 31) % ACCOUNTS;
+            accountService.transfer(numbers[from], numbers[(from + 1) % ACCOUNTS], BigDecimal.ONE);
+        });
+        int[] next = {0};
+        Bench.latency("transfer, " + name, 200_000, () -> {
+            int from = next[0]++ % ACCOUNTS;
+            accountService.transfer(numbers[from], numbers[(from + 1) % ACCOUNTS], BigDecimal.ONE);
+        });
+    }
+
+}
@@ -0,0 +1,59 @@
+package com.bank.rest.bench;
+
+import com.bank.rest.model.Account;
+import com.bank.rest.repo.AccountRepository;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Heap used per account, repository maps and committed versions included, at 1M and 10M accounts,
+ * measured once the versions of the idle accounts are reclaimed.
+ * Every owner has 3 accounts. Run with a heap of about 4 GB for 10M accounts, e.g. {@code -Xmx4g},
+ * and pass the account counts to measure as arguments to measure others.
+ */
+public class FootprintBenchmark {
+
+    private static final long FIRST_NUMBER = 6_000_000_000L;
+    private static final int BATCH = 100_000;
+
+    public static void main(String[] args) throws Exception {
+        long[] counts = args.length == 0 ? new long[]{1_000_000, 10_000_000} : new long[args.length];
+        for (int i = 0; i < args.length; i++) {
+            counts[i] = Long.parseLong(args[i]);
+        }
+        AccountRepository repository = AccountRepository.getSingleInstance();
+        Random random = new Random(42);
+        long baseline = usedHeap();
+        long created = 0;
+        for (long count : counts) {
+            while (created < count) {
+                List<Account> batch = new ArrayList<>(BATCH);
+                for (int i = 0; i < BATCH && created < count; i++, created++) {
+                    batch.add(new Account(FIRST_NUMBER + created, "Owner " + created / 3,
+                            BigDecimal.valueOf(random.nextInt(100_000_000), 2), false));
+                }
+                repository.saveAllNew(batch);
+            }
+            // versions of the new accounts are dropped once no snapshot reads them
+            while (repository.getVersionedCount() > 0) {
+                Thread.sleep(100);
+            }
+            long used = usedHeap() - baseline;
+            System.out.printf("%,12d accounts  %,15d bytes  %6.1f bytes per account%n", count, used,
+                    (double) used / count);
+        }
+    }
+
+    private static long usedHeap() throws InterruptedException {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+            Thread.sleep(100);
+        }
+        Runtime runtime = Runtime.getRuntime();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+}
@@ -0,0 +1,70 @@
+package com.bank.rest.bench;
+
+import com.bank.rest.dto.ImportResultDto;
+import com.bank.rest.service.AccountImporter;
+import com.bank.rest.service.AccountService;
+
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Imports three million generated NDJSON accounts streamed from memory.
+ * Run with {@code -Dbank.repository.expectedAccounts=3000000} to pre-size the repository.
+ */
+public class ImportBenchmark {
+
+    private static final int ACCOUNTS = 3_000_000;
+
+    public static void main(String[] args) throws Exception {
+        long start = System.nanoTime();
+        ImportResultDto result = AccountService.getSingleInstance()
+                .importAccounts(new GeneratedRows(ACCOUNTS), AccountImporter.Format.NDJSON);
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("%-48s %,14.0f accounts/min (%,d imported, %,d rejected in %.1f s)%n", "ndjson import",
+                result.getImported() / seconds * 60, result.getImported(), result.getRejected(), seconds);
+    }
+
+    /**
+     * Produces the rows on demand so the input does not have to fit in memory.
+     */
+    private static class GeneratedRows extends InputStream {
+
+        private final int rows;
+        private int row;
+        private byte[] current = new byte[0];
+        private int position;
+
+        private GeneratedRows(int rows) {
+            this.rows = rows;
+        }
+
+        @Override
+        public int read() {
+            byte[] single = new byte[1];
+            return read(single, 0, 1) == -1 ? -1 : single[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) {
+            int written = 0;
+            while (written < length) {
+                if (position == current.length) {
+                    if (row == rows) {
+                        return written == 0 ? -1 : written;
+                    }
+                    row++;
+                    current = ("{\"number\":" + (10_000_000_000L + row) + ",\"owner\":\"Legacy owner " + row
+                            + "\",\"balance\":" + row % 10_000 + "." + row % 100 + ",\"disabled\":" + (row % 50 == 0)
+                            + "}\n").getBytes(StandardCharsets.UTF_8);
+                    position = 0;
+                }
+                int count = Math.min(length - written, current.length - position);
+                System.arraycopy(current, position, buffer, offset + written, count);
+                position += count;
+                written += count;
+            }
+            return written;
+        }
+    }
+
+}
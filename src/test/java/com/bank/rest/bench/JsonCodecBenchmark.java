@@ -0,0 +1,62 @@
+package com.bank.rest.bench;
+
+import com.bank.rest.dto.TransferMoneyDto;
+import com.bank.rest.json.JsonCodecProvider;
+import com.bank.rest.model.Account;
+import org.codehaus.jackson.map.ObjectMapper;
+
+import javax.ws.rs.core.MediaType;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+
+/**
+ * Per request entity mapping cost: writing an {@link Account} response and reading a
+ * {@link TransferMoneyDto} request body with Jackson compared to the hand written codecs.
+ */
+public class JsonCodecBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        ObjectMapper objectMapper = new ObjectMapper();
+        JsonCodecProvider provider = new JsonCodecProvider();
+        Account account = new Account(1234567L, "Harry Potter", new BigDecimal("1050.75"), false);
+        byte[] transfer = objectMapper.writeValueAsBytes(new TransferMoneyDto(1234567L, 7654321L, new BigDecimal("10.5")));
+        int threads = Runtime.getRuntime().availableProcessors();
+
+        Bench.run("jackson write account", threads, 5, i -> io(() -> {
+            ByteArrayOutputStream out = new ByteArrayOutputStream(128);
+            objectMapper.writeValue(out, account);
+            return out;
+        }));
+        Bench.run("codec write account", threads, 5, i -> io(() -> {
+            ByteArrayOutputStream out = new ByteArrayOutputStream(128);
+            provider.writeTo(account, Account.class, Account.class, null, MediaType.APPLICATION_JSON_TYPE, null, out);
+            return out;
+        }));
+        Bench.run("jackson read transfer", threads, 5, i -> io(() ->
+                objectMapper.readValue(new ByteArrayInputStream(transfer), TransferMoneyDto.class)));
+        Bench.run("codec read transfer", threads, 5, i -> io(() ->
+                provider.readFrom(type(TransferMoneyDto.class), TransferMoneyDto.class, null, MediaType.APPLICATION_JSON_TYPE, null,
+                        new ByteArrayInputStream(transfer))));
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Class<Object> type(Class<?> type) {
+        return (Class<Object>) type;
+    }
+
+    private static Object io(IoCall call) {
+        try {
+            return call.run();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private interface IoCall {
+        Object run() throws IOException;
+    }
+
+}
@@ -0,0 +1,47 @@
+package com.bank.rest.bench;
+
+import com.bank.rest.dto.LockStatsDto;
+import com.bank.rest.service.LockTable;
+
+/**
+ * Lock and release of the 2 accounts of a transfer over 1 million accounts with a varying number of stripes,
+ * compared to one monitor per account as kept inside account instances before.
+ */
+public class LockTableBenchmark {
+
+    private static final int ACCOUNTS = 1_000_000;
+
+    public static void main(String[] args) throws Exception {
+        int threads = Math.max(4, Runtime.getRuntime().availableProcessors() * 2);
+
+        Object[] monitors = new Object[ACCOUNTS];
+        for (int i = 0; i < ACCOUNTS; i++) {
+            monitors[i] = new Object();
+        }
+        Object[] written = new Object[1];
+        Bench.run("monitor per account", threads, 5, i -> {
+            int from = (int) ((i * 7919L) % ACCOUNTS);
+            int to = (int) ((i * 104_729L) % ACCOUNTS);
+            Object first = monitors[Math.min(from, to)];
+            Object second = monitors[Math.max(from, to)];
+            synchronized (first) {
+                synchronized (second) {
+                    written[0] = first;
+                }
+            }
+        });
+
+        for (int stripes : new int[]{16, 256, 4096}) {
+            LockTable locks = new LockTable(stripes, 5000);
+            Bench.run(stripes + " stripes", threads, 5, i -> {
+                try (LockTable.Held held = locks.lock((i * 7919L) % ACCOUNTS, (i * 104_729L) % ACCOUNTS)) {
+                    written[0] = held;
+                }
+            });
+            LockStatsDto stats = locks.getStats();
+            System.out.printf("%-40s contended %.3f%%, average wait %d us%n", stripes + " stripes",
+                    100.0 * stats.getContended() / Math.max(1, stats.getAcquisitions()), stats.getAverageWaitMicros());
+        }
+    }
+
+}
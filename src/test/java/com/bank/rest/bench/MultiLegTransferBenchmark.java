@@ -0,0 +1,70 @@
+package com.bank.rest.bench;
+
+import com.bank.rest.dto.TransferMoneyDto;
+import com.bank.rest.model.Account;
+import com.bank.rest.repo.AccountRepository;
+import com.bank.rest.service.AccountService;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Marketplace payments from 1000 buyers to 100 sellers, one platform and one tax account:
+ * three sequential transfers compared to one atomic three leg transfer.
+ */
+public class MultiLegTransferBenchmark {
+
+    private static final int BUYERS = 1000;
+    private static final int SELLERS = 100;
+    private static final long FIRST_NUMBER = 8_000_000_000L;
+    private static final long PLATFORM = FIRST_NUMBER + BUYERS + SELLERS;
+    private static final long TAX = PLATFORM + 1;
+    private static final BigDecimal PRICE = new BigDecimal("0.80");
+    private static final BigDecimal FEE = new BigDecimal("0.15");
+    private static final BigDecimal VAT = new BigDecimal("0.05");
+
+    public static void main(String[] args) throws Exception {
+        List<Account> accounts = new ArrayList<>();
+        for (long number = FIRST_NUMBER; number <= TAX; number++) {
+            BigDecimal balance = number < FIRST_NUMBER + BUYERS ? BigDecimal.valueOf(1_000_000_000) : BigDecimal.ZERO;
+            accounts.add(new Account(number, "Market " + number, balance, false));
+        }
+        AccountRepository.getSingleInstance().saveAllNew(accounts);
+        AccountService accountService = AccountService.getSingleInstance();
+        int threads = Math.max(4, Runtime.getRuntime().availableProcessors() * 2);
+
+        Bench.run("payment, 3 transfers", threads, 5, i -> {
+            long buyer = FIRST_NUMBER + (i * 31) % BUYERS;
+            accountService.transfer(buyer, FIRST_NUMBER + BUYERS + i % SELLERS, PRICE);
+            accountService.transfer(buyer, PLATFORM, FEE);
+            accountService.transfer(buyer, TAX, VAT);
+        });
+        Bench.run("payment, 3 leg transfer", threads, 5, i -> {
+            long buyer = FIRST_NUMBER + (i * 31) % BUYERS;
+            accountService.transfer(Arrays.asList(
+                    new TransferMoneyDto(buyer, FIRST_NUMBER + BUYERS + i % SELLERS, PRICE),
+                    new TransferMoneyDto(buyer, PLATFORM, FEE),
+                    new TransferMoneyDto(buyer, TAX, VAT)));
+        });
+
+        int[] next = {0};
+        Bench.latency("payment, 3 transfers", 200_000, () -> {
+            int i = next[0]++;
+            long buyer = FIRST_NUMBER + i % BUYERS;
+            accountService.transfer(buyer, FIRST_NUMBER + BUYERS + i % SELLERS, PRICE);
+            accountService.transfer(buyer, PLATFORM, FEE);
+            accountService.transfer(buyer, TAX, VAT);
+        });
+        Bench.latency("payment, 3 leg transfer", 200_000, () -> {
+            int i = next[0]++;
+            long buyer = FIRST_NUMBER + i % BUYERS;
+            accountService.transfer(Arrays.asList(
+                    new TransferMoneyDto(buyer, FIRST_NUMBER + BUYERS + i % SELLERS, PRICE),
+                    new TransferMoneyDto(buyer, PLATFORM, FEE),
+                    new TransferMoneyDto(buyer, TAX, VAT)));
+        });
+    }
+
+}
@@ -0,0 +1,65 @@
+package com.bank.rest.bench;
+
+import com.bank.rest.dto.ReconciliationDto;
+import com.bank.rest.model.Account;
+import com.bank.rest.model.AuditRecord;
+import com.bank.rest.repo.AccountRepository;
+import com.bank.rest.service.AuditTrail;
+import com.bank.rest.service.CreditCoalescer;
+import com.bank.rest.service.LockTable;
+import com.bank.rest.service.Reconciler;
+
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.time.Clock;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Reconciliation of the heap repository against its audit trail: the first run verifies all partitions, later runs
+ * only those changed by the top ups made since, 100 and 10000 of them. Pass the number of accounts as argument,
+ * 1 000 000 by default.
+ */
+public class ReconcileBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int count = args.length == 0 ? 1_000_000 : Integer.parseInt(args[0]);
+        AccountRepository repository = AccountRepository.getSingleInstance();
+        LockTable locks = LockTable.fromSystemProperties();
+        AuditTrail audit = new AuditTrail(Files.createTempDirectory("audit"), 65536, AuditTrail.OnFull.BLOCK,
+                64L << 20, false, Clock.systemUTC());
+        Reconciler reconciler = Reconciler.fromSystemProperties(repository, locks, new CreditCoalescer(0, 0), audit);
+        repository.addCommitListener(reconciler);
+
+        List<Account> accounts = new ArrayList<>(count);
+        for (long number = 1; number <= count; number++) {
+            accounts.add(new Account(number, "Owner " + number, BigDecimal.valueOf(number % 100_000, 2), false));
+            audit.record(AuditRecord.Type.IMPORT, number, 0, BigDecimal.valueOf(number % 100_000, 2));
+        }
+        repository.saveAllNew(accounts);
+
+        report("full", reconciler.reconcile());
+        report("unchanged", reconciler.reconcile());
+        for (int changes : new int[]{100, 10_000}) {
+            for (int i = 0; i < changes; i++) {
+                long number = 1 + ThreadLocalRandom.current().nextInt(count);
+                try (LockTable.Held held = locks.lock(number)) {
+                    Account account = repository.findForUpdate(number).get();
+                    account.topUp(BigDecimal.ONE);
+                    repository.publish(account);
+                    audit.record(AuditRecord.Type.TOP_UP, number, 0, BigDecimal.ONE);
+                }
+            }
+            report(changes + " top ups", reconciler.reconcile());
+        }
+        audit.close();
+    }
+
+    private static void report(String name, ReconciliationDto report) {
+        System.out.printf("%-48s %,8d ms, %,5d of %,d partitions, %,10d accounts verified, %,d discrepancies%n",
+                name, report.getDurationMillis(), report.getPartitionsVerified(), report.getPartitions(),
+                report.getAccountsVerified(), report.getDiscrepancyCount());
+    }
+
+}
@@ -0,0 +1,52 @@
+package com.bank.rest.bench;
+
+import com.bank.rest.exception.ApiException;
+import com.bank.rest.exception.ApiWebException;
+import com.bank.rest.model.Account;
+import com.bank.rest.service.AccountService;
+
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import java.math.BigDecimal;
+
+/**
+ * Throughput of rejected transfers (insufficient funds) from the service call to the built web error.
+ * The legacy variant reproduces the previous error path on top of the same service call:
+ * an eagerly concatenated message in a stack-capturing exception, wrapped into a stack-capturing 500 response.
+ */
+public class RejectionBenchmark {
+
+    public static void main(String[] args) throws InterruptedException {
+        AccountService accountService = AccountService.getSingleInstance();
+        Account from = accountService.createAccount("Poor");
+        Account to = accountService.createAccount("Rich");
+        BigDecimal amount = BigDecimal.TEN;
+        int threads = Runtime.getRuntime().availableProcessors();
+
+        Bench.run("legacy rejection (stack trace, 500 text)", threads, 5, i -> {
+            try {
+                accountService.transfer(from.getNumber(), to.getNumber(), amount);
+            } catch (ApiException ex) {
+                RuntimeException legacy = new RuntimeException("Not sufficient funds for write off on account " + from.getNumber());
+                consume(new WebApplicationException(Response.status(Response.Status.INTERNAL_SERVER_ERROR)
+                        .entity(legacy.getMessage()).type(MediaType.TEXT_PLAIN).build()));
+            }
+        });
+
+        Bench.run("typed rejection (stackless, 409 json)", threads, 5, i -> {
+            try {
+                accountService.transfer(from.getNumber(), to.getNumber(), amount);
+            } catch (ApiException ex) {
+                consume(new ApiWebException(ex));
+            }
+        });
+    }
+
+    private static volatile Object sink;
+
+    private static void consume(Object value) {
+        sink = value;
+    }
+
+}
@@ -0,0 +1,73 @@
+package com.bank.rest.bench;
+
+import com.bank.rest.json.AccountCodec;
+import com.bank.rest.json.JsonWriter;
+import com.bank.rest.model.Account;
+import com.bank.rest.repo.AccountRepository;
+import com.bank.rest.service.AccountService;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Account reads drawn from a Zipf distribution (s = 1.1) over 100 000 accounts with one top up per 100 reads,
+ * serialized on every read compared to served from the cache of serialized accounts ({@code bank.cache.capacity}).
+ */
+public class ResponseCacheBenchmark {
+
+    private static final int ACCOUNTS = 100_000;
+    private static final double EXPONENT = 1.1;
+
+    public static void main(String[] args) throws Exception {
+        AccountService accountService = AccountService.getSingleInstance();
+        long[] numbers = new long[ACCOUNTS];
+        List<Account> accounts = new ArrayList<>(ACCOUNTS);
+        for (int i = 0; i < ACCOUNTS; i++) {
+            numbers[i] = 7_000_000_000L + i;
+            accounts.add(new Account(numbers[i], "Zipf " + i, BigDecimal.ZERO, false));
+        }
+        AccountRepository.getSingleInstance().saveAllNew(accounts);
+        double[] cumulative = new double[ACCOUNTS];
+        double sum = 0;
+        for (int i = 0; i < ACCOUNTS; i++) {
+            sum += 1 / Math.pow(i + 1, EXPONENT);
+            cumulative[i] = sum;
+        }
+        double total = sum;
+        int threads = Math.max(4, Runtime.getRuntime().availableProcessors() * 2);
+
+        Bench.run("zipf read, serialized", threads, 5, i -> {
+            long number = numbers[index(cumulative, total)];
+            if (i % 100 == 0) {
+                accountService.topUp(number, BigDecimal.ONE);
+            }
+            JsonWriter writer = JsonWriter.acquire(null);
+            AccountCodec.INSTANCE.write(accountService.getInfo(number), writer);
+            writer.toByteArray();
+        });
+        Bench.run("zipf read, cached", threads, 5, i -> {
+            long number = numbers[index(cumulative, total)];
+            if (i % 100 == 0) {
+                accountService.topUp(number, BigDecimal.ONE);
+            }
+            accountService.getInfoJson(number);
+        });
+        Bench.latency("zipf read, serialized", 1_000_000, () -> {
+            JsonWriter writer = JsonWriter.acquire(null);
+            AccountCodec.INSTANCE.write(accountService.getInfo(numbers[index(cumulative, total)]), writer);
+            writer.toByteArray();
+        });
+        Bench.latency("zipf read, cached", 1_000_000,
+                () -> accountService.getInfoJson(numbers[index(cumulative, total)]));
+        System.out.printf("hit rate %.3f%n", accountService.getCacheStats().getHitRate());
+    }
+
+    private static int index(double[] cumulative, double total) {
+        int index = Arrays.binarySearch(cumulative, ThreadLocalRandom.current().nextDouble(total));
+        return index < 0 ? -index - 1 : index;
+    }
+
+}
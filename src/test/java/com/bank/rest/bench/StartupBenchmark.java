@@ -0,0 +1,70 @@
+package com.bank.rest.bench;
+
+import com.bank.rest.Application;
+
+import java.io.File;
+import java.net.Socket;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time from launching a JVM running {@link Application} until its listener accepts a connection,
+ * with the default boot and with {@code -Dbank.fastBoot=true}. The default boot is given {@code bank.host}
+ * so that both connect to localhost, which leaves the host name lookup out of its time.
+ */
+public class StartupBenchmark {
+
+    private static final int PORT = 18086;
+    private static final int RUNS = 5;
+
+    public static void main(String[] args) throws Exception {
+        for (String mode : Arrays.asList("default", "fast boot")) {
+            long[] millis = new long[RUNS];
+            for (int run = 0; run < RUNS; run++) {
+                millis[run] = timeToAccept("fast boot".equals(mode));
+            }
+            Arrays.sort(millis);
+            System.out.printf("%-48s median %6d ms  min %6d ms%n", "startup, " + mode, millis[RUNS / 2], millis[0]);
+        }
+    }
+
+    private static long timeToAccept(boolean fastBoot) throws Exception {
+        Path readyFile = Files.createTempFile("bank-ready", ".txt");
+        Files.delete(readyFile);
+        List<String> command = new ArrayList<>(Arrays.asList(
+                System.getProperty("java.home") + File.separator + "bin" + File.separator + "java",
+                "-cp", System.getProperty("java.class.path"),
+                "-Dbank.port=" + PORT, "-Dbank.readyFile=" + readyFile));
+        if (fastBoot) {
+            command.add("-Dbank.fastBoot=true");
+        } else {
+            command.add("-Dbank.host=localhost");
+        }
+        command.add(Application.class.getName());
+
+        long start = System.nanoTime();
+        Process process = new ProcessBuilder(command).redirectErrorStream(true)
+                .redirectOutput(ProcessBuilder.Redirect.INHERIT).start();
+        try {
+            while (true) {
+                try (Socket ignored = new Socket("localhost", PORT)) {
+                    return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+                } catch (java.io.IOException e) {
+                    if (!process.isAlive()) {
+                        throw new IllegalStateException("server exited with " + process.exitValue());
+                    }
+                    Thread.sleep(1);
+                }
+            }
+        } finally {
+            process.destroy();
+            process.waitFor();
+            Files.deleteIfExists(readyFile);
+        }
+    }
+
+}
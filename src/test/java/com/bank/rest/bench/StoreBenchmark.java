@@ -0,0 +1,105 @@
+package com.bank.rest.bench;
+
+import com.bank.rest.dto.StoreStatsDto;
+import com.bank.rest.model.Account;
+import com.bank.rest.repo.AccountRepository;
+import com.bank.rest.service.AccountService;
+
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.LongSupplier;
+
+/**
+ * Accounts kept in a store file of about 10 times the heap: 20M accounts of 128 bytes each with {@code -Xmx256m}
+ * and {@code bank.store.cachedAccounts} (100 000) of them on heap. Reports the heap used after loading and hit rate
+ * and latency of reads and top ups drawn from a Zipf distribution (s = 1.1), of uniformly drawn reads
+ * and of Zipf reads right after the uniform ones, which shows how well the working set survived them.
+ * Pass the number of accounts and the directory of the store as arguments to measure others. Loading writes records
+ * in random order of their slots, on a disk with few random writes per second prefer a directory on tmpfs such as
+ * {@code /dev/shm}, which also measures a store that fits into the page cache.
+ */
+public class StoreBenchmark {
+
+    private static final long FIRST_NUMBER = 8_000_000_000L;
+    private static final double EXPONENT = 1.1;
+    private static final int BATCH = 100_000;
+    private static final int OPERATIONS = 1_000_000;
+
+    public static void main(String[] args) throws Exception {
+        long count = args.length == 0 ? 20_000_000 : Long.parseLong(args[0]);
+        Path directory = args.length < 2 ? Files.createTempDirectory("store")
+                : Files.createTempDirectory(Paths.get(args[1]), "store");
+        Path file = directory.resolve("accounts.store");
+        System.setProperty("bank.store.path", file.toString());
+        System.setProperty("bank.store.capacity", Long.toString(count));
+        AccountRepository repository = AccountRepository.getSingleInstance();
+        AccountService accountService = AccountService.getSingleInstance();
+
+        long start = System.nanoTime();
+        for (long created = 0; created < count; ) {
+            List<Account> batch = new ArrayList<>(BATCH);
+            for (int i = 0; i < BATCH && created < count; i++, created++) {
+                batch.add(new Account(FIRST_NUMBER + created, "Owner " + created / 3,
+                        BigDecimal.valueOf(created % 100_000, 2), false));
+            }
+            repository.saveAllNew(batch);
+        }
+        long seconds = (System.nanoTime() - start) / 1_000_000_000;
+        System.out.printf("stored %,d accounts in %,d s, file %,d bytes, heap %,d bytes max, %,d bytes used%n",
+                count, seconds, count * 128, Runtime.getRuntime().maxMemory(), usedHeap());
+
+        LongSupplier zipf = () -> number(zipfRank(count), count);
+        LongSupplier uniform = () -> number(ThreadLocalRandom.current().nextLong(count), count);
+        measure("zipf read", repository, () -> accountService.getInfo(zipf.getAsLong()));
+        measure("zipf top up", repository, () -> accountService.topUp(zipf.getAsLong(), BigDecimal.ONE));
+        measure("uniform read", repository, () -> accountService.getInfo(uniform.getAsLong()));
+        measure("zipf read after uniform reads", repository, () -> accountService.getInfo(zipf.getAsLong()));
+        System.out.printf("heap used %,d bytes%n", usedHeap());
+
+        repository.closeStore();
+        Files.delete(file);
+        Files.delete(directory.resolve("accounts.store.overflow"));
+        Files.delete(directory);
+    }
+
+    private static void measure(String name, AccountRepository repository, Runnable operation) {
+        StoreStatsDto before = repository.getStoreStats();
+        Bench.latency(name, OPERATIONS, operation);
+        StoreStatsDto after = repository.getStoreStats();
+        long hits = after.getHits() - before.getHits();
+        long lookups = hits + after.getMisses() - before.getMisses();
+        System.out.printf("%-48s hit rate %.3f, %,d evictions, %,d rejected admissions%n", "", (double) hits / lookups,
+                after.getEvictions() - before.getEvictions(), after.getRejections() - before.getRejections());
+    }
+
+    /**
+     * @return rank from 0 drawn by inverting the continuous approximation of the Zipf distribution.
+     */
+    private static long zipfRank(long count) {
+        double u = ThreadLocalRandom.current().nextDouble();
+        double rank = Math.pow((Math.pow(count, 1 - EXPONENT) - 1) * u + 1, 1 / (1 - EXPONENT));
+        return Math.min(count - 1, (long) rank - 1);
+    }
+
+    /**
+     * @return account number of a rank, hot accounts are spread over the whole store.
+     */
+    private static long number(long rank, long count) {
+        return FIRST_NUMBER + Math.floorMod(rank * 1_000_003L, count);
+    }
+
+    private static long usedHeap() throws InterruptedException {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+            Thread.sleep(100);
+        }
+        Runtime runtime = Runtime.getRuntime();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+}
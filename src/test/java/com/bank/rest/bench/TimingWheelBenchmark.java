@@ -0,0 +1,32 @@
+package com.bank.rest.bench;
+
+import com.bank.rest.service.TimingWheel;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Cost of scheduling two million entries spread over one day of 100ms ticks and of advancing the wheel
+ * tick by tick through them.
+ */
+public class TimingWheelBenchmark {
+
+    private static final int ENTRIES = 2_000_000;
+    private static final int TICKS_PER_DAY = 864_000;
+
+    public static void main(String[] args) {
+        TimingWheel<Integer> wheel = new TimingWheel<>(0);
+        long start = System.nanoTime();
+        for (int i = 0; i < ENTRIES; i++) {
+            wheel.schedule(i, ThreadLocalRandom.current().nextInt(TICKS_PER_DAY));
+        }
+        long elapsed = System.nanoTime() - start;
+        System.out.printf("%-48s %,14.0f ops/s%n", "schedule", ENTRIES / (elapsed / 1e9));
+
+        int[] fired = new int[1];
+        long[] tick = new long[1];
+        Bench.latency("advance one tick, " + ENTRIES + " pending", TICKS_PER_DAY - 1,
+                () -> wheel.advance(++tick[0], value -> fired[0]++));
+        System.out.printf("fired %,d, still pending %,d%n", fired[0], wheel.size());
+    }
+
+}
@@ -0,0 +1,82 @@
+package com.bank.rest.bench;
+
+import com.bank.rest.model.Account;
+import com.bank.rest.service.AccountService;
+import com.bank.rest.wire.BinaryProtocolClient;
+import com.bank.rest.wire.BinaryProtocolServer;
+import com.sun.jersey.api.client.Client;
+import com.sun.jersey.api.client.ClientResponse;
+import com.sun.jersey.api.client.WebResource;
+import com.sun.jersey.api.container.httpserver.HttpServerFactory;
+import com.sun.jersey.api.core.PackagesResourceConfig;
+import com.sun.jersey.api.core.ResourceConfig;
+import com.sun.jersey.api.json.JSONConfiguration;
+import com.sun.net.httpserver.HttpServer;
+
+import javax.ws.rs.core.MediaType;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.net.InetSocketAddress;
+
+/**
+ * Top up latency and throughput over the JSON REST API compared to the binary protocol,
+ * including pipelined batches of 64 binary requests on one connection.
+ */
+public class WireProtocolBenchmark {
+
+    private static final int REST_PORT = 18085;
+    private static final int PIPELINE_DEPTH = 64;
+
+    public static void main(String[] args) throws Exception {
+        ResourceConfig resourceConfig = new PackagesResourceConfig("com.bank.rest");
+        resourceConfig.getFeatures().put(JSONConfiguration.FEATURE_POJO_MAPPING, Boolean.TRUE);
+        HttpServer httpServer = HttpServerFactory.create("http://localhost:" + REST_PORT + "/", resourceConfig);
+        httpServer.start();
+        BinaryProtocolServer binaryServer = new BinaryProtocolServer(AccountService.getSingleInstance(),
+                new InetSocketAddress("localhost", 0));
+        binaryServer.start();
+
+        try (BinaryProtocolClient binary = new BinaryProtocolClient("localhost", binaryServer.getPort())) {
+            Account account = AccountService.getSingleInstance().createAccount("Bench");
+            long number = account.getNumber();
+            WebResource rest = Client.create().resource("http://localhost:" + REST_PORT + "/accounts/top_up");
+            String body = "{\"accountNumber\":" + number + ",\"amount\":1}";
+
+            Bench.latency("json top up", 2_000, () -> rest.type(MediaType.APPLICATION_JSON_TYPE)
+                    .post(ClientResponse.class, body).getEntity(String.class));
+            Bench.latency("binary top up", 2_000, () -> call(() -> binary.topUp(number, BigDecimal.ONE)));
+
+            Bench.run("json top up", 1, 5, i -> rest.type(MediaType.APPLICATION_JSON_TYPE)
+                    .post(ClientResponse.class, body).getEntity(String.class));
+            Bench.run("binary top up", 1, 5, i -> call(() -> binary.topUp(number, BigDecimal.ONE)));
+            double batches = Bench.run("binary top up, pipelined batches of " + PIPELINE_DEPTH, 1, 5, i -> call(() -> {
+                for (int r = 0; r < PIPELINE_DEPTH; r++) {
+                    binary.sendTopUp(number, BigDecimal.ONE);
+                }
+                binary.flush();
+                for (int r = 0; r < PIPELINE_DEPTH; r++) {
+                    binary.receive();
+                }
+                return null;
+            }));
+            System.out.printf("%-48s %,14.0f ops/s%n", "binary top up, pipelined requests", batches * PIPELINE_DEPTH);
+        } finally {
+            binaryServer.close();
+            httpServer.stop(0);
+        }
+    }
+
+    private static void call(IoCall call) {
+        try {
+            call.run();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private interface IoCall {
+        Object run() throws IOException;
+    }
+
+}
@@ -0,0 +1,73 @@
+package com.bank.rest.stress;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Concurrent history of operations on one account balance: when each operation was invoked and when it returned,
+ * its argument and what it returned. Rejected operations are left out, they must not have had an effect.
+ */
+public final class History {
+
+    public enum Kind {
+        /** Returns the balance. */
+        READ,
+        /** Adds the argument and returns the new balance. */
+        TOP_UP,
+        /** Sets the balance to the argument. */
+        UPDATE
+    }
+
+    private final List<Operation> operations = Collections.synchronizedList(new ArrayList<>());
+
+    public Operation invoke(Kind kind, long argument) {
+        return new Operation(kind, argument, System.nanoTime());
+    }
+
+    public void returned(Operation operation, long result) {
+        operation.returned = System.nanoTime();
+        operation.result = result;
+        operations.add(operation);
+    }
+
+    public List<Operation> getOperations() {
+        synchronized (operations) {
+            return new ArrayList<>(operations);
+        }
+    }
+
+    /**
+     * One completed operation.
+     */
+    public static final class Operation {
+
+        final Kind kind;
+        final long argument;
+        final long invoked;
+        long returned;
+        long result;
+
+        Operation(Kind kind, long argument, long invoked) {
+            this.kind = kind;
+            this.argument = argument;
+            this.invoked = invoked;
+        }
+
+        /**
+         * Creates a completed operation with given times, for checking hand written histories.
+         */
+        public static Operation of(Kind kind, long argument, long invoked, long returned, long result) {
+            Operation operation = new Operation(kind, argument, invoked);
+            operation.returned = returned;
+            operation.result = result;
+            return operation;
+        }
+
+        @Override
+        public String toString() {
+            return kind + "(" + argument + ") = " + result + " [" + invoked + ", " + returned + "]";
+        }
+    }
+
+}
@@ -0,0 +1,106 @@
+package com.bank.rest.stress;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Decides whether a history of balance operations is linearizable: whether there is one order of all operations,
+ * consistent with real time (an operation that returned before another was invoked comes first), in which every
+ * operation returns what a single sequential balance would return.
+ * Depth first search over the operations that may come next (Wing and Gong) with the already explored
+ * combinations of linearized operations and balance remembered (Lowe), so histories of a few hundred
+ * operations check quickly.
+ */
+public final class LinearizabilityChecker {
+
+    private final List<History.Operation> operations;
+    private final Set<Configuration> explored = new HashSet<>();
+
+    private LinearizabilityChecker(List<History.Operation> operations) {
+        this.operations = new ArrayList<>(operations);
+        this.operations.sort(Comparator.comparingLong(operation -> operation.invoked));
+    }
+
+    /**
+     * @param initialBalance balance before the first operation.
+     */
+    public static boolean isLinearizable(List<History.Operation> operations, long initialBalance) {
+        return new LinearizabilityChecker(operations).search(new BitSet(operations.size()), initialBalance);
+    }
+
+    private boolean search(BitSet linearized, long balance) {
+        int next = linearized.nextClearBit(0);
+        if (next >= operations.size()) {
+            return true;
+        }
+        if (!explored.add(new Configuration((BitSet) linearized.clone(), balance))) {
+            return false;
+        }
+
+        // an operation can come next if no pending operation returned before it was invoked
+        long firstReturn = Long.MAX_VALUE;
+        for (int i = next; i < operations.size(); i = linearized.nextClearBit(i + 1)) {
+            firstReturn = Math.min(firstReturn, operations.get(i).returned);
+        }
+        for (int i = next; i < operations.size() && operations.get(i).invoked <= firstReturn;
+             i = linearized.nextClearBit(i + 1)) {
+            History.Operation operation = operations.get(i);
+            Long after = apply(operation, balance);
+            if (after != null) {
+                linearized.set(i);
+                if (search(linearized, after)) {
+                    return true;
+                }
+                linearized.clear(i);
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return balance after the operation, null if it could not have returned its result at this balance.
+     */
+    private static Long apply(History.Operation operation, long balance) {
+        switch (operation.kind) {
+            case READ:
+                return operation.result == balance ? balance : null;
+            case TOP_UP:
+                return operation.result == balance + operation.argument ? operation.result : null;
+            case UPDATE:
+                return operation.argument;
+            default:
+                throw new IllegalArgumentException(operation.kind.name());
+        }
+    }
+
+    private static final class Configuration {
+
+        private final BitSet linearized;
+        private final long balance;
+
+        private Configuration(BitSet linearized, long balance) {
+            this.linearized = linearized;
+            this.balance = balance;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (!(other instanceof Configuration)) {
+                return false;
+            }
+            Configuration configuration = (Configuration) other;
+            return balance == configuration.balance && linearized.equals(configuration.linearized);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(linearized, balance);
+        }
+    }
+
+}
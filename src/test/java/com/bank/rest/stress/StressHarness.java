@@ -0,0 +1,367 @@
+package com.bank.rest.stress;
+
+import com.bank.rest.dto.AccountsSnapshotDto;
+import com.bank.rest.dto.TransferMoneyDto;
+import com.bank.rest.exception.ApiException;
+import com.bank.rest.exception.ErrorCode;
+import com.bank.rest.json.AccountCodec;
+import com.bank.rest.json.JsonWriter;
+import com.bank.rest.model.Account;
+import com.bank.rest.repo.AccountRepository;
+import com.bank.rest.service.AccountService;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.BrokenBarrierException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Runs random mixed operations of {@link AccountService} on many threads and checks invariants while they run
+ * and whenever all threads pause between rounds. Meant as a regression gate for concurrency changes:
+ * {@code main} runs it for longer, configured by {@code bank.stress.*} system properties.
+ * <p>
+ * A closed group of accounts only sees transfers, multi-leg transfers and reads, so its total in every snapshot
+ * is the total it started with. An open group sees top ups, transfers, updates, disables and reads.
+ * Checked continuously: no negative balance in snapshots and no account number twice.
+ * Checked between rounds: live accounts equal their committed state and their cached JSON,
+ * all money changes are counted in the statistics and created accounts have distinct numbers.
+ * A separate run records a history of top ups, reads and updates of one account and checks it is linearizable.
+ */
+public final class StressHarness {
+
+    private static final AtomicLong NEXT_BASE = new AtomicLong(9_500_000_000L);
+    private static final int MAX_VIOLATIONS = 100;
+    private static final long INITIAL_BALANCE = 1000;
+    private static final Set<ErrorCode> EXPECTED_REJECTIONS = new HashSet<>(Arrays.asList(ErrorCode.INSUFFICIENT_FUNDS,
+            ErrorCode.WRITE_OFF_DISABLED, ErrorCode.TOP_UP_DISABLED, ErrorCode.ALREADY_DISABLED,
+            ErrorCode.ACCOUNT_OVERLOADED, ErrorCode.RATE_LIMITED, ErrorCode.SERVER_OVERLOADED));
+
+    private final AccountService accountService = AccountService.getSingleInstance();
+    private final int threads;
+    private final long millis;
+    private final long seed;
+    private final int groupSize;
+
+    private final long[] closed;
+    private final long[] open;
+    private final Set<Long> created = ConcurrentHashMap.newKeySet();
+    private final List<String> violations = Collections.synchronizedList(new ArrayList<>());
+    private final LongAdder operations = new LongAdder();
+    private final LongAdder rejections = new LongAdder();
+    private volatile boolean roundOver;
+    private volatile boolean stopped;
+
+    /**
+     * @param groupSize number of accounts in each of the closed and the open group.
+     */
+    public StressHarness(int threads, long millis, long seed, int groupSize) {
+        this.threads = threads;
+        this.millis = millis;
+        this.seed = seed;
+        this.groupSize = groupSize;
+        long base = NEXT_BASE.getAndAdd(2L * groupSize + 1);
+        closed = new long[groupSize];
+        open = new long[groupSize];
+        for (int i = 0; i < groupSize; i++) {
+            closed[i] = base + i;
+            open[i] = base + groupSize + i;
+        }
+    }
+
+    /**
+     * Creates a harness configured by {@code bank.stress.threads}, {@code bank.stress.millis},
+     * {@code bank.stress.seed} and {@code bank.stress.accounts}.
+     */
+    public static StressHarness fromSystemProperties(long defaultMillis) {
+        return new StressHarness(Integer.getInteger("bank.stress.threads", 8),
+                Long.getLong("bank.stress.millis", defaultMillis),
+                Long.getLong("bank.stress.seed", System.nanoTime()),
+                Integer.getInteger("bank.stress.accounts", 32));
+    }
+
+    public static void main(String[] args) throws Exception {
+        StressHarness harness = fromSystemProperties(60_000);
+        List<String> violations = harness.run();
+        System.out.println(harness.getOperations() + " operations, " + harness.rejections.sum() + " rejected, seed "
+                + harness.getSeed());
+        System.out.println("linearizable: " + harness.checkLinearizability(200, 16));
+        violations.forEach(System.out::println);
+        System.exit(violations.isEmpty() ? 0 : 1);
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    public long getOperations() {
+        return operations.sum();
+    }
+
+    /**
+     * Runs the mixed operations for the configured time in rounds of about 200 milliseconds.
+     *
+     * @return violated invariants, empty if all held.
+     */
+    public List<String> run() throws InterruptedException {
+        List<Account> accounts = new ArrayList<>();
+        for (long number : closed) {
+            accounts.add(new Account(number, "Closed " + number, BigDecimal.valueOf(INITIAL_BALANCE), false));
+        }
+        for (long number : open) {
+            accounts.add(new Account(number, "Open " + number, BigDecimal.valueOf(INITIAL_BALANCE), false));
+        }
+        AccountRepository.getSingleInstance().saveAllNew(accounts);
+        BigDecimal closedTotal = BigDecimal.valueOf(INITIAL_BALANCE * groupSize);
+        BigDecimal uncounted = uncountedMoney();
+
+        int rounds = (int) Math.max(1, millis / 200);
+        CyclicBarrier barrier = new CyclicBarrier(threads + 1);
+        List<Thread> workers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            Random random = new Random(seed + t);
+            Thread worker = new Thread(() -> work(random, barrier, rounds), "stress-" + t);
+            workers.add(worker);
+            worker.start();
+        }
+        Thread checker = new Thread(() -> {
+            while (!stopped) {
+                checkSnapshot(closedTotal);
+            }
+        }, "stress-checker");
+        checker.start();
+
+        try {
+            for (int round = 0; round < rounds; round++) {
+                Thread.sleep(millis / rounds);
+                roundOver = true;
+                await(barrier);
+                checkQuiescent(uncounted);
+                roundOver = false;
+                await(barrier);
+            }
+        } finally {
+            stopped = true;
+            // releases the workers if a round failed half way
+            barrier.reset();
+            for (Thread worker : workers) {
+                worker.join();
+            }
+            checker.join();
+        }
+        return new ArrayList<>(violations);
+    }
+
+    /**
+     * Records top ups, reads and updates of one account by all threads in short bursts and checks that the history
+     * of every burst is linearizable.
+     *
+     * @param bursts          number of bursts.
+     * @param operationsEach  operations per thread and burst.
+     * @return true if every burst was linearizable.
+     */
+    public boolean checkLinearizability(int bursts, int operationsEach) throws InterruptedException {
+        long number = NEXT_BASE.getAndIncrement();
+        AccountRepository.getSingleInstance().saveNew(new Account(number, "Register", BigDecimal.ZERO, false));
+        for (int burst = 0; burst < bursts; burst++) {
+            long initial = accountService.getInfo(number).getBalance().longValueExact();
+            History history = new History();
+            List<Thread> recorders = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                Random random = new Random(seed + burst * 31L + t);
+                Thread recorder = new Thread(() -> {
+                    for (int i = 0; i < operationsEach; i++) {
+                        record(history, number, random);
+                    }
+                }, "stress-history-" + t);
+                recorders.add(recorder);
+                recorder.start();
+            }
+            for (Thread recorder : recorders) {
+                recorder.join();
+            }
+            if (!LinearizabilityChecker.isLinearizable(history.getOperations(), initial)) {
+                violation("history not linearizable from " + initial + ": " + history.getOperations());
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void record(History history, long number, Random random) {
+        int choice = random.nextInt(10);
+        if (choice < 4) {
+            long amount = 1 + random.nextInt(9);
+            History.Operation operation = history.invoke(History.Kind.TOP_UP, amount);
+            Account account = accountService.topUp(number, BigDecimal.valueOf(amount));
+            history.returned(operation, account.getBalance().longValueExact());
+        } else if (choice < 9) {
+            History.Operation operation = history.invoke(History.Kind.READ, 0);
+            Account account = accountService.getInfo(number);
+            history.returned(operation, account.getBalance().longValueExact());
+        } else {
+            long balance = random.nextInt(1000);
+            History.Operation operation = history.invoke(History.Kind.UPDATE, balance);
+            accountService.updateAccount(new Account(number, "Register", BigDecimal.valueOf(balance), false));
+            history.returned(operation, balance);
+        }
+    }
+
+    private void work(Random random, CyclicBarrier barrier, int rounds) {
+        for (int round = 0; round < rounds && !stopped; round++) {
+            while (!roundOver && !stopped) {
+                try {
+                    operate(random);
+                } catch (ApiException e) {
+                    if (!EXPECTED_REJECTIONS.contains(e.getCode())) {
+                        violation(Thread.currentThread().getName() + ": unexpected " + e.getCode() + " " + e.getMessage());
+                    }
+                    rejections.increment();
+                } catch (RuntimeException e) {
+                    violation(Thread.currentThread().getName() + ": " + e);
+                }
+                operations.increment();
+            }
+            await(barrier);
+            await(barrier);
+        }
+    }
+
+    private void operate(Random random) {
+        BigDecimal amount = BigDecimal.valueOf(1 + random.nextInt(50));
+        int choice = random.nextInt(100);
+        if (choice < 25) {
+            accountService.transfer(pick(closed, random), pick(closed, random), amount);
+        } else if (choice < 35) {
+            long from = pick(closed, random);
+            accountService.transfer(Arrays.asList(new TransferMoneyDto(from, pick(closed, random), amount),
+                    new TransferMoneyDto(from, pick(closed, random), amount),
+                    new TransferMoneyDto(pick(closed, random), pick(closed, random), amount)));
+        } else if (choice < 42) {
+            accountService.getInfo(pick(closed, random));
+        } else if (choice < 47) {
+            accountService.getInfoJson(pick(random.nextBoolean() ? closed : open, random));
+        } else if (choice < 62) {
+            accountService.topUp(pick(open, random), amount);
+        } else if (choice < 72) {
+            accountService.transfer(pick(open, random), pick(open, random), amount);
+        } else if (choice < 80) {
+            long number = pick(open, random);
+            accountService.updateAccount(new Account(number, "Open " + number,
+                    BigDecimal.valueOf(random.nextInt(2000)), random.nextInt(5) == 0));
+        } else if (choice < 84) {
+            accountService.deleteAccount(pick(open, random));
+        } else if (random.nextInt(100) != 0) {
+            accountService.getInfo(pick(open, random));
+        } else {
+            Account account = accountService.createAccount("Stress");
+            if (!created.add(account.getNumber())) {
+                violation("account number " + account.getNumber() + " created twice");
+            }
+        }
+    }
+
+    private void checkSnapshot(BigDecimal closedTotal) {
+        AccountsSnapshotDto snapshot = accountService.getAccountsSnapshot();
+        Set<Long> numbers = new HashSet<>();
+        Map<Long, BigDecimal> balances = new HashMap<>();
+        for (Account account : snapshot.getAccounts()) {
+            if (!numbers.add(account.getNumber())) {
+                violation("account " + account.getNumber() + " twice in snapshot " + snapshot.getSequence());
+            }
+            if (account.getBalance() != null && account.getBalance().signum() < 0) {
+                violation("negative balance " + account.getBalance() + " of " + account.getNumber());
+            }
+            balances.put(account.getNumber(), account.getBalance());
+        }
+        BigDecimal total = BigDecimal.ZERO;
+        for (long number : closed) {
+            total = total.add(balances.get(number));
+        }
+        if (total.compareTo(closedTotal) != 0) {
+            violation("closed group holds " + total + " instead of " + closedTotal + " at " + snapshot.getSequence());
+        }
+    }
+
+    private void checkQuiescent(BigDecimal uncounted) {
+        AccountsSnapshotDto snapshot = accountService.getAccountsSnapshot();
+        Map<Long, Account> committed = new HashMap<>();
+        snapshot.getAccounts().forEach(account -> committed.put(account.getNumber(), account));
+        Map<Long, Account> live = new HashMap<>();
+        accountService.getAllAccounts().forEach(account -> live.put(account.getNumber(), account));
+        for (long[] group : new long[][]{closed, open}) {
+            for (long number : group) {
+                Account liveAccount = live.get(number);
+                Account committedAccount = committed.get(number);
+                if (!sameState(liveAccount, committedAccount)) {
+                    violation("account " + number + " is " + json(liveAccount) + " but committed "
+                            + json(committedAccount));
+                }
+                String cached = new String(accountService.getInfoJson(number));
+                if (!cached.equals(json(liveAccount))) {
+                    violation("account " + number + " is " + json(liveAccount) + " but cached " + cached);
+                }
+            }
+        }
+        for (Long number : created) {
+            if (!live.containsKey(number)) {
+                violation("created account " + number + " is missing");
+            }
+        }
+        BigDecimal difference = snapshot.getTotalBalance().subtract(accountService.getStatistics(0).getTotalDeposits());
+        if (difference.compareTo(uncounted) != 0) {
+            violation("total balance differs from the statistics by " + difference + " instead of " + uncounted);
+        }
+    }
+
+    /**
+     * @return money in accounts that the statistics do not know of, such as accounts saved by tests directly.
+     */
+    private BigDecimal uncountedMoney() {
+        return accountService.getAccountsSnapshot().getTotalBalance()
+                .subtract(accountService.getStatistics(0).getTotalDeposits());
+    }
+
+    private static boolean sameState(Account live, Account committed) {
+        return live != null && committed != null && live.getBalance().compareTo(committed.getBalance()) == 0
+                && live.isDisabled() == committed.isDisabled();
+    }
+
+    private static String json(Account account) {
+        if (account == null) {
+            return "null";
+        }
+        JsonWriter writer = JsonWriter.acquire(null);
+        AccountCodec.INSTANCE.write(account, writer);
+        return new String(writer.toByteArray());
+    }
+
+    private static long pick(long[] group, Random random) {
+        return group[random.nextInt(group.length)];
+    }
+
+    private void violation(String violation) {
+        if (violations.size() < MAX_VIOLATIONS) {
+            violations.add(violation);
+        }
+    }
+
+    private void await(CyclicBarrier barrier) {
+        try {
+            barrier.await();
+        } catch (InterruptedException | BrokenBarrierException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+}